@@ -0,0 +1,46 @@
+package com.jiaoyi.common.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * 已验证的用户身份（从 JWT claims 或网关签名的身份头中得到，各服务再转换成自己的用户上下文）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuthIdentity {
+
+    /**
+     * 用户ID（JWT sub）
+     */
+    private Long userId;
+
+    /**
+     * 用户名
+     */
+    private String username;
+
+    /**
+     * 用户类型（CUSTOMER / MERCHANT / ADMIN）
+     */
+    private String userType;
+
+    /**
+     * 商家ID（商家用户）
+     */
+    private Long merchantId;
+
+    /**
+     * 权限列表
+     */
+    private Set<String> permissions;
+
+    /**
+     * token 过期时间（毫秒时间戳）
+     */
+    private long expiresAt;
+}
@@ -0,0 +1,102 @@
+package com.jiaoyi.common.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * 网关签名的身份头（网关验完 JWT 后把身份传给下游，下游验 HMAC 即可，不再重复验 JWT）
+ *
+ * 格式：{@code base64url(身份JSON).签发毫秒.base64url(HMAC-SHA256(前两段))}
+ * - 共享密钥由网关和下游服务配置（auth.identity.secret），为空时不签发也不接受
+ * - 签发超过 maxAgeMillis 或 token 已过期的身份头无效，限制身份头被截获后的重放窗口
+ * - 网关必须删除客户端自带的同名头，否则客户端可以直接伪造（密钥泄露前伪造不了签名，但仍应删除）
+ */
+@Slf4j
+public class IdentityHeaderCodec {
+
+    public static final String HEADER_NAME = "X-Auth-Identity";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final SecretKeySpec key;
+    private final long maxAgeMillis;
+
+    public IdentityHeaderCodec(String secret, long maxAgeMillis) {
+        this.key = secret == null || secret.isEmpty()
+                ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    /**
+     * 生成身份头；未配置密钥时返回 null
+     */
+    public String encode(AuthIdentity identity) {
+        if (key == null) {
+            return null;
+        }
+        try {
+            String payload = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(OBJECT_MAPPER.writeValueAsBytes(identity));
+            String signed = payload + "." + System.currentTimeMillis();
+            return signed + "." + sign(signed);
+        } catch (Exception e) {
+            log.error("生成身份头失败, userId={}", identity.getUserId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 校验并解析身份头
+     *
+     * @return 签名正确且未过期时返回身份，否则返回 null
+     */
+    public AuthIdentity decode(String header) {
+        if (key == null || header == null) {
+            return null;
+        }
+        int last = header.lastIndexOf('.');
+        int first = header.indexOf('.');
+        if (first <= 0 || last <= first) {
+            return null;
+        }
+        try {
+            String signed = header.substring(0, last);
+            byte[] expected = Base64.getUrlDecoder().decode(sign(signed));
+            byte[] actual = Base64.getUrlDecoder().decode(header.substring(last + 1));
+            if (!MessageDigest.isEqual(expected, actual)) {
+                log.warn("身份头签名错误");
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            long issuedAt = Long.parseLong(header.substring(first + 1, last));
+            if (now - issuedAt > maxAgeMillis) {
+                log.debug("身份头已过期, issuedAt={}", issuedAt);
+                return null;
+            }
+            AuthIdentity identity = OBJECT_MAPPER.readValue(
+                    Base64.getUrlDecoder().decode(header.substring(0, first)), AuthIdentity.class);
+            return identity.getExpiresAt() > now ? identity : null;
+        } catch (Exception e) {
+            log.debug("身份头格式错误: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String sign(String value) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(value.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
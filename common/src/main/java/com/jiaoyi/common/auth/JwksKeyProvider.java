@@ -0,0 +1,163 @@
+package com.jiaoyi.common.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 本地 JWKS 文件中的验签密钥（预先解析成 Key 对象，验签时只查表）
+ *
+ * 文件格式（RFC 7517）：
+ * <pre>
+ * {"keys": [
+ *   {"kty": "RSA", "kid": "2026-10", "alg": "RS256", "n": "...", "e": "AQAB"},
+ *   {"kty": "oct", "kid": "dev", "alg": "HS256", "k": "..."}
+ * ]}
+ * </pre>
+ *
+ * 密钥轮换：签发方先把新公钥追加到文件，切换签发后再删除旧公钥。
+ * 这里按文件修改时间检测变化（最多每 refreshIntervalMillis 检查一次），重新解析后整体替换；
+ * 遇到未知 kid 时也会触发一次检查，新密钥发布后无需重启
+ */
+@Slf4j
+public class JwksKeyProvider {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Path path;
+    private final long refreshIntervalMillis;
+
+    private volatile Map<String, VerifierKey> keys = Collections.emptyMap();
+    private volatile long lastModified = -1;
+    private volatile long lastCheckedAt;
+
+    public JwksKeyProvider(String path, long refreshIntervalMillis) {
+        this.path = Paths.get(path);
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        reload();
+    }
+
+    /**
+     * 按 kid 查找密钥；kid 为空且只有一个密钥时返回该密钥
+     */
+    public VerifierKey getKey(String kid) {
+        refreshIfDue(false);
+        VerifierKey key = find(kid);
+        if (key == null && refreshIfDue(true)) {
+            key = find(kid);
+        }
+        return key;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private VerifierKey find(String kid) {
+        Map<String, VerifierKey> current = keys;
+        if (kid == null) {
+            return current.size() == 1 ? current.values().iterator().next() : null;
+        }
+        return current.get(kid);
+    }
+
+    /**
+     * @param unknownKid 因为未知 kid 触发（同样受检查间隔限制，防止伪造 kid 刷文件系统）
+     * @return 是否重新加载了密钥
+     */
+    private boolean refreshIfDue(boolean unknownKid) {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckedAt < refreshIntervalMillis) {
+            return false;
+        }
+        synchronized (this) {
+            if (now - lastCheckedAt < refreshIntervalMillis) {
+                return false;
+            }
+            lastCheckedAt = now;
+            if (unknownKid) {
+                log.debug("JWKS 中没有请求的 kid，检查文件是否更新: {}", path);
+            }
+            return reload();
+        }
+    }
+
+    private synchronized boolean reload() {
+        lastCheckedAt = System.currentTimeMillis();
+        try {
+            if (!Files.exists(path)) {
+                if (lastModified != 0) {
+                    log.warn("JWKS 文件不存在，所有 JWT 都将验证失败: {}", path.toAbsolutePath());
+                    lastModified = 0;
+                }
+                return false;
+            }
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == lastModified) {
+                return false;
+            }
+            Map<String, VerifierKey> parsed = parse(OBJECT_MAPPER.readTree(path.toFile()));
+            keys = Collections.unmodifiableMap(parsed);
+            lastModified = modified;
+            log.info("JWKS 加载完成，密钥数: {}, kid: {}", parsed.size(), parsed.keySet());
+            return true;
+        } catch (Exception e) {
+            // 文件写到一半或格式错误：保留旧密钥，下次检查时重试
+            log.error("加载 JWKS 失败，继续使用旧密钥: {}", path, e);
+            return false;
+        }
+    }
+
+    private static Map<String, VerifierKey> parse(JsonNode jwks) throws Exception {
+        Map<String, VerifierKey> parsed = new HashMap<>();
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        int index = 0;
+        for (JsonNode jwk : jwks.path("keys")) {
+            String use = jwk.path("use").asText("sig");
+            if (!"sig".equals(use)) {
+                continue;
+            }
+            String kty = jwk.path("kty").asText();
+            String kid = jwk.path("kid").asText("key-" + index++);
+            Key key;
+            String alg;
+            if ("RSA".equals(kty)) {
+                BigInteger modulus = new BigInteger(1, decoder.decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, decoder.decode(jwk.path("e").asText()));
+                key = KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+                alg = jwk.path("alg").asText("RS256");
+            } else if ("oct".equals(kty)) {
+                key = new SecretKeySpec(decoder.decode(jwk.path("k").asText()), "HmacSHA256");
+                alg = jwk.path("alg").asText("HS256");
+            } else {
+                log.warn("不支持的 JWK 类型，忽略: kid={}, kty={}", kid, kty);
+                continue;
+            }
+            if (!"RS256".equals(alg) && !"HS256".equals(alg)) {
+                log.warn("不支持的签名算法，忽略: kid={}, alg={}", kid, alg);
+                continue;
+            }
+            parsed.put(kid, new VerifierKey(kid, alg, key));
+        }
+        return parsed;
+    }
+
+    /**
+     * 验签密钥（alg 固定在密钥上，防止 token 头部篡改算法）
+     */
+    public record VerifierKey(String kid, String alg, Key key) {
+    }
+}
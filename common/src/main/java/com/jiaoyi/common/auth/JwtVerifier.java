@@ -0,0 +1,189 @@
+package com.jiaoyi.common.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * JWT 验证（JWS Compact，支持 RS256 / HS256）
+ *
+ * 校验顺序：格式 -> 头部 alg/kid -> 签名（密钥来自 {@link JwksKeyProvider}，算法以密钥为准）-> exp/nbf -> iss/aud，
+ * 任何一步失败都返回 null。不依赖第三方 JWT 库，只用 JDK 的 Signature/Mac
+ *
+ * claims 约定：sub = 用户ID，username（或 preferred_username），user_type，merchant_id，
+ * permissions（数组，或空格分隔的 scope）
+ */
+@Slf4j
+public class JwtVerifier {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JwksKeyProvider keyProvider;
+    private final String issuer;
+    private final String audience;
+    private final long clockSkewMillis;
+
+    /**
+     * @param issuer 期望的 iss，为空时不校验
+     * @param audience 期望的 aud，为空时不校验
+     * @param clockSkewSeconds 允许的时钟偏差
+     */
+    public JwtVerifier(JwksKeyProvider keyProvider, String issuer, String audience, long clockSkewSeconds) {
+        this.keyProvider = keyProvider;
+        this.issuer = issuer == null || issuer.isEmpty() ? null : issuer;
+        this.audience = audience == null || audience.isEmpty() ? null : audience;
+        this.clockSkewMillis = clockSkewSeconds * 1000;
+    }
+
+    /**
+     * 是否是 JWS Compact 格式（三段），不是时调用方可以按其他 token 类型处理
+     */
+    public static boolean looksLikeJwt(String token) {
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        return second > 0 && token.indexOf('.', second + 1) < 0;
+    }
+
+    /**
+     * 验证 token
+     *
+     * @return 验证通过时返回身份，否则返回 null
+     */
+    public AuthIdentity verify(String token) {
+        if (token == null || !looksLikeJwt(token)) {
+            return null;
+        }
+        int first = token.indexOf('.');
+        int second = token.indexOf('.', first + 1);
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            JsonNode header = OBJECT_MAPPER.readTree(decoder.decode(token.substring(0, first)));
+            String alg = header.path("alg").asText();
+            String kid = header.hasNonNull("kid") ? header.get("kid").asText() : null;
+
+            JwksKeyProvider.VerifierKey key = keyProvider.getKey(kid);
+            if (key == null) {
+                log.debug("JWT 验证失败：未找到密钥, kid={}", kid);
+                return null;
+            }
+            if (!key.alg().equals(alg)) {
+                log.debug("JWT 验证失败：算法与密钥不匹配, kid={}, alg={}", kid, alg);
+                return null;
+            }
+            byte[] signingInput = token.substring(0, second).getBytes(StandardCharsets.US_ASCII);
+            byte[] signature = decoder.decode(token.substring(second + 1));
+            if (!verifySignature(key, signingInput, signature)) {
+                log.debug("JWT 验证失败：签名错误, kid={}", kid);
+                return null;
+            }
+
+            JsonNode claims = OBJECT_MAPPER.readTree(decoder.decode(token.substring(first + 1, second)));
+            long now = System.currentTimeMillis();
+            if (!claims.hasNonNull("exp") || claims.get("exp").asLong() * 1000 + clockSkewMillis <= now) {
+                log.debug("JWT 验证失败：已过期或缺少 exp");
+                return null;
+            }
+            if (claims.hasNonNull("nbf") && claims.get("nbf").asLong() * 1000 - clockSkewMillis > now) {
+                log.debug("JWT 验证失败：尚未生效");
+                return null;
+            }
+            if (issuer != null && !issuer.equals(claims.path("iss").asText(null))) {
+                log.debug("JWT 验证失败：iss 不匹配, iss={}", claims.path("iss").asText(null));
+                return null;
+            }
+            if (audience != null && !containsAudience(claims.get("aud"))) {
+                log.debug("JWT 验证失败：aud 不匹配");
+                return null;
+            }
+            Long userId = parseSubject(claims.get("sub"));
+            if (userId == null) {
+                log.debug("JWT 验证失败：sub 缺失或不是数字");
+                return null;
+            }
+            return toIdentity(claims, userId);
+        } catch (Exception e) {
+            log.debug("JWT 验证失败：格式错误, {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean verifySignature(JwksKeyProvider.VerifierKey key, byte[] signingInput, byte[] signature)
+            throws Exception {
+        if ("RS256".equals(key.alg())) {
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify((PublicKey) key.key());
+            verifier.update(signingInput);
+            return verifier.verify(signature);
+        }
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key.key());
+        return MessageDigest.isEqual(mac.doFinal(signingInput), signature);
+    }
+
+    private boolean containsAudience(JsonNode aud) {
+        if (aud == null) {
+            return false;
+        }
+        if (aud.isArray()) {
+            for (JsonNode item : aud) {
+                if (audience.equals(item.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return audience.equals(aud.asText());
+    }
+
+    /**
+     * 解析 sub 为用户ID（数字或数字字符串），缺失或不是数字时返回 null
+     */
+    private static Long parseSubject(JsonNode sub) {
+        if (sub == null || sub.isNull()) {
+            return null;
+        }
+        if (sub.isIntegralNumber() && sub.canConvertToLong()) {
+            return sub.asLong();
+        }
+        if (sub.isTextual()) {
+            try {
+                return Long.parseLong(sub.asText());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static AuthIdentity toIdentity(JsonNode claims, Long userId) {
+        AuthIdentity identity = new AuthIdentity();
+        identity.setUserId(userId);
+        identity.setUsername(claims.hasNonNull("username")
+                ? claims.get("username").asText()
+                : claims.path("preferred_username").asText(null));
+        identity.setUserType(claims.path("user_type").asText("CUSTOMER"));
+        identity.setMerchantId(claims.hasNonNull("merchant_id") ? claims.get("merchant_id").asLong() : null);
+        Set<String> permissions = new HashSet<>();
+        if (claims.path("permissions").isArray()) {
+            claims.get("permissions").forEach(permission -> permissions.add(permission.asText()));
+        } else if (claims.hasNonNull("scope")) {
+            for (String scope : claims.get("scope").asText().split(" ")) {
+                if (!scope.isEmpty()) {
+                    permissions.add(scope);
+                }
+            }
+        }
+        identity.setPermissions(permissions);
+        identity.setExpiresAt(claims.get("exp").asLong() * 1000);
+        return identity;
+    }
+}
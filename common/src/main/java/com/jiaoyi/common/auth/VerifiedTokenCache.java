@@ -0,0 +1,97 @@
+package com.jiaoyi.common.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已验证 token 的身份缓存（同一个 token 在有效期内只验一次签名）
+ *
+ * - key 为 token 的 SHA-256，不在内存中保存原始 token
+ * - 条目在 min(token 过期时间, 写入时间 + ttl) 失效，ttl 决定吊销/权限变更最多延迟多久生效
+ * - 条目数超过上限时先清理过期条目，仍然超出则丢弃一半（简单有界，不维护 LRU 顺序，读路径无锁）
+ */
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public VerifiedTokenCache(int maxSize, long ttlMillis) {
+        this.maxSize = Math.max(maxSize, 1);
+        this.ttlMillis = ttlMillis;
+    }
+
+    public AuthIdentity get(String token) {
+        String key = hash(token);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.identity;
+    }
+
+    public void put(String token, AuthIdentity identity) {
+        long now = System.currentTimeMillis();
+        long expiresAt = Math.min(identity.getExpiresAt(), now + ttlMillis);
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            shrink(now);
+        }
+        entries.put(hash(token), new Entry(identity, expiresAt));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private synchronized void shrink(long now) {
+        if (entries.size() < maxSize) {
+            return;
+        }
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        Iterator<String> iterator = entries.keySet().iterator();
+        int toRemove = entries.size() - maxSize / 2;
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Entry(AuthIdentity identity, long expiresAt) {
+    }
+}
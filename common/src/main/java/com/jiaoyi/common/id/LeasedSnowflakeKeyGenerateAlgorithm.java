@@ -0,0 +1,48 @@
+package com.jiaoyi.common.id;
+
+import lombok.Getter;
+import org.apache.shardingsphere.sharding.spi.KeyGenerateAlgorithm;
+
+import java.util.Properties;
+
+/**
+ * ShardingSphere 主键生成算法适配器（类型 LEASED_SNOWFLAKE）
+ *
+ * ShardingSphere 通过 SPI 实例化算法，无法注入 Spring Bean，
+ * 由各服务在创建 {@link SnowflakeIdGenerator} 后调用 {@link #bind(SnowflakeIdGenerator)} 绑定
+ *
+ * 使用方式：shardingRuleConfig.getKeyGenerators().put("snowflake", new AlgorithmConfiguration("LEASED_SNOWFLAKE", new Properties()));
+ */
+public class LeasedSnowflakeKeyGenerateAlgorithm implements KeyGenerateAlgorithm {
+
+    private static volatile SnowflakeIdGenerator generator;
+
+    @Getter
+    private Properties props;
+
+    /**
+     * 绑定当前进程使用的ID生成器
+     */
+    public static void bind(SnowflakeIdGenerator idGenerator) {
+        generator = idGenerator;
+    }
+
+    @Override
+    public void init(Properties props) {
+        this.props = props;
+    }
+
+    @Override
+    public Comparable<?> generateKey() {
+        SnowflakeIdGenerator current = generator;
+        if (current == null) {
+            throw new IllegalStateException("SnowflakeIdGenerator 未绑定，无法生成主键");
+        }
+        return current.nextId();
+    }
+
+    @Override
+    public String getType() {
+        return "LEASED_SNOWFLAKE";
+    }
+}
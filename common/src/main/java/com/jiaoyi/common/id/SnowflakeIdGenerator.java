@@ -0,0 +1,257 @@
+package com.jiaoyi.common.id;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 雪花ID生成器（租约 worker-id + 预分配环形缓冲）
+ *
+ * ID 位布局与 ShardingSphere 内置 SNOWFLAKE 一致（起始时间 2016-11-01），新旧ID可以混用且保持趋势递增：
+ * <pre>
+ * | 0 | 41 位时间戳 | 10 位 workerId | 12 位序列号 |
+ * </pre>
+ *
+ * 预分配：后台单线程按批生成ID写入环形缓冲，业务线程只做一次 CAS 取号；
+ * 剩余量低于阈值时异步补充，缓冲取空时退化为同步生成（与补充线程共用同一份时间戳/序列号状态，不会重复）
+ *
+ * 时钟回拨：
+ * - 回拨不超过 maxBackwardMillis：沿用上次时间戳继续递增序列号，序列号用尽时等待时钟追上
+ * - 回拨超过 maxBackwardMillis：拒绝发号并抛出 IllegalStateException
+ * - worker-id 切换（租约被接管后重新抢占）时，时间戳不小于该 worker-id 的历史最大时间戳；
+ *   历史时间戳领先本机时钟时最多等待 MAX_FLOOR_WAIT_MILLIS 让时钟追上，超过则拒绝发号并抛出 IllegalStateException
+ */
+@Slf4j
+public class SnowflakeIdGenerator {
+
+    /**
+     * 起始时间（2016-11-01 00:00:00 +08:00，与 ShardingSphere SNOWFLAKE 一致）
+     */
+    public static final long EPOCH_MILLIS = 1477929600000L;
+
+    public static final int WORKER_ID_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+
+    /**
+     * worker-id 历史时间戳领先本机时钟时，最多等待多久让时钟追上（毫秒）
+     */
+    public static final long MAX_FLOOR_WAIT_MILLIS = 1000L;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    private final WorkerIdLeaseAllocator allocator;
+    private final long maxBackwardMillis;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final int paddingThreshold;
+    /**
+     * 下一个可取的位置（消费者 CAS 推进）
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * 下一个可写的位置（仅补充线程推进）
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicBoolean filling = new AtomicBoolean();
+    private ScheduledExecutorService fillExecutor;
+
+    // 以下状态只在 synchronized 方法中访问
+    private int currentWorkerId = -1;
+    private long lastTimestamp = -1;
+    private long sequence;
+    /**
+     * 切换 worker-id 时取到的历史时间戳下限（时钟追上之前的差距不按回拨处理）
+     */
+    private long floorTimestamp = -1;
+
+    /**
+     * @param allocator         worker-id 租约分配器（maxWorkerId 不超过 1023）
+     * @param bufferSize        环形缓冲大小（向上取整为 2 的幂）
+     * @param paddingPercent    剩余量低于该百分比时触发补充
+     * @param maxBackwardMillis 可容忍的时钟回拨（毫秒）
+     */
+    public SnowflakeIdGenerator(WorkerIdLeaseAllocator allocator, int bufferSize, int paddingPercent, long maxBackwardMillis) {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        this.allocator = allocator;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.paddingThreshold = Math.max(1, capacity * Math.min(Math.max(paddingPercent, 1), 99) / 100);
+    }
+
+    public void start() {
+        fillExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snowflake-padding-" + allocator.getBizTag());
+            t.setDaemon(true);
+            return t;
+        });
+        triggerFill();
+        log.info("雪花ID生成器启动，bizTag={}, workerId={}, bufferSize={}", allocator.getBizTag(), allocator.getWorkerId(), mask + 1);
+    }
+
+    public void shutdown() {
+        if (fillExecutor != null) {
+            fillExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取下一个ID
+     */
+    public long nextId() {
+        while (true) {
+            long h = head.get();
+            long t = tail.get();
+            if (h >= t) {
+                // 缓冲已空：触发补充并同步生成
+                triggerFill();
+                return generate(true);
+            }
+            long id = slots.get((int) (h & mask));
+            if (head.compareAndSet(h, h + 1)) {
+                if (t - h - 1 < paddingThreshold) {
+                    triggerFill();
+                }
+                return id;
+            }
+        }
+    }
+
+    /**
+     * 解析ID中的生成时间（毫秒时间戳）
+     */
+    public static long extractTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH_MILLIS;
+    }
+
+    /**
+     * 解析ID中的 worker-id
+     */
+    public static int extractWorkerId(long id) {
+        return (int) ((id >>> WORKER_ID_SHIFT) & MAX_WORKER_ID);
+    }
+
+    private void triggerFill() {
+        if (fillExecutor != null && !fillExecutor.isShutdown() && filling.compareAndSet(false, true)) {
+            try {
+                fillExecutor.execute(this::fill);
+            } catch (Exception e) {
+                filling.set(false);
+            }
+        }
+    }
+
+    /**
+     * 补充线程：单生产者，填满缓冲为止；当前毫秒序列号用尽时不等待，1ms 后再补（异常时 100ms 后再补）
+     */
+    private void fill() {
+        long retryDelayMillis = 0;
+        try {
+            long capacity = mask + 1L;
+            while (tail.get() - head.get() < capacity) {
+                long id = generate(false);
+                if (id < 0) {
+                    retryDelayMillis = 1;
+                    break;
+                }
+                long t = tail.get();
+                slots.set((int) (t & mask), id);
+                // 先写槽位再推进 tail，消费者读到新 tail 时一定能看到槽位内容
+                tail.set(t + 1);
+            }
+        } catch (Exception e) {
+            log.error("雪花ID预分配失败，bizTag={}", allocator.getBizTag(), e);
+            retryDelayMillis = 100;
+        } finally {
+            filling.set(false);
+        }
+        if (retryDelayMillis > 0 && tail.get() - head.get() < paddingThreshold && !fillExecutor.isShutdown()) {
+            fillExecutor.schedule(this::triggerFill, retryDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 生成一个ID
+     *
+     * @param waitNextMillis 序列号用尽或时钟回拨时是否等待；为 false 时返回 -1
+     */
+    private synchronized long generate(boolean waitNextMillis) {
+        int workerId = allocator.getWorkerId();
+        if (workerId != currentWorkerId) {
+            // worker-id 切换：时间戳不得小于该 worker-id 的历史最大时间戳
+            currentWorkerId = workerId;
+            floorTimestamp = allocator.getTimestampFloor();
+            lastTimestamp = Math.max(lastTimestamp, floorTimestamp);
+            sequence = SEQUENCE_MASK;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now < lastTimestamp) {
+            long backward = lastTimestamp - now;
+            if (backward > maxBackwardMillis) {
+                if (lastTimestamp > floorTimestamp) {
+                    throw new IllegalStateException("时钟回拨 " + backward + "ms，超过容忍上限 " + maxBackwardMillis + "ms，拒绝生成ID");
+                }
+                // 差距来自 worker-id 的历史时间戳：有限等待时钟追上
+                if (backward > MAX_FLOOR_WAIT_MILLIS) {
+                    throw new IllegalStateException("worker-id " + workerId + " 的历史时间戳领先本机时钟 " + backward
+                            + "ms，超过等待上限 " + MAX_FLOOR_WAIT_MILLIS + "ms，拒绝生成ID");
+                }
+                if (!waitNextMillis) {
+                    return -1;
+                }
+                now = waitUntilAfter(lastTimestamp - 1);
+            }
+        }
+        if (now > lastTimestamp) {
+            lastTimestamp = now;
+            sequence = 0;
+        } else {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 当前毫秒序列号用尽（或处于回拨容忍期内）：等待时钟走到下一毫秒
+                if (!waitNextMillis) {
+                    sequence = SEQUENCE_MASK;
+                    return -1;
+                }
+                lastTimestamp = waitUntilAfter(lastTimestamp);
+            }
+        }
+
+        if (!allocator.isLeaseValid(lastTimestamp)) {
+            throw new IllegalStateException("worker-id " + workerId + " 租约已失效，拒绝生成ID");
+        }
+        allocator.reportTimestamp(lastTimestamp);
+        return ((lastTimestamp - EPOCH_MILLIS) << TIMESTAMP_SHIFT)
+                | ((long) workerId << WORKER_ID_SHIFT)
+                | sequence;
+    }
+
+    private static long waitUntilAfter(long timestamp) {
+        long now = System.currentTimeMillis();
+        while (now <= timestamp) {
+            long gap = timestamp - now;
+            if (gap > 1) {
+                try {
+                    Thread.sleep(gap);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待时钟追上时被中断", e);
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+}
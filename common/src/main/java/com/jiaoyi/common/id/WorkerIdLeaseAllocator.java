@@ -0,0 +1,296 @@
+package com.jiaoyi.common.id;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker-ID 租约分配器（数据库持久化，各服务共用）
+ *
+ * 工作原理：
+ * 1. 启动时在 snowflake_worker_lease 表中按业务标识（biz_tag）抢占一个 worker-id：
+ *    优先复用本实例上次的记录，其次插入未使用的 id，最后接管租约已过期的 id，全部通过条件写（CAS）完成，不依赖分布式锁
+ * 2. 定时续约（租约时长的 1/3），续约时把已发出的最大时间戳写回 last_timestamp
+ * 3. 续约失败（记录被其他实例接管）时租约立即作废，重新抢占新的 worker-id
+ * 4. 关闭时把租约置为过期，但保留记录和 last_timestamp
+ *
+ * 时钟保护：
+ * - last_timestamp 持久化了该 worker-id 发出过的最大时间戳，新持有者生成ID时不得小于它（{@link #getTimestampFloor()}），
+ *   避免实例重启后本机时钟回拨导致与上一任持有者的ID重复
+ * - 生成器不得使用超过租约到期时间的时间戳（{@link #isLeaseValid(long)}），
+ *   保证租约过期被他人接管后，新持有者的时间戳一定大于本实例发出的所有ID
+ */
+@Slf4j
+public class WorkerIdLeaseAllocator {
+
+    private static final String TABLE_NAME = "snowflake_worker_lease";
+
+    /**
+     * 租约到期前预留的安全时间（毫秒），到期前这段时间内不再发号，吸收实例间的时钟偏差
+     */
+    private static final long LEASE_SAFETY_MARGIN_MILLIS = 2000;
+
+    private final DataSource dataSource;
+    private final String bizTag;
+    private final int maxWorkerId;
+    private final long leaseMillis;
+    private final String instanceId;
+
+    private volatile int workerId = -1;
+    private volatile long leaseExpireAt;
+    private volatile long timestampFloor;
+    private volatile long issuedTimestamp;
+
+    private ScheduledExecutorService renewExecutor;
+
+    /**
+     * @param dataSource  基础库数据源（jiaoyi）
+     * @param bizTag      业务标识，不同标识的 worker-id 相互独立（如 order-service:snowflake）
+     * @param maxWorkerId 最大 worker-id（含），由ID位布局决定
+     * @param leaseMillis 租约时长（毫秒）
+     * @param instanceId  实例标识（同一实例重启后保持不变，便于复用原 worker-id）
+     */
+    public WorkerIdLeaseAllocator(DataSource dataSource, String bizTag, int maxWorkerId, long leaseMillis, String instanceId) {
+        if (leaseMillis <= LEASE_SAFETY_MARGIN_MILLIS * 3) {
+            throw new IllegalArgumentException("租约时长过短: " + leaseMillis + "ms");
+        }
+        this.dataSource = dataSource;
+        this.bizTag = bizTag;
+        this.maxWorkerId = maxWorkerId;
+        this.leaseMillis = leaseMillis;
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * 建表、抢占 worker-id 并启动续约
+     */
+    public synchronized void start() {
+        ensureTable();
+        acquire();
+        renewExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-id-lease-" + bizTag);
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = leaseMillis / 3;
+        renewExecutor.scheduleWithFixedDelay(this::renewQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 释放租约（保留 last_timestamp）
+     */
+    public synchronized void shutdown() {
+        if (renewExecutor != null) {
+            renewExecutor.shutdownNow();
+        }
+        if (workerId < 0) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE " + TABLE_NAME
+                     + " SET lease_expire_at = 0, last_timestamp = GREATEST(last_timestamp, ?)"
+                     + " WHERE biz_tag = ? AND worker_id = ? AND instance = ?")) {
+            ps.setLong(1, issuedTimestamp);
+            ps.setString(2, bizTag);
+            ps.setInt(3, workerId);
+            ps.setString(4, instanceId);
+            ps.executeUpdate();
+            log.info("已释放 worker-id 租约，bizTag={}, workerId={}", bizTag, workerId);
+        } catch (Exception e) {
+            log.error("释放 worker-id 租约失败，bizTag={}, workerId={}", bizTag, workerId, e);
+        } finally {
+            leaseExpireAt = 0;
+        }
+    }
+
+    /**
+     * 当前持有的 worker-id
+     */
+    public int getWorkerId() {
+        int current = workerId;
+        if (current < 0) {
+            throw new IllegalStateException("worker-id 未分配，bizTag=" + bizTag);
+        }
+        return current;
+    }
+
+    /**
+     * 时间戳 nowMillis 是否仍在租约安全期内
+     */
+    public boolean isLeaseValid(long nowMillis) {
+        return nowMillis < leaseExpireAt - LEASE_SAFETY_MARGIN_MILLIS;
+    }
+
+    /**
+     * 当前 worker-id 允许使用的最小时间戳（上一任持有者发出过的最大时间戳）
+     */
+    public long getTimestampFloor() {
+        return timestampFloor;
+    }
+
+    /**
+     * 生成器上报已发出的最大时间戳（续约时持久化）
+     */
+    public void reportTimestamp(long timestampMillis) {
+        if (timestampMillis > issuedTimestamp) {
+            issuedTimestamp = timestampMillis;
+        }
+    }
+
+    public String getBizTag() {
+        return bizTag;
+    }
+
+    private void ensureTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + "biz_tag VARCHAR(64) NOT NULL COMMENT '业务标识', "
+                + "worker_id INT NOT NULL COMMENT '工作机器ID', "
+                + "instance VARCHAR(128) NOT NULL COMMENT '当前持有实例', "
+                + "lease_expire_at BIGINT NOT NULL COMMENT '租约到期时间（毫秒）', "
+                + "last_timestamp BIGINT NOT NULL DEFAULT 0 COMMENT '已发出的最大时间戳（毫秒）', "
+                + "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, "
+                + "PRIMARY KEY (biz_tag, worker_id)"
+                + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='雪花算法Worker-ID租约表'";
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        } catch (Exception e) {
+            throw new IllegalStateException("创建 " + TABLE_NAME + " 表失败", e);
+        }
+    }
+
+    /**
+     * 抢占 worker-id：复用本实例记录 -> 插入未使用的 id -> 接管过期租约
+     */
+    private synchronized void acquire() {
+        long now = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection()) {
+            Map<Integer, long[]> existing = new HashMap<>();
+            Integer ownWorkerId = null;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT worker_id, instance, lease_expire_at, last_timestamp FROM " + TABLE_NAME + " WHERE biz_tag = ?")) {
+                ps.setString(1, bizTag);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        existing.put(id, new long[]{rs.getLong(3), rs.getLong(4)});
+                        if (instanceId.equals(rs.getString(2)) && id <= maxWorkerId) {
+                            ownWorkerId = id;
+                        }
+                    }
+                }
+            }
+
+            List<Integer> candidates = new ArrayList<>();
+            if (ownWorkerId != null) {
+                candidates.add(ownWorkerId);
+            }
+            // 从随机位置开始找，降低多个实例同时启动时的冲突
+            int offset = ThreadLocalRandom.current().nextInt(maxWorkerId + 1);
+            for (int i = 0; i <= maxWorkerId; i++) {
+                int id = (offset + i) % (maxWorkerId + 1);
+                if (!existing.containsKey(id)) {
+                    candidates.add(id);
+                }
+            }
+            for (int i = 0; i <= maxWorkerId; i++) {
+                int id = (offset + i) % (maxWorkerId + 1);
+                long[] row = existing.get(id);
+                if (row != null && row[0] < now && (ownWorkerId == null || id != ownWorkerId)) {
+                    candidates.add(id);
+                }
+            }
+
+            for (Integer candidate : candidates) {
+                long expireAt = System.currentTimeMillis() + leaseMillis;
+                long[] row = existing.get(candidate);
+                boolean won;
+                if (row == null) {
+                    try (PreparedStatement ps = conn.prepareStatement("INSERT IGNORE INTO " + TABLE_NAME
+                            + " (biz_tag, worker_id, instance, lease_expire_at, last_timestamp) VALUES (?, ?, ?, ?, 0)")) {
+                        ps.setString(1, bizTag);
+                        ps.setInt(2, candidate);
+                        ps.setString(3, instanceId);
+                        ps.setLong(4, expireAt);
+                        won = ps.executeUpdate() == 1;
+                    }
+                } else {
+                    // 以读到的 lease_expire_at 作为版本号，保证只有一个实例接管成功
+                    try (PreparedStatement ps = conn.prepareStatement("UPDATE " + TABLE_NAME
+                            + " SET instance = ?, lease_expire_at = ? WHERE biz_tag = ? AND worker_id = ? AND lease_expire_at = ?")) {
+                        ps.setString(1, instanceId);
+                        ps.setLong(2, expireAt);
+                        ps.setString(3, bizTag);
+                        ps.setInt(4, candidate);
+                        ps.setLong(5, row[0]);
+                        won = ps.executeUpdate() == 1;
+                    }
+                }
+                if (won) {
+                    long floor = row == null ? 0 : row[1];
+                    // 接管他人的过期租约时，对方可能在到期前一直发号，下限至少取到对方的租约到期时间
+                    if (row != null && (ownWorkerId == null || !candidate.equals(ownWorkerId))) {
+                        floor = Math.max(floor, row[0]);
+                    }
+                    timestampFloor = floor;
+                    leaseExpireAt = expireAt;
+                    workerId = candidate;
+                    if (floor > now) {
+                        log.warn("worker-id {} 的历史时间戳 {} 大于当前时间 {}，本机时钟可能回拨，发号将等待时钟追上"
+                                        + "（最多 {}ms，超过则拒绝发号直到时钟追上）",
+                                candidate, floor, now, SnowflakeIdGenerator.MAX_FLOOR_WAIT_MILLIS);
+                    }
+                    log.info("抢占 worker-id 成功，bizTag={}, workerId={}, instance={}, 租约到期={}",
+                            bizTag, candidate, instanceId, expireAt);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("抢占 worker-id 失败，bizTag=" + bizTag, e);
+        }
+        throw new IllegalStateException("无可用 worker-id（0-" + maxWorkerId + " 均被占用），bizTag=" + bizTag);
+    }
+
+    private void renewQuietly() {
+        try {
+            renew();
+        } catch (Exception e) {
+            log.error("worker-id 续约异常，bizTag={}, workerId={}", bizTag, workerId, e);
+        }
+    }
+
+    private synchronized void renew() throws Exception {
+        long expireAt = System.currentTimeMillis() + leaseMillis;
+        int updated;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE " + TABLE_NAME
+                     + " SET lease_expire_at = ?, last_timestamp = GREATEST(last_timestamp, ?)"
+                     + " WHERE biz_tag = ? AND worker_id = ? AND instance = ?")) {
+            ps.setLong(1, expireAt);
+            ps.setLong(2, issuedTimestamp);
+            ps.setString(3, bizTag);
+            ps.setInt(4, workerId);
+            ps.setString(5, instanceId);
+            updated = ps.executeUpdate();
+        }
+        if (updated == 1) {
+            leaseExpireAt = expireAt;
+            return;
+        }
+        // 记录已被其他实例接管（本实例长时间 GC / 网络分区导致租约过期），立即停止发号并重新抢占
+        log.warn("worker-id {} 租约已被接管，重新抢占，bizTag={}", workerId, bizTag);
+        leaseExpireAt = 0;
+        acquire();
+    }
+}
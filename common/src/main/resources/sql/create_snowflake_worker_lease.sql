@@ -0,0 +1,18 @@
+-- ============================================
+-- 雪花算法 Worker-ID 租约表（基础库 jiaoyi）
+-- ============================================
+-- 说明：
+-- 1. 由 WorkerIdLeaseAllocator 启动时自动创建（CREATE TABLE IF NOT EXISTS），此文件用于手工建表/审计
+-- 2. biz_tag 区分不同的ID空间（如 order-service:snowflake、order-service:shard-gene、product-service:snowflake）
+-- 3. 实例关闭只把 lease_expire_at 置 0，记录和 last_timestamp 保留，用于下一任持有者的时钟回拨保护
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS snowflake_worker_lease (
+    biz_tag VARCHAR(64) NOT NULL COMMENT '业务标识',
+    worker_id INT NOT NULL COMMENT '工作机器ID',
+    instance VARCHAR(128) NOT NULL COMMENT '当前持有实例',
+    lease_expire_at BIGINT NOT NULL COMMENT '租约到期时间（毫秒）',
+    last_timestamp BIGINT NOT NULL DEFAULT 0 COMMENT '已发出的最大时间戳（毫秒）',
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (biz_tag, worker_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='雪花算法Worker-ID租约表';
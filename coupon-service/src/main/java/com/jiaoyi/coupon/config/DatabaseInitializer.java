@@ -0,0 +1,57 @@
+package com.jiaoyi.coupon.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * 数据库初始化器（Coupon Service）
+ * 应用启动时补齐 coupon_usage 表的唯一索引 uk_coupon_order (coupon_id, order_id)：
+ * 同一订单同一优惠券只能有一条使用记录，并发核销时由唯一索引兜底（重复插入按幂等成功处理）
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DatabaseInitializer {
+
+    private static final String COUPON_USAGE_TABLE = "coupon_usage";
+    private static final String UK_COUPON_ORDER = "uk_coupon_order";
+
+    private final DataSource dataSource;
+
+    @PostConstruct
+    public void init() {
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            try (ResultSet tables = metaData.getTables(conn.getCatalog(), null, COUPON_USAGE_TABLE, new String[]{"TABLE"})) {
+                if (!tables.next()) {
+                    log.warn("{} 表不存在，跳过唯一索引检查", COUPON_USAGE_TABLE);
+                    return;
+                }
+            }
+            try (ResultSet indexes = metaData.getIndexInfo(conn.getCatalog(), null, COUPON_USAGE_TABLE, true, false)) {
+                while (indexes.next()) {
+                    if (UK_COUPON_ORDER.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                        log.info("{} 唯一索引 {} 已存在", COUPON_USAGE_TABLE, UK_COUPON_ORDER);
+                        return;
+                    }
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + COUPON_USAGE_TABLE
+                        + " ADD UNIQUE KEY " + UK_COUPON_ORDER + " (coupon_id, order_id)");
+                log.info("✓ {} 唯一索引 {} 创建成功", COUPON_USAGE_TABLE, UK_COUPON_ORDER);
+            }
+        } catch (Exception e) {
+            // 已有重复数据时创建失败，需要先人工清理重复的使用记录
+            log.error("创建 {} 唯一索引 {} 失败，并发核销可能产生重复记录: {}", COUPON_USAGE_TABLE, UK_COUPON_ORDER, e.getMessage(), e);
+        }
+    }
+}
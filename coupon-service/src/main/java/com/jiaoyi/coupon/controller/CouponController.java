@@ -1,6 +1,8 @@
 package com.jiaoyi.coupon.controller;
 
 import com.jiaoyi.common.ApiResponse;
+import com.jiaoyi.common.constants.ResponseCode;
+import com.jiaoyi.common.exception.BusinessException;
 import com.jiaoyi.coupon.entity.Coupon;
 import com.jiaoyi.coupon.entity.CouponUsage;
 import com.jiaoyi.coupon.service.CouponService;
@@ -127,9 +129,13 @@ public class CouponController {
         try {
             couponService.useCoupon(couponCode, userId, orderId, discountAmount);
             return ResponseEntity.ok(ApiResponse.success("使用成功", null));
+        } catch (BusinessException e) {
+            // 优惠券不可用（不存在、已停用、已过期、已用完），重试也不会成功
+            log.warn("使用优惠券失败，优惠券不可用: {}", e.getMessage());
+            return ResponseEntity.ok(ApiResponse.error(ResponseCode.COUPON_VALIDATE_FAILED, "使用失败: " + e.getMessage()));
         } catch (Exception e) {
             log.error("使用优惠券失败", e);
-            return ResponseEntity.ok(ApiResponse.error(400, "使用失败: " + e.getMessage()));
+            return ResponseEntity.ok(ApiResponse.error(ResponseCode.INTERNAL_ERROR, "使用失败: " + e.getMessage()));
         }
     }
     
@@ -48,6 +48,11 @@ public interface CouponMapper {
      */
     int updateUsedQuantity(@Param("id") Long id, @Param("increment") int increment);
     
+    /**
+     * 使用数量加 1（仅在未超过总数量时更新，返回 0 表示优惠券已用完）
+     */
+    int incrementUsedQuantityIfAvailable(@Param("id") Long id);
+    
     /**
      * 更新优惠券状态
      */
@@ -46,5 +46,9 @@ public interface CouponUsageMapper {
      * 根据用户ID和优惠券ID查询使用次数
      */
     int countByUserIdAndCouponId(@Param("userId") Long userId, @Param("couponId") Long couponId);
+    
+    /**
+     * 根据订单ID和优惠券ID查询使用记录（用于核销幂等）
+     */
+    CouponUsage selectByOrderIdAndCouponId(@Param("orderId") Long orderId, @Param("couponId") Long couponId);
 }
-
@@ -1,11 +1,13 @@
 package com.jiaoyi.coupon.service;
 
+import com.jiaoyi.common.exception.BusinessException;
 import com.jiaoyi.coupon.entity.Coupon;
 import com.jiaoyi.coupon.entity.CouponUsage;
 import com.jiaoyi.coupon.mapper.CouponMapper;
 import com.jiaoyi.coupon.mapper.CouponUsageMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -166,7 +168,7 @@ public class CouponService {
         
         Optional<Coupon> couponOpt = getCouponByCode(couponCode);
         if (!couponOpt.isPresent()) {
-            throw new RuntimeException("优惠券不存在: " + couponCode);
+            throw new BusinessException("优惠券不存在: " + couponCode);
         }
         
         Coupon coupon = couponOpt.get();
@@ -175,14 +177,38 @@ public class CouponService {
     
     /**
      * 使用优惠券
+     * 
+     * 注意：
+     * 1. 同一订单同一优惠券只核销一次（下单 Saga 通过 outbox 重试核销），已核销时幂等返回
+     * 2. 核销时重新校验优惠券状态和有效期，使用数量按条件累加（不超过总数量），
+     *    不可用时抛出 BusinessException（不可重试），其他异常可重试
      */
     @Transactional
     public CouponUsage useCoupon(Long couponId, Long userId, Long orderId, String couponCode, 
                                 BigDecimal orderAmount, BigDecimal discountAmount) {
         log.info("使用优惠券，优惠券ID: {}, 用户ID: {}, 订单ID: {}", couponId, userId, orderId);
         
-        // 更新优惠券使用数量
-        couponMapper.updateUsedQuantity(couponId, 1);
+        // 幂等检查：同一订单同一优惠券只核销一次（下单 Saga 通过 outbox 重试核销）
+        if (orderId != null) {
+            CouponUsage existing = couponUsageMapper.selectByOrderIdAndCouponId(orderId, couponId);
+            if (existing != null) {
+                log.info("优惠券已核销（幂等返回），优惠券ID: {}, 订单ID: {}, 使用记录ID: {}", couponId, orderId, existing.getId());
+                return existing;
+            }
+        }
+        
+        // 重新校验优惠券（Saga 下单时核销晚于下单校验，期间优惠券可能已停用或过期）
+        Coupon coupon = couponMapper.selectById(couponId);
+        if (coupon == null) {
+            throw new BusinessException("优惠券不存在，优惠券ID: " + couponId);
+        }
+        if (coupon.getStatus() != Coupon.CouponStatus.ACTIVE) {
+            throw new BusinessException("优惠券状态无效，优惠券ID: " + couponId + ", 状态: " + coupon.getStatus());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(coupon.getStartTime()) || now.isAfter(coupon.getEndTime())) {
+            throw new BusinessException("优惠券不在有效期内，优惠券ID: " + couponId);
+        }
         
         // 创建优惠券使用记录
         CouponUsage couponUsage = new CouponUsage();
@@ -200,7 +226,20 @@ public class CouponService {
         couponUsage.setRemark("订单使用优惠券");
         couponUsage.setCreateTime(LocalDateTime.now());
         
-        couponUsageMapper.insert(couponUsage);
+        // 先插入使用记录：并发核销同一订单时由唯一索引 uk_coupon_order (coupon_id, order_id) 拦截。
+        // 本事务的快照可能早于另一方的提交，这里读不到对方的记录，因此直接失败回滚，
+        // 由调用方重试（重试时开启新事务，在上面的幂等检查处返回已有记录）
+        try {
+            couponUsageMapper.insert(couponUsage);
+        } catch (DuplicateKeyException e) {
+            log.info("优惠券正在被并发核销，稍后重试，优惠券ID: {}, 订单ID: {}", couponId, orderId);
+            throw new IllegalStateException("优惠券正在被并发核销，请重试，优惠券ID: " + couponId + ", 订单ID: " + orderId, e);
+        }
+        
+        // 更新优惠券使用数量（不超过总数量，已用完时回滚使用记录）
+        if (couponMapper.incrementUsedQuantityIfAvailable(couponId) == 0) {
+            throw new BusinessException("优惠券已用完，优惠券ID: " + couponId);
+        }
         
         log.info("优惠券使用成功，使用记录ID: {}", couponUsage.getId());
         return couponUsage;
@@ -239,8 +278,9 @@ public class CouponService {
         
         CouponUsage couponUsage = couponUsageMapper.selectByOrderId(orderId);
         if (couponUsage == null) {
-            log.warn("未找到优惠券使用记录，订单ID: {}", orderId);
-            return com.jiaoyi.common.OperationResult.failed("未找到优惠券使用记录，订单ID: " + orderId);
+            // 订单未使用优惠券，或 Saga 下单的延迟核销尚未执行（核销前会检查订单状态，已取消的订单不再核销）
+            log.info("未找到优惠券使用记录，无需退还，订单ID: {}", orderId);
+            return com.jiaoyi.common.OperationResult.idempotentSuccess("未找到优惠券使用记录，无需退还，订单ID: " + orderId);
         }
         
         // 幂等性检查：如果已经是已退款状态，返回幂等成功
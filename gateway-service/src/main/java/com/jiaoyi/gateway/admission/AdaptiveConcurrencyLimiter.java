@@ -0,0 +1,128 @@
+package com.jiaoyi.gateway.admission;
+
+import com.jiaoyi.gateway.config.AdmissionControlProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应并发限制（TCP Vegas 思路，按观测到的下游延迟调整单个路由的并发上限）
+ *
+ * 记录无负载时的最小 RTT（rttNoLoad），每个样本估算下游排队量 queue = limit * (1 - rttNoLoad / rtt)：
+ * - queue 小于 alpha（3 * log10(limit)）：下游还有余量，上限增加 log10(limit)（只在确实用到一半以上并发时才增加）
+ * - queue 大于 beta（6 * log10(limit)）：请求开始排队（连接池/慢查询），上限减少 log10(limit)
+ * - 下游超时或 5xx 过载：上限按 backoffRatio 乘性缩减
+ * 每隔 probeInterval 个样本清空 rttNoLoad 重新探测，避免基线一直停留在历史最低值
+ *
+ * 不同优先级可占用的并发比例不同（share），负载升高时低优先级先被挡住
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int probeInterval;
+    private final double backoffRatio;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile double limit;
+
+    /**
+     * 以下字段由 synchronized 保护
+     */
+    private long rttNoLoadNanos;
+    private int samplesSinceProbe;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter(AdmissionControlProperties.RouteLimit config) {
+        this.minLimit = Math.max(config.getMinLimit(), 1);
+        this.maxLimit = Math.max(config.getMaxLimit(), this.minLimit);
+        this.probeInterval = Math.max(config.getProbeInterval(), 1);
+        this.backoffRatio = config.getBackoffRatio();
+        this.limit = Math.min(Math.max(config.getInitialLimit(), this.minLimit), this.maxLimit);
+    }
+
+    /**
+     * 尝试占用一个并发名额
+     *
+     * @param share 该优先级最多可占用的并发比例（0-1]
+     * @return 占用成功时返回占用时的在途请求数（用于判断是否真的用满了并发），失败返回 -1
+     */
+    public int tryAcquire(double share) {
+        int allowed = Math.max((int) (limit * share), 1);
+        while (true) {
+            int current = inflight.get();
+            if (current >= allowed) {
+                rejected.increment();
+                return -1;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                admitted.increment();
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * 请求正常完成：释放名额并按 RTT 调整上限
+     */
+    public void onSuccess(long rttNanos, int inflightAtStart) {
+        inflight.decrementAndGet();
+        synchronized (this) {
+            if (++samplesSinceProbe >= probeInterval) {
+                samplesSinceProbe = 0;
+                rttNoLoadNanos = 0;
+            }
+            if (rttNoLoadNanos == 0 || rttNanos < rttNoLoadNanos) {
+                rttNoLoadNanos = rttNanos;
+                return;
+            }
+            double current = limit;
+            double step = Math.max(Math.log10(current), 1);
+            double queue = Math.ceil(current * (1 - (double) rttNoLoadNanos / rttNanos));
+            if (queue < 3 * step) {
+                // 应用本身没用到一半并发时不增加，避免空闲时上限无限上涨
+                if (inflightAtStart * 2 >= current) {
+                    limit = Math.min(current + step, maxLimit);
+                }
+            } else if (queue > 6 * step) {
+                limit = Math.max(current - step, minLimit);
+            }
+        }
+    }
+
+    /**
+     * 下游过载（超时、连接失败、502/503/504）：释放名额并乘性缩减上限
+     */
+    public void onDropped() {
+        inflight.decrementAndGet();
+        dropped.increment();
+        synchronized (this) {
+            limit = Math.max(limit * backoffRatio, minLimit);
+        }
+    }
+
+    /**
+     * 客户端取消等不代表下游状态的结束方式：只释放名额
+     */
+    public void onIgnore() {
+        inflight.decrementAndGet();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("limit", (int) limit);
+        status.put("inflight", inflight.get());
+        synchronized (this) {
+            status.put("rttNoLoadMillis", rttNoLoadNanos / 1_000_000.0);
+        }
+        status.put("admitted", admitted.sum());
+        status.put("rejected", rejected.sum());
+        status.put("dropped", dropped.sum());
+        return status;
+    }
+}
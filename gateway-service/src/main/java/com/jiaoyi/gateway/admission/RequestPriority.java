@@ -0,0 +1,19 @@
+package com.jiaoyi.gateway.admission;
+
+/**
+ * 请求优先级（负载升高时按 LOW -> NORMAL 的顺序丢弃）
+ */
+public enum RequestPriority {
+    /**
+     * 下单、支付、退款
+     */
+    HIGH,
+    /**
+     * 其他请求
+     */
+    NORMAL,
+    /**
+     * 菜单浏览、历史订单等可以稍后重试的读请求
+     */
+    LOW
+}
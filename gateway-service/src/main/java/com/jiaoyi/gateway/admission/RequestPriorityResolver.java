@@ -0,0 +1,62 @@
+package com.jiaoyi.gateway.admission;
+
+import com.jiaoyi.gateway.config.AdmissionControlProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按请求方法 + 路径判断优先级（先匹配高优先级规则，再匹配低优先级规则，都不匹配为普通）
+ */
+@Component
+public class RequestPriorityResolver {
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final List<Rule> highRules;
+    private final List<Rule> lowRules;
+
+    public RequestPriorityResolver(AdmissionControlProperties properties) {
+        this.highRules = parse(properties.getHighPriority());
+        this.lowRules = parse(properties.getLowPriority());
+    }
+
+    public RequestPriority resolve(String method, String path) {
+        if (matches(highRules, method, path)) {
+            return RequestPriority.HIGH;
+        }
+        if (matches(lowRules, method, path)) {
+            return RequestPriority.LOW;
+        }
+        return RequestPriority.NORMAL;
+    }
+
+    private boolean matches(List<Rule> rules, String method, String path) {
+        for (Rule rule : rules) {
+            if ((rule.method == null || rule.method.equalsIgnoreCase(method)) && pathMatcher.match(rule.pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * "POST /api/orders/**" -> (POST, /api/orders/**)；只写路径或方法为 * 时匹配任意方法
+     */
+    private static List<Rule> parse(List<String> specs) {
+        List<Rule> rules = new ArrayList<>();
+        for (String spec : specs) {
+            String[] parts = spec.trim().split("\\s+", 2);
+            if (parts.length == 1) {
+                rules.add(new Rule(null, parts[0]));
+            } else {
+                rules.add(new Rule("*".equals(parts[0]) ? null : parts[0], parts[1]));
+            }
+        }
+        return rules;
+    }
+
+    private record Rule(String method, String pattern) {
+    }
+}
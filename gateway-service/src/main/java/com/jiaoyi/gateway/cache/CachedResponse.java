@@ -0,0 +1,28 @@
+package com.jiaoyi.gateway.cache;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * 缓存的下游响应（只缓存 200）
+ *
+ * @param group 所属规则分组
+ * @param storeId 路径中的门店ID（/store/{storeId}），没有时为 null，按分组整体失效
+ * @param headers 需要回放的响应头（已去掉 CORS、逐跳头）
+ * @param body 响应体
+ * @param etag 强 ETag（带引号）
+ * @param expiresAtMillis 过期时间
+ */
+public record CachedResponse(String group, Long storeId, HttpHeaders headers, byte[] body, String etag,
+                             long expiresAtMillis) {
+
+    /**
+     * 估算占用的内存（响应体 + 头部的粗略开销）
+     */
+    public long sizeInBytes() {
+        return body.length + 256L * headers.size();
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAtMillis;
+    }
+}
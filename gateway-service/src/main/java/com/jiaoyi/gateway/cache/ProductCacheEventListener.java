@@ -0,0 +1,59 @@
+package com.jiaoyi.gateway.cache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.MessageModel;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商品缓存更新消息 -> 失效网关响应缓存
+ *
+ * product-service 在店铺商品增删改后通过 outbox 发送 StoreProductCacheUpdateMessage
+ * （topic/tag 与 product-service 的 RocketMQConfig.PRODUCT_CACHE_UPDATE_TOPIC / PRODUCT_CACHE_UPDATE_TAG 一致）。
+ * 广播消费：每个网关实例都要失效自己的本地缓存。消息只解析 storeId，按门店失效 store-products 分组
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@RocketMQMessageListener(
+        topic = ProductCacheEventListener.PRODUCT_CACHE_UPDATE_TOPIC,
+        consumerGroup = "gateway-response-cache-consumer-group",
+        selectorExpression = "update",
+        messageModel = MessageModel.BROADCASTING
+)
+public class ProductCacheEventListener implements RocketMQListener<MessageExt> {
+
+    public static final String PRODUCT_CACHE_UPDATE_TOPIC = "product-cache-update-topic";
+
+    /**
+     * 店铺商品接口对应的缓存分组（gateway.response-cache.rules[].group）
+     */
+    public static final String STORE_PRODUCTS_GROUP = "store-products";
+
+    private final ResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void onMessage(MessageExt messageExt) {
+        try {
+            JsonNode message = objectMapper.readTree(messageExt.getBody());
+            JsonNode storeIdNode = message.get("storeId");
+            int removed;
+            if (storeIdNode == null || storeIdNode.isNull()) {
+                removed = responseCache.invalidateGroup(STORE_PRODUCTS_GROUP);
+            } else {
+                removed = responseCache.invalidateStore(STORE_PRODUCTS_GROUP, storeIdNode.asLong());
+            }
+            log.debug("商品缓存更新，失效网关响应缓存 {} 条，storeId: {}, productId: {}",
+                    removed, storeIdNode, message.get("productId"));
+        } catch (Exception e) {
+            log.error("处理商品缓存更新消息失败，清空店铺商品响应缓存，messageId: {}", messageExt.getMsgId(), e);
+            responseCache.invalidateGroup(STORE_PRODUCTS_GROUP);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.jiaoyi.gateway.cache;
+
+import com.jiaoyi.gateway.config.ResponseCacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 网关响应缓存（进程内，按总字节数限制大小的 LRU）
+ *
+ * 读写都是内存操作，用一把锁保护访问顺序和总大小；过期条目在读取时惰性删除，容量不足时淘汰最久未访问的条目
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ResponseCache {
+
+    private static final Pattern STORE_ID_PATTERN = Pattern.compile("/store/(\\d+)(?:/|$)");
+
+    private final ResponseCacheProperties properties;
+
+    /**
+     * 访问顺序的 LinkedHashMap，由 synchronized 保护
+     */
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 查询未过期的缓存
+     */
+    public CachedResponse get(String key) {
+        synchronized (this) {
+            CachedResponse cached = entries.get(key);
+            if (cached != null && cached.isExpired(System.currentTimeMillis())) {
+                remove(key);
+                cached = null;
+            }
+            (cached != null ? hits : misses).increment();
+            return cached;
+        }
+    }
+
+    public void put(String key, CachedResponse response) {
+        long size = response.sizeInBytes();
+        if (size > properties.getMaxEntryBytes()) {
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, response);
+            totalBytes += size;
+            Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+            while (totalBytes > properties.getMaxBytes() && iterator.hasNext()) {
+                Map.Entry<String, CachedResponse> eldest = iterator.next();
+                totalBytes -= eldest.getValue().sizeInBytes();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * 失效某个门店相关的缓存：分组内属于该门店的条目，以及分组内不带门店ID的条目（跨门店列表、按商品ID查询）
+     *
+     * @return 删除的条目数
+     */
+    public int invalidateStore(String group, Long storeId) {
+        return removeIf(cached -> group.equals(cached.group())
+                && (cached.storeId() == null || cached.storeId().equals(storeId)));
+    }
+
+    /**
+     * 失效整个分组（group 为 null 时清空全部）
+     */
+    public int invalidateGroup(String group) {
+        return removeIf(cached -> group == null || group.equals(cached.group()));
+    }
+
+    /**
+     * 从路径中提取门店ID（/store/{storeId}），没有时返回 null
+     */
+    public static Long extractStoreId(String path) {
+        Matcher matcher = STORE_ID_PATTERN.matcher(path);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        synchronized (this) {
+            status.put("entries", entries.size());
+            status.put("totalBytes", totalBytes);
+        }
+        status.put("maxBytes", properties.getMaxBytes());
+        status.put("hits", hits.sum());
+        status.put("misses", misses.sum());
+        status.put("evictions", evictions.sum());
+        status.put("invalidations", invalidations.sum());
+        return status;
+    }
+
+    private int removeIf(java.util.function.Predicate<CachedResponse> predicate) {
+        int removed = 0;
+        synchronized (this) {
+            Iterator<CachedResponse> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedResponse cached = iterator.next();
+                if (predicate.test(cached)) {
+                    totalBytes -= cached.sizeInBytes();
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        invalidations.add(removed);
+        return removed;
+    }
+
+    /**
+     * 调用方持有锁
+     */
+    private void remove(String key) {
+        CachedResponse previous = entries.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.sizeInBytes();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.jiaoyi.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 网关准入控制配置（gateway.admission.*）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "gateway.admission")
+public class AdmissionControlProperties {
+
+    /**
+     * 总开关
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个路由的默认并发限制（未在 routes 中单独配置时使用）
+     */
+    private RouteLimit defaults = new RouteLimit();
+
+    /**
+     * 路由ID -> 并发限制
+     */
+    private Map<String, RouteLimit> routes = new HashMap<>();
+
+    /**
+     * 低优先级请求最多占用并发上限的比例（超过即开始丢弃，最先被削减）
+     */
+    private double lowPriorityShare = 0.6;
+
+    /**
+     * 普通请求最多占用并发上限的比例（高优先级请求可以用满）
+     */
+    private double normalPriorityShare = 0.85;
+
+    /**
+     * 按优先级丢弃时（429）建议客户端等待的秒数
+     */
+    private int shedRetryAfterSeconds = 1;
+
+    /**
+     * 并发已满、高优先级也无法进入时（503）建议客户端等待的秒数
+     */
+    private int overloadRetryAfterSeconds = 3;
+
+    /**
+     * 高优先级请求（下单、支付、退款），格式 "METHOD /path/**"，METHOD 为 * 表示任意方法
+     */
+    private List<String> highPriority = new ArrayList<>();
+
+    /**
+     * 低优先级请求（菜单浏览、历史订单），格式同上，其余请求为普通优先级
+     */
+    private List<String> lowPriority = new ArrayList<>();
+
+    @Data
+    public static class RouteLimit {
+
+        /**
+         * 初始并发上限
+         */
+        private int initialLimit = 50;
+
+        /**
+         * 并发上限下界
+         */
+        private int minLimit = 10;
+
+        /**
+         * 并发上限上界（应不超过下游连接池能承受的并发）
+         */
+        private int maxLimit = 500;
+
+        /**
+         * 每隔多少个样本重新探测无负载 RTT（下游扩容或慢查询消失后基线能跟着变化）
+         */
+        private int probeInterval = 1000;
+
+        /**
+         * 下游超时/5xx 过载信号时并发上限的缩减比例
+         */
+        private double backoffRatio = 0.9;
+    }
+}
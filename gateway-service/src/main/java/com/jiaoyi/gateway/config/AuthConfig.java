@@ -0,0 +1,63 @@
+package com.jiaoyi.gateway.config;
+
+import com.jiaoyi.common.auth.IdentityHeaderCodec;
+import com.jiaoyi.common.auth.JwksKeyProvider;
+import com.jiaoyi.common.auth.JwtVerifier;
+import com.jiaoyi.common.auth.VerifiedTokenCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 网关认证配置（与各服务使用同一套 JWT 校验和身份头编码，密钥和共享密钥需保持一致）
+ */
+@Configuration
+public class AuthConfig {
+
+    @Value("${gateway.auth.jwt.jwks-path:config/jwks.json}")
+    private String jwksPath;
+
+    @Value("${gateway.auth.jwt.jwks-refresh-seconds:30}")
+    private long jwksRefreshSeconds;
+
+    @Value("${gateway.auth.jwt.issuer:}")
+    private String issuer;
+
+    @Value("${gateway.auth.jwt.audience:}")
+    private String audience;
+
+    @Value("${gateway.auth.jwt.clock-skew-seconds:30}")
+    private long clockSkewSeconds;
+
+    @Value("${gateway.auth.token-cache.max-size:200000}")
+    private int tokenCacheMaxSize;
+
+    @Value("${gateway.auth.token-cache.ttl-seconds:300}")
+    private long tokenCacheTtlSeconds;
+
+    @Value("${gateway.auth.identity.secret:}")
+    private String identitySecret;
+
+    @Value("${gateway.auth.identity.max-age-seconds:60}")
+    private long identityMaxAgeSeconds;
+
+    @Bean
+    public JwksKeyProvider jwksKeyProvider() {
+        return new JwksKeyProvider(jwksPath, jwksRefreshSeconds * 1000);
+    }
+
+    @Bean
+    public JwtVerifier jwtVerifier(JwksKeyProvider jwksKeyProvider) {
+        return new JwtVerifier(jwksKeyProvider, issuer, audience, clockSkewSeconds);
+    }
+
+    @Bean
+    public VerifiedTokenCache verifiedTokenCache() {
+        return new VerifiedTokenCache(tokenCacheMaxSize, tokenCacheTtlSeconds * 1000);
+    }
+
+    @Bean
+    public IdentityHeaderCodec identityHeaderCodec() {
+        return new IdentityHeaderCodec(identitySecret, identityMaxAgeSeconds * 1000);
+    }
+}
@@ -0,0 +1,61 @@
+package com.jiaoyi.gateway.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 网关响应缓存配置（gateway.response-cache.*）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "gateway.response-cache")
+public class ResponseCacheProperties {
+
+    /**
+     * 总开关
+     */
+    private boolean enabled = true;
+
+    /**
+     * 缓存总大小上限（字节），超出后淘汰最久未访问的条目
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * 单个响应大小上限（字节），更大的响应不缓存
+     */
+    private int maxEntryBytes = 512 * 1024;
+
+    /**
+     * 合并请求等待首个请求结果的最长时间（毫秒），超时后自行请求下游
+     */
+    private long collapseTimeoutMillis = 3000;
+
+    /**
+     * 缓存规则（按顺序匹配第一条）
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+
+        /**
+         * 规则分组（失效时按分组处理，如 store-products）
+         */
+        private String group;
+
+        /**
+         * 路径（Ant 风格）
+         */
+        private String pattern;
+
+        /**
+         * 缓存时间（秒）
+         */
+        private int ttlSeconds = 30;
+    }
+}
@@ -0,0 +1,26 @@
+package com.jiaoyi.gateway.controller;
+
+import com.jiaoyi.gateway.filter.AdmissionControlFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 网关准入控制监控
+ * 查看各路由当前并发上限、在途请求数、无负载 RTT 以及各优先级被拒绝的次数（当前实例）
+ */
+@RestController
+@RequestMapping("/gateway/admission")
+@RequiredArgsConstructor
+public class AdmissionControlController {
+
+    private final AdmissionControlFilter admissionControlFilter;
+
+    @GetMapping("/status")
+    public Map<String, Object> getStatus() {
+        return admissionControlFilter.getStatus();
+    }
+}
@@ -0,0 +1,26 @@
+package com.jiaoyi.gateway.controller;
+
+import com.jiaoyi.gateway.filter.AuthenticationFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 网关认证监控
+ * 查看 JWT 验证通过/拒绝次数和已验证 token 缓存命中情况（当前实例）
+ */
+@RestController
+@RequestMapping("/gateway/auth")
+@RequiredArgsConstructor
+public class AuthenticationController {
+
+    private final AuthenticationFilter authenticationFilter;
+
+    @GetMapping("/status")
+    public Map<String, Object> getStatus() {
+        return authenticationFilter.getStatus();
+    }
+}
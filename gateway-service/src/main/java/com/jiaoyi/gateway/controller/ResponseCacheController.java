@@ -0,0 +1,46 @@
+package com.jiaoyi.gateway.controller;
+
+import com.jiaoyi.gateway.cache.ResponseCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 网关响应缓存管理
+ * 查看命中情况；手动失效（商户、菜单等没有更新消息的分组，或排查问题时使用，只作用于当前实例）
+ */
+@Slf4j
+@RestController
+@RequestMapping("/gateway/response-cache")
+@RequiredArgsConstructor
+public class ResponseCacheController {
+
+    private final ResponseCache responseCache;
+
+    @GetMapping("/status")
+    public Map<String, Object> getStatus() {
+        return responseCache.getStatus();
+    }
+
+    /**
+     * 失效缓存：指定 group + storeId 时按门店失效，只指定 group 时失效整个分组，都不指定时清空
+     */
+    @PostMapping("/invalidate")
+    public Map<String, Object> invalidate(@RequestParam(required = false) String group,
+                                          @RequestParam(required = false) Long storeId) {
+        int removed = group != null && storeId != null
+                ? responseCache.invalidateStore(group, storeId)
+                : responseCache.invalidateGroup(group);
+        log.info("手动失效网关响应缓存，group: {}, storeId: {}, 删除: {}", group, storeId, removed);
+        Map<String, Object> result = new HashMap<>();
+        result.put("removed", removed);
+        return result;
+    }
+}
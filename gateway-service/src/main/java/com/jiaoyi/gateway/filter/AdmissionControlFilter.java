@@ -0,0 +1,172 @@
+package com.jiaoyi.gateway.filter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.common.ApiResponse;
+import com.jiaoyi.gateway.admission.AdaptiveConcurrencyLimiter;
+import com.jiaoyi.gateway.admission.RequestPriority;
+import com.jiaoyi.gateway.admission.RequestPriorityResolver;
+import com.jiaoyi.gateway.config.AdmissionControlProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 准入控制全局过滤器（按路由自适应并发限制 + 按优先级削减流量）
+ *
+ * 1. 每个路由一个 {@link AdaptiveConcurrencyLimiter}，并发上限随下游延迟自动收缩/放大，
+ *    下游（order-service 及其分片库连接池）开始排队时网关先挡住多余请求，而不是把排队转移到下游
+ * 2. 低优先级（菜单浏览、历史订单）只能用到上限的 low-priority-share，普通请求 normal-priority-share，
+ *    下单/支付/退款可以用满，负载升高时先丢弃低优先级
+ * 3. 被拒绝的请求立即返回：按优先级丢弃返回 429，高优先级也进不去（路由已满）返回 503，都带 Retry-After
+ *
+ * 未匹配到路由的请求（静态页面等）不做限制
+ */
+@Slf4j
+@Component
+public class AdmissionControlFilter implements GlobalFilter, Ordered {
+
+    /**
+     * 在路由到下游之前尽早执行（路由匹配在过滤器链之前完成，这里已能拿到路由）
+     */
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 100;
+
+    private final AdmissionControlProperties properties;
+    private final RequestPriorityResolver priorityResolver;
+    private final byte[] shedBody;
+    private final byte[] overloadBody;
+
+    /**
+     * 路由ID -> 并发限制器
+     */
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 各优先级被拒绝的次数
+     */
+    private final Map<RequestPriority, LongAdder> rejectedByPriority = new EnumMap<>(RequestPriority.class);
+
+    public AdmissionControlFilter(AdmissionControlProperties properties,
+                                  RequestPriorityResolver priorityResolver,
+                                  ObjectMapper objectMapper) throws JsonProcessingException {
+        this.properties = properties;
+        this.priorityResolver = priorityResolver;
+        this.shedBody = objectMapper.writeValueAsBytes(
+                ApiResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), "当前访问人数较多，请稍后再试"));
+        this.overloadBody = objectMapper.writeValueAsBytes(
+                ApiResponse.error(HttpStatus.SERVICE_UNAVAILABLE.value(), "服务繁忙，请稍后再试"));
+        for (RequestPriority priority : RequestPriority.values()) {
+            rejectedByPriority.put(priority, new LongAdder());
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null) {
+            return chain.filter(exchange);
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        RequestPriority priority = priorityResolver.resolve(request.getMethod().name(), request.getPath().value());
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(route.getId(), this::createLimiter);
+
+        int inflightAtStart = limiter.tryAcquire(shareOf(priority));
+        if (inflightAtStart < 0) {
+            rejectedByPriority.get(priority).increment();
+            log.debug("准入控制拒绝请求，路由: {}, 优先级: {}, 路径: {}", route.getId(), priority, request.getPath());
+            return reject(exchange, priority);
+        }
+
+        long startNanos = System.nanoTime();
+        return chain.filter(exchange).doFinally(signal -> {
+            if (signal == SignalType.CANCEL) {
+                limiter.onIgnore();
+            } else if (signal == SignalType.ON_ERROR || isOverloaded(exchange.getResponse().getStatusCode())) {
+                limiter.onDropped();
+            } else {
+                limiter.onSuccess(System.nanoTime() - startNanos, inflightAtStart);
+            }
+        });
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * 各路由并发限制和各优先级拒绝次数
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", properties.isEnabled());
+        Map<String, Object> routes = new LinkedHashMap<>();
+        limiters.forEach((routeId, limiter) -> routes.put(routeId, limiter.getStatus()));
+        status.put("routes", routes);
+        Map<String, Long> rejected = new LinkedHashMap<>();
+        rejectedByPriority.forEach((priority, counter) -> rejected.put(priority.name(), counter.sum()));
+        status.put("rejectedByPriority", rejected);
+        return status;
+    }
+
+    private AdaptiveConcurrencyLimiter createLimiter(String routeId) {
+        AdmissionControlProperties.RouteLimit config = properties.getRoutes().getOrDefault(routeId, properties.getDefaults());
+        log.info("路由 {} 准入控制初始化，初始并发: {}, 范围: [{}, {}]",
+                routeId, config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit());
+        return new AdaptiveConcurrencyLimiter(config);
+    }
+
+    private double shareOf(RequestPriority priority) {
+        switch (priority) {
+            case HIGH:
+                return 1.0;
+            case LOW:
+                return properties.getLowPriorityShare();
+            default:
+                return properties.getNormalPriorityShare();
+        }
+    }
+
+    /**
+     * 下游过载信号（网关超时、下游不可用），业务错误（500、4xx）不算
+     */
+    private static boolean isOverloaded(HttpStatusCode status) {
+        if (status == null) {
+            return false;
+        }
+        int code = status.value();
+        return code == 502 || code == 503 || code == 504;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, RequestPriority priority) {
+        boolean overload = priority == RequestPriority.HIGH;
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(overload ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(overload
+                ? properties.getOverloadRetryAfterSeconds()
+                : properties.getShedRetryAfterSeconds()));
+        byte[] body = overload ? overloadBody : shedBody;
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
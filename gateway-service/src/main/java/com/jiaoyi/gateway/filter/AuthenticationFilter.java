@@ -0,0 +1,132 @@
+package com.jiaoyi.gateway.filter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.common.ApiResponse;
+import com.jiaoyi.common.auth.AuthIdentity;
+import com.jiaoyi.common.auth.IdentityHeaderCodec;
+import com.jiaoyi.common.auth.JwtVerifier;
+import com.jiaoyi.common.auth.VerifiedTokenCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 认证全局过滤器（网关验一次 JWT，下游只验签名身份头）
+ *
+ * 1. 无条件删除客户端自带的 X-Auth-Identity，身份头只能由网关生成
+ * 2. Bearer token 是 JWT 格式时：先查已验证 token 缓存，未命中再验签；验证失败直接返回 401，不转发
+ * 3. 验证通过且配置了共享密钥时追加签名身份头，下游 AuthInterceptor 验 HMAC 即可，不再解析和验签 JWT
+ * 4. 不带 token 或非 JWT 的 token（测试 token 等）原样转发，由下游按自己的规则处理
+ *
+ * 在响应缓存和准入控制之前执行，无效 token 不占用下游并发名额
+ */
+@Slf4j
+@Component
+public class AuthenticationFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = ResponseCacheFilter.ORDER - 10;
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtVerifier jwtVerifier;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final IdentityHeaderCodec identityHeaderCodec;
+    private final byte[] unauthorizedBody;
+
+    @Value("${gateway.auth.enabled:true}")
+    private boolean enabled;
+
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public AuthenticationFilter(JwtVerifier jwtVerifier,
+                                VerifiedTokenCache verifiedTokenCache,
+                                IdentityHeaderCodec identityHeaderCodec,
+                                ObjectMapper objectMapper) throws JsonProcessingException {
+        this.jwtVerifier = jwtVerifier;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.identityHeaderCodec = identityHeaderCodec;
+        this.unauthorizedBody = objectMapper.writeValueAsBytes(
+                ApiResponse.error(HttpStatus.UNAUTHORIZED.value(), "token无效或已过期"));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String token = extractToken(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        boolean forged = request.getHeaders().containsKey(IdentityHeaderCodec.HEADER_NAME);
+
+        if (!enabled || token == null || !JwtVerifier.looksLikeJwt(token)) {
+            return forged
+                    ? chain.filter(exchange.mutate().request(builder -> builder.headers(
+                            headers -> headers.remove(IdentityHeaderCodec.HEADER_NAME))).build())
+                    : chain.filter(exchange);
+        }
+
+        AuthIdentity identity = verifiedTokenCache.get(token);
+        if (identity == null) {
+            identity = jwtVerifier.verify(token);
+            if (identity == null) {
+                rejected.increment();
+                log.debug("JWT 验证失败，拒绝请求: {} {}", request.getMethod(), request.getPath());
+                return unauthorized(exchange);
+            }
+            verifiedTokenCache.put(token, identity);
+        }
+        verified.increment();
+
+        String identityHeader = identityHeaderCodec.encode(identity);
+        return chain.filter(exchange.mutate().request(builder -> builder.headers(headers -> {
+            headers.remove(IdentityHeaderCodec.HEADER_NAME);
+            if (identityHeader != null) {
+                headers.set(IdentityHeaderCodec.HEADER_NAME, identityHeader);
+            }
+        })).build());
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("identityHeaderEnabled", identityHeaderCodec.isEnabled());
+        status.put("verified", verified.sum());
+        status.put("rejected", rejected.sum());
+        status.put("tokenCacheSize", verifiedTokenCache.size());
+        status.put("tokenCacheHits", verifiedTokenCache.getHits());
+        status.put("tokenCacheMisses", verifiedTokenCache.getMisses());
+        return status;
+    }
+
+    private static String extractToken(String authorization) {
+        if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+            return authorization.substring(BEARER_PREFIX.length()).trim();
+        }
+        return null;
+    }
+
+    private Mono<Void> unauthorized(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(unauthorizedBody)));
+    }
+}
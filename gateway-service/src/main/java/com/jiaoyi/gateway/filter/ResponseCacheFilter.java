@@ -0,0 +1,333 @@
+package com.jiaoyi.gateway.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.common.constants.ResponseCode;
+import com.jiaoyi.gateway.cache.CachedResponse;
+import com.jiaoyi.gateway.cache.ResponseCache;
+import com.jiaoyi.gateway.config.ResponseCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 响应缓存全局过滤器（菜单、商户等匿名读请求）
+ *
+ * 1. 只处理不带 Authorization 的 GET 请求，按 gateway.response-cache.rules 匹配路径和 TTL，key = 路径 + 查询串
+ * 2. 命中时直接回放缓存，带 ETag；请求带 If-None-Match 且一致时返回 304，不传响应体
+ * 3. 同一个 key 并发未命中时只有第一个请求访问下游，其余请求等待它的结果（请求合并），
+ *    结果不可缓存或等待超时时再各自访问下游
+ * 4. 只缓存 200、不带 Set-Cookie、Cache-Control 不含 no-store/private、且不超过 max-entry-bytes 的响应；
+ *    下游以 HTTP 200 + ApiResponse 返回业务错误，响应体 code 不是成功码时同样不缓存
+ * 5. 首个请求的响应不可缓存（4xx/5xx、业务错误、过大、空响应体、异常）时立即移除合并标记并唤醒等待者
+ *
+ * 失效：TTL 到期；商品缓存更新消息（{@link com.jiaoyi.gateway.cache.ProductCacheEventListener}）；管理接口
+ *
+ * 在准入控制之前执行，命中缓存的请求不占用下游并发名额
+ */
+@Slf4j
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+
+    public static final int ORDER = AdmissionControlFilter.ORDER - 10;
+
+    private static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    /**
+     * 不回放的响应头：CORS 头按当前请求由网关生成，逐跳头由服务器重新计算
+     */
+    private static final Set<String> SKIPPED_HEADERS = Set.of(
+            HttpHeaders.TRANSFER_ENCODING.toLowerCase(),
+            HttpHeaders.CONNECTION.toLowerCase(),
+            HttpHeaders.VARY.toLowerCase(),
+            HttpHeaders.DATE.toLowerCase(),
+            CACHE_STATUS_HEADER.toLowerCase());
+
+    private final ResponseCacheProperties properties;
+    private final ResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    /**
+     * 正在访问下游的 key -> 首个请求的结果（合并并发未命中）
+     */
+    private final Map<String, Sinks.One<CachedResponse>> inflight = new ConcurrentHashMap<>();
+
+    public ResponseCacheFilter(ResponseCacheProperties properties, ResponseCache responseCache,
+                               ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!properties.isEnabled()
+                || request.getMethod() != HttpMethod.GET
+                || request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+            return chain.filter(exchange);
+        }
+        String path = request.getPath().value();
+        ResponseCacheProperties.Rule rule = matchRule(path);
+        if (rule == null) {
+            return chain.filter(exchange);
+        }
+
+        String rawQuery = request.getURI().getRawQuery();
+        String key = rawQuery != null ? path + "?" + rawQuery : path;
+        CachedResponse cached = responseCache.get(key);
+        if (cached != null) {
+            return writeCached(exchange, cached, "HIT");
+        }
+
+        Sinks.One<CachedResponse> sink = Sinks.one();
+        Sinks.One<CachedResponse> leader = inflight.putIfAbsent(key, sink);
+        if (leader != null) {
+            // 已有相同请求在访问下游：等待它的结果
+            return leader.asMono()
+                    .timeout(Duration.ofMillis(properties.getCollapseTimeoutMillis()))
+                    .onErrorResume(e -> Mono.empty())
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(result -> result.isPresent()
+                            ? writeCached(exchange, result.get(), "COLLAPSED")
+                            : chain.filter(exchange));
+        }
+
+        CachingResponseDecorator response = new CachingResponseDecorator(
+                exchange.getResponse(), key, rule, ResponseCache.extractStoreId(path), sink);
+        return chain.filter(exchange.mutate().response(response).build())
+                // 兜底：下游异常、取消或未写响应体时唤醒等待者；已发布结果或已唤醒时这里是空操作
+                .doFinally(signal -> release(key, sink));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    /**
+     * 移除合并标记并唤醒等待者各自访问下游（先移除，避免新请求再挂到已结束的结果上）
+     */
+    private void release(String key, Sinks.One<CachedResponse> sink) {
+        inflight.remove(key, sink);
+        sink.tryEmitEmpty();
+    }
+
+    private ResponseCacheProperties.Rule matchRule(String path) {
+        for (ResponseCacheProperties.Rule rule : properties.getRules()) {
+            if (pathMatcher.match(rule.getPattern(), path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached, String cacheStatus) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.set(CACHE_STATUS_HEADER, cacheStatus);
+        headers.setETag(cached.etag());
+        if (matchesIfNoneMatch(exchange.getRequest(), cached.etag())) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        cached.headers().forEach((name, values) -> {
+            if (!headers.containsKey(name)) {
+                headers.put(name, values);
+            }
+        });
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+
+    private static boolean matchesIfNoneMatch(ServerHttpRequest request, String etag) {
+        List<String> ifNoneMatch = request.getHeaders().getIfNoneMatch();
+        for (String candidate : ifNoneMatch) {
+            String normalized = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if ("*".equals(normalized) || normalized.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否允许缓存该响应（下游显式禁止缓存、或响应与用户相关时不缓存）
+     */
+    private static boolean isCacheable(HttpStatusCode status, HttpHeaders headers) {
+        if (status == null || status.value() != HttpStatus.OK.value() || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        String cacheControl = headers.getCacheControl();
+        return cacheControl == null || !(cacheControl.contains("no-store") || cacheControl.contains("private"));
+    }
+
+    /**
+     * 响应体是否为业务成功：ApiResponse 的 code 不是成功码时视为业务错误；非 JSON 或没有 code 字段的响应体按成功处理
+     */
+    private boolean isSuccessBody(HttpHeaders headers, byte[] body) {
+        MediaType contentType = headers.getContentType();
+        if (contentType == null || !MediaType.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return true;
+        }
+        try {
+            JsonNode code = objectMapper.readTree(body).get("code");
+            return code == null || code.asInt() == ResponseCode.SUCCESS.getCode();
+        } catch (Exception e) {
+            log.warn("解析响应体失败，不缓存，原因: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static String computeEtag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 首个请求的响应装饰器：聚合响应体，写入缓存并通知合并等待的请求
+     */
+    private final class CachingResponseDecorator extends ServerHttpResponseDecorator {
+
+        private final String key;
+        private final ResponseCacheProperties.Rule rule;
+        private final Long storeId;
+        private final Sinks.One<CachedResponse> sink;
+
+        private CachingResponseDecorator(ServerHttpResponse delegate, String key, ResponseCacheProperties.Rule rule,
+                                         Long storeId, Sinks.One<CachedResponse> sink) {
+            super(delegate);
+            this.key = key;
+            this.rule = rule;
+            this.storeId = storeId;
+            this.sink = sink;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpHeaders headers = getHeaders();
+            int maxEntryBytes = properties.getMaxEntryBytes();
+            if (!isCacheable(getStatusCode(), headers)) {
+                release(key, sink);
+                return super.writeWith(body);
+            }
+            if (headers.getContentLength() > maxEntryBytes) {
+                headers.set(CACHE_STATUS_HEADER, "MISS");
+                release(key, sink);
+                return super.writeWith(body);
+            }
+            // 只聚合不超过 max-entry-bytes 的响应体：累计超过上限后已聚合的部分连同剩余部分原样透传，不再缓存
+            AtomicLong size = new AtomicLong();
+            Flux<DataBuffer> output = Flux.from(body)
+                    .<DataBuffer>map(buffer -> buffer)
+                    .bufferUntil(buffer -> size.addAndGet(buffer.readableByteCount()) > maxEntryBytes)
+                    .switchOnFirst((signal, chunks) -> {
+                        headers.set(CACHE_STATUS_HEADER, "MISS");
+                        if (signal.hasValue() && size.get() <= maxEntryBytes) {
+                            // 第一个分组在响应体结束时才发出，即完整响应体
+                            return chunks.map(this::cache);
+                        }
+                        release(key, sink);
+                        return chunks.flatMapIterable(buffers -> buffers);
+                    });
+            return super.writeWith(output);
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // 流式响应不缓存
+            release(key, sink);
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            // 没有响应体（如 204、下游错误未带响应体）：不缓存
+            release(key, sink);
+            return super.setComplete();
+        }
+
+        /**
+         * 合并完整响应体，写入缓存并通知合并等待的请求
+         */
+        private DataBuffer cache(List<DataBuffer> buffers) {
+            int length = 0;
+            for (DataBuffer buffer : buffers) {
+                length += buffer.readableByteCount();
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            for (DataBuffer buffer : buffers) {
+                int count = buffer.readableByteCount();
+                buffer.read(bytes, offset, count);
+                offset += count;
+                DataBufferUtils.release(buffer);
+            }
+
+            HttpHeaders headers = getHeaders();
+            if (!isSuccessBody(headers, bytes)) {
+                // HTTP 200 的业务错误：原样返回，不缓存
+                release(key, sink);
+                return bufferFactory().wrap(bytes);
+            }
+            if (headers.getETag() == null) {
+                headers.setETag(computeEtag(bytes));
+            }
+            if (headers.getCacheControl() == null) {
+                headers.setCacheControl(CacheControl.maxAge(Duration.ofSeconds(rule.getTtlSeconds())).cachePublic());
+            }
+            CachedResponse cached = new CachedResponse(rule.getGroup(), storeId, copyHeaders(headers), bytes,
+                    headers.getETag(), System.currentTimeMillis() + rule.getTtlSeconds() * 1000L);
+            responseCache.put(key, cached);
+            sink.tryEmitValue(cached);
+            return bufferFactory().wrap(bytes);
+        }
+
+        private HttpHeaders copyHeaders(HttpHeaders source) {
+            HttpHeaders copy = new HttpHeaders();
+            source.forEach((name, values) -> {
+                String lowerName = name.toLowerCase();
+                if (!lowerName.startsWith("access-control-") && !SKIPPED_HEADERS.contains(lowerName)) {
+                    copy.put(name, List.copyOf(values));
+                }
+            });
+            return HttpHeaders.readOnlyHttpHeaders(copy);
+        }
+    }
+}
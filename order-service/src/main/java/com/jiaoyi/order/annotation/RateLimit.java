@@ -1,28 +1,43 @@
 package com.jiaoyi.order.annotation;
 
 import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
  * 限流注解
- * 标记需要限流的接口方法
+ * 标记需要限流的接口方法，可重复标注（如同时按用户、商户、接口整体限流，按声明顺序依次判断）
+ *
+ * 限流参数来自 rate-limit.policies.{policy}.*（见 {@link com.jiaoyi.order.config.RateLimitProperties}），
+ * 未配置该策略时按 {@link #value()} 做单机限流
  */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimits.class)
 public @interface RateLimit {
     /**
-     * 限流速率（每秒允许的请求数）
-     * 如果未指定，使用配置的默认值
+     * 限流策略名（对应 rate-limit.policies 下的配置项）
+     * 为空时使用 类名.方法名
      */
-    double value() default 0;
-}
-
-
-
-
-
+    String policy() default "";
 
+    /**
+     * 限流维度 key，支持SpEL表达式，为空表示整个接口共用一个额度
+     * 可以引用方法参数和当前用户（#user，可能为 null），例如: "#request.merchantId"、"#user?.userId"
+     * 表达式结果为 null 时跳过该维度
+     */
+    String key() default "";
 
+    /**
+     * 限流速率（每秒允许的请求数）
+     * 仅在未配置对应策略时使用（单机限流），为 0 且未配置策略时不限流
+     */
+    double value() default 0;
 
+    /**
+     * 被限流时的提示信息
+     */
+    String message() default "请求过于频繁，请稍后再试";
+}
@@ -0,0 +1,15 @@
+package com.jiaoyi.order.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * {@link RateLimit} 的容器注解（同一方法标注多个 @RateLimit 时由编译器生成）
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimits {
+    RateLimit[] value();
+}
@@ -1,18 +1,30 @@
 package com.jiaoyi.order.aspect;
 
-import com.google.common.util.concurrent.RateLimiter;
 import com.jiaoyi.common.exception.BusinessException;
+import com.jiaoyi.order.annotation.RateLimit;
+import com.jiaoyi.order.security.UserContextHolder;
+import com.jiaoyi.order.service.RateLimitService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 限流切面
- * 使用 AOP 实现接口限流
+ * 使用 AOP 实现接口限流：标注了 {@link RateLimit} 的方法按声明顺序逐个检查，任一维度被限流即拒绝
  */
 @Aspect
 @Component
@@ -20,52 +32,74 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class RateLimitAspect {
     
-    @Qualifier("orderCreateRateLimiter")
-    private final RateLimiter orderCreateRateLimiter;
-    
-    @Qualifier("refundCreateRateLimiter")
-    private final RateLimiter refundCreateRateLimiter;
-    
+    private final RateLimitService rateLimitService;
+    private final ExpressionParser parser = new SpelExpressionParser();
+
     /**
-     * 下单接口限流
+     * 方法 -> 限流注解（含重复标注）
      */
-    @Around("@annotation(com.jiaoyi.order.annotation.RateLimit) && execution(* com.jiaoyi.order.controller.OrderController.createOrder(..))")
-    public Object limitOrderCreate(ProceedingJoinPoint joinPoint) throws Throwable {
-        return executeWithRateLimit(joinPoint, orderCreateRateLimiter, "下单接口");
-    }
-    
+    private final Map<Method, RateLimit[]> annotationCache = new ConcurrentHashMap<>();
+
     /**
-     * 退款接口限流
+     * SpEL 表达式 -> 解析结果
      */
-    @Around("@annotation(com.jiaoyi.order.annotation.RateLimit) && execution(* com.jiaoyi.order.controller.RefundController.createRefund(..))")
-    public Object limitRefundCreate(ProceedingJoinPoint joinPoint) throws Throwable {
-        return executeWithRateLimit(joinPoint, refundCreateRateLimiter, "退款接口");
-    }
+    private final Map<String, Expression> expressionCache = new ConcurrentHashMap<>();
     
+    @Around("@annotation(com.jiaoyi.order.annotation.RateLimit) || @annotation(com.jiaoyi.order.annotation.RateLimits)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Method method = signature.getMethod();
+        RateLimit[] rateLimits = annotationCache.computeIfAbsent(method, m -> m.getAnnotationsByType(RateLimit.class));
+
+        EvaluationContext context = null;
+        for (RateLimit rateLimit : rateLimits) {
+            String policy = StringUtils.hasText(rateLimit.policy())
+                    ? rateLimit.policy()
+                    : method.getDeclaringClass().getSimpleName() + "." + method.getName();
+            String key = null;
+            if (StringUtils.hasText(rateLimit.key())) {
+                if (context == null) {
+                    context = createEvaluationContext(signature, joinPoint.getArgs());
+                }
+                key = evaluateKey(rateLimit.key(), context);
+                if (key == null) {
+                    continue;
+                }
+            }
+            // 尝试获取许可（非阻塞）
+            if (!rateLimitService.tryAcquire(policy, key, rateLimit.value())) {
+                log.warn("{}限流触发，请求被拒绝，key: {}", policy, key);
+                throw new BusinessException(rateLimit.message());
+            }
+        }
+        
+        return joinPoint.proceed();
+    }
+
     /**
-     * 执行限流逻辑
+     * 方法参数按参数名注册为变量，另外提供 #user（当前用户，未登录为 null）
      */
-    private Object executeWithRateLimit(ProceedingJoinPoint joinPoint, RateLimiter rateLimiter, String apiName) throws Throwable {
-        // 尝试获取令牌（非阻塞）
-        if (!rateLimiter.tryAcquire()) {
-            log.warn("{}限流触发，请求被拒绝", apiName);
-            throw new BusinessException("请求过于频繁，请稍后再试");
+    private EvaluationContext createEvaluationContext(MethodSignature signature, Object[] args) {
+        EvaluationContext context = new StandardEvaluationContext();
+        String[] paramNames = signature.getParameterNames();
+        for (int i = 0; i < paramNames.length; i++) {
+            context.setVariable(paramNames[i], args[i]);
         }
-        
-        // 获取令牌成功，执行原方法
+        context.setVariable("user", UserContextHolder.getContext());
+        return context;
+    }
+
+    /**
+     * 解析限流 key，结果为 null 或解析失败时返回 null（跳过该维度，不因表达式问题拦截正常请求）
+     */
+    private String evaluateKey(String keyExpression, EvaluationContext context) {
         try {
-            return joinPoint.proceed();
+            Expression expression = expressionCache.computeIfAbsent(keyExpression, parser::parseExpression);
+            Object value = expression.getValue(context);
+            return value != null ? value.toString() : null;
         } catch (Exception e) {
-            log.error("{}执行失败", apiName, e);
-            throw e;
+            log.error("解析限流key表达式失败: {}", keyExpression, e);
+            return null;
         }
     }
 }
-
-
-
-
-
-
-
-
@@ -0,0 +1,71 @@
+package com.jiaoyi.order.client;
+
+import com.jiaoyi.common.ApiResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 优惠券服务异步 Client
+ * 在 feignAsyncExecutor 上执行 CouponServiceClient 调用，返回 CompletableFuture
+ */
+@Component
+public class AsyncCouponServiceClient {
+
+    private final CouponServiceClient couponServiceClient;
+    private final Executor executor;
+
+    public AsyncCouponServiceClient(CouponServiceClient couponServiceClient,
+                                    @Qualifier("feignAsyncExecutor") Executor executor) {
+        this.couponServiceClient = couponServiceClient;
+        this.executor = executor;
+    }
+
+    /**
+     * 根据优惠券ID获取优惠券
+     */
+    public CompletableFuture<ApiResponse<?>> getCouponById(Long couponId) {
+        return CompletableFuture.supplyAsync(() -> couponServiceClient.getCouponById(couponId), executor);
+    }
+
+    /**
+     * 根据优惠券代码获取优惠券
+     */
+    public CompletableFuture<ApiResponse<?>> getCouponByCode(String couponCode) {
+        return CompletableFuture.supplyAsync(() -> couponServiceClient.getCouponByCode(couponCode), executor);
+    }
+
+    /**
+     * 验证优惠券
+     */
+    public CompletableFuture<ApiResponse<Boolean>> validateCoupon(String couponCode, Long userId, BigDecimal orderAmount) {
+        return CompletableFuture.supplyAsync(
+                () -> couponServiceClient.validateCoupon(couponCode, userId, orderAmount), executor);
+    }
+
+    /**
+     * 计算优惠金额
+     */
+    public CompletableFuture<ApiResponse<BigDecimal>> calculateDiscountAmount(String couponCode, BigDecimal orderAmount) {
+        return CompletableFuture.supplyAsync(
+                () -> couponServiceClient.calculateDiscountAmount(couponCode, orderAmount), executor);
+    }
+
+    /**
+     * 使用优惠券
+     */
+    public CompletableFuture<ApiResponse<Void>> useCoupon(String couponCode, Long userId, Long orderId, BigDecimal discountAmount) {
+        return CompletableFuture.supplyAsync(
+                () -> couponServiceClient.useCoupon(couponCode, userId, orderId, discountAmount), executor);
+    }
+
+    /**
+     * 退款优惠券（根据订单ID）
+     */
+    public CompletableFuture<ApiResponse<com.jiaoyi.common.OperationResult>> refundCouponByOrderId(Long orderId) {
+        return CompletableFuture.supplyAsync(() -> couponServiceClient.refundCouponByOrderId(orderId), executor);
+    }
+}
@@ -0,0 +1,55 @@
+package com.jiaoyi.order.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 异步 Feign 调用辅助方法
+ */
+public final class AsyncFeignSupport {
+
+    private AsyncFeignSupport() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * 等待异步调用结果，并把 CompletionException 还原为原始运行时异常
+     * 调用方的异常处理逻辑与同步 Feign 调用保持一致
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 带超时等待（毫秒），超时抛出 IllegalStateException
+     */
+    public static <T> T await(CompletableFuture<T> future, long timeoutMillis) {
+        try {
+            return future.get(timeoutMillis, java.util.concurrent.TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (java.util.concurrent.TimeoutException e) {
+            future.cancel(true);
+            throw new IllegalStateException("远程调用超时: " + timeoutMillis + "ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("远程调用被中断", e);
+        }
+    }
+}
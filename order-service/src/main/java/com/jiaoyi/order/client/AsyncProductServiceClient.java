@@ -0,0 +1,64 @@
+package com.jiaoyi.order.client;
+
+import com.jiaoyi.common.ApiResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 商品服务异步 Client
+ * 在 feignAsyncExecutor 上执行 ProductServiceClient 调用，返回 CompletableFuture，
+ * 调用方可以同时发起多个请求（如批量查询商品信息），总耗时接近最慢的一次请求而不是所有请求之和
+ * 
+ * 底层复用同一个 Feign 连接池（HTTP Keep-Alive），并发请求不会额外建立连接风暴
+ */
+@Component
+public class AsyncProductServiceClient {
+
+    private final ProductServiceClient productServiceClient;
+    private final Executor executor;
+
+    public AsyncProductServiceClient(ProductServiceClient productServiceClient,
+                                     @Qualifier("feignAsyncExecutor") Executor executor) {
+        this.productServiceClient = productServiceClient;
+        this.executor = executor;
+    }
+
+    /**
+     * 通过商户ID和商品ID获取商品信息
+     */
+    public CompletableFuture<ApiResponse<?>> getProductByMerchantIdAndId(String merchantId, Long productId) {
+        return CompletableFuture.supplyAsync(
+                () -> productServiceClient.getProductByMerchantIdAndId(merchantId, productId), executor);
+    }
+
+    /**
+     * 检查库存
+     */
+    public CompletableFuture<ApiResponse<Boolean>> checkStock(ProductServiceClient.CheckStockRequest request) {
+        return CompletableFuture.supplyAsync(() -> productServiceClient.checkStock(request), executor);
+    }
+
+    /**
+     * 按渠道批量扣减
+     */
+    public CompletableFuture<ApiResponse<Void>> deductByChannelBatch(ProductServiceClient.ChannelDeductBatchRequest request) {
+        return CompletableFuture.supplyAsync(() -> productServiceClient.deductByChannelBatch(request), executor);
+    }
+
+    /**
+     * 按订单归还库存
+     */
+    public CompletableFuture<ApiResponse<Void>> returnByOrder(String orderId) {
+        return CompletableFuture.supplyAsync(() -> productServiceClient.returnByOrder(orderId), executor);
+    }
+
+    /**
+     * 获取商户信息
+     */
+    public CompletableFuture<ApiResponse<?>> getMerchant(String merchantId) {
+        return CompletableFuture.supplyAsync(() -> productServiceClient.getMerchant(merchantId), executor);
+    }
+}
@@ -0,0 +1,156 @@
+package com.jiaoyi.order.config;
+
+import com.jiaoyi.order.util.ShardGeneIdGenerator;
+import com.jiaoyi.order.util.ShardUtil;
+import com.jiaoyi.order.util.SpringContextHolder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.sharding.api.sharding.complex.ComplexKeysShardingAlgorithm;
+import org.apache.shardingsphere.sharding.api.sharding.complex.ComplexKeysShardingValue;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 基因分片算法基类（复合分片键：store_id + 带基因的ID列）
+ *
+ * 核心逻辑：
+ * 1. SQL 带 store_id：shard_id = hash(store_id) & 1023（与 V2 算法一致）
+ * 2. 只带ID列（orders.id / order_items.order_id / refunds.refund_id ...）：
+ *    ID 全部带分片基因时直接取出 shard_id，单表精准路由；含历史ID时返回 null，由子类广播
+ * 3. shard_id 通过 RouteCache 映射到物理库/表，桶迁移对基因ID透明
+ *
+ * 配置参数：
+ * - store-id-column: 门店ID列名（默认 store_id）
+ * - use-routing-table: 是否使用路由表（默认 true）
+ * - fallback-to-mod: 路由表不可用时是否降级为取模（默认 false）
+ */
+@Slf4j
+public abstract class AbstractShardGeneShardingAlgorithm implements ComplexKeysShardingAlgorithm<Comparable<?>> {
+
+    /**
+     * 门店ID列名
+     */
+    private String storeIdColumn = "store_id";
+
+    /**
+     * 是否使用路由表（默认 true）
+     */
+    protected boolean useRoutingTable = true;
+
+    /**
+     * 路由表不可用时是否降级为取模（默认 false）
+     */
+    protected boolean fallbackToMod = false;
+
+    /**
+     * 路由缓存（延迟加载）
+     */
+    private RouteCache routeCache;
+
+    @Getter
+    private Properties props;
+
+    @Override
+    public void init(Properties props) {
+        this.props = props;
+        if (props.containsKey("store-id-column")) {
+            storeIdColumn = props.getProperty("store-id-column");
+        }
+        if (props.containsKey("use-routing-table")) {
+            useRoutingTable = Boolean.parseBoolean(props.getProperty("use-routing-table"));
+        }
+        if (props.containsKey("fallback-to-mod")) {
+            fallbackToMod = Boolean.parseBoolean(props.getProperty("fallback-to-mod"));
+        }
+        initProps(props);
+        log.info("【{}】初始化完成，storeIdColumn={}, useRoutingTable={}, fallbackToMod={}",
+                getClass().getSimpleName(), storeIdColumn, useRoutingTable, fallbackToMod);
+    }
+
+    /**
+     * 子类读取自己的配置
+     */
+    protected abstract void initProps(Properties props);
+
+    /**
+     * 获取路由缓存（延迟加载）
+     */
+    protected RouteCache getRouteCache() {
+        if (routeCache == null) {
+            if (!SpringContextHolder.isInitialized()) {
+                throw new IllegalStateException("SpringContextHolder 未初始化，无法获取 RouteCache");
+            }
+            routeCache = SpringContextHolder.getBean(RouteCache.class);
+            if (!routeCache.isInitialized()) {
+                throw new IllegalStateException("RouteCache 未初始化，无法使用路由表");
+            }
+        }
+        return routeCache;
+    }
+
+    /**
+     * 从分片值中解析 shard_id 集合
+     *
+     * @return shard_id 集合；无法确定（只有范围条件、或含历史ID）时返回 null
+     */
+    protected Set<Integer> resolveShardIds(ComplexKeysShardingValue<Comparable<?>> shardingValue) {
+        Map<String, Collection<Comparable<?>>> columnValues = shardingValue.getColumnNameAndShardingValuesMap();
+        if (columnValues == null || columnValues.isEmpty()) {
+            return null;
+        }
+
+        // 优先使用 store_id
+        for (Map.Entry<String, Collection<Comparable<?>>> entry : columnValues.entrySet()) {
+            if (storeIdColumn.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                Set<Integer> shardIds = new TreeSet<>();
+                for (Comparable<?> value : entry.getValue()) {
+                    Long storeId = toLong(value);
+                    if (storeId == null) {
+                        return null;
+                    }
+                    shardIds.add(ShardUtil.calculateShardId(storeId));
+                }
+                return shardIds;
+            }
+        }
+
+        // 其次使用ID列中的分片基因（任意一列全部是基因ID即可）
+        for (Map.Entry<String, Collection<Comparable<?>>> entry : columnValues.entrySet()) {
+            if (storeIdColumn.equalsIgnoreCase(entry.getKey()) || entry.getValue() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            Set<Integer> shardIds = new TreeSet<>();
+            for (Comparable<?> value : entry.getValue()) {
+                int shardId = ShardGeneIdGenerator.extractShardId(toLong(value));
+                if (shardId < 0) {
+                    shardIds = null;
+                    break;
+                }
+                shardIds.add(shardId);
+            }
+            if (shardIds != null) {
+                log.debug("【{}】按 {} 中的分片基因路由，shard_ids={}", getClass().getSimpleName(), entry.getKey(), shardIds);
+                return shardIds;
+            }
+        }
+        return null;
+    }
+
+    private static Long toLong(Comparable<?> value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
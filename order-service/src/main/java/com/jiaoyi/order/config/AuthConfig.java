@@ -0,0 +1,70 @@
+package com.jiaoyi.order.config;
+
+import com.jiaoyi.common.auth.IdentityHeaderCodec;
+import com.jiaoyi.common.auth.JwksKeyProvider;
+import com.jiaoyi.common.auth.JwtVerifier;
+import com.jiaoyi.common.auth.VerifiedTokenCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 认证配置
+ *
+ * - jwtVerifier：本地 JWKS 文件验签（密钥预解析，文件更新后自动轮换）
+ * - verifiedTokenCache：已验证 token 的身份缓存，同一 token 不重复验签
+ * - identityHeaderCodec：校验网关签发的身份头，经网关转发的请求不再验 JWT（密钥必须配置，为空时启动失败）
+ */
+@Configuration
+public class AuthConfig {
+
+    @Value("${auth.jwt.jwks-path:config/jwks.json}")
+    private String jwksPath;
+
+    @Value("${auth.jwt.jwks-refresh-seconds:30}")
+    private long jwksRefreshSeconds;
+
+    @Value("${auth.jwt.issuer:}")
+    private String issuer;
+
+    @Value("${auth.jwt.audience:}")
+    private String audience;
+
+    @Value("${auth.jwt.clock-skew-seconds:30}")
+    private long clockSkewSeconds;
+
+    @Value("${auth.token-cache.max-size:100000}")
+    private int tokenCacheMaxSize;
+
+    @Value("${auth.token-cache.ttl-seconds:300}")
+    private long tokenCacheTtlSeconds;
+
+    @Value("${auth.identity.secret:}")
+    private String identitySecret;
+
+    @Value("${auth.identity.max-age-seconds:60}")
+    private long identityMaxAgeSeconds;
+
+    @Bean
+    public JwksKeyProvider jwksKeyProvider() {
+        return new JwksKeyProvider(jwksPath, jwksRefreshSeconds * 1000);
+    }
+
+    @Bean
+    public JwtVerifier jwtVerifier(JwksKeyProvider jwksKeyProvider) {
+        return new JwtVerifier(jwksKeyProvider, issuer, audience, clockSkewSeconds);
+    }
+
+    @Bean
+    public VerifiedTokenCache verifiedTokenCache() {
+        return new VerifiedTokenCache(tokenCacheMaxSize, tokenCacheTtlSeconds * 1000);
+    }
+
+    @Bean
+    public IdentityHeaderCodec identityHeaderCodec() {
+        if (identitySecret == null || identitySecret.isBlank()) {
+            throw new IllegalStateException("auth.identity.secret 未配置：请设置环境变量 AUTH_IDENTITY_SECRET（与网关一致）");
+        }
+        return new IdentityHeaderCodec(identitySecret, identityMaxAgeSeconds * 1000);
+    }
+}
@@ -48,6 +48,7 @@ public class DatabaseInitializer {
                 createWebhookEventLogTable(conn, metaData);
                 createConsumerLogTable(conn, metaData);
                 createDoorDashWebhookLogTable(conn, metaData);
+                createUserOrderIndexRepairCheckpointTable(conn, metaData);
                 // 商户配置表迁移到基础库单表
                 createMerchantConfigTables(conn, metaData);
             }
@@ -710,6 +711,15 @@ public class DatabaseInitializer {
             if (rs.next()) {
                 rs.close();
                 log.info("payment_callback_log表已存在，跳过创建");
+                try {
+                    stmt.executeUpdate("ALTER TABLE payment_callback_log ADD COLUMN callback_count INT NOT NULL DEFAULT 1 " +
+                            "COMMENT '收到回调的次数（重复推送时累加）' AFTER error_message");
+                } catch (java.sql.SQLException e) {
+                    // 列已存在，忽略
+                    if (!e.getMessage().contains("Duplicate column")) {
+                        log.warn("更新表 payment_callback_log 结构时出错: {}", e.getMessage());
+                    }
+                }
                 return;
             }
             rs.close();
@@ -724,6 +734,7 @@ public class DatabaseInitializer {
                     "status VARCHAR(20) NOT NULL DEFAULT 'PROCESSING' COMMENT '处理状态：SUCCESS, FAILED, PROCESSING', " +
                     "result TEXT COMMENT '处理结果（JSON，存储处理结果）', " +
                     "error_message TEXT COMMENT '错误信息（如果处理失败）', " +
+                    "callback_count INT NOT NULL DEFAULT 1 COMMENT '收到回调的次数（重复推送时累加）', " +
                     "processed_at DATETIME COMMENT '处理时间', " +
                     "create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间', " +
                     "INDEX idx_order_id (order_id), " +
@@ -750,6 +761,7 @@ public class DatabaseInitializer {
             if (rs.next()) {
                 rs.close();
                 log.info("webhook_event_log表已存在，跳过创建");
+                addWebhookQueueColumns(stmt, "webhook_event_log", "status");
                 return;
             }
             rs.close();
@@ -761,14 +773,20 @@ public class DatabaseInitializer {
                     "payment_intent_id VARCHAR(255) COMMENT 'Stripe Payment Intent ID', " +
                     "third_party_trade_no VARCHAR(255) COMMENT '第三方交易号（支付宝 trade_no 或 Stripe charge.id）', " +
                     "order_id BIGINT COMMENT '订单ID', " +
-                    "status VARCHAR(20) NOT NULL DEFAULT 'RECEIVED' COMMENT '状态：RECEIVED-已接收，PROCESSED-已处理，FAILED-处理失败', " +
+                    "status VARCHAR(20) NOT NULL DEFAULT 'RECEIVED' COMMENT '状态：RECEIVED-已接收，PROCESSING-处理中，PROCESSED-已处理，FAILED-处理失败', " +
                     "error_message TEXT COMMENT '错误信息（处理失败时记录）', " +
+                    "payload MEDIUMTEXT COMMENT '原始事件报文（异步处理时重建事件）', " +
+                    "retry_count INT NOT NULL DEFAULT 0 COMMENT '已重试次数', " +
+                    "next_retry_time DATETIME COMMENT '下次可处理时间（失败退避）', " +
+                    "lock_owner VARCHAR(64) COMMENT '持有处理权的实例', " +
+                    "lock_until DATETIME COMMENT '处理权过期时间', " +
                     "created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间', " +
                     "processed_at DATETIME COMMENT '处理完成时间', " +
                     "UNIQUE KEY uk_event_id (event_id), " +
                     "INDEX idx_payment_intent_id (payment_intent_id), " +
                     "INDEX idx_order_id (order_id), " +
                     "INDEX idx_status (status), " +
+                    "INDEX idx_status_next_retry (status, next_retry_time), " +
                     "INDEX idx_created_at (created_at)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='Webhook事件日志表（事件幂等）'";
             
@@ -828,6 +846,41 @@ public class DatabaseInitializer {
         }
     }
     
+    /**
+     * 创建用户订单索引补偿任务水位表（每张物理订单表一行）
+     */
+    private void createUserOrderIndexRepairCheckpointTable(Connection conn, DatabaseMetaData metaData) {
+        try (Statement stmt = conn.createStatement()) {
+            // 检查表是否存在
+            ResultSet rs = metaData.getTables(null, null, "user_order_index_repair_checkpoint", null);
+            if (rs.next()) {
+                rs.close();
+                log.info("user_order_index_repair_checkpoint表已存在，跳过创建");
+                return;
+            }
+            rs.close();
+            
+            String createTableSql = "CREATE TABLE user_order_index_repair_checkpoint (" +
+                    "shard_key VARCHAR(64) NOT NULL PRIMARY KEY COMMENT '物理分表（如 ds0.orders_07）', " +
+                    "watermark_time DATETIME NOT NULL COMMENT '已扫描到的订单创建时间（水位）', " +
+                    "last_order_id BIGINT NOT NULL DEFAULT 0 COMMENT '最后扫描的订单ID', " +
+                    "scanned_count BIGINT NOT NULL DEFAULT 0 COMMENT '累计扫描订单数', " +
+                    "repaired_count BIGINT NOT NULL DEFAULT 0 COMMENT '累计补写索引数', " +
+                    "updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户订单索引补偿任务水位表'";
+            
+            stmt.executeUpdate(createTableSql);
+            log.info("✓ user_order_index_repair_checkpoint 表创建成功");
+        } catch (Exception e) {
+            String errorMsg = e.getMessage();
+            if (errorMsg != null && errorMsg.contains("already exists")) {
+                log.info("user_order_index_repair_checkpoint表已存在，跳过创建");
+            } else {
+                log.error("创建user_order_index_repair_checkpoint表失败: {}", errorMsg, e);
+            }
+        }
+    }
+    
     /**
      * 创建配送表分片（32张表/库：deliveries_00..deliveries_31）
      * 使用 shard_id 作为分片键，与 orders 表保持一致
@@ -1017,6 +1070,7 @@ public class DatabaseInitializer {
             if (rs.next()) {
                 rs.close();
                 log.info("doordash_webhook_log表已存在，跳过创建");
+                addWebhookQueueColumns(stmt, "doordash_webhook_log", "retry_count");
                 return;
             }
             rs.close();
@@ -1029,10 +1083,13 @@ public class DatabaseInitializer {
                     "external_delivery_id VARCHAR(100) COMMENT '外部订单ID（external_delivery_id）', " +
                     "event_type VARCHAR(50) NOT NULL COMMENT '事件类型：delivery.created, delivery.assigned, delivery.picked_up, delivery.delivered, delivery.cancelled, delivery.failed', " +
                     "payload TEXT COMMENT 'Webhook 数据（JSON，存储完整的 webhook payload）', " +
-                    "status VARCHAR(20) NOT NULL DEFAULT 'PROCESSING' COMMENT '处理状态：SUCCESS, FAILED, PROCESSING', " +
+                    "status VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT '处理状态：PENDING, PROCESSING, SUCCESS, FAILED', " +
                     "result TEXT COMMENT '处理结果（JSON，存储处理结果）', " +
                     "error_message TEXT COMMENT '错误信息（如果处理失败）', " +
                     "retry_count INT NOT NULL DEFAULT 0 COMMENT '重试次数', " +
+                    "next_retry_time DATETIME COMMENT '下次可处理时间（失败退避）', " +
+                    "lock_owner VARCHAR(64) COMMENT '持有处理权的实例', " +
+                    "lock_until DATETIME COMMENT '处理权过期时间', " +
                     "processed_at DATETIME COMMENT '处理时间', " +
                     "create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间', " +
                     "INDEX idx_order_id (order_id), " +
@@ -1040,6 +1097,7 @@ public class DatabaseInitializer {
                     "INDEX idx_external_delivery_id (external_delivery_id), " +
                     "INDEX idx_event_type (event_type), " +
                     "INDEX idx_status (status), " +
+                    "INDEX idx_status_next_retry (status, next_retry_time), " +
                     "INDEX idx_create_time (create_time)" +
                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='DoorDash Webhook 事件日志表（用于幂等性去重）'";
             
@@ -1050,6 +1108,31 @@ public class DatabaseInitializer {
         }
     }
     
+    /**
+     * 为已存在的 Webhook 日志表补充异步处理所需的列（重试时间、处理权）和索引
+     */
+    private void addWebhookQueueColumns(Statement stmt, String tableName, String afterColumn) {
+        String[] alterStatements = {
+            "ALTER TABLE " + tableName + " ADD COLUMN payload MEDIUMTEXT COMMENT '原始事件报文（异步处理时重建事件）' AFTER " + afterColumn,
+            "ALTER TABLE " + tableName + " ADD COLUMN retry_count INT NOT NULL DEFAULT 0 COMMENT '已重试次数'",
+            "ALTER TABLE " + tableName + " ADD COLUMN next_retry_time DATETIME COMMENT '下次可处理时间（失败退避）'",
+            "ALTER TABLE " + tableName + " ADD COLUMN lock_owner VARCHAR(64) COMMENT '持有处理权的实例'",
+            "ALTER TABLE " + tableName + " ADD COLUMN lock_until DATETIME COMMENT '处理权过期时间'",
+            "ALTER TABLE " + tableName + " ADD INDEX idx_status_next_retry (status, next_retry_time)"
+        };
+        for (String sql : alterStatements) {
+            try {
+                stmt.executeUpdate(sql);
+            } catch (java.sql.SQLException e) {
+                // 列/索引已存在，忽略
+                if (!e.getMessage().contains("Duplicate column") &&
+                    !e.getMessage().contains("Duplicate key name")) {
+                    log.warn("更新表 {} 结构时出错: {}", tableName, e.getMessage());
+                }
+            }
+        }
+    }
+    
     /**
      * 创建商户配置表（在基础库 jiaoyi 中，单表）
      * 注意：商户配置表已从分片表迁移到基础库单表
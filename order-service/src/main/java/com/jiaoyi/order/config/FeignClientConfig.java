@@ -0,0 +1,170 @@
+package com.jiaoyi.order.config;
+
+import feign.Response;
+import feign.Util;
+import feign.codec.DecodeException;
+import feign.codec.Decoder;
+import feign.optionals.OptionalDecoder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.HttpMessageConverterCustomizer;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feign 客户端配置
+ * 
+ * 1. 连接池：通过 spring.cloud.openfeign.httpclient.hc5.* 启用 Apache HttpClient 5 连接池（见 application.properties）
+ * 2. 超时：通过 spring.cloud.openfeign.client.config.{服务名}.* 按客户端单独配置
+ * 3. 解码：感知响应体大小的 Decoder（小响应一次性读入，超大响应直接拒绝）
+ * 4. 异步：feignAsyncExecutor 线程池，供 Async*ServiceClient 并发发起请求
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class FeignClientConfig {
+
+    private final HttpClientProperties properties;
+
+    /**
+     * 全局 Feign Decoder（所有 FeignClient 共用）
+     * 在 Spring Cloud 默认 Decoder 外包一层大小检查
+     */
+    @Bean
+    public Decoder feignDecoder(ObjectFactory<HttpMessageConverters> messageConverters,
+                                ObjectProvider<HttpMessageConverterCustomizer> customizers) {
+        Decoder springDecoder = new OptionalDecoder(
+                new ResponseEntityDecoder(new SpringDecoder(messageConverters, customizers)));
+        return new SizeAwareDecoder(springDecoder, properties.getMaxResponseBytes(), properties.getBufferThresholdBytes());
+    }
+
+    /**
+     * 异步 Feign 调用线程池
+     * 队列满时由调用线程执行（CallerRunsPolicy），避免无界排队
+     */
+    @Bean(name = "feignAsyncExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor feignAsyncExecutor() {
+        HttpClientProperties.Async async = properties.getAsync();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                async.getCoreSize(),
+                async.getMaxSize(),
+                async.getKeepAliveSeconds(),
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(async.getQueueCapacity()),
+                new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "feign-async-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        log.info("Feign 异步调用线程池初始化，core: {}, max: {}, queue: {}",
+                async.getCoreSize(), async.getMaxSize(), async.getQueueCapacity());
+        return executor;
+    }
+
+    /**
+     * 感知响应体大小的 Decoder
+     * - Content-Length 超过上限：直接抛 DecodeException，不读取响应体
+     * - Content-Length 不超过缓冲阈值：一次性读入 byte[] 再交给消息转换器（避免逐字节流式读取）
+     * - 未知长度（chunked）：包装为限长输入流，读取超过上限时中断
+     */
+    static class SizeAwareDecoder implements Decoder {
+
+        private final Decoder delegate;
+        private final long maxResponseBytes;
+        private final int bufferThresholdBytes;
+
+        SizeAwareDecoder(Decoder delegate, long maxResponseBytes, int bufferThresholdBytes) {
+            this.delegate = delegate;
+            this.maxResponseBytes = maxResponseBytes;
+            this.bufferThresholdBytes = bufferThresholdBytes;
+        }
+
+        @Override
+        public Object decode(Response response, Type type) throws IOException {
+            Response.Body body = response.body();
+            if (body == null) {
+                return delegate.decode(response, type);
+            }
+
+            Integer length = body.length();
+            if (length != null && length > maxResponseBytes) {
+                throw new DecodeException(response.status(),
+                        String.format("响应体过大，拒绝解码: %d > %d bytes", length, maxResponseBytes),
+                        response.request());
+            }
+
+            Response sized;
+            if (length != null && length <= bufferThresholdBytes) {
+                byte[] bytes = Util.toByteArray(body.asInputStream());
+                sized = response.toBuilder().body(bytes).build();
+            } else if (length == null) {
+                sized = response.toBuilder()
+                        .body(new LimitedInputStream(body.asInputStream(), maxResponseBytes), null)
+                        .build();
+            } else {
+                sized = response;
+            }
+            return delegate.decode(sized, type);
+        }
+    }
+
+    /**
+     * 限长输入流：累计读取超过上限时抛出 IOException
+     */
+    static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                checkLimit(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                checkLimit(n);
+            }
+            return n;
+        }
+
+        private void checkLimit(int n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new IOException("响应体超过上限: " + limit + " bytes");
+            }
+        }
+    }
+}
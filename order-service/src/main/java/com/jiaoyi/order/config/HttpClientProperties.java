@@ -0,0 +1,93 @@
+package com.jiaoyi.order.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * HTTP 客户端连接池配置
+ * 用于 RestTemplate（DoorDash、Google Maps 等第三方 API）和 Feign 的解码/异步调用
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxConnections = 200;
+
+    /**
+     * 每个路由（host:port）最大连接数
+     */
+    private int maxConnectionsPerRoute = 50;
+
+    /**
+     * 建立连接超时（毫秒）
+     */
+    private int connectTimeoutMillis = 5000;
+
+    /**
+     * 读取超时（毫秒）
+     */
+    private int readTimeoutMillis = 10000;
+
+    /**
+     * 从连接池获取连接的超时（毫秒），池耗尽时快速失败而不是无限等待
+     */
+    private int connectionRequestTimeoutMillis = 1000;
+
+    /**
+     * 服务端未返回 Keep-Alive 头时，连接默认保活时间（秒）
+     */
+    private int keepAliveSeconds = 30;
+
+    /**
+     * 连接最大存活时间（秒），防止长期复用到已下线的实例
+     */
+    private int timeToLiveSeconds = 300;
+
+    /**
+     * 空闲连接回收时间（秒）
+     */
+    private int idleEvictSeconds = 60;
+
+    /**
+     * Feign 响应体最大字节数，超过直接拒绝解码（防止异常大响应打爆堆内存）
+     */
+    private long maxResponseBytes = 8 * 1024 * 1024;
+
+    /**
+     * Feign 响应体一次性读入内存的阈值（字节），小响应直接按 byte[] 解码
+     */
+    private int bufferThresholdBytes = 64 * 1024;
+
+    /**
+     * 异步 Feign 调用线程池
+     */
+    private Async async = new Async();
+
+    @Data
+    public static class Async {
+        /**
+         * 核心线程数
+         */
+        private int coreSize = 16;
+
+        /**
+         * 最大线程数
+         */
+        private int maxSize = 64;
+
+        /**
+         * 队列容量（满了由调用线程执行，形成背压）
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * 空闲线程存活时间（秒）
+         */
+        private int keepAliveSeconds = 60;
+    }
+}
@@ -0,0 +1,75 @@
+package com.jiaoyi.order.config;
+
+import com.jiaoyi.common.id.LeasedSnowflakeKeyGenerateAlgorithm;
+import com.jiaoyi.common.id.SnowflakeIdGenerator;
+import com.jiaoyi.common.id.WorkerIdLeaseAllocator;
+import com.jiaoyi.order.util.ShardGeneIdGenerator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+
+/**
+ * ID 生成配置
+ *
+ * - snowflakeIdGenerator：ShardingSphere 主键生成（LEASED_SNOWFLAKE），用于 order_items / order_coupons / outbox 等表
+ * - shardGeneWorkerIdAllocator：基因ID（orders.id / payments.id / refunds.refund_id）的 worker-id 租约
+ *
+ * worker-id 都通过基础库 snowflake_worker_lease 表租约分配，多实例部署无需手工配置
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Value("${spring.application.name:order-service}")
+    private String applicationName;
+
+    @Value("${server.port:8082}")
+    private String serverPort;
+
+    @Value("${snowflake.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${snowflake.ring-buffer-size:8192}")
+    private int ringBufferSize;
+
+    @Value("${snowflake.padding-percent:50}")
+    private int paddingPercent;
+
+    @Value("${snowflake.max-backward-millis:10}")
+    private long maxBackwardMillis;
+
+    @Bean(name = "snowflakeWorkerIdAllocator", initMethod = "start", destroyMethod = "shutdown")
+    public WorkerIdLeaseAllocator snowflakeWorkerIdAllocator(@Qualifier("primaryDataSource") DataSource dataSource) {
+        return new WorkerIdLeaseAllocator(dataSource, applicationName + ":snowflake",
+                SnowflakeIdGenerator.MAX_WORKER_ID, leaseSeconds * 1000, instanceId());
+    }
+
+    @Bean(name = "snowflakeIdGenerator", initMethod = "start", destroyMethod = "shutdown")
+    public SnowflakeIdGenerator snowflakeIdGenerator(@Qualifier("snowflakeWorkerIdAllocator") WorkerIdLeaseAllocator allocator) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(allocator, ringBufferSize, paddingPercent, maxBackwardMillis);
+        LeasedSnowflakeKeyGenerateAlgorithm.bind(generator);
+        return generator;
+    }
+
+    @Bean(name = "shardGeneWorkerIdAllocator", initMethod = "start", destroyMethod = "shutdown")
+    public WorkerIdLeaseAllocator shardGeneWorkerIdAllocator(@Qualifier("primaryDataSource") DataSource dataSource) {
+        return new WorkerIdLeaseAllocator(dataSource, applicationName + ":shard-gene",
+                ShardGeneIdGenerator.MAX_WORKER_ID, leaseSeconds * 1000, instanceId());
+    }
+
+    /**
+     * 实例标识：应用名@主机名:端口（同一实例重启后不变，可复用原 worker-id）
+     */
+    private String instanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return applicationName + "@" + host + ":" + serverPort;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jiaoyi.order.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 订单查询线程池配置
+ * 用户订单历史需要按物理分片并行查询 orders / order_items，
+ * 使用独立线程池，避免和 Feign 异步调用互相抢占线程
+ */
+@Configuration
+@Slf4j
+public class OrderQueryExecutorConfig {
+
+    @Value("${order.history.executor.core-size:8}")
+    private int coreSize;
+
+    @Value("${order.history.executor.max-size:32}")
+    private int maxSize;
+
+    @Value("${order.history.executor.queue-capacity:200}")
+    private int queueCapacity;
+
+    /**
+     * 分片并行查询线程池
+     * 队列满时由调用线程执行（CallerRunsPolicy），退化为串行查询而不是报错
+     */
+    @Bean(name = "orderQueryExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor orderQueryExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                coreSize,
+                maxSize,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "order-query-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        log.info("订单分片查询线程池初始化，core: {}, max: {}, queue: {}", coreSize, maxSize, queueCapacity);
+        return executor;
+    }
+}
@@ -0,0 +1,63 @@
+package com.jiaoyi.order.config;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 订单服务物理数据源集合（与 ShardingSphere 共用同一批连接池）
+ *
+ * 用途：运维类任务（如索引修复）需要按物理分表（ds0.orders_07）逐个扫描，
+ * 而 ShardingSphere 的 orders 逻辑表只能按 store_id 路由，不带分片键会广播到全部 96 张表
+ */
+public class OrderShardDataSources {
+
+    /**
+     * 基础库数据源名称（非分片表）
+     */
+    public static final String BASE_DATA_SOURCE_NAME = "ds_base";
+
+    private final Map<String, DataSource> dataSourceMap;
+    private final int tableCountPerDb;
+
+    public OrderShardDataSources(Map<String, DataSource> dataSourceMap, int tableCountPerDb) {
+        this.dataSourceMap = Collections.unmodifiableMap(new LinkedHashMap<>(dataSourceMap));
+        this.tableCountPerDb = tableCountPerDb;
+    }
+
+    /**
+     * 全部数据源（含 ds_base），传给 ShardingSphere
+     */
+    public Map<String, DataSource> getAllDataSources() {
+        return dataSourceMap;
+    }
+
+    /**
+     * 分片库数据源（ds0/ds1/ds2...，按名称排序）
+     */
+    public Map<String, DataSource> getShardDataSources() {
+        Map<String, DataSource> shards = new TreeMap<>();
+        dataSourceMap.forEach((name, dataSource) -> {
+            if (!BASE_DATA_SOURCE_NAME.equals(name)) {
+                shards.put(name, dataSource);
+            }
+        });
+        return shards;
+    }
+
+    /**
+     * 基础库数据源（jiaoyi）
+     */
+    public DataSource getBaseDataSource() {
+        return dataSourceMap.get(BASE_DATA_SOURCE_NAME);
+    }
+
+    /**
+     * 每个分片库的物理表数量
+     */
+    public int getTableCountPerDb() {
+        return tableCountPerDb;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jiaoyi.order.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 接口限流配置（rate-limit.*）
+ * 按策略名配置，由 {@link com.jiaoyi.order.annotation.RateLimit#policy()} 引用
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 总开关（关闭后所有 @RateLimit 直接放行）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每次从 Redis 租用的额度占窗口总额度的比例（至少 1 个）
+     * 越大访问 Redis 越少，但多实例时额度分配越不均匀
+     */
+    private double leaseFraction = 0.1;
+
+    /**
+     * 策略名 -> 策略
+     */
+    private Map<String, Policy> policies = new HashMap<>();
+
+    @Data
+    public static class Policy {
+
+        /**
+         * 每秒允许的请求数（集群模式下是所有实例合计）
+         */
+        private double permitsPerSecond;
+
+        /**
+         * 统计窗口（秒），窗口额度 = permitsPerSecond * windowSeconds
+         */
+        private int windowSeconds = 1;
+
+        /**
+         * true：通过 Redis 租用额度实现集群限流；false：每个实例独立按 permitsPerSecond 限流
+         */
+        private boolean cluster = true;
+
+        /**
+         * 单实例最多跟踪的 key 数（按 key 限流时，超出后淘汰最久未访问的 key）
+         */
+        private int maxKeys = 10000;
+    }
+}
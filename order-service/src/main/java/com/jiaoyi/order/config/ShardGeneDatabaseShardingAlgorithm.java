@@ -0,0 +1,85 @@
+package com.jiaoyi.order.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.sharding.api.sharding.complex.ComplexKeysShardingValue;
+
+import java.util.Collection;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 订单域数据库分片算法（基因路由，复合分片键 store_id + ID列）
+ *
+ * 与 {@link StoreIdDatabaseShardingAlgorithmV2} 路由结果一致，额外支持只带基因ID的查询精准路由到单库；
+ * 无法确定 shard_id 时返回全部库（广播）
+ *
+ * 配置参数（除基类外）：
+ * - ds-count: 数据源数量（降级时使用）
+ * - ds-prefix: 数据源名称前缀（降级时使用）
+ */
+@Slf4j
+public class ShardGeneDatabaseShardingAlgorithm extends AbstractShardGeneShardingAlgorithm {
+
+    /**
+     * 数据源数量（降级时使用）
+     */
+    private int dsCount = 3;
+
+    /**
+     * 数据源名称前缀（降级时使用）
+     */
+    private String dsPrefix = "ds";
+
+    @Override
+    protected void initProps(Properties props) {
+        if (props.containsKey("ds-count")) {
+            dsCount = Integer.parseInt(props.getProperty("ds-count"));
+        }
+        if (props.containsKey("ds-prefix")) {
+            dsPrefix = props.getProperty("ds-prefix");
+        }
+    }
+
+    @Override
+    public Collection<String> doSharding(Collection<String> availableTargetNames, ComplexKeysShardingValue<Comparable<?>> shardingValue) {
+        Set<Integer> shardIds = resolveShardIds(shardingValue);
+        if (shardIds == null) {
+            log.debug("【ShardGeneDatabaseShardingAlgorithm】无法确定 shard_id，逻辑表 {} 广播到全部库", shardingValue.getLogicTableName());
+            return availableTargetNames;
+        }
+
+        Set<String> targets = new TreeSet<>();
+        for (Integer shardId : shardIds) {
+            String dsName = routeDataSource(shardId);
+            if (!availableTargetNames.contains(dsName)) {
+                String errorMsg = String.format(
+                    "shard_id %d 路由到 %s，但该库不在可用列表中（可用列表: %s）", shardId, dsName, availableTargetNames);
+                log.error("【ShardGeneDatabaseShardingAlgorithm】{}", errorMsg);
+                throw new IllegalStateException(errorMsg);
+            }
+            targets.add(dsName);
+        }
+        return targets;
+    }
+
+    private String routeDataSource(int shardId) {
+        if (!useRoutingTable) {
+            return dsPrefix + Math.floorMod(shardId, dsCount);
+        }
+        try {
+            return getRouteCache().getDataSourceName(shardId);
+        } catch (Exception e) {
+            if (fallbackToMod) {
+                log.warn("【ShardGeneDatabaseShardingAlgorithm】路由表查询失败，降级为取模，shard_id={}, error={}", shardId, e.getMessage());
+                return dsPrefix + Math.floorMod(shardId, dsCount);
+            }
+            throw new IllegalStateException("路由表查询失败且未启用降级", e);
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "SHARD_GENE_DATABASE";
+    }
+}
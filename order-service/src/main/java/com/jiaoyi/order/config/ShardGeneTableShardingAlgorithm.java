@@ -0,0 +1,75 @@
+package com.jiaoyi.order.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shardingsphere.sharding.api.sharding.complex.ComplexKeysShardingValue;
+
+import java.util.Collection;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 订单域表分片算法（基因路由，复合分片键 store_id + ID列）
+ *
+ * 与 {@link StoreIdTableShardingAlgorithmV2} 路由结果一致，额外支持只带基因ID的查询精准路由到单表；
+ * 无法确定 shard_id 时返回全部表（广播）
+ *
+ * 配置参数（除基类外）：
+ * - table.count.per.db: 每库表数量（默认32，降级时使用）
+ */
+@Slf4j
+public class ShardGeneTableShardingAlgorithm extends AbstractShardGeneShardingAlgorithm {
+
+    /**
+     * 每库表数量（降级时使用）
+     */
+    private int tableCountPerDb = 32;
+
+    @Override
+    protected void initProps(Properties props) {
+        if (props.containsKey("table.count.per.db")) {
+            tableCountPerDb = Integer.parseInt(props.getProperty("table.count.per.db"));
+        }
+    }
+
+    @Override
+    public Collection<String> doSharding(Collection<String> availableTargetNames, ComplexKeysShardingValue<Comparable<?>> shardingValue) {
+        String logicTableName = shardingValue.getLogicTableName();
+        Set<Integer> shardIds = resolveShardIds(shardingValue);
+        if (shardIds == null) {
+            log.debug("【ShardGeneTableShardingAlgorithm】无法确定 shard_id，逻辑表 {} 广播到全部表", logicTableName);
+            return availableTargetNames;
+        }
+
+        Set<String> targets = new TreeSet<>();
+        for (Integer shardId : shardIds) {
+            String targetTableName = logicTableName + "_" + String.format("%02d", routeTableId(shardId));
+            if (!availableTargetNames.contains(targetTableName)) {
+                throw new IllegalStateException(
+                    String.format("shard_id %d 计算出的表 %s 不在可用列表 %s 中", shardId, targetTableName, availableTargetNames));
+            }
+            targets.add(targetTableName);
+        }
+        return targets;
+    }
+
+    private int routeTableId(int shardId) {
+        if (!useRoutingTable) {
+            return shardId % tableCountPerDb;
+        }
+        try {
+            return getRouteCache().getTableId(shardId);
+        } catch (Exception e) {
+            if (fallbackToMod) {
+                log.warn("【ShardGeneTableShardingAlgorithm】路由表查询失败，降级为取模，shard_id={}, error={}", shardId, e.getMessage());
+                return shardId % tableCountPerDb;
+            }
+            throw new IllegalStateException("路由表查询失败且未启用降级", e);
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "SHARD_GENE_TABLE";
+    }
+}
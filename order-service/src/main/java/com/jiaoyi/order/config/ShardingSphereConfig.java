@@ -7,6 +7,7 @@ import org.apache.shardingsphere.sharding.api.config.ShardingRuleConfiguration;
 import org.apache.shardingsphere.sharding.api.config.rule.ShardingTableRuleConfiguration;
 import org.apache.shardingsphere.sharding.api.config.rule.ShardingTableReferenceRuleConfiguration;
 import org.apache.shardingsphere.sharding.api.config.strategy.keygen.KeyGenerateStrategyConfiguration;
+import org.apache.shardingsphere.sharding.api.config.strategy.sharding.ComplexShardingStrategyConfiguration;
 import org.apache.shardingsphere.sharding.api.config.strategy.sharding.StandardShardingStrategyConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -35,10 +36,24 @@ public class ShardingSphereConfig {
     @Autowired
     private ApplicationContext applicationContext;
 
+    /**
+     * 每个分片库的物理表数量
+     */
+    private static final int TABLE_COUNT_PER_DB = 32;
+
+    /**
+     * 物理数据源集合（ShardingSphere 和需要按物理分表扫描的运维任务共用同一批连接池）
+     */
+    @Bean(name = "orderShardDataSources")
+    public OrderShardDataSources orderShardDataSources() {
+        return new OrderShardDataSources(createDataSourceMap(), TABLE_COUNT_PER_DB);
+    }
+
     @Bean(name = "shardingSphereDataSource")
     @org.springframework.context.annotation.Primary  // 业务分片库是主库
+    @org.springframework.context.annotation.DependsOn("snowflakeIdGenerator")  // 主键生成器需先绑定到 LEASED_SNOWFLAKE
     public DataSource shardingSphereDataSource() throws SQLException {
-        Map<String, DataSource> dataSourceMap = createDataSourceMap();
+        Map<String, DataSource> dataSourceMap = new HashMap<>(orderShardDataSources().getAllDataSources());
         ShardingRuleConfiguration shardingRuleConfig = createShardingRuleConfiguration();
         
         Properties props = new Properties();
@@ -125,12 +140,14 @@ public class ShardingSphereConfig {
         shardingRuleConfig.getTables().add(createMerchantFeeConfigTableRule());
         shardingRuleConfig.getTables().add(createMerchantCapabilityConfigTableRule());
         
-        // 配置绑定表（orders, order_items, order_coupons, payments, refunds, refund_items 绑定，确保同一订单的数据在同一分片）
-        // 注意：所有表必须使用相同的分片策略（shard_id），才能配置为 binding table
+        // 配置绑定表：绑定表必须使用相同的分片算法和相同的分片列，否则关联查询的路由会退化成笛卡尔积
+        // 订单相关表的复合分片列不同（orders: store_id,id；payments: store_id,order_id,id；refunds: store_id,order_id,refund_id；
+        // refund_items: store_id,refund_id），只有 order_items 和 order_coupons 完全一致（store_id,order_id），只绑定这两张表。
+        // 其他表不绑定不影响数据分布：同一订单的数据仍按 store_id（或ID中的分片基因）落在同一分片，单表查询的路由不变
         // outbox 表不加入 bindingTables，因为 outbox 表虽然也使用 shard_id，但业务语义不同（不是订单相关表）
         // 但 outbox 表使用相同的分片策略（shard_id），仍然可以保证同库事务
         ShardingTableReferenceRuleConfiguration bindingTableRule = new ShardingTableReferenceRuleConfiguration("order_binding", 
-            "orders,order_items,order_coupons,payments,refunds,refund_items");
+            "order_items,order_coupons");
         shardingRuleConfig.getBindingTableGroups().add(bindingTableRule);
         
         // 配置基于 store_id 的分片算法（用于 orders 和 outbox 表）
@@ -172,6 +189,27 @@ public class ShardingSphereConfig {
         shardingRuleConfig.getShardingAlgorithms().put("store_id_table_old", 
             new AlgorithmConfiguration("CLASS_BASED", tableShardingPropsOld));
         
+        // 基因路由：复合分片键 store_id + 带分片基因的ID列（orders.id / *.order_id / refunds.refund_id）
+        // 带 store_id 时与 V2 路由一致；只带基因ID时直接取出 shard_id 精准路由，避免广播 96 张表
+        Properties geneDbShardingProps = new Properties();
+        geneDbShardingProps.setProperty("strategy", "COMPLEX");
+        geneDbShardingProps.setProperty("algorithmClassName", "com.jiaoyi.order.config.ShardGeneDatabaseShardingAlgorithm");
+        geneDbShardingProps.setProperty("use-routing-table", "true");
+        geneDbShardingProps.setProperty("fallback-to-mod", "true");
+        geneDbShardingProps.setProperty("ds-count", "3");
+        geneDbShardingProps.setProperty("ds-prefix", "ds");
+        shardingRuleConfig.getShardingAlgorithms().put("shard_gene_database",
+            new AlgorithmConfiguration("CLASS_BASED", geneDbShardingProps));
+
+        Properties geneTableShardingProps = new Properties();
+        geneTableShardingProps.setProperty("strategy", "COMPLEX");
+        geneTableShardingProps.setProperty("algorithmClassName", "com.jiaoyi.order.config.ShardGeneTableShardingAlgorithm");
+        geneTableShardingProps.setProperty("use-routing-table", "true");
+        geneTableShardingProps.setProperty("fallback-to-mod", "true");
+        geneTableShardingProps.setProperty("table.count.per.db", String.valueOf(TABLE_COUNT_PER_DB));
+        shardingRuleConfig.getShardingAlgorithms().put("shard_gene_table",
+            new AlgorithmConfiguration("CLASS_BASED", geneTableShardingProps));
+        
         // 配置分布式主键生成策略（雪花算法）
         shardingRuleConfig.getKeyGenerators().put("snowflake", createSnowflakeKeyGenerator());
         
@@ -189,16 +227,15 @@ public class ShardingSphereConfig {
         String actualDataNodes = buildActualDataNodes("orders", 3, 32);
         ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("orders", actualDataNodes);
         
-        // 使用 store_id 作为分片键（数据库路由：基于 store_id 计算）
-        tableRule.setDatabaseShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_database"));
-        // 使用 store_id 作为分片键（表路由：基于 store_id 计算）
-        tableRule.setTableShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_table"));
+        // 使用 store_id + id 作为复合分片键（优先 store_id；只带 id 时从基因ID中取 shard_id，历史ID广播）
+        tableRule.setDatabaseShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,id", "shard_gene_database"));
+        tableRule.setTableShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,id", "shard_gene_table"));
         tableRule.setKeyGenerateStrategy(new KeyGenerateStrategyConfiguration("id", "snowflake"));
         return tableRule;
     }
     
     /**
-     * 创建订单项表分片规则（与 orders 绑定）
+     * 创建订单项表分片规则（与 orders 同分片，与 order_coupons 绑定）
      * 使用 shard_id 作为分片键，确保与 orders 表在同一分片
      */
     private ShardingTableRuleConfiguration createOrderItemsTableRule() {
@@ -206,14 +243,14 @@ public class ShardingSphereConfig {
         String actualDataNodes = buildActualDataNodes("order_items", 3, 32);
         ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("order_items", actualDataNodes);
         // order_items 表使用 store_id 作为分片键，与 orders 表保持一致
-        tableRule.setDatabaseShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_database"));
-        tableRule.setTableShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_table"));
+        tableRule.setDatabaseShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id", "shard_gene_database"));
+        tableRule.setTableShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id", "shard_gene_table"));
         tableRule.setKeyGenerateStrategy(new KeyGenerateStrategyConfiguration("id", "snowflake"));
         return tableRule;
     }
     
     /**
-     * 创建订单优惠券关联表分片规则（与 orders 绑定）
+     * 创建订单优惠券关联表分片规则（与 orders 同分片，与 order_items 绑定）
      * 使用 shard_id 作为分片键，确保与 orders 表在同一分片
      */
     private ShardingTableRuleConfiguration createOrderCouponsTableRule() {
@@ -221,14 +258,14 @@ public class ShardingSphereConfig {
         String actualDataNodes = buildActualDataNodes("order_coupons", 3, 32);
         ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("order_coupons", actualDataNodes);
         // order_coupons 表使用 store_id 作为分片键，与 orders 表保持一致
-        tableRule.setDatabaseShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_database"));
-        tableRule.setTableShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_table"));
+        tableRule.setDatabaseShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id", "shard_gene_database"));
+        tableRule.setTableShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id", "shard_gene_table"));
         tableRule.setKeyGenerateStrategy(new KeyGenerateStrategyConfiguration("id", "snowflake"));
         return tableRule;
     }
     
     /**
-     * 创建支付记录表分片规则（与 orders 绑定）
+     * 创建支付记录表分片规则（与 orders 同分片）
      * 使用 shard_id 作为分片键，确保与 orders 表在同一分片
      */
     private ShardingTableRuleConfiguration createPaymentsTableRule() {
@@ -236,14 +273,14 @@ public class ShardingSphereConfig {
         String actualDataNodes = buildActualDataNodes("payments", 3, 32);
         ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("payments", actualDataNodes);
         // payments 表使用 store_id 作为分片键，与 orders 表保持一致
-        tableRule.setDatabaseShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_database"));
-        tableRule.setTableShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_table"));
+        tableRule.setDatabaseShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id,id", "shard_gene_database"));
+        tableRule.setTableShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id,id", "shard_gene_table"));
         tableRule.setKeyGenerateStrategy(new KeyGenerateStrategyConfiguration("id", "snowflake"));
         return tableRule;
     }
     
     /**
-     * 创建退款单表分片规则（与 orders 绑定）
+     * 创建退款单表分片规则（与 orders 同分片）
      * 使用 shard_id 作为分片键，确保与 orders 表在同一分片
      */
     private ShardingTableRuleConfiguration createRefundsTableRule() {
@@ -251,14 +288,14 @@ public class ShardingSphereConfig {
         String actualDataNodes = buildActualDataNodes("refunds", 3, 32);
         ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("refunds", actualDataNodes);
         // refunds 表使用 store_id 作为分片键，与 orders 表保持一致
-        tableRule.setDatabaseShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_database"));
-        tableRule.setTableShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_table"));
+        tableRule.setDatabaseShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id,refund_id", "shard_gene_database"));
+        tableRule.setTableShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,order_id,refund_id", "shard_gene_table"));
         tableRule.setKeyGenerateStrategy(new KeyGenerateStrategyConfiguration("refund_id", "snowflake"));
         return tableRule;
     }
     
     /**
-     * 创建退款明细表分片规则（与 refunds 绑定）
+     * 创建退款明细表分片规则（与 refunds 同分片）
      * 使用 shard_id 作为分片键，通过 refund_id 关联到 refunds 表
      */
     private ShardingTableRuleConfiguration createRefundItemsTableRule() {
@@ -266,8 +303,8 @@ public class ShardingSphereConfig {
         String actualDataNodes = buildActualDataNodes("refund_items", 3, 32);
         ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("refund_items", actualDataNodes);
         // refund_items 表使用 store_id 作为分片键，与 refunds 表保持一致
-        tableRule.setDatabaseShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_database"));
-        tableRule.setTableShardingStrategy(new StandardShardingStrategyConfiguration("store_id", "store_id_table"));
+        tableRule.setDatabaseShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,refund_id", "shard_gene_database"));
+        tableRule.setTableShardingStrategy(new ComplexShardingStrategyConfiguration("store_id,refund_id", "shard_gene_table"));
         tableRule.setKeyGenerateStrategy(new KeyGenerateStrategyConfiguration("refund_item_id", "snowflake"));
         return tableRule;
     }
@@ -340,9 +377,12 @@ public class ShardingSphereConfig {
         return new AlgorithmConfiguration("CLASS_BASED", props);
     }
     
+    /**
+     * 主键生成：租约 worker-id 的雪花算法（见 IdGeneratorConfig），位布局与内置 SNOWFLAKE 一致
+     */
     private AlgorithmConfiguration createSnowflakeKeyGenerator() {
         Properties props = new Properties();
-        return new AlgorithmConfiguration("SNOWFLAKE", props);
+        return new AlgorithmConfiguration("LEASED_SNOWFLAKE", props);
     }
     
     /**
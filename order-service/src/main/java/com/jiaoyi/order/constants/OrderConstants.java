@@ -69,11 +69,6 @@ public final class OrderConstants {
      */
     public static final int PAYMENT_LOCK_LEASE_SECONDS = 30;
 
-    /**
-     * 支付回调锁等待时间（秒）
-     */
-    public static final int PAYMENT_CALLBACK_LOCK_WAIT_SECONDS = 3;
-
     /**
      * 支付回调锁持有时间（秒）
      */
@@ -106,11 +101,6 @@ public final class OrderConstants {
      */
     public static final int STOCK_UNLOCK_MAX_RETRIES = 3;
 
-    /**
-     * 支付回调最大重试次数
-     */
-    public static final int PAYMENT_CALLBACK_MAX_RETRIES = 3;
-
     /**
      * Outbox任务最大重试次数
      */
@@ -0,0 +1,30 @@
+package com.jiaoyi.order.controller;
+
+import com.jiaoyi.order.task.CartWriteBehindTask;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 购物车异步落库管理 Controller
+ * 查看各分区待落库数量和落库延迟（积压监控）
+ */
+@RestController
+@RequestMapping("/api/admin/cart-write-behind")
+@RequiredArgsConstructor
+public class CartWriteBehindController {
+
+    private final CartWriteBehindTask cartWriteBehindTask;
+
+    /**
+     * 获取落库状态
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(cartWriteBehindTask.getStatus());
+    }
+}
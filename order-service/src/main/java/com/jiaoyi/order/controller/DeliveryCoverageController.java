@@ -0,0 +1,54 @@
+package com.jiaoyi.order.controller;
+
+import com.jiaoyi.common.ApiResponse;
+import com.jiaoyi.order.service.DoorDashQuoteCache;
+import com.jiaoyi.order.service.GoogleMapsService;
+import com.jiaoyi.order.service.MerchantDeliveryIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 配送范围查询控制器
+ */
+@RestController
+@RequestMapping("/api/merchant/delivery-coverage")
+@RequiredArgsConstructor
+@Slf4j
+public class DeliveryCoverageController {
+
+    private final MerchantDeliveryIndex merchantDeliveryIndex;
+    private final GoogleMapsService googleMapsService;
+    private final DoorDashQuoteCache doorDashQuoteCache;
+
+    /**
+     * 查询能配送到指定位置的商户（按距离升序）
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<MerchantDeliveryIndex.DeliveryCandidate>>> findMerchants(
+            @RequestParam Double latitude,
+            @RequestParam Double longitude) {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(400, "经纬度超出范围"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("查询成功",
+                merchantDeliveryIndex.findMerchantsDeliveringTo(latitude, longitude)));
+    }
+
+    /**
+     * 索引、地理编码缓存和 DoorDash 报价缓存状态
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("deliveryIndex", merchantDeliveryIndex.getStatus());
+        result.put("geocodeCache", googleMapsService.getGeocodeCacheStatus());
+        result.put("doordashQuoteCache", doorDashQuoteCache.getStatus());
+        return ResponseEntity.ok(result);
+    }
+}
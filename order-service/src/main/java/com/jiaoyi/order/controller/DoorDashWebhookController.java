@@ -1,15 +1,8 @@
 package com.jiaoyi.order.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.order.entity.Order;
-import com.jiaoyi.order.entity.Delivery;
-import com.jiaoyi.order.entity.DoorDashWebhookLog;
-import com.jiaoyi.order.enums.OrderStatusEnum;
-import com.jiaoyi.order.enums.DoorDashWebhookLogStatusEnum;
 import com.jiaoyi.order.mapper.OrderMapper;
-import com.jiaoyi.order.mapper.DeliveryMapper;
-import com.jiaoyi.order.mapper.DoorDashWebhookLogMapper;
-import com.jiaoyi.order.service.DoorDashService;
+import com.jiaoyi.order.service.DoorDashWebhookService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -22,6 +15,8 @@ import java.util.Map;
 /**
  * DoorDash Webhook 回调控制器
  * 处理 DoorDash 的配送状态更新回调
+ *
+ * 回调只做校验 + 落库 + 立即返回 200，配送状态由 {@link DoorDashWebhookService} 在按订单分区的 worker 中异步更新
  */
 @RestController
 @RequestMapping("/api/doordash/webhook")
@@ -30,10 +25,7 @@ import java.util.Map;
 public class DoorDashWebhookController {
     
     private final OrderMapper orderMapper;
-    private final DeliveryMapper deliveryMapper;
-    private final DoorDashWebhookLogMapper webhookLogMapper;
-    private final DoorDashService doorDashService;
-    private final ObjectMapper objectMapper;
+    private final DoorDashWebhookService doorDashWebhookService;
     
     /**
      * Mock Webhook 回调（用于测试）
@@ -76,9 +68,9 @@ public class DoorDashWebhookController {
             // 2. 构建 Mock Webhook 数据
             Map<String, Object> mockPayload = buildMockWebhookPayload(order, deliveryId, eventType);
             
-            // 3. 直接处理 webhook 数据（不通过 handleWebhook，避免 request 为 null 的问题）
+            // 3. 同步处理 webhook 数据（测试接口不走异步队列，便于直接返回处理后的订单状态）
             try {
-                processWebhookPayload(mockPayload, order);
+                doorDashWebhookService.processWebhookPayload(mockPayload, order);
             } catch (Exception e) {
                 log.error("处理 webhook 数据失败，订单ID: {}", orderId, e);
                 Map<String, Object> errorResponse = new HashMap<>();
@@ -211,30 +203,6 @@ public class DoorDashWebhookController {
                 return ResponseEntity.badRequest().body("Data is empty");
             }
             
-            // ========== 幂等性检查：先检查 Webhook 日志表（基于 event_id 去重） ==========
-            DoorDashWebhookLog existingLog = null;
-            if (eventId != null && !eventId.isEmpty()) {
-                existingLog = webhookLogMapper.selectByEventId(eventId);
-                if (existingLog != null) {
-                    // 如果已处理成功，直接返回
-                    if (DoorDashWebhookLogStatusEnum.SUCCESS.equals(existingLog.getStatus())) {
-                        log.info("Webhook 事件已处理（幂等性检查），event_id: {}, 事件类型: {}, 订单ID: {}, 处理时间: {}", 
-                                eventId, eventType, existingLog.getOrderId(), existingLog.getProcessedAt());
-                        return ResponseEntity.ok("OK");
-                    }
-                    // 如果正在处理中，等待或返回（避免并发处理）
-                    if (DoorDashWebhookLogStatusEnum.PROCESSING.equals(existingLog.getStatus())) {
-                        log.warn("Webhook 事件正在处理中（可能并发调用），event_id: {}, 事件类型: {}, 订单ID: {}", 
-                                eventId, eventType, existingLog.getOrderId());
-                        // 可以选择等待或直接返回，让 DoorDash 重试
-                        return ResponseEntity.ok("OK");
-                    }
-                    // 如果之前处理失败，可以重试
-                    log.info("Webhook 事件之前处理失败，将重试，event_id: {}, 事件类型: {}, 订单ID: {}, 错误: {}", 
-                            eventId, eventType, existingLog.getOrderId(), existingLog.getErrorMessage());
-                }
-            }
-            
             // 3. 提取配送ID和外部订单ID
             String deliveryId = (String) data.get("id");
             String externalDeliveryId = (String) data.get("external_delivery_id");
@@ -251,372 +219,17 @@ public class DoorDashWebhookController {
             
             Long orderId = Long.parseLong(externalDeliveryId.substring(6)); // 去掉 "order_" 前缀
             
-            // 5. 查询订单
-            Order order = orderMapper.selectById(orderId);
-            if (order == null) {
-                log.warn("订单不存在，订单ID: {}", orderId);
-                return ResponseEntity.badRequest().body("Order not found");
-            }
-            
-            // 创建或更新 Webhook 日志（标记为处理中）
-            DoorDashWebhookLog webhookLog = null;
-            if (existingLog != null) {
-                webhookLog = existingLog;
-                // 更新状态为处理中
-                webhookLogMapper.updateStatus(
-                        webhookLog.getId(), 
-                        DoorDashWebhookLogStatusEnum.PROCESSING, 
-                        null, 
-                        null,
-                        webhookLog.getRetryCount() != null ? webhookLog.getRetryCount() + 1 : 1
-                );
-            } else {
-                // 创建新的 Webhook 日志
-                webhookLog = new DoorDashWebhookLog();
-                webhookLog.setEventId(eventId != null ? eventId : "NO_EVENT_ID_" + System.currentTimeMillis());
-                webhookLog.setOrderId(orderId);
-                webhookLog.setDeliveryId(deliveryId);
-                webhookLog.setExternalDeliveryId(externalDeliveryId);
-                // 将字符串转换为枚举
-                com.jiaoyi.order.enums.DoorDashEventTypeEnum eventTypeEnum = com.jiaoyi.order.enums.DoorDashEventTypeEnum.fromCode(eventType);
-                if (eventTypeEnum != null) {
-                    webhookLog.setEventType(eventTypeEnum);
-                } else {
-                    log.warn("未知的事件类型: {}，订单ID: {}", eventType, orderId);
-                }
-                webhookLog.setStatus(DoorDashWebhookLogStatusEnum.PROCESSING);
-                webhookLog.setRetryCount(0);
-                webhookLog.setCreateTime(java.time.LocalDateTime.now());
-                try {
-                    // 保存完整的 payload
-                    webhookLog.setPayload(objectMapper.writeValueAsString(payload));
-                    webhookLogMapper.insert(webhookLog);
-                } catch (Exception e) {
-                    // 如果插入失败（可能是并发插入导致唯一键冲突），查询已存在的记录
-                    log.warn("插入 Webhook 日志失败（可能是并发插入），event_id: {}, 错误: {}", eventId, e.getMessage());
-                    if (eventId != null && !eventId.isEmpty()) {
-                        existingLog = webhookLogMapper.selectByEventId(eventId);
-                        if (existingLog != null && DoorDashWebhookLogStatusEnum.SUCCESS.equals(existingLog.getStatus())) {
-                            log.info("并发插入时发现已处理成功的记录，event_id: {}", eventId);
-                            return ResponseEntity.ok("OK");
-                        }
-                    }
-                    // 如果插入失败且没有已存在的记录，继续处理（可能是数据库问题）
-                    webhookLog = null;
-                }
-            }
-            
-            // 6. 处理 webhook 数据
-            try {
-                processWebhookPayload(payload, order);
-                
-                // 更新 Webhook 日志为成功
-                if (webhookLog != null) {
-                    try {
-                        Map<String, Object> result = new HashMap<>();
-                        result.put("orderId", orderId);
-                        result.put("deliveryId", deliveryId);
-                        result.put("eventType", eventType);
-                        result.put("orderStatus", order.getStatus());
-                        result.put("processedAt", java.time.LocalDateTime.now().toString());
-                        
-                        webhookLogMapper.updateStatus(
-                                webhookLog.getId(), 
-                                DoorDashWebhookLogStatusEnum.SUCCESS, 
-                                objectMapper.writeValueAsString(result), 
-                                null,
-                                webhookLog.getRetryCount()
-                        );
-                    } catch (Exception e) {
-                        log.warn("更新 Webhook 日志失败，但不影响主流程，event_id: {}", eventId, e);
-                    }
-                }
-            } catch (Exception e) {
-                log.error("处理 Webhook 数据失败，event_id: {}, 订单ID: {}", eventId, orderId, e);
-                
-                // 更新 Webhook 日志为失败
-                if (webhookLog != null) {
-                    try {
-                        webhookLogMapper.updateStatus(
-                                webhookLog.getId(), 
-                                DoorDashWebhookLogStatusEnum.FAILED, 
-                                null, 
-                                e.getMessage(),
-                                webhookLog.getRetryCount()
-                        );
-                    } catch (Exception logError) {
-                        log.warn("更新 Webhook 日志失败，event_id: {}", eventId, logError);
-                    }
-                }
-                
-                // 不抛出异常，返回 200 OK，避免 DoorDash 重复回调
-                // 失败的事件可以通过定时任务重试
-                return ResponseEntity.ok("OK");
-            }
-            
-            // 注意：这里可以根据需要调用 doorDashService 查询最新状态
-            
-            // 7. 返回成功响应
+            // 5. 落库（基于 event_id 幂等）并投递到异步 worker，立即返回
+            doorDashWebhookService.enqueue(payload, eventId, eventType, orderId, deliveryId, externalDeliveryId);
             return ResponseEntity.ok("OK");
             
+        } catch (NumberFormatException e) {
+            log.warn("无效的 external_delivery_id，无法解析订单ID", e);
+            return ResponseEntity.badRequest().body("Invalid external_delivery_id");
         } catch (Exception e) {
+            // 未能落库时返回 500，由 DoorDash 重推
             log.error("处理 DoorDash Webhook 失败", e);
-            // 返回 200 OK，避免 DoorDash 重复回调
-            // 异常已经在内部处理并记录到日志表
-            return ResponseEntity.ok("OK");
-        }
-    }
-    
-    /**
-     * 处理 Webhook 数据（提取公共逻辑）
-     */
-    private void processWebhookPayload(Map<String, Object> payload, Order order) {
-        String eventType = (String) payload.get("event_type");
-        @SuppressWarnings("unchecked")
-        Map<String, Object> data = (Map<String, Object>) payload.get("data");
-        
-        if (data == null) {
-            log.warn("Webhook 数据为空，订单ID: {}", order.getId());
-            return;
-        }
-        
-        String deliveryId = (String) data.get("id");
-        
-        // 处理不同的事件类型
-        switch (eventType) {
-            case "delivery.created":
-                handleDeliveryCreated(order, deliveryId, data);
-                break;
-            case "delivery.assigned":
-                handleDeliveryAssigned(order, deliveryId, data);
-                break;
-            case "delivery.picked_up":
-                handleDeliveryPickedUp(order, deliveryId, data);
-                break;
-            case "delivery.delivered":
-                handleDeliveryDelivered(order, deliveryId, data);
-                break;
-            case "delivery.cancelled":
-                handleDeliveryCancelled(order, deliveryId, data);
-                break;
-            case "delivery.failed":
-                handleDeliveryFailed(order, deliveryId, data);
-                break;
-            default:
-                log.warn("未知的事件类型: {}", eventType);
-        }
-    }
-    
-    /**
-     * 处理配送创建事件
-     */
-    private void handleDeliveryCreated(Order order, String deliveryId, Map<String, Object> data) {
-        log.info("配送订单已创建，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
-        
-        try {
-            // 更新 additionalData，保存 tracking_url 等信息
-            updateAdditionalData(order, data);
-        } catch (Exception e) {
-            log.error("处理配送创建事件失败，订单ID: {}", order.getId(), e);
-        }
-    }
-    
-    /**
-     * 处理配送已分配骑手事件
-     */
-    private void handleDeliveryAssigned(Order order, String deliveryId, Map<String, Object> data) {
-        log.info("配送订单已分配骑手，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
-        
-        try {
-            // 更新 additionalData，保存骑手信息
-            updateAdditionalData(order, data);
-            
-            // 注意：骑手接单和商家制作是独立的过程，不改变订单状态
-            // 商家可能在骑手接单前就已经开始制作了，也可能在骑手接单后还在制作
-            // 所以这里只更新骑手信息，不改变订单状态
-            
-            // 可以在这里发送推送通知给用户："骑手已接单"
-            // TODO: 集成推送服务
-        } catch (Exception e) {
-            log.error("处理配送已分配骑手事件失败，订单ID: {}", order.getId(), e);
-        }
-    }
-    
-    /**
-     * 处理配送已取货事件
-     */
-    private void handleDeliveryPickedUp(Order order, String deliveryId, Map<String, Object> data) {
-        log.info("配送订单已取货，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
-        
-        try {
-            // 更新 additionalData
-            updateAdditionalData(order, data);
-            
-            // 骑手已取货 = 商家已经制作完成，骑手正在配送
-            // 更新订单状态为"配送中"
-            orderMapper.updateStatus(order.getId(), OrderStatusEnum.DELIVERING.getCode());
-            log.info("订单状态已更新为配送中（骑手已取货，正在配送），订单ID: {}", order.getId());
-            
-            // 可以在这里发送推送通知给用户："骑手已取货，正在配送中"
-            // TODO: 集成推送服务
-        } catch (Exception e) {
-            log.error("处理配送已取货事件失败，订单ID: {}", order.getId(), e);
-        }
-    }
-    
-    /**
-     * 处理配送已完成事件
-     */
-    private void handleDeliveryDelivered(Order order, String deliveryId, Map<String, Object> data) {
-        log.info("配送订单已完成，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
-        
-        try {
-            // 更新 additionalData
-            updateAdditionalData(order, data);
-            
-            // 更新订单状态为"已完成"
-            orderMapper.updateStatus(order.getId(), OrderStatusEnum.COMPLETED.getCode());
-            log.info("订单状态已更新为已完成，订单ID: {}", order.getId());
-            
-            // 可以在这里发送推送通知给用户："订单已送达"
-            // TODO: 集成推送服务
-        } catch (Exception e) {
-            log.error("处理配送已完成事件失败，订单ID: {}", order.getId(), e);
-        }
-    }
-    
-    /**
-     * 处理配送已取消事件
-     */
-    private void handleDeliveryCancelled(Order order, String deliveryId, Map<String, Object> data) {
-        log.info("配送订单已取消，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
-        
-        try {
-            // 更新 additionalData
-            updateAdditionalData(order, data);
-            
-            // 更新订单状态为"已取消"
-            // 注意：如果订单已经完成，不改为取消（可能是送达后的问题）
-            if (order.getStatus() != null && 
-                !order.getStatus().equals(OrderStatusEnum.COMPLETED.getCode()) &&
-                !order.getStatus().equals(OrderStatusEnum.CANCELLED.getCode())) {
-                orderMapper.updateStatus(order.getId(), OrderStatusEnum.CANCELLED.getCode());
-                log.info("订单状态已更新为已取消，订单ID: {}", order.getId());
-            }
-            
-            // TODO: 处理取消逻辑
-            // 1. 检查是否可以退款（根据订单状态和取消原因）
-            // 2. 如果需要退款，调用退款服务
-            // 3. 发送通知给用户
-        } catch (Exception e) {
-            log.error("处理配送已取消事件失败，订单ID: {}", order.getId(), e);
-        }
-    }
-    
-    /**
-     * 处理配送失败事件
-     */
-    private void handleDeliveryFailed(Order order, String deliveryId, Map<String, Object> data) {
-        log.warn("配送订单失败，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
-        
-        try {
-            // 更新 additionalData
-            updateAdditionalData(order, data);
-            
-            // TODO: 处理失败逻辑
-            // 1. 检查是否可以重新分配或退款
-            // 2. 发送通知给用户和商家
-        } catch (Exception e) {
-            log.error("处理配送失败事件失败，订单ID: {}", order.getId(), e);
-        }
-    }
-    
-    /**
-     * 更新配送记录的 additionalData，保存 tracking_url、骑手信息、距离、ETA 等
-     */
-    private void updateAdditionalData(Order order, Map<String, Object> data) {
-        try {
-            // 获取配送记录
-            Delivery delivery = null;
-            if (order.getDeliveryId() != null && !order.getDeliveryId().isEmpty()) {
-                delivery = deliveryMapper.selectById(order.getDeliveryId());
-            }
-            if (delivery == null) {
-                delivery = deliveryMapper.selectByOrderId(order.getId());
-            }
-            if (delivery == null) {
-                log.warn("配送记录不存在，无法更新 additionalData，订单ID: {}", order.getId());
-                return;
-            }
-            
-            Map<String, Object> additionalData = new HashMap<>();
-            
-            // 如果配送记录已有 additionalData，先解析它
-            if (delivery.getAdditionalData() != null && !delivery.getAdditionalData().isEmpty()) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> existingData = objectMapper.readValue(
-                            delivery.getAdditionalData(), 
-                            Map.class
-                    );
-                    additionalData.putAll(existingData);
-                } catch (Exception e) {
-                    log.warn("解析现有 additionalData 失败，订单ID: {}", order.getId(), e);
-                }
-            }
-            
-            // 更新 deliveryInfo
-            Map<String, Object> deliveryInfo = (Map<String, Object>) additionalData.getOrDefault("deliveryInfo", new HashMap<>());
-            deliveryInfo.put("status", data.get("status"));
-            deliveryInfo.put("trackingUrl", data.get("tracking_url"));
-            
-            // 更新 Delivery 实体的 status 字段（将字符串状态转换为枚举）
-            String statusStr = (String) data.get("status");
-            if (statusStr != null && !statusStr.isEmpty()) {
-                com.jiaoyi.order.enums.DeliveryStatusEnum statusEnum = com.jiaoyi.order.enums.DeliveryStatusEnum.fromCode(statusStr);
-                if (statusEnum != null) {
-                    delivery.setStatus(statusEnum);
-                } else {
-                    log.warn("未知的配送状态: {}，订单ID: {}", statusStr, order.getId());
-                }
-            }
-            
-            // 距离信息
-            @SuppressWarnings("unchecked")
-            Map<String, Object> distanceInfo = (Map<String, Object>) data.get("distance");
-            if (distanceInfo != null) {
-                deliveryInfo.put("distanceMiles", distanceInfo.get("value"));
-            }
-            
-            // ETA
-            @SuppressWarnings("unchecked")
-            Map<String, Object> etaInfo = (Map<String, Object>) data.get("estimated_dropoff_time");
-            if (etaInfo != null) {
-                deliveryInfo.put("etaMinutes", etaInfo.get("estimated_minutes"));
-            }
-            
-            // 骑手信息
-            @SuppressWarnings("unchecked")
-            Map<String, Object> dasherInfo = (Map<String, Object>) data.get("dasher");
-            if (dasherInfo != null) {
-                Map<String, Object> dasher = new HashMap<>();
-                dasher.put("name", dasherInfo.get("name"));
-                dasher.put("phone", dasherInfo.get("phone"));
-                deliveryInfo.put("dasher", dasher);
-            }
-            
-            additionalData.put("deliveryInfo", deliveryInfo);
-            
-            // 保存更新后的 additionalData 到配送记录
-            String updatedAdditionalData = objectMapper.writeValueAsString(additionalData);
-            delivery.setAdditionalData(updatedAdditionalData);
-            deliveryMapper.update(delivery);
-            
-            log.info("配送记录 additionalData 更新成功，订单ID: {}, 配送ID: {}", order.getId(), delivery.getId());
-            
-        } catch (Exception e) {
-            log.error("更新配送记录 additionalData 失败，订单ID: {}", order.getId(), e);
+            return ResponseEntity.status(500).body("Webhook processing failed");
         }
     }
 }
-
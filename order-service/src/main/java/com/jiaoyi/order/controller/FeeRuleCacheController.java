@@ -0,0 +1,54 @@
+package com.jiaoyi.order.controller;
+
+import com.jiaoyi.order.service.MerchantFeeRuleCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 商户费用规则缓存管理 Controller
+ * 修改 merchant_fee_config 后如需立即生效（不等待版本核对周期），调用失效接口
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/fee-rules")
+@RequiredArgsConstructor
+public class FeeRuleCacheController {
+
+    private final MerchantFeeRuleCache merchantFeeRuleCache;
+
+    /**
+     * 获取规则缓存状态
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(merchantFeeRuleCache.getStatus());
+    }
+
+    /**
+     * 使指定商户的规则失效，下次计价时重新编译
+     */
+    @PostMapping("/{merchantId}/invalidate")
+    public ResponseEntity<Map<String, Object>> invalidate(@PathVariable String merchantId) {
+        merchantFeeRuleCache.invalidate(merchantId);
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("merchantId", merchantId);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 清空所有商户的规则
+     */
+    @PostMapping("/invalidate-all")
+    public ResponseEntity<Map<String, Object>> invalidateAll() {
+        merchantFeeRuleCache.invalidateAll();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        return ResponseEntity.ok(result);
+    }
+}
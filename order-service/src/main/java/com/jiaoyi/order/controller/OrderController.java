@@ -12,6 +12,7 @@ import com.jiaoyi.order.entity.Delivery;
 import com.jiaoyi.order.entity.OrderItem;
 import com.jiaoyi.order.service.OrderService;
 import com.jiaoyi.order.service.PaymentService;
+import com.jiaoyi.order.service.UserOrderHistoryService;
 import com.jiaoyi.order.service.DoorDashService;
 import com.jiaoyi.order.client.ProductServiceClient;
 import com.jiaoyi.order.mapper.DeliveryMapper;
@@ -46,6 +47,7 @@ public class OrderController {
     private final ProductServiceClient productServiceClient;
     private final DoorDashService doorDashService;
     private final DeliveryMapper deliveryMapper;
+    private final UserOrderHistoryService userOrderHistoryService;
     
     /**
      * 计算订单价格（预览价格，不创建订单）
@@ -78,7 +80,9 @@ public class OrderController {
         expireTime = 5,
         message = "请勿重复提交相同订单"
     )
-    @com.jiaoyi.order.annotation.RateLimit
+    @com.jiaoyi.order.annotation.RateLimit(policy = "order-create-user", key = "#user?.userId")
+    @com.jiaoyi.order.annotation.RateLimit(policy = "order-create-merchant", key = "#request.merchantId")
+    @com.jiaoyi.order.annotation.RateLimit(policy = "order-create")
     @RequirePermission(Permissions.ORDER_CREATE)
     public ResponseEntity<ApiResponse<CreateOrderResponse>> createOrder(@RequestBody CreateOrderRequest request) {
         log.info("创建在线点餐订单请求，userId: {}, paymentMethod: {}, payOnline: {}", 
@@ -189,7 +193,7 @@ public class OrderController {
             orderPrice.put("taxTotal", java.math.BigDecimal.ZERO);
             orderPrice.put("tips", java.math.BigDecimal.ZERO);
             orderPrice.put("total", subtotal); // 暂时总价等于小计，实际需要计算税费、配送费等
-            order.setOrderPrice(objectMapper.writeValueAsString(orderPrice));
+            order.setOrderPrice(com.jiaoyi.order.entity.OrderPrice.of(objectMapper.writeValueAsString(orderPrice)));
         } catch (Exception e) {
             log.warn("构建订单价格失败", e);
         }
@@ -450,6 +454,24 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success("查询成功", orders));
     }
     
+    /**
+     * 游标分页查询用户订单历史
+     * 首页不传 cursor，之后传上一页返回的 nextCursor；summary=true 时只返回索引摘要
+     */
+    @GetMapping("/user/{userId}/history")
+    @RequirePermission(Permissions.ORDER_VIEW)
+    public ResponseEntity<ApiResponse<UserOrderHistoryResponse>> getOrderHistory(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Integer status,
+            @RequestParam(defaultValue = "false") boolean summary) {
+        log.info("分页查询用户订单历史，userId: {}, cursor: {}, limit: {}, status: {}, summary: {}",
+                userId, cursor, limit, status, summary);
+        UserOrderHistoryResponse response = userOrderHistoryService.getOrderHistory(userId, cursor, limit, status, summary);
+        return ResponseEntity.ok(ApiResponse.success("查询成功", response));
+    }
+    
     /**
      * 根据merchantId和status查询订单
      */
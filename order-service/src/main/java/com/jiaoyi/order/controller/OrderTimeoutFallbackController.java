@@ -1,6 +1,7 @@
 package com.jiaoyi.order.controller;
 
 import com.jiaoyi.order.service.OrderTimeoutFallbackService;
+import com.jiaoyi.order.service.OrderTimeoutWheelService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +20,7 @@ import org.springframework.web.bind.annotation.*;
 public class OrderTimeoutFallbackController {
 
     private final OrderTimeoutFallbackService orderTimeoutFallbackService;
+    private final OrderTimeoutWheelService orderTimeoutWheelService;
 
     /**
      * 手动触发兜底检查
@@ -43,6 +45,14 @@ public class OrderTimeoutFallbackController {
         return orderTimeoutFallbackService.getFallbackStatus();
     }
 
+    /**
+     * 获取时间轮状态（持有分区、时间轮任务数）
+     */
+    @GetMapping("/wheel-status")
+    public String getWheelStatus() {
+        return orderTimeoutWheelService.getStatus();
+    }
+
     /**
      * 处理单个超时订单（用于测试）
      */
@@ -263,8 +263,8 @@ public class PaymentController {
      * 这种情况需要退款：订单已取消但支付成功了
      */
     private String handleCancelledOrderPayment(Order order, String outTradeNo) {
-        // 从 orderPrice JSON 中解析金额
-        java.math.BigDecimal amount = parseOrderPrice(order);
+        // 从 orderPrice 中读取金额
+        java.math.BigDecimal amount = com.jiaoyi.order.util.OrderPriceUtil.parseOrderTotal(order);
         log.warn("处理已取消订单的支付回调，订单号: {}, 订单ID: {}, 支付金额: {}", 
                 outTradeNo, order.getId(), amount);
         
@@ -315,29 +315,6 @@ public class PaymentController {
         }
     }
     
-    /**
-     * 从订单价格JSON中解析总金额
-     */
-    private java.math.BigDecimal parseOrderPrice(Order order) {
-        if (order.getOrderPrice() == null) {
-            return java.math.BigDecimal.ZERO;
-        }
-        try {
-            String orderPriceStr = order.getOrderPrice();
-            if (orderPriceStr.startsWith("{")) {
-                com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                java.util.Map<String, Object> orderPrice = mapper.readValue(orderPriceStr, java.util.Map.class);
-                Object totalObj = orderPrice.get("total");
-                if (totalObj != null) {
-                    return new java.math.BigDecimal(totalObj.toString());
-                }
-            }
-        } catch (Exception e) {
-            log.error("解析订单价格失败，订单ID: {}", order.getId(), e);
-        }
-        return java.math.BigDecimal.ZERO;
-    }
-    
     /**
      * 将 Payment 实体转换为 PaymentResponse
      */
@@ -0,0 +1,27 @@
+package com.jiaoyi.order.controller;
+
+import com.jiaoyi.order.service.RateLimitService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 接口限流监控 Controller
+ * 查看各限流策略的放行/限流次数、Redis 额度租用情况（当前实例）
+ */
+@RestController
+@RequestMapping("/api/admin/rate-limit")
+@RequiredArgsConstructor
+public class RateLimitController {
+
+    private final RateLimitService rateLimitService;
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(rateLimitService.getStatus());
+    }
+}
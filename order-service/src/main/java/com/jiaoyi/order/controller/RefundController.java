@@ -32,7 +32,8 @@ public class RefundController {
      * 权限：用户可以申请退款自己的订单，商家和管理员可以处理退款
      */
     @PostMapping
-    @com.jiaoyi.order.annotation.RateLimit
+    @com.jiaoyi.order.annotation.RateLimit(policy = "refund-create-user", key = "#user?.userId")
+    @com.jiaoyi.order.annotation.RateLimit(policy = "refund-create")
     @RequirePermission({Permissions.REFUND_APPLY, Permissions.REFUND_PROCESS, Permissions.REFUND_ADMIN})
     public ResponseEntity<ApiResponse<RefundResponse>> createRefund(@RequestBody RefundRequest request) {
         log.info("创建退款请求，订单ID: {}, 退款类型: {}, 请求号: {}", 
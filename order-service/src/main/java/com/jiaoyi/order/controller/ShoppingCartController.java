@@ -1,7 +1,10 @@
 package com.jiaoyi.order.controller;
 
 import com.jiaoyi.common.ApiResponse;
+import com.jiaoyi.order.dto.CalculatePriceRequest;
 import com.jiaoyi.order.entity.ShoppingCart;
+import com.jiaoyi.order.enums.OrderTypeEnum;
+import com.jiaoyi.order.service.OrderService;
 import com.jiaoyi.order.service.ShoppingCartService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +21,7 @@ import org.springframework.web.bind.annotation.*;
 public class ShoppingCartController {
 
     private final ShoppingCartService shoppingCartService;
+    private final OrderService orderService;
 
     /**
      * 获取购物车
@@ -116,5 +120,36 @@ public class ShoppingCartController {
 
         return ResponseEntity.ok(ApiResponse.success("合并成功", cart));
     }
-}
 
+    /**
+     * 设置购物车收货地址（外卖）
+     * 购物车本身不保存地址，这里按当前购物车金额异步预取 DoorDash 报价，结账算价时直接命中报价缓存
+     */
+    @PostMapping("/delivery-address")
+    public ResponseEntity<ApiResponse<Void>> setDeliveryAddress(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) Integer tableId,
+            @RequestParam Long storeId,
+            @RequestParam String merchantId,
+            @RequestParam(required = false) String receiverAddress,
+            @RequestParam(required = false) String zipCode,
+            @RequestParam(required = false) Double latitude,
+            @RequestParam(required = false) Double longitude) {
+        log.info("设置购物车收货地址，userId: {}, storeId: {}, 邮编: {}", userId, storeId, zipCode);
+
+        ShoppingCart cart = shoppingCartService.getCartByUser(userId, storeId, tableId);
+        if (cart != null && cart.getTotalAmount() != null) {
+            CalculatePriceRequest request = new CalculatePriceRequest();
+            request.setMerchantId(merchantId);
+            request.setUserId(userId);
+            request.setOrderType(OrderTypeEnum.DELIVERY.getCode());
+            request.setReceiverAddress(receiverAddress);
+            request.setZipCode(zipCode);
+            request.setLatitude(latitude);
+            request.setLongitude(longitude);
+            orderService.prefetchDeliveryQuote(request, cart.getTotalAmount());
+        }
+
+        return ResponseEntity.ok(ApiResponse.success("设置成功", null));
+    }
+}
@@ -41,7 +41,7 @@ public class OrderResponse {
         response.setUserId(order.getUserId());
         response.setStatus(order.getStatus()); // Integer 类型
         response.setOrderType(order.getOrderType() != null ? order.getOrderType().getCode() : null);
-        response.setOrderPrice(order.getOrderPrice());
+        response.setOrderPrice(order.getOrderPrice() != null ? order.getOrderPrice().toJson() : null);
         response.setNotes(order.getNotes());
         response.setCreateTime(order.getCreateTime());
         response.setUpdateTime(order.getUpdateTime());
@@ -0,0 +1,54 @@
+package com.jiaoyi.order.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 核销优惠券命令（用于 Outbox）
+ * Saga 下单流程中，优惠券核销从下单事务中移出，由 outbox 异步执行
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UseCouponCommand {
+
+    /**
+     * 订单ID
+     */
+    private Long orderId;
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 待核销的优惠券列表
+     */
+    private List<CouponItem> coupons;
+
+    /**
+     * 单张优惠券核销信息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CouponItem {
+
+        /**
+         * 优惠券代码
+         */
+        private String couponCode;
+
+        /**
+         * 优惠金额
+         */
+        private BigDecimal appliedAmount;
+    }
+}
@@ -0,0 +1,62 @@
+package com.jiaoyi.order.dto;
+
+import com.jiaoyi.common.exception.BusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 用户订单历史游标
+ * 按 (created_at DESC, order_id DESC) 排序，游标记录上一页最后一条的位置
+ * 对外以 Base64 URL-safe 字符串传递，客户端无需理解其结构
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserOrderHistoryCursor {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 上一页最后一条的创建时间
+     */
+    private LocalDateTime createdAt;
+
+    /**
+     * 上一页最后一条的订单ID（同一秒内多条订单时用来区分先后）
+     */
+    private Long orderId;
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = createdAt + SEPARATOR + orderId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串，为空时返回 null（表示从第一页开始）
+     */
+    public static UserOrderHistoryCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = raw.lastIndexOf(SEPARATOR);
+            if (index <= 0) {
+                throw new IllegalArgumentException("游标格式错误");
+            }
+            return new UserOrderHistoryCursor(
+                    LocalDateTime.parse(raw.substring(0, index)),
+                    Long.parseLong(raw.substring(index + 1)));
+        } catch (RuntimeException e) {
+            throw new BusinessException("无效的分页游标: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.jiaoyi.order.dto;
+
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.entity.UserOrderIndex;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 用户订单历史分页响应
+ * - summary=true：只返回索引表中的摘要（summaries），不查询订单分片
+ * - summary=false：返回订单详情（orders，含订单项）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserOrderHistoryResponse {
+
+    /**
+     * 订单摘要（仅摘要模式返回）
+     */
+    private List<UserOrderIndex> summaries;
+
+    /**
+     * 订单详情（仅详情模式返回）
+     */
+    private List<Order> orders;
+
+    /**
+     * 下一页游标，没有更多数据时为 null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+}
@@ -72,6 +72,21 @@ public class DoorDashWebhookLog {
      */
     private Integer retryCount;
     
+    /**
+     * 下次可处理时间（失败退避）
+     */
+    private LocalDateTime nextRetryTime;
+    
+    /**
+     * 持有处理权的实例
+     */
+    private String lockOwner;
+    
+    /**
+     * 处理权过期时间（实例宕机后由补偿扫描回收）
+     */
+    private LocalDateTime lockUntil;
+    
     /**
      * 处理时间
      */
@@ -63,8 +63,9 @@ public class Order {
     
     /**
      * 订单价格信息（JSON，包含 subtotal, discount, charge, deliveryFee, taxTotal, tips, total 等）
+     * 通过 OrderPriceTypeHandler 映射，字段首次访问时解析一次；对外序列化仍为原始 JSON 字符串
      */
-    private String orderPrice;
+    private OrderPrice orderPrice;
     
     /**
      * 客户信息（JSON）
@@ -0,0 +1,201 @@
+package com.jiaoyi.order.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.jiaoyi.order.util.PriceUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+
+/**
+ * 订单价格（orders.order_price 列的类型化值对象）
+ *
+ * 列中存的是 JSON（subtotal, discount, charge, deliveryFee, taxTotal, tips, total, priceSignature），
+ * 之前每读一个字段都要把整段 JSON 反序列化成 Map（退款、对账、支付验签各解析一遍）。现在：
+ * 1. 通过 {@link com.jiaoyi.order.handler.OrderPriceTypeHandler} 挂在 Order 上，从库里读出时只保存原始 JSON，不解析
+ * 2. 第一次访问任意字段时用流式 JsonParser 扫描一遍顶层字段，结果缓存在对象内，之后的访问都是字段读取
+ * 3. 对外序列化（接口返回、落库）仍是原始 JSON 字符串，与之前的 String 字段完全兼容
+ *
+ * 不可变：需要修改价格时构造新的 OrderPrice。所有金额统一保留 2 位小数（与 {@link PriceUtil#parse(String)} 一致），
+ * 字段缺失或 JSON 无法解析时返回 0
+ */
+@Slf4j
+public final class OrderPrice {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 原始 JSON
+     */
+    private final String json;
+
+    /**
+     * 解析结果（首次访问时解析，之后复用；并发下最多重复解析一次，结果相同）
+     */
+    private volatile Fields fields;
+
+    private OrderPrice(String json) {
+        this.json = json;
+    }
+
+    /**
+     * 包装原始 JSON（不解析）
+     *
+     * @return json 为空时返回 null
+     */
+    @JsonCreator
+    public static OrderPrice of(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        return new OrderPrice(json);
+    }
+
+    /**
+     * 原始 JSON（落库、接口返回、日志都使用它）
+     */
+    @JsonValue
+    public String toJson() {
+        return json;
+    }
+
+    public BigDecimal getSubtotal() {
+        return fields().subtotal;
+    }
+
+    public BigDecimal getDiscount() {
+        return fields().discount;
+    }
+
+    public BigDecimal getCharge() {
+        return fields().charge;
+    }
+
+    public BigDecimal getDeliveryFee() {
+        return fields().deliveryFee;
+    }
+
+    public BigDecimal getTaxTotal() {
+        return fields().taxTotal;
+    }
+
+    public BigDecimal getTips() {
+        return fields().tips;
+    }
+
+    public BigDecimal getTotal() {
+        return fields().total;
+    }
+
+    /**
+     * 下单时写入的价格签名（旧订单没有签名时返回 null）
+     */
+    public String getPriceSignature() {
+        return fields().priceSignature;
+    }
+
+    /**
+     * JSON 是否可以解析（格式错误时所有金额都是 0）
+     */
+    public boolean isValid() {
+        return fields().valid;
+    }
+
+    private Fields fields() {
+        Fields parsed = fields;
+        if (parsed == null) {
+            parsed = parse(json);
+            fields = parsed;
+        }
+        return parsed;
+    }
+
+    /**
+     * 流式扫描顶层字段，只取需要的金额和签名，嵌套对象/数组直接跳过
+     */
+    private static Fields parse(String json) {
+        Fields parsed = new Fields();
+        if (!json.startsWith("{")) {
+            return parsed;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return parsed;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (name) {
+                    case "subtotal":
+                        parsed.subtotal = PriceUtil.parse(parser.getText());
+                        break;
+                    case "discount":
+                        parsed.discount = PriceUtil.parse(parser.getText());
+                        break;
+                    case "charge":
+                        parsed.charge = PriceUtil.parse(parser.getText());
+                        break;
+                    case "deliveryFee":
+                        parsed.deliveryFee = PriceUtil.parse(parser.getText());
+                        break;
+                    case "taxTotal":
+                        parsed.taxTotal = PriceUtil.parse(parser.getText());
+                        break;
+                    case "tips":
+                        parsed.tips = PriceUtil.parse(parser.getText());
+                        break;
+                    case "total":
+                        parsed.total = PriceUtil.parse(parser.getText());
+                        break;
+                    case "priceSignature":
+                        parsed.priceSignature = parser.getText();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            parsed.valid = true;
+        } catch (Exception e) {
+            log.error("解析订单价格JSON失败，orderPriceJson: {}", json, e);
+            return new Fields();
+        }
+        return parsed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof OrderPrice other && json.equals(other.json));
+    }
+
+    @Override
+    public int hashCode() {
+        return json.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+
+    private static final class Fields {
+        private BigDecimal subtotal = BigDecimal.ZERO;
+        private BigDecimal discount = BigDecimal.ZERO;
+        private BigDecimal charge = BigDecimal.ZERO;
+        private BigDecimal deliveryFee = BigDecimal.ZERO;
+        private BigDecimal taxTotal = BigDecimal.ZERO;
+        private BigDecimal tips = BigDecimal.ZERO;
+        private BigDecimal total = BigDecimal.ZERO;
+        private String priceSignature;
+        private boolean valid;
+    }
+}
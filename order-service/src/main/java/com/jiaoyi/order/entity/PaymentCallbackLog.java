@@ -62,6 +62,11 @@ public class PaymentCallbackLog {
      */
     private String errorMessage;
     
+    /**
+     * 收到回调的次数（第三方重复推送时累加）
+     */
+    private Integer callbackCount;
+    
     /**
      * 处理时间
      */
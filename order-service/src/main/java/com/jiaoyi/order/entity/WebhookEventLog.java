@@ -49,10 +49,35 @@ public class WebhookEventLog {
     private Long orderId;
     
     /**
-     * 状态：RECEIVED-已接收，PROCESSED-已处理，FAILED-处理失败
+     * 状态：RECEIVED-已接收（待处理），PROCESSING-处理中，PROCESSED-已处理，FAILED-处理失败
      */
     private EventStatus status;
     
+    /**
+     * 原始事件报文（已验签，异步处理时据此重建事件；为空表示同步处理的事件，不参与异步调度）
+     */
+    private String payload;
+    
+    /**
+     * 已重试次数
+     */
+    private Integer retryCount;
+    
+    /**
+     * 下次可处理时间（失败退避）
+     */
+    private LocalDateTime nextRetryTime;
+    
+    /**
+     * 持有处理权的实例
+     */
+    private String lockOwner;
+    
+    /**
+     * 处理权过期时间（实例宕机后由补偿扫描回收）
+     */
+    private LocalDateTime lockUntil;
+    
     /**
      * 错误信息（处理失败时记录）
      */
@@ -73,6 +98,7 @@ public class WebhookEventLog {
      */
     public enum EventStatus {
         RECEIVED,   // 已接收
+        PROCESSING, // 处理中
         PROCESSED,  // 已处理
         FAILED      // 处理失败
     }
@@ -4,6 +4,11 @@ package com.jiaoyi.order.enums;
  * DoorDash Webhook 日志状态枚举
  */
 public enum DoorDashWebhookLogStatusEnum {
+    /**
+     * 已接收，待处理（含退避等待中）
+     */
+    PENDING("PENDING", "待处理"),
+    
     /**
      * 处理中
      */
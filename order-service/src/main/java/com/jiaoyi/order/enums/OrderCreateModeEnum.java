@@ -0,0 +1,48 @@
+package com.jiaoyi.order.enums;
+
+/**
+ * 下单流程模式枚举
+ * 用于在原有长事务流程和 Saga 流程之间切换（便于并行压测对比）
+ */
+public enum OrderCreateModeEnum {
+    /**
+     * 原有流程：整个下单过程（含远程扣库存、核销优惠券）在一个本地事务内
+     */
+    LEGACY("LEGACY", "长事务下单"),
+
+    /**
+     * Saga 流程：远程调用在事务外，本地短事务只做落库，失败时补偿
+     */
+    SAGA("SAGA", "Saga下单");
+
+    private final String code;
+    private final String description;
+
+    OrderCreateModeEnum(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 根据代码获取枚举
+     */
+    public static OrderCreateModeEnum fromCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        for (OrderCreateModeEnum mode : values()) {
+            if (mode.code.equalsIgnoreCase(code)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
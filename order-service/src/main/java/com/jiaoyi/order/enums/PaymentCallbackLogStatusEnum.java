@@ -17,7 +17,12 @@ public enum PaymentCallbackLogStatusEnum {
     /**
      * 处理失败
      */
-    FAILED("FAILED", "处理失败");
+    FAILED("FAILED", "处理失败"),
+    
+    /**
+     * 订单已超时并自动退款（终态，重投不再处理）
+     */
+    TIMEOUT_REFUNDED("TIMEOUT_REFUNDED", "超时已退款");
     
     private final String code;
     private final String description;
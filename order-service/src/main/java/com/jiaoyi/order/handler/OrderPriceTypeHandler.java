@@ -0,0 +1,40 @@
+package com.jiaoyi.order.handler;
+
+import com.jiaoyi.order.entity.OrderPrice;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * OrderPrice 类型处理器（orders.order_price JSON 列 <-> OrderPrice）
+ *
+ * 读取时只包装原始 JSON，字段在第一次访问时才解析
+ */
+@MappedTypes(OrderPrice.class)
+public class OrderPriceTypeHandler extends BaseTypeHandler<OrderPrice> {
+    
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, OrderPrice parameter, JdbcType jdbcType) throws SQLException {
+        ps.setString(i, parameter.toJson());
+    }
+    
+    @Override
+    public OrderPrice getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return OrderPrice.of(rs.getString(columnName));
+    }
+    
+    @Override
+    public OrderPrice getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return OrderPrice.of(rs.getString(columnIndex));
+    }
+    
+    @Override
+    public OrderPrice getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return OrderPrice.of(cs.getString(columnIndex));
+    }
+}
@@ -1,28 +1,48 @@
 package com.jiaoyi.order.interceptor;
 
+import com.jiaoyi.common.auth.AuthIdentity;
+import com.jiaoyi.common.auth.IdentityHeaderCodec;
+import com.jiaoyi.common.auth.JwtVerifier;
+import com.jiaoyi.common.auth.VerifiedTokenCache;
 import com.jiaoyi.order.annotation.RequireAuth;
 import com.jiaoyi.order.annotation.RequirePermission;
 import com.jiaoyi.order.security.UserContext;
 import com.jiaoyi.order.security.UserContextHolder;
 import com.jiaoyi.order.security.UserType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
  * 认证拦截器
  * 拦截所有请求，验证用户身份和权限
+ *
+ * 身份来源（按顺序）：
+ * 1. 网关签名的身份头 X-Auth-Identity（网关已验过 JWT，这里只验 HMAC）
+ * 2. 测试 token（auth.test-tokens-enabled=true 时，默认关闭，只在 dev profile 中开启）
+ * 3. JWT：先查已验证 token 缓存，未命中再验签并写入缓存
  */
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class AuthInterceptor implements HandlerInterceptor {
 
+    private final JwtVerifier jwtVerifier;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final IdentityHeaderCodec identityHeaderCodec;
+
+    @Value("${auth.test-tokens-enabled:false}")
+    private boolean testTokensEnabled;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         // 1. 只拦截Controller方法
@@ -40,24 +60,28 @@ public class AuthInterceptor implements HandlerInterceptor {
 
         // 3. 如果需要认证，解析token并验证
         if (requireAuth) {
-            String token = extractToken(request);
-
-            if (token == null || token.isEmpty()) {
-                log.warn("请求未携带token: {}", request.getRequestURI());
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                response.setContentType("application/json;charset=UTF-8");
-                response.getWriter().write("{\"code\":401,\"message\":\"未登录或登录已过期\"}");
-                return false;
-            }
+            UserContext userContext = fromIdentityHeader(request);
 
-            // 解析token并设置用户上下文
-            UserContext userContext = parseToken(token);
             if (userContext == null) {
-                log.warn("token无效: {}", token);
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                response.setContentType("application/json;charset=UTF-8");
-                response.getWriter().write("{\"code\":401,\"message\":\"token无效或已过期\"}");
-                return false;
+                String token = extractToken(request);
+
+                if (token == null || token.isEmpty()) {
+                    log.warn("请求未携带token: {}", request.getRequestURI());
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.setContentType("application/json;charset=UTF-8");
+                    response.getWriter().write("{\"code\":401,\"message\":\"未登录或登录已过期\"}");
+                    return false;
+                }
+
+                // 解析token并设置用户上下文
+                userContext = parseToken(token);
+                if (userContext == null) {
+                    log.warn("token无效: uri={}", request.getRequestURI());
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    response.setContentType("application/json;charset=UTF-8");
+                    response.getWriter().write("{\"code\":401,\"message\":\"token无效或已过期\"}");
+                    return false;
+                }
             }
 
             UserContextHolder.setContext(userContext);
@@ -137,51 +161,95 @@ public class AuthInterceptor implements HandlerInterceptor {
         return null;
     }
 
+    /**
+     * 网关签名的身份头（未配置共享密钥、签名错误或已过期时返回 null，继续走 token 校验）
+     */
+    private UserContext fromIdentityHeader(HttpServletRequest request) {
+        if (!identityHeaderCodec.isEnabled()) {
+            return null;
+        }
+        String header = request.getHeader(IdentityHeaderCodec.HEADER_NAME);
+        if (header == null || header.isEmpty()) {
+            return null;
+        }
+        return toUserContext(identityHeaderCodec.decode(header));
+    }
+
     /**
      * 解析token，获取用户信息
-     * TODO: 这里需要实现真实的JWT解析逻辑
-     *
-     * 示例实现：
-     * - 解析JWT token
-     * - 验证签名
-     * - 验证过期时间
-     * - 从token中提取用户信息
+     * 已验证的 token 缓存身份（按 token 哈希，过期时间不超过 token 的 exp），热路径上不重复验签
      */
     private UserContext parseToken(String token) {
         try {
-            // TODO: 实现JWT解析
-            // 这里是示例代码，实际应该使用JWT库（如jjwt）解析token
-
-            // 临时实现：允许测试token通过
-            if ("test-token-admin".equals(token)) {
-                // 管理员测试token
-                Set<String> permissions = new HashSet<>();
-                permissions.add("*"); // 所有权限
-                return new UserContext(1L, "admin", UserType.ADMIN, null, permissions);
-            } else if ("test-token-merchant".equals(token)) {
-                // 商家测试token
-                Set<String> permissions = new HashSet<>();
-                permissions.add("merchant:manage:orders");
-                permissions.add("merchant:manage:refunds");
-                permissions.add("refund:process");
-                permissions.add("refund:view");
-                return new UserContext(100L, "merchant1", UserType.MERCHANT, 1001L, permissions);
-            } else if ("test-token-customer".equals(token)) {
-                // 顾客测试token
-                Set<String> permissions = new HashSet<>();
-                permissions.add("order:view");
-                permissions.add("order:create");
-                permissions.add("refund:apply");
-                permissions.add("refund:view");
-                return new UserContext(1000L, "customer1", UserType.CUSTOMER, null, permissions);
+            if (testTokensEnabled) {
+                UserContext testContext = parseTestToken(token);
+                if (testContext != null) {
+                    return testContext;
+                }
             }
 
-            // TODO: 正式环境应该返回null或抛出异常
-            return null;
+            AuthIdentity identity = verifiedTokenCache.get(token);
+            if (identity == null) {
+                identity = jwtVerifier.verify(token);
+                if (identity == null) {
+                    return null;
+                }
+                verifiedTokenCache.put(token, identity);
+            }
+            return toUserContext(identity);
 
         } catch (Exception e) {
             log.error("解析token失败", e);
             return null;
         }
     }
+
+    private UserContext toUserContext(AuthIdentity identity) {
+        if (identity == null || identity.getUserId() == null) {
+            return null;
+        }
+        UserType userType;
+        try {
+            userType = identity.getUserType() == null
+                    ? UserType.CUSTOMER
+                    : UserType.valueOf(identity.getUserType().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("未知的用户类型: {}, userId={}", identity.getUserType(), identity.getUserId());
+            return null;
+        }
+        Set<String> permissions = identity.getPermissions() == null
+                ? Collections.emptySet()
+                : identity.getPermissions();
+        return new UserContext(identity.getUserId(), identity.getUsername(), userType,
+                identity.getMerchantId(), permissions);
+    }
+
+    /**
+     * 测试token（联调环境使用，生产环境通过 auth.test-tokens-enabled=false 关闭）
+     */
+    private UserContext parseTestToken(String token) {
+        if ("test-token-admin".equals(token)) {
+            // 管理员测试token
+            Set<String> permissions = new HashSet<>();
+            permissions.add("*"); // 所有权限
+            return new UserContext(1L, "admin", UserType.ADMIN, null, permissions);
+        } else if ("test-token-merchant".equals(token)) {
+            // 商家测试token
+            Set<String> permissions = new HashSet<>();
+            permissions.add("merchant:manage:orders");
+            permissions.add("merchant:manage:refunds");
+            permissions.add("refund:process");
+            permissions.add("refund:view");
+            return new UserContext(100L, "merchant1", UserType.MERCHANT, 1001L, permissions);
+        } else if ("test-token-customer".equals(token)) {
+            // 顾客测试token
+            Set<String> permissions = new HashSet<>();
+            permissions.add("order:view");
+            permissions.add("order:create");
+            permissions.add("refund:apply");
+            permissions.add("refund:view");
+            return new UserContext(1000L, "customer1", UserType.CUSTOMER, null, permissions);
+        }
+        return null;
+    }
 }
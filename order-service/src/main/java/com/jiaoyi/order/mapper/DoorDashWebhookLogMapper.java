@@ -4,6 +4,9 @@ import com.jiaoyi.order.entity.DoorDashWebhookLog;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 /**
  * DoorDash Webhook 事件日志 Mapper
  */
@@ -20,6 +23,11 @@ public interface DoorDashWebhookLogMapper {
      */
     DoorDashWebhookLog selectByEventId(@Param("eventId") String eventId);
     
+    /**
+     * 根据ID查询
+     */
+    DoorDashWebhookLog selectById(@Param("id") Long id);
+    
     /**
      * 更新处理状态
      */
@@ -28,5 +36,37 @@ public interface DoorDashWebhookLogMapper {
                      @Param("result") String result, 
                      @Param("errorMessage") String errorMessage,
                      @Param("retryCount") Integer retryCount);
+    
+    /**
+     * 抢占处理权（PENDING 且已到重试时间 -> PROCESSING），多实例/重复投递时只有一个成功
+     */
+    int claim(@Param("id") Long id,
+              @Param("lockOwner") String lockOwner,
+              @Param("lockUntil") LocalDateTime lockUntil,
+              @Param("now") LocalDateTime now);
+    
+    /**
+     * 处理失败，释放处理权并设置下次重试时间（PROCESSING -> PENDING）
+     */
+    int scheduleRetry(@Param("id") Long id,
+                      @Param("lockOwner") String lockOwner,
+                      @Param("retryCount") int retryCount,
+                      @Param("nextRetryTime") LocalDateTime nextRetryTime,
+                      @Param("errorMessage") String errorMessage);
+    
+    /**
+     * DoorDash 重新推送已失败的事件时重新入队（FAILED -> PENDING）
+     */
+    int requeueFailed(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    /**
+     * 查询到期未处理的事件
+     */
+    List<DoorDashWebhookLog> selectDueLogs(@Param("dueBefore") LocalDateTime dueBefore, @Param("limit") int limit);
+    
+    /**
+     * 回收处理权已过期的事件（PROCESSING -> PENDING）
+     */
+    int recoverStuck(@Param("now") LocalDateTime now);
 }
 
@@ -4,6 +4,8 @@ import com.jiaoyi.order.entity.MerchantFeeConfig;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * 商户费用配置 Mapper
  */
@@ -15,6 +17,16 @@ public interface MerchantFeeConfigMapper {
      */
     MerchantFeeConfig selectByMerchantId(@Param("merchantId") String merchantId);
 
+    /**
+     * 只查询配置版本号（规则缓存核对版本用，未配置时返回 null）
+     */
+    Long selectVersionByMerchantId(@Param("merchantId") String merchantId);
+
+    /**
+     * 查询配置了坐标和最大配送距离的商户（配送范围空间索引用，只返回定位相关字段）
+     */
+    List<MerchantFeeConfig> selectDeliveryLocations();
+
     /**
      * 插入配置
      */
@@ -4,6 +4,7 @@ import com.jiaoyi.order.entity.OrderItem;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -32,6 +33,13 @@ public interface OrderItemMapper {
      */
     List<OrderItem> selectByMerchantIdAndOrderId(@Param("merchantId") String merchantId, @Param("orderId") Long orderId);
     
+    /**
+     * 根据多个 storeId 和订单ID列表批量查询订单项（一次 IN 查询，替代逐单查询）
+     * 调用方需保证 storeIds 落在同一个物理分片
+     */
+    List<OrderItem> selectByStoreIdsAndOrderIds(@Param("storeIds") Collection<Long> storeIds,
+                                                @Param("orderIds") Collection<Long> orderIds);
+    
     /**
      * 根据商品ID查询订单项列表（用于库存锁定）
      */
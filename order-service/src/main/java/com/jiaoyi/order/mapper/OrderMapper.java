@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -28,6 +29,11 @@ public interface OrderMapper {
      */
     Order selectByIdForUpdate(@Param("id") Long id);
     
+    /**
+     * 根据 storeId 和 id 查询订单（带分片键，历史ID也能精准路由）
+     */
+    Order selectByStoreIdAndId(@Param("storeId") Long storeId, @Param("id") Long id);
+    
     /**
      * 根据merchantId和id查询订单（在线点餐，包含分片键）
      */
@@ -59,6 +65,17 @@ public interface OrderMapper {
     List<Order> selectByStoreIdAndOrderIds(@Param("storeId") Long storeId,
                                            @Param("orderIds") List<Long> orderIds);
     
+    /**
+     * 根据多个 storeId 和订单ID列表批量查询订单
+     * 调用方需保证 storeIds 落在同一个物理分片，ShardingSphere 才能只路由到一张表
+     *
+     * @param storeIds 商户ID列表（分片键）
+     * @param orderIds 订单ID列表
+     * @return 订单列表
+     */
+    List<Order> selectByStoreIdsAndOrderIds(@Param("storeIds") Collection<Long> storeIds,
+                                            @Param("orderIds") Collection<Long> orderIds);
+    
     /**
      * 根据merchantId和status查询订单
      */
@@ -93,6 +110,21 @@ public interface OrderMapper {
      */
     int updateStatusIfPending(@Param("id") Long id, @Param("oldStatus") Integer oldStatus, @Param("newStatus") Integer newStatus);
     
+    /**
+     * 条件更新订单状态（带 store_id，精准路由，避免广播）
+     */
+    int updateStatusIfPendingByStoreId(@Param("storeId") Long storeId, @Param("id") Long id,
+                                       @Param("oldStatus") Integer oldStatus, @Param("newStatus") Integer newStatus);
+    
+    /**
+     * 批量条件更新订单状态（超时批量取消）
+     * 调用方需保证 storeIds 落在同一个物理库；返回的行数小于订单数说明部分订单状态已变更
+     */
+    int batchUpdateStatusIfPending(@Param("storeIds") Collection<Long> storeIds,
+                                   @Param("orderIds") Collection<Long> orderIds,
+                                   @Param("oldStatus") Integer oldStatus,
+                                   @Param("newStatus") Integer newStatus);
+    
     /**
      * 删除订单（逻辑删除，在线点餐）
      */
@@ -15,6 +15,21 @@ public interface PaymentCallbackLogMapper {
      */
     int insert(PaymentCallbackLog log);
     
+    /**
+     * 抢占回调处理权（INSERT ... ON DUPLICATE KEY UPDATE，基于 third_party_trade_no 唯一键）
+     * 不存在时插入 PROCESSING 记录；已存在时只累加 callback_count
+     *
+     * @return 1 表示新插入（本次回调获得处理权，id 回填到 log）；2 表示记录已存在，需要查询状态决定是否重试
+     */
+    int claim(PaymentCallbackLog log);
+    
+    /**
+     * 重新抢占之前处理失败的回调（FAILED -> PROCESSING）
+     *
+     * @return 1 表示抢占成功
+     */
+    int reclaimFailed(@Param("id") Long id);
+    
     /**
      * 根据第三方交易号查询（用于幂等性检查）
      */
@@ -27,5 +42,14 @@ public interface PaymentCallbackLogMapper {
                      @Param("status") com.jiaoyi.order.enums.PaymentCallbackLogStatusEnum status, 
                      @Param("result") String result, 
                      @Param("errorMessage") String errorMessage);
+    
+    /**
+     * 更新处理结果，同时补齐支付ID（抢占时可能还不知道支付ID）
+     */
+    int complete(@Param("id") Long id,
+                 @Param("status") com.jiaoyi.order.enums.PaymentCallbackLogStatusEnum status,
+                 @Param("paymentId") Long paymentId,
+                 @Param("result") String result,
+                 @Param("errorMessage") String errorMessage);
 }
 
@@ -34,6 +34,17 @@ public interface PaymentMapper {
      */
     List<Payment> selectByOrderId(@Param("orderId") Long orderId);
     
+    /**
+     * 根据 storeId 和支付ID查询支付记录（带分片键，精准路由）
+     */
+    Payment selectByStoreIdAndId(@Param("storeId") Long storeId, @Param("id") Long id);
+    
+    /**
+     * 根据 storeId 和订单ID查询指定类型的支付记录（带分片键，最新一条）
+     */
+    Payment selectChargeByStoreIdAndOrderId(@Param("storeId") Long storeId, @Param("orderId") Long orderId,
+                                            @Param("type") Integer type);
+    
     /**
      * 根据第三方交易号查询支付记录
      */
@@ -54,6 +65,13 @@ public interface PaymentMapper {
      */
     int updateStatusIfPending(@Param("id") Long id, @Param("oldStatus") Integer oldStatus, @Param("newStatus") Integer newStatus, @Param("thirdPartyTradeNo") String thirdPartyTradeNo);
     
+    /**
+     * 更新支付状态（原子操作，带 store_id 精准路由）
+     */
+    int updateStatusIfPendingByStoreId(@Param("storeId") Long storeId, @Param("id") Long id,
+                                       @Param("oldStatus") Integer oldStatus, @Param("newStatus") Integer newStatus,
+                                       @Param("thirdPartyTradeNo") String thirdPartyTradeNo);
+    
     /**
      * 更新 Payment Intent ID
      */
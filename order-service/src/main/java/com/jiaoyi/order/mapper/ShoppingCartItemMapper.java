@@ -22,6 +22,11 @@ public interface ShoppingCartItemMapper {
      */
     int insertBatch(@Param("items") List<ShoppingCartItem> items);
     
+    /**
+     * 按指定ID批量插入购物车项（Redis 购物车异步落库）
+     */
+    int insertBatchWithId(@Param("items") List<ShoppingCartItem> items);
+    
     /**
      * 根据ID查询购物车项
      */
@@ -64,6 +69,11 @@ public interface ShoppingCartItemMapper {
      */
     int deleteByCartId(@Param("cartId") Long cartId);
     
+    /**
+     * 批量删除多个购物车的所有购物车项
+     */
+    int deleteByCartIds(@Param("cartIds") List<Long> cartIds);
+    
     /**
      * 根据购物车ID和商品ID删除购物车项
      */
@@ -53,11 +53,26 @@ public interface ShoppingCartMapper {
                     @Param("totalQuantity") Integer totalQuantity,
                     @Param("version") Long version);
     
+    /**
+     * 按指定ID写入或覆盖购物车（Redis 购物车异步落库）
+     */
+    int upsert(ShoppingCart cart);
+    
+    /**
+     * 按指定ID批量写入或覆盖购物车（Redis 购物车异步落库，一批购物车一条语句）
+     */
+    int upsertBatch(@Param("carts") List<ShoppingCart> carts);
+    
     /**
      * 删除购物车
      */
     int deleteById(@Param("id") Long id);
     
+    /**
+     * 批量删除购物车
+     */
+    int deleteByIds(@Param("ids") List<Long> ids);
+    
     /**
      * 删除过期购物车
      */
@@ -4,6 +4,8 @@ import com.jiaoyi.order.entity.UserOrderIndex;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -51,6 +53,23 @@ public interface UserOrderIndexMapper {
                                                  @Param("offset") Integer offset,
                                                  @Param("limit") Integer limit);
 
+    /**
+     * 根据用户ID按游标分页查询订单索引（按 created_at DESC, order_id DESC）
+     * 只查询覆盖索引 idx_userid_created_cover 中的列，不回表
+     *
+     * @param userId          用户ID（分片键）
+     * @param orderStatus     订单状态（可选，为 null 时不过滤）
+     * @param cursorCreatedAt 游标创建时间（为 null 时从第一页开始）
+     * @param cursorOrderId   游标订单ID
+     * @param limit           每页数量
+     * @return 索引列表
+     */
+    List<UserOrderIndex> selectByUserIdAfterCursor(@Param("userId") Long userId,
+                                                    @Param("orderStatus") Integer orderStatus,
+                                                    @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                                    @Param("cursorOrderId") Long cursorOrderId,
+                                                    @Param("limit") Integer limit);
+
     /**
      * 更新订单状态（当订单状态变化时，同步更新索引表）
      *
@@ -88,4 +107,23 @@ public interface UserOrderIndexMapper {
      * @return 影响行数
      */
     int batchInsert(@Param("indexes") List<UserOrderIndex> indexes);
+
+    /**
+     * 批量插入索引记录（忽略已存在的记录，用于补偿任务，避免与下单并发写入冲突）
+     *
+     * @param indexes 索引列表
+     * @return 实际插入行数
+     */
+    int batchInsertIgnore(@Param("indexes") List<UserOrderIndex> indexes);
+
+    /**
+     * 批量查询已存在索引的订单ID（补偿任务反连接用）
+     * 带 user_id 条件，ShardingSphere 只路由到这些用户所在的分表
+     *
+     * @param userIds  用户ID列表（分片键）
+     * @param orderIds 订单ID列表
+     * @return 已存在索引的订单ID
+     */
+    List<Long> selectExistingOrderIds(@Param("userIds") Collection<Long> userIds,
+                                      @Param("orderIds") Collection<Long> orderIds);
 }
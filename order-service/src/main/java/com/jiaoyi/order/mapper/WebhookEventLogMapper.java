@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Webhook 事件日志 Mapper
@@ -34,6 +35,40 @@ public interface WebhookEventLogMapper {
     int updateStatusToFailed(@Param("eventId") String eventId, 
                              @Param("errorMessage") String errorMessage,
                              @Param("processedAt") LocalDateTime processedAt);
+    
+    /**
+     * 抢占处理权（RECEIVED 且已到重试时间 -> PROCESSING），多实例/重复投递时只有一个成功
+     */
+    int claim(@Param("eventId") String eventId,
+              @Param("lockOwner") String lockOwner,
+              @Param("lockUntil") LocalDateTime lockUntil,
+              @Param("now") LocalDateTime now);
+    
+    /**
+     * 持有处理权时标记为已处理（处理过程中已被标记为 PROCESSED/FAILED 的不覆盖）
+     */
+    int markProcessedIfClaimed(@Param("eventId") String eventId,
+                               @Param("lockOwner") String lockOwner,
+                               @Param("processedAt") LocalDateTime processedAt);
+    
+    /**
+     * 处理失败，释放处理权并设置下次重试时间（PROCESSING -> RECEIVED）
+     */
+    int scheduleRetry(@Param("eventId") String eventId,
+                      @Param("lockOwner") String lockOwner,
+                      @Param("retryCount") int retryCount,
+                      @Param("nextRetryTime") LocalDateTime nextRetryTime,
+                      @Param("errorMessage") String errorMessage);
+    
+    /**
+     * 查询到期未处理的异步事件（只包含带 payload 的事件）
+     */
+    List<WebhookEventLog> selectDueEvents(@Param("dueBefore") LocalDateTime dueBefore, @Param("limit") int limit);
+    
+    /**
+     * 回收处理权已过期的事件（PROCESSING -> RECEIVED）
+     */
+    int recoverStuck(@Param("now") LocalDateTime now);
 }
 
 
@@ -1,10 +1,8 @@
 package com.jiaoyi.order.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.common.exception.BusinessException;
 import com.jiaoyi.order.entity.MerchantFeeConfig;
 import com.jiaoyi.order.enums.DeliveryFeeTypeEnum;
-import com.jiaoyi.order.mapper.MerchantFeeConfigMapper;
 import com.jiaoyi.order.service.GoogleMapsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,9 +11,6 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.Map;
 
 /**
  * 配送规则检查服务
@@ -27,9 +22,8 @@ import java.util.Map;
 @Slf4j
 public class DeliveryRuleService {
     
-    private final MerchantFeeConfigMapper merchantFeeConfigMapper;
+    private final MerchantFeeRuleCache merchantFeeRuleCache;
     private final GoogleMapsService googleMapsService;
-    private final ObjectMapper objectMapper;
     
     /**
      * 检查配送地址是否符合商家基础规则
@@ -51,15 +45,16 @@ public class DeliveryRuleService {
         log.info("检查配送规则，商户ID: {}, 客户坐标: ({}, {}), 邮编: {}, 订单时间: {}", 
                 merchantId, customerLatitude, customerLongitude, zipCode, orderTime);
         
-        // 1. 获取商户费用配置
-        MerchantFeeConfig config = merchantFeeConfigMapper.selectByMerchantId(merchantId);
+        // 1. 获取商户费用规则（已编译缓存）
+        MerchantFeeRules rules = merchantFeeRuleCache.get(merchantId);
+        MerchantFeeConfig config = rules.getConfig();
         if (config == null) {
             log.warn("商户 {} 未配置费用信息，跳过配送规则检查", merchantId);
             return; // 未配置则跳过检查
         }
         
         // 2. 检查配送时段
-        checkDeliveryTimeSlot(config, orderTime);
+        checkDeliveryTimeSlot(rules, orderTime);
         
         // 3. 检查配送距离或邮编区域
         DeliveryFeeTypeEnum deliveryFeeType = config.getDeliveryFeeType();
@@ -69,7 +64,7 @@ public class DeliveryRuleService {
         
         if (DeliveryFeeTypeEnum.ZONE_RATE.equals(deliveryFeeType)) {
             // 按邮编区域检查
-            checkZipCodeZone(config, zipCode);
+            checkZipCodeZone(rules, zipCode);
         } else if (DeliveryFeeTypeEnum.VARIABLE_RATE.equals(deliveryFeeType)) {
             // 按距离检查
             checkDeliveryDistance(config, customerLatitude, customerLongitude);
@@ -85,134 +80,76 @@ public class DeliveryRuleService {
     }
     
     /**
-     * 检查配送时段
+     * 检查配送时段（时段已在编译规则时解析成分钟位图）
      */
-    private void checkDeliveryTimeSlot(MerchantFeeConfig config, java.time.LocalDateTime orderTime) {
-        String deliveryTimeSlots = config.getDeliveryTimeSlots();
-        if (deliveryTimeSlots == null || deliveryTimeSlots.isEmpty()) {
+    private void checkDeliveryTimeSlot(MerchantFeeRules rules, java.time.LocalDateTime orderTime) {
+        if (!rules.isTimeSlotsConfigured()) {
             // 未配置时段，表示全天可配送
             return;
         }
-        
-        try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> timeSlots = objectMapper.readValue(deliveryTimeSlots, Map.class);
-            
-            // 获取当前星期几
-            DayOfWeek dayOfWeek = orderTime.getDayOfWeek();
-            String dayKey = dayOfWeek.name().toLowerCase(); // monday, tuesday, etc.
-            
-            // 检查是否有每日统一配置
-            @SuppressWarnings("unchecked")
-            Map<String, Object> dailySlot = (Map<String, Object>) timeSlots.get("daily");
-            if (dailySlot != null) {
-                checkTimeSlot(dailySlot, orderTime.toLocalTime(), dayKey);
-                return;
-            }
-            
-            // 检查是否有特定日期的配置
-            @SuppressWarnings("unchecked")
-            Map<String, Object> daySlot = (Map<String, Object>) timeSlots.get(dayKey);
-            if (daySlot != null) {
-                checkTimeSlot(daySlot, orderTime.toLocalTime(), dayKey);
-                return;
-            }
-            
-            // 如果配置了时段但没有当前日期的配置，默认不允许配送
-            log.warn("商户 {} 配置了配送时段，但 {} 未配置，不允许配送", config.getMerchantId(), dayKey);
-            throw new BusinessException("当前时段不在配送时间内");
-            
-        } catch (BusinessException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("解析配送时段配置失败，商户ID: {}", config.getMerchantId(), e);
+        if (rules.getTimeSlotsError() != null) {
             // 解析失败时，为了安全起见，不允许配送
             throw new BusinessException("配送时段配置错误，无法配送");
         }
-    }
-    
-    /**
-     * 检查单个时段配置
-     */
-    private void checkTimeSlot(Map<String, Object> slot, LocalTime orderTime, String dayKey) {
-        String startTimeStr = (String) slot.get("start");
-        String endTimeStr = (String) slot.get("end");
-        
-        if (startTimeStr == null || endTimeStr == null) {
-            log.warn("时段配置缺少 start 或 end，day: {}", dayKey);
-            throw new BusinessException("配送时段配置不完整");
+
+        // 获取当前星期几（有 daily 统一配置时每天都是同一时段）
+        DayOfWeek dayOfWeek = orderTime.getDayOfWeek();
+        MerchantFeeRules.DaySlot slot = rules.daySlot(dayOfWeek);
+        if (slot == null) {
+            // 如果配置了时段但没有当前日期的配置，默认不允许配送
+            log.warn("商户 {} 配置了配送时段，但 {} 未配置，不允许配送",
+                    rules.getConfig().getMerchantId(), dayOfWeek.name().toLowerCase());
+            throw new BusinessException("当前时段不在配送时间内");
         }
-        
-        try {
-            LocalTime startTime = LocalTime.parse(startTimeStr, DateTimeFormatter.ofPattern("HH:mm"));
-            LocalTime endTime = LocalTime.parse(endTimeStr, DateTimeFormatter.ofPattern("HH:mm"));
-            
-            // 检查订单时间是否在配送时段内
-            if (orderTime.isBefore(startTime) || orderTime.isAfter(endTime)) {
-                log.warn("订单时间 {} 不在配送时段内 ({}-{})", orderTime, startTime, endTime);
-                throw new BusinessException("当前时段不在配送时间内，配送时间: " + startTimeStr + "-" + endTimeStr);
-            }
-            
-        } catch (Exception e) {
-            if (e instanceof BusinessException) {
-                throw e;
-            }
-            log.error("解析时段失败，start: {}, end: {}", startTimeStr, endTimeStr, e);
-            throw new BusinessException("配送时段格式错误");
+        if (slot.getError() != null) {
+            throw new BusinessException(slot.getError());
+        }
+
+        // 检查订单时间是否在配送时段内
+        LocalTime time = orderTime.toLocalTime();
+        if (!slot.contains(time)) {
+            log.warn("订单时间 {} 不在配送时段内 ({}-{})", time, slot.getStart(), slot.getEnd());
+            throw new BusinessException("当前时段不在配送时间内，配送时间: " + slot.getStart() + "-" + slot.getEnd());
         }
     }
-    
+
     /**
      * 检查邮编区域
      */
-    private void checkZipCodeZone(MerchantFeeConfig config, String zipCode) {
+    private void checkZipCodeZone(MerchantFeeRules rules, String zipCode) {
         if (zipCode == null || zipCode.isEmpty()) {
             log.warn("订单未提供邮编，无法检查邮编区域");
             throw new BusinessException("配送地址缺少邮编信息");
         }
-        
-        String deliveryZoneRate = config.getDeliveryZoneRate();
-        if (deliveryZoneRate == null || deliveryZoneRate.isEmpty()) {
+
+        if (!rules.isZoneRateConfigured()) {
             // 未配置邮编区域，允许配送
             return;
         }
-        
-        try {
-            // 处理邮编格式（可能包含 "-"，只取前5位）
-            String normalizedZipCode = zipCode;
-            if (zipCode.contains("-")) {
-                normalizedZipCode = zipCode.split("-")[0];
-            }
-            
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> zoneRates = objectMapper.readValue(deliveryZoneRate, List.class);
-            if (zoneRates == null || zoneRates.isEmpty()) {
-                // 配置为空，允许配送
-                return;
-            }
-            
-            // 查找匹配的邮编区域
-            for (Map<String, Object> zoneRate : zoneRates) {
-                @SuppressWarnings("unchecked")
-                List<String> zipcodes = (List<String>) zoneRate.get("zipcodes");
-                if (zipcodes != null && zipcodes.contains(normalizedZipCode)) {
-                    log.debug("邮编 {} 在配送区域内", normalizedZipCode);
-                    return; // 找到匹配的区域
-                }
-            }
-            
-            // 如果邮编不在任何区域，拒绝配送
-            log.warn("邮编 {} 不在任何配送区域内", normalizedZipCode);
-            throw new BusinessException("该邮编不在配送范围内");
-            
-        } catch (BusinessException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("解析邮编区域配置失败，商户ID: {}", config.getMerchantId(), e);
+        if (rules.getZoneRateError() != null) {
             throw new BusinessException("配送区域配置错误");
         }
+        if (rules.isZoneRateEmpty()) {
+            // 配置为空，允许配送
+            return;
+        }
+
+        // 处理邮编格式（可能包含 "-"，只取前5位）
+        String normalizedZipCode = zipCode;
+        if (zipCode.contains("-")) {
+            normalizedZipCode = zipCode.split("-")[0];
+        }
+
+        if (rules.getZoneZipCodes().contains(normalizedZipCode)) {
+            log.debug("邮编 {} 在配送区域内", normalizedZipCode);
+            return; // 找到匹配的区域
+        }
+
+        // 如果邮编不在任何区域，拒绝配送
+        log.warn("邮编 {} 不在任何配送区域内", normalizedZipCode);
+        throw new BusinessException("该邮编不在配送范围内");
     }
-    
+
     /**
      * 检查配送距离
      */
@@ -250,19 +187,3 @@ public class DeliveryRuleService {
         log.debug("配送距离检查通过，距离: {} 米", distanceMeter);
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
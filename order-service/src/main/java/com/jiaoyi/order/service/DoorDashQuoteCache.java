@@ -0,0 +1,239 @@
+package com.jiaoyi.order.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jiaoyi.order.util.GeoHash;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DoorDash 报价缓存（算价阶段使用）
+ *
+ * 结账页每次刷新价格都会调用 DoorDash 报价 API，这里按 (商户, 收货地址 GeoHash, 时间桶, 订单金额) 缓存报价：
+ * - 报价在 expiresAt 前 safety-seconds 失效，不会把快过期的报价给用户
+ * - 时间桶（bucket-seconds）作为键的一部分，同一地址的报价最多复用一个时间桶，避免长期使用旧价格
+ * - 并发的相同报价请求只调用一次 API（single-flight），其他请求等待同一个结果
+ * - 用户设置购物车收货地址时异步预取报价，结账算价时直接命中缓存
+ *
+ * 只用于算价（临时 external_delivery_id）；支付后接受报价仍由 {@link DoorDashService#quoteDelivery} 实时获取
+ */
+@Service
+@Slf4j
+public class DoorDashQuoteCache {
+
+    /**
+     * 收货地址 GeoHash 精度（7 位约 150m x 150m）
+     */
+    private static final int DROPOFF_GEOHASH_PRECISION = 7;
+
+    private final DoorDashService doorDashService;
+    private final Cache<String, DoorDashService.DoorDashQuoteResponse> quotes;
+    private final Map<String, CompletableFuture<DoorDashService.DoorDashQuoteResponse>> inflight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    private final long bucketSeconds;
+    private final long safetySeconds;
+    private final long waitMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder prefetches = new LongAdder();
+
+    public DoorDashQuoteCache(DoorDashService doorDashService,
+                              @Value("${doordash.quote-cache.bucket-seconds:300}") long bucketSeconds,
+                              @Value("${doordash.quote-cache.safety-seconds:60}") long safetySeconds,
+                              @Value("${doordash.quote-cache.wait-millis:5000}") long waitMillis,
+                              @Value("${doordash.quote-cache.max-size:50000}") long maxSize,
+                              @Value("${doordash.quote-cache.prefetch-threads:4}") int prefetchThreads,
+                              @Value("${doordash.quote-cache.prefetch-queue-capacity:1000}") int prefetchQueueCapacity) {
+        this.doorDashService = doorDashService;
+        this.bucketSeconds = Math.max(bucketSeconds, 1);
+        this.safetySeconds = Math.max(safetySeconds, 0);
+        this.waitMillis = Math.max(waitMillis, 1);
+        this.quotes = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxSize, 1))
+                .expireAfterWrite(this.bucketSeconds * 2, TimeUnit.SECONDS)
+                .build();
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        // 预取是尽力而为：队列满时直接丢弃，不占用请求线程
+        this.prefetchExecutor = new ThreadPoolExecutor(
+                Math.max(prefetchThreads, 1),
+                Math.max(prefetchThreads, 1),
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(prefetchQueueCapacity, 1)),
+                r -> {
+                    Thread thread = new Thread(r, "doordash-quote-prefetch-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 获取报价（优先使用缓存）
+     *
+     * @param merchantId 商户ID（取货方）
+     * @param pickupAddress 商户地址
+     * @param dropoffAddress 用户地址（有 lat/lng 时按 GeoHash 归并相邻地址）
+     * @param orderValue 订单金额
+     */
+    public DoorDashService.DoorDashQuoteResponse getQuote(String merchantId,
+                                                          Map<String, Object> pickupAddress,
+                                                          Map<String, Object> dropoffAddress,
+                                                          BigDecimal orderValue) {
+        String key = cacheKey(merchantId, dropoffAddress, orderValue);
+        DoorDashService.DoorDashQuoteResponse cached = quotes.getIfPresent(key);
+        if (isUsable(cached)) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return load(key, pickupAddress, dropoffAddress, orderValue);
+    }
+
+    /**
+     * 异步预取报价（设置收货地址时调用），失败只记录日志
+     */
+    public void prefetch(String merchantId,
+                         Map<String, Object> pickupAddress,
+                         Map<String, Object> dropoffAddress,
+                         BigDecimal orderValue) {
+        String key = cacheKey(merchantId, dropoffAddress, orderValue);
+        if (isUsable(quotes.getIfPresent(key)) || inflight.containsKey(key)) {
+            return;
+        }
+        prefetches.increment();
+        prefetchExecutor.execute(() -> {
+            try {
+                load(key, pickupAddress, dropoffAddress, orderValue);
+            } catch (Exception e) {
+                log.warn("预取 DoorDash 报价失败，商户ID: {}, 原因: {}", merchantId, e.getMessage());
+            }
+        });
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("size", quotes.size());
+        status.put("inflight", inflight.size());
+        status.put("hits", hits.sum());
+        status.put("misses", misses.sum());
+        status.put("coalesced", coalesced.sum());
+        status.put("prefetches", prefetches.sum());
+        status.put("prefetchQueue", prefetchExecutor.getQueue().size());
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * 调用报价 API（同一键同一时间只有一个线程调用，其他线程等待结果）
+     */
+    private DoorDashService.DoorDashQuoteResponse load(String key,
+                                                       Map<String, Object> pickupAddress,
+                                                       Map<String, Object> dropoffAddress,
+                                                       BigDecimal orderValue) {
+        CompletableFuture<DoorDashService.DoorDashQuoteResponse> mine = new CompletableFuture<>();
+        CompletableFuture<DoorDashService.DoorDashQuoteResponse> existing = inflight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+        try {
+            // 拿到 inflight 之前可能已有线程写入缓存，再检查一次
+            DoorDashService.DoorDashQuoteResponse cached = quotes.getIfPresent(key);
+            if (isUsable(cached)) {
+                mine.complete(cached);
+                return cached;
+            }
+            // 算价阶段订单尚未创建，使用临时 external_delivery_id
+            String externalDeliveryId = "order_temp_" + System.currentTimeMillis();
+            DoorDashService.DoorDashQuoteResponse quote = doorDashService.quoteDelivery(
+                    externalDeliveryId, pickupAddress, dropoffAddress, orderValue);
+            if (isUsable(quote)) {
+                quotes.put(key, quote);
+            }
+            mine.complete(quote);
+            return quote;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    private DoorDashService.DoorDashQuoteResponse await(CompletableFuture<DoorDashService.DoorDashQuoteResponse> future) {
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待 DoorDash 报价被中断", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待 DoorDash 报价超时", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("获取 DoorDash 配送报价失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 报价是否可用（有费用且距离过期还有 safety-seconds 以上）
+     */
+    private boolean isUsable(DoorDashService.DoorDashQuoteResponse quote) {
+        if (quote == null || quote.getQuotedFee() == null) {
+            return false;
+        }
+        LocalDateTime expiresAt = quote.getExpiresAt();
+        return expiresAt == null || LocalDateTime.now().plusSeconds(safetySeconds).isBefore(expiresAt);
+    }
+
+    private String cacheKey(String merchantId, Map<String, Object> dropoffAddress, BigDecimal orderValue) {
+        long bucket = System.currentTimeMillis() / 1000 / bucketSeconds;
+        String value = orderValue != null ? orderValue.stripTrailingZeros().toPlainString() : "";
+        return merchantId + "|" + dropoffKey(dropoffAddress) + "|" + bucket + "|" + value;
+    }
+
+    /**
+     * 收货地址键：有坐标时用 GeoHash（相邻地址共用报价），否则用规范化的地址和邮编
+     */
+    private String dropoffKey(Map<String, Object> dropoffAddress) {
+        if (dropoffAddress == null) {
+            return "";
+        }
+        Object lat = dropoffAddress.get("lat");
+        Object lng = dropoffAddress.get("lng");
+        if (lat instanceof Number latitude && lng instanceof Number longitude) {
+            return "g:" + GeoHash.encode(latitude.doubleValue(), longitude.doubleValue(), DROPOFF_GEOHASH_PRECISION);
+        }
+        Object street = dropoffAddress.get("street_address");
+        Object zipCode = dropoffAddress.get("zip_code");
+        String address = (street != null ? street.toString() : "") + "#" + (zipCode != null ? zipCode.toString() : "");
+        return "a:" + address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
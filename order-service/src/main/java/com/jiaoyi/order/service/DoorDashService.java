@@ -668,23 +668,11 @@ public class DoorDashService {
     // ==================== 辅助方法 ====================
     
     /**
-     * 从订单的 orderPrice JSON 中解析总金额
+     * 从订单的 orderPrice 中读取总金额
      */
     private BigDecimal parseTotalPriceFromOrder(Order order) {
-        try {
-            if (order.getOrderPrice() != null && !order.getOrderPrice().isEmpty() && objectMapper != null) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> orderPriceMap = objectMapper.readValue(
-                        order.getOrderPrice(), 
-                        Map.class
-                );
-                Object totalObj = orderPriceMap.get("total");
-                if (totalObj instanceof Number) {
-                    return new BigDecimal(totalObj.toString());
-                }
-            }
-        } catch (Exception e) {
-            log.warn("解析订单总金额失败，订单ID: {}", order.getId(), e);
+        if (order.getOrderPrice() != null) {
+            return order.getOrderPrice().getTotal();
         }
         return BigDecimal.ZERO;
     }
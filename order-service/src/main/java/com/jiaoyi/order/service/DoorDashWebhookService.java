@@ -0,0 +1,430 @@
+package com.jiaoyi.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.order.entity.Delivery;
+import com.jiaoyi.order.entity.DoorDashWebhookLog;
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.enums.DoorDashEventTypeEnum;
+import com.jiaoyi.order.enums.DoorDashWebhookLogStatusEnum;
+import com.jiaoyi.order.enums.OrderStatusEnum;
+import com.jiaoyi.order.mapper.DeliveryMapper;
+import com.jiaoyi.order.mapper.DoorDashWebhookLogMapper;
+import com.jiaoyi.order.mapper.OrderMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DoorDash Webhook 异步处理服务
+ *
+ * 回调链路：DoorDashWebhookController 校验后调用 {@link #enqueue}，事件落库 doordash_webhook_log（PENDING）后立即返回 200；
+ * 处理链路：{@link WebhookDispatcher} 按订单ID分区投递到 worker，同一订单的配送状态按到达顺序串行处理，
+ * 失败时按退避时间延迟重新投递，超过最大重试次数标记为 FAILED（DoorDash 重推时重新入队）；
+ * 补偿：定时回收处理权过期的事件、重新投递到期未处理的事件
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DoorDashWebhookService {
+
+    private final OrderMapper orderMapper;
+    private final DeliveryMapper deliveryMapper;
+    private final DoorDashWebhookLogMapper webhookLogMapper;
+    private final ObjectMapper objectMapper;
+    private final WebhookDispatcher webhookDispatcher;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${webhook.doordash.max-retries:5}")
+    private int maxRetries;
+
+    /**
+     * 处理权租约（秒），必须大于单个事件的最长处理时间
+     */
+    @Value("${webhook.doordash.lock-seconds:60}")
+    private int lockSeconds;
+
+    /**
+     * 补偿扫描宽限期（秒）：到期超过该时间仍未被 worker 处理的事件才由扫描重新投递
+     */
+    @Value("${webhook.doordash.recover-grace-seconds:30}")
+    private int recoverGraceSeconds;
+
+    @Value("${webhook.doordash.recover-batch-size:200}")
+    private int recoverBatchSize;
+
+    /**
+     * 持久化事件并投递到 worker（基于 event_id 幂等）
+     *
+     * @return true 表示已入队；false 表示重复事件（已处理、处理中或排队中）
+     */
+    public boolean enqueue(Map<String, Object> payload, String eventId, String eventType, Long orderId,
+                           String deliveryId, String externalDeliveryId) throws JsonProcessingException {
+        if (eventId != null && !eventId.isEmpty()) {
+            DoorDashWebhookLog existingLog = webhookLogMapper.selectByEventId(eventId);
+            if (existingLog != null) {
+                // 之前处理失败（已达最大重试次数）的事件，DoorDash 重推时重新入队
+                if (DoorDashWebhookLogStatusEnum.FAILED.equals(existingLog.getStatus())
+                        && webhookLogMapper.requeueFailed(existingLog.getId(), LocalDateTime.now()) > 0) {
+                    log.info("Webhook 事件之前处理失败，重新入队，event_id: {}, 订单ID: {}, 错误: {}",
+                            eventId, existingLog.getOrderId(), existingLog.getErrorMessage());
+                    dispatch(existingLog.getId(), existingLog.getOrderId());
+                    return true;
+                }
+                log.info("Webhook 事件已接收（幂等性检查），event_id: {}, 状态: {}, 订单ID: {}",
+                        eventId, existingLog.getStatus(), existingLog.getOrderId());
+                return false;
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        DoorDashWebhookLog webhookLog = new DoorDashWebhookLog();
+        webhookLog.setEventId(eventId != null && !eventId.isEmpty() ? eventId : "NO_EVENT_ID_" + UUID.randomUUID());
+        webhookLog.setOrderId(orderId);
+        webhookLog.setDeliveryId(deliveryId);
+        webhookLog.setExternalDeliveryId(externalDeliveryId);
+        DoorDashEventTypeEnum eventTypeEnum = DoorDashEventTypeEnum.fromCode(eventType);
+        if (eventTypeEnum != null) {
+            webhookLog.setEventType(eventTypeEnum);
+        } else {
+            log.warn("未知的事件类型: {}，订单ID: {}", eventType, orderId);
+        }
+        webhookLog.setPayload(objectMapper.writeValueAsString(payload));
+        webhookLog.setStatus(DoorDashWebhookLogStatusEnum.PENDING);
+        webhookLog.setRetryCount(0);
+        webhookLog.setNextRetryTime(now);
+        webhookLog.setCreateTime(now);
+        try {
+            webhookLogMapper.insert(webhookLog);
+        } catch (DuplicateKeyException e) {
+            log.info("并发接收到相同的 Webhook 事件（唯一键冲突），event_id: {}", eventId);
+            return false;
+        }
+
+        dispatch(webhookLog.getId(), orderId);
+        return true;
+    }
+
+    /**
+     * 补偿扫描：回收处理权过期的事件，重新投递到期未处理的事件
+     */
+    @Scheduled(fixedDelayString = "${webhook.doordash.recover-interval-millis:10000}")
+    public void recoverPendingLogs() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            int recovered = webhookLogMapper.recoverStuck(now);
+            if (recovered > 0) {
+                log.warn("【DoorDashWebhook】回收处理权过期的事件 {} 个", recovered);
+            }
+            List<DoorDashWebhookLog> dueLogs = webhookLogMapper.selectDueLogs(
+                    now.minusSeconds(recoverGraceSeconds), recoverBatchSize);
+            for (DoorDashWebhookLog dueLog : dueLogs) {
+                dispatch(dueLog.getId(), dueLog.getOrderId());
+            }
+            if (!dueLogs.isEmpty()) {
+                log.info("【DoorDashWebhook】补偿投递到期事件 {} 个", dueLogs.size());
+            }
+        } catch (Exception e) {
+            log.error("【DoorDashWebhook】补偿扫描异常", e);
+        }
+    }
+
+    private void dispatch(Long logId, Long orderId) {
+        webhookDispatcher.dispatch(orderId != null ? orderId : logId, () -> process(logId));
+    }
+
+    /**
+     * worker 入口：抢占处理权 -> 查询订单 -> 执行业务 -> 标记结果或退避重试
+     */
+    void process(Long logId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (webhookLogMapper.claim(logId, instanceId, now.plusSeconds(lockSeconds), now) == 0) {
+            log.debug("【DoorDashWebhook】事件已被处理或未到重试时间，logId: {}", logId);
+            return;
+        }
+        DoorDashWebhookLog webhookLog = webhookLogMapper.selectById(logId);
+        int retryCount = webhookLog.getRetryCount() != null ? webhookLog.getRetryCount() : 0;
+        try {
+            Order order = orderMapper.selectById(webhookLog.getOrderId());
+            if (order == null) {
+                log.warn("订单不存在，event_id: {}, 订单ID: {}", webhookLog.getEventId(), webhookLog.getOrderId());
+                webhookLogMapper.updateStatus(logId, DoorDashWebhookLogStatusEnum.FAILED, null, "订单不存在", retryCount);
+                return;
+            }
+
+            Map<String, Object> payload = objectMapper.readValue(webhookLog.getPayload(), new TypeReference<Map<String, Object>>() {});
+            processWebhookPayload(payload, order);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("orderId", order.getId());
+            result.put("deliveryId", webhookLog.getDeliveryId());
+            result.put("eventType", payload.get("event_type"));
+            result.put("orderStatus", order.getStatus());
+            result.put("processedAt", LocalDateTime.now().toString());
+            webhookLogMapper.updateStatus(logId, DoorDashWebhookLogStatusEnum.SUCCESS,
+                    objectMapper.writeValueAsString(result), null, retryCount);
+        } catch (Exception e) {
+            log.error("【DoorDashWebhook】处理 Webhook 数据失败，重试次数: {}/{}, event_id: {}, 订单ID: {}",
+                    retryCount + 1, maxRetries, webhookLog.getEventId(), webhookLog.getOrderId(), e);
+            retryLater(webhookLog, retryCount + 1, e.getMessage());
+        }
+    }
+
+    private void retryLater(DoorDashWebhookLog webhookLog, int retryCount, String errorMessage) {
+        Long logId = webhookLog.getId();
+        if (retryCount >= maxRetries) {
+            log.error("【DoorDashWebhook】已达最大重试次数: {}, event_id: {}, 订单ID: {}",
+                    maxRetries, webhookLog.getEventId(), webhookLog.getOrderId());
+            webhookLogMapper.updateStatus(logId, DoorDashWebhookLogStatusEnum.FAILED, null, errorMessage, retryCount);
+            return;
+        }
+        long backoffMillis = webhookDispatcher.backoffMillis(retryCount);
+        int updated = webhookLogMapper.scheduleRetry(logId, instanceId, retryCount,
+                LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis)), errorMessage);
+        if (updated > 0) {
+            Object partitionKey = webhookLog.getOrderId() != null ? webhookLog.getOrderId() : logId;
+            webhookDispatcher.dispatchLater(partitionKey, () -> process(logId), backoffMillis);
+        }
+    }
+
+    /**
+     * 处理 Webhook 数据（提取公共逻辑）
+     */
+    public void processWebhookPayload(Map<String, Object> payload, Order order) {
+        String eventType = (String) payload.get("event_type");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> data = (Map<String, Object>) payload.get("data");
+        
+        if (data == null) {
+            log.warn("Webhook 数据为空，订单ID: {}", order.getId());
+            return;
+        }
+        
+        String deliveryId = (String) data.get("id");
+        
+        // 处理不同的事件类型
+        switch (eventType) {
+            case "delivery.created":
+                handleDeliveryCreated(order, deliveryId, data);
+                break;
+            case "delivery.assigned":
+                handleDeliveryAssigned(order, deliveryId, data);
+                break;
+            case "delivery.picked_up":
+                handleDeliveryPickedUp(order, deliveryId, data);
+                break;
+            case "delivery.delivered":
+                handleDeliveryDelivered(order, deliveryId, data);
+                break;
+            case "delivery.cancelled":
+                handleDeliveryCancelled(order, deliveryId, data);
+                break;
+            case "delivery.failed":
+                handleDeliveryFailed(order, deliveryId, data);
+                break;
+            default:
+                log.warn("未知的事件类型: {}", eventType);
+        }
+    }
+    
+    /**
+     * 处理配送创建事件
+     */
+    private void handleDeliveryCreated(Order order, String deliveryId, Map<String, Object> data) {
+        log.info("配送订单已创建，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
+        
+        // 更新 additionalData，保存 tracking_url 等信息
+        updateAdditionalData(order, data);
+    }
+    
+    /**
+     * 处理配送已分配骑手事件
+     */
+    private void handleDeliveryAssigned(Order order, String deliveryId, Map<String, Object> data) {
+        log.info("配送订单已分配骑手，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
+        
+        // 更新 additionalData，保存骑手信息
+        updateAdditionalData(order, data);
+        
+        // 注意：骑手接单和商家制作是独立的过程，不改变订单状态
+        // 商家可能在骑手接单前就已经开始制作了，也可能在骑手接单后还在制作
+        // 所以这里只更新骑手信息，不改变订单状态
+        
+        // 可以在这里发送推送通知给用户："骑手已接单"
+        // TODO: 集成推送服务
+    }
+    
+    /**
+     * 处理配送已取货事件
+     */
+    private void handleDeliveryPickedUp(Order order, String deliveryId, Map<String, Object> data) {
+        log.info("配送订单已取货，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
+        
+        // 更新 additionalData
+        updateAdditionalData(order, data);
+        
+        // 骑手已取货 = 商家已经制作完成，骑手正在配送
+        // 更新订单状态为"配送中"
+        orderMapper.updateStatus(order.getId(), OrderStatusEnum.DELIVERING.getCode());
+        log.info("订单状态已更新为配送中（骑手已取货，正在配送），订单ID: {}", order.getId());
+        
+        // 可以在这里发送推送通知给用户："骑手已取货，正在配送中"
+        // TODO: 集成推送服务
+    }
+    
+    /**
+     * 处理配送已完成事件
+     */
+    private void handleDeliveryDelivered(Order order, String deliveryId, Map<String, Object> data) {
+        log.info("配送订单已完成，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
+        
+        // 更新 additionalData
+        updateAdditionalData(order, data);
+        
+        // 更新订单状态为"已完成"
+        orderMapper.updateStatus(order.getId(), OrderStatusEnum.COMPLETED.getCode());
+        log.info("订单状态已更新为已完成，订单ID: {}", order.getId());
+        
+        // 可以在这里发送推送通知给用户："订单已送达"
+        // TODO: 集成推送服务
+    }
+    
+    /**
+     * 处理配送已取消事件
+     */
+    private void handleDeliveryCancelled(Order order, String deliveryId, Map<String, Object> data) {
+        log.info("配送订单已取消，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
+        
+        // 更新 additionalData
+        updateAdditionalData(order, data);
+        
+        // 更新订单状态为"已取消"
+        // 注意：如果订单已经完成，不改为取消（可能是送达后的问题）
+        if (order.getStatus() != null && 
+            !order.getStatus().equals(OrderStatusEnum.COMPLETED.getCode()) &&
+            !order.getStatus().equals(OrderStatusEnum.CANCELLED.getCode())) {
+            orderMapper.updateStatus(order.getId(), OrderStatusEnum.CANCELLED.getCode());
+            log.info("订单状态已更新为已取消，订单ID: {}", order.getId());
+        }
+        
+        // TODO: 处理取消逻辑
+        // 1. 检查是否可以退款（根据订单状态和取消原因）
+        // 2. 如果需要退款，调用退款服务
+        // 3. 发送通知给用户
+    }
+    
+    /**
+     * 处理配送失败事件
+     */
+    private void handleDeliveryFailed(Order order, String deliveryId, Map<String, Object> data) {
+        log.warn("配送订单失败，订单ID: {}, delivery_id: {}", order.getId(), deliveryId);
+        
+        // 更新 additionalData
+        updateAdditionalData(order, data);
+        
+        // TODO: 处理失败逻辑
+        // 1. 检查是否可以重新分配或退款
+        // 2. 发送通知给用户和商家
+    }
+    
+    /**
+     * 更新配送记录的 additionalData，保存 tracking_url、骑手信息、距离、ETA 等
+     */
+    private void updateAdditionalData(Order order, Map<String, Object> data) {
+        // 获取配送记录
+        Delivery delivery = null;
+        if (order.getDeliveryId() != null && !order.getDeliveryId().isEmpty()) {
+            delivery = deliveryMapper.selectById(order.getDeliveryId());
+        }
+        if (delivery == null) {
+            delivery = deliveryMapper.selectByOrderId(order.getId());
+        }
+        if (delivery == null) {
+            log.warn("配送记录不存在，无法更新 additionalData，订单ID: {}", order.getId());
+            return;
+        }
+        
+        Map<String, Object> additionalData = new HashMap<>();
+        
+        // 如果配送记录已有 additionalData，先解析它
+        if (delivery.getAdditionalData() != null && !delivery.getAdditionalData().isEmpty()) {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> existingData = objectMapper.readValue(
+                        delivery.getAdditionalData(), 
+                        Map.class
+                );
+                additionalData.putAll(existingData);
+            } catch (Exception e) {
+                log.warn("解析现有 additionalData 失败，订单ID: {}", order.getId(), e);
+            }
+        }
+        
+        // 更新 deliveryInfo
+        @SuppressWarnings("unchecked")
+        Map<String, Object> deliveryInfo = (Map<String, Object>) additionalData.getOrDefault("deliveryInfo", new HashMap<>());
+        deliveryInfo.put("status", data.get("status"));
+        deliveryInfo.put("trackingUrl", data.get("tracking_url"));
+        
+        // 更新 Delivery 实体的 status 字段（将字符串状态转换为枚举）
+        String statusStr = (String) data.get("status");
+        if (statusStr != null && !statusStr.isEmpty()) {
+            com.jiaoyi.order.enums.DeliveryStatusEnum statusEnum = com.jiaoyi.order.enums.DeliveryStatusEnum.fromCode(statusStr);
+            if (statusEnum != null) {
+                delivery.setStatus(statusEnum);
+            } else {
+                log.warn("未知的配送状态: {}，订单ID: {}", statusStr, order.getId());
+            }
+        }
+        
+        // 距离信息
+        @SuppressWarnings("unchecked")
+        Map<String, Object> distanceInfo = (Map<String, Object>) data.get("distance");
+        if (distanceInfo != null) {
+            deliveryInfo.put("distanceMiles", distanceInfo.get("value"));
+        }
+        
+        // ETA
+        @SuppressWarnings("unchecked")
+        Map<String, Object> etaInfo = (Map<String, Object>) data.get("estimated_dropoff_time");
+        if (etaInfo != null) {
+            deliveryInfo.put("etaMinutes", etaInfo.get("estimated_minutes"));
+        }
+        
+        // 骑手信息
+        @SuppressWarnings("unchecked")
+        Map<String, Object> dasherInfo = (Map<String, Object>) data.get("dasher");
+        if (dasherInfo != null) {
+            Map<String, Object> dasher = new HashMap<>();
+            dasher.put("name", dasherInfo.get("name"));
+            dasher.put("phone", dasherInfo.get("phone"));
+            deliveryInfo.put("dasher", dasher);
+        }
+        
+        additionalData.put("deliveryInfo", deliveryInfo);
+        
+        // 保存更新后的 additionalData 到配送记录
+        String updatedAdditionalData;
+        try {
+            updatedAdditionalData = objectMapper.writeValueAsString(additionalData);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化 additionalData 失败，订单ID: " + order.getId(), e);
+        }
+        delivery.setAdditionalData(updatedAdditionalData);
+        deliveryMapper.update(delivery);
+        
+        log.info("配送记录 additionalData 更新成功，订单ID: {}, 配送ID: {}", order.getId(), delivery.getId());
+    }
+}
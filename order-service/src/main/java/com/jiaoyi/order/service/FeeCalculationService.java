@@ -6,7 +6,6 @@ import com.jiaoyi.order.entity.MerchantFeeConfig;
 import com.jiaoyi.order.entity.Order;
 import com.jiaoyi.order.enums.DeliveryFeeTypeEnum;
 import com.jiaoyi.order.enums.OnlineServiceFeeTypeEnum;
-import com.jiaoyi.order.mapper.MerchantFeeConfigMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -25,7 +24,7 @@ import java.util.Map;
 @Slf4j
 public class FeeCalculationService {
 
-    private final MerchantFeeConfigMapper merchantFeeConfigMapper;
+    private final MerchantFeeRuleCache merchantFeeRuleCache;
     private final ObjectMapper objectMapper;
     private final GoogleMapsService googleMapsService;
 
@@ -77,8 +76,9 @@ public class FeeCalculationService {
             return BigDecimal.ZERO;
         }
 
-        // 获取商户费用配置
-        MerchantFeeConfig config = merchantFeeConfigMapper.selectByMerchantId(merchantId);
+        // 获取商户费用规则（已编译缓存）
+        MerchantFeeRules rules = merchantFeeRuleCache.get(merchantId);
+        MerchantFeeConfig config = rules.getConfig();
         if (config == null) {
             // 使用默认配置：固定配送费 5 元
             log.debug("商户 {} 未配置费用，使用默认配送费 5 元", merchantId);
@@ -104,10 +104,10 @@ public class FeeCalculationService {
         // 根据类型计算配送费（参照 OO 项目逻辑）
         if (DeliveryFeeTypeEnum.ZONE_RATE.equals(deliveryFeeType)) {
             // 按邮编区域计算
-            deliveryFee = calculateZoneRateDeliveryFee(order, config);
+            deliveryFee = calculateZoneRateDeliveryFee(order, rules);
         } else if (DeliveryFeeTypeEnum.VARIABLE_RATE.equals(deliveryFeeType)) {
             // 按距离的可变费率计算
-            deliveryFee = calculateVariableRateDeliveryFee(order, config);
+            deliveryFee = calculateVariableRateDeliveryFee(order, rules);
         } else {
             // FLAT_RATE 固定费率（默认）
             BigDecimal fixed = config.getDeliveryFeeFixed();
@@ -138,12 +138,11 @@ public class FeeCalculationService {
     /**
      * 按邮编区域计算配送费（ZONE_RATE）
      */
-    private BigDecimal calculateZoneRateDeliveryFee(Order order, MerchantFeeConfig config) {
-        String deliveryZoneRateJson = config.getDeliveryZoneRate();
-        if (deliveryZoneRateJson == null || deliveryZoneRateJson.isEmpty()) {
+    private BigDecimal calculateZoneRateDeliveryFee(Order order, MerchantFeeRules rules) {
+        MerchantFeeConfig config = rules.getConfig();
+        if (!rules.isZoneRateConfigured()) {
             log.warn("商户 {} 配置了 ZONE_RATE 但未配置 deliveryZoneRate，使用固定配送费", order.getMerchantId());
-            return config.getDeliveryFeeFixed() != null && config.getDeliveryFeeFixed().compareTo(BigDecimal.ZERO) > 0
-                    ? config.getDeliveryFeeFixed() : new BigDecimal("5.00");
+            return fixedDeliveryFee(config);
         }
 
         // 从订单中提取邮编
@@ -153,57 +152,39 @@ public class FeeCalculationService {
             throw new BusinessException("配送地址缺少邮编信息，无法计算配送费");
         }
 
-        // 解析邮编区域配置
-        try {
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> zoneRates = objectMapper.readValue(deliveryZoneRateJson, List.class);
-            if (zoneRates == null || zoneRates.isEmpty()) {
-                log.warn("商户 {} 的 deliveryZoneRate 配置为空", order.getMerchantId());
-                return config.getDeliveryFeeFixed() != null && config.getDeliveryFeeFixed().compareTo(BigDecimal.ZERO) > 0
-                        ? config.getDeliveryFeeFixed() : new BigDecimal("5.00");
-            }
-
-            // 处理邮编格式（可能包含 "-"，只取前5位）
-            if (zipCode.contains("-")) {
-                zipCode = zipCode.split("-")[0];
-            }
-
-            // 查找匹配的邮编区域
-            for (Map<String, Object> zoneRate : zoneRates) {
-                @SuppressWarnings("unchecked")
-                List<String> zipcodes = (List<String>) zoneRate.get("zipcodes");
-                Object priceObj = zoneRate.get("price");
-
-                if (zipcodes != null && priceObj != null) {
-                    if (zipcodes.contains(zipCode)) {
-                        BigDecimal price = new BigDecimal(priceObj.toString());
-                        log.debug("找到匹配的邮编区域，邮编: {}, 配送费: {}", zipCode, price);
-                        return price;
-                    }
-                }
-            }
+        // 邮编区域配置已在编译规则时解析
+        if (rules.getZoneRateError() != null) {
+            throw new BusinessException("配送费配置解析失败: " + rules.getZoneRateError());
+        }
+        if (rules.isZoneRateEmpty()) {
+            log.warn("商户 {} 的 deliveryZoneRate 配置为空", order.getMerchantId());
+            return fixedDeliveryFee(config);
+        }
 
-            // 如果邮编不在任何区域，抛出错误（参照 OO 项目）
-            log.warn("订单 {} 的邮编 {} 不在任何配送区域内", order.getId(), zipCode);
-            throw new BusinessException("该邮编不在配送范围内");
+        // 处理邮编格式（可能包含 "-"，只取前5位）
+        if (zipCode.contains("-")) {
+            zipCode = zipCode.split("-")[0];
+        }
 
-        } catch (BusinessException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("解析 deliveryZoneRate 失败，商户ID: {}", order.getMerchantId(), e);
-            throw new BusinessException("配送费配置解析失败: " + e.getMessage());
+        BigDecimal price = rules.zonePrice(zipCode);
+        if (price != null) {
+            log.debug("找到匹配的邮编区域，邮编: {}, 配送费: {}", zipCode, price);
+            return price;
         }
+
+        // 如果邮编不在任何区域，抛出错误（参照 OO 项目）
+        log.warn("订单 {} 的邮编 {} 不在任何配送区域内", order.getId(), zipCode);
+        throw new BusinessException("该邮编不在配送范围内");
     }
 
     /**
      * 按距离的可变费率计算配送费（VARIABLE_RATE）
      */
-    private BigDecimal calculateVariableRateDeliveryFee(Order order, MerchantFeeConfig config) {
-        String deliveryVariableRateJson = config.getDeliveryVariableRate();
-        if (deliveryVariableRateJson == null || deliveryVariableRateJson.isEmpty()) {
+    private BigDecimal calculateVariableRateDeliveryFee(Order order, MerchantFeeRules rules) {
+        MerchantFeeConfig config = rules.getConfig();
+        if (!rules.isVariableRateConfigured()) {
             log.warn("商户 {} 配置了 VARIABLE_RATE 但未配置 deliveryVariableRate，使用固定配送费", order.getMerchantId());
-            return config.getDeliveryFeeFixed() != null && config.getDeliveryFeeFixed().compareTo(BigDecimal.ZERO) > 0
-                    ? config.getDeliveryFeeFixed() : new BigDecimal("5.00");
+            return fixedDeliveryFee(config);
         }
 
         // 获取商户坐标
@@ -237,82 +218,50 @@ public class FeeCalculationService {
             }
         }
 
-        // 将距离转换为英里
-        double distanceMile = googleMapsService.meterToMile(distanceMeter);
-
-        // 解析可变费率配置
-        try {
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> variableRates = objectMapper.readValue(deliveryVariableRateJson, List.class);
-            if (variableRates == null || variableRates.isEmpty()) {
-                log.warn("商户 {} 的 deliveryVariableRate 配置为空", order.getMerchantId());
-                return config.getDeliveryFeeFixed() != null && config.getDeliveryFeeFixed().compareTo(BigDecimal.ZERO) > 0
-                        ? config.getDeliveryFeeFixed() : new BigDecimal("5.00");
-            }
+        // 可变费率配置已在编译规则时解析（距离段已换算成米）
+        if (rules.getVariableRateError() != null) {
+            throw new BusinessException("配送费配置解析失败: " + rules.getVariableRateError());
+        }
+        if (rules.isVariableRateEmpty()) {
+            log.warn("商户 {} 的 deliveryVariableRate 配置为空", order.getMerchantId());
+            return fixedDeliveryFee(config);
+        }
 
-            // 检查距离是否小于第一个费率段的起始距离
-            if (variableRates.size() > 0) {
-                Map<String, Object> firstRate = variableRates.getFirst();
-                Object fromObj = firstRate.get("from");
-                if (fromObj != null) {
-                    double firstFromMile = Double.parseDouble(fromObj.toString());
-                    double firstFromMeter = googleMapsService.mileToMeter(firstFromMile);
-                    if (distanceMeter < firstFromMeter) {
-                        log.warn("订单 {} 的配送距离 {} 米小于最小配送距离 {} 米", order.getId(), distanceMeter, firstFromMeter);
-                        throw new BusinessException("配送距离过近，不在配送范围内");
-                    }
-                }
-            }
+        // 检查距离是否小于第一个费率段的起始距离
+        Double firstFromMeter = rules.getFirstFromMeter();
+        if (firstFromMeter != null && distanceMeter < firstFromMeter) {
+            log.warn("订单 {} 的配送距离 {} 米小于最小配送距离 {} 米", order.getId(), distanceMeter, firstFromMeter);
+            throw new BusinessException("配送距离过近，不在配送范围内");
+        }
 
-            // 检查距离是否超过最后一个费率段的结束距离
-            if (variableRates.size() > 0) {
-                Map<String, Object> lastRate = variableRates.get(variableRates.size() - 1);
-                Object toObj = lastRate.get("to");
-                Object priceObj = lastRate.get("price");
-                if (toObj != null && priceObj != null) {
-                    double lastToMile = Double.parseDouble(toObj.toString());
-                    double lastToMeter = googleMapsService.mileToMeter(lastToMile);
-                    if (distanceMeter > lastToMeter) {
-                        // 超过最大距离，返回最后一个费率段的配送费
-                        BigDecimal price = new BigDecimal(priceObj.toString());
-                        log.debug("配送距离 {} 米超过最大费率段 {} 米，使用最后一个费率段的配送费: {}", 
-                                distanceMeter, lastToMeter, price);
-                        return price;
-                    }
-                }
-            }
+        // 检查距离是否超过最后一个费率段的结束距离
+        Double lastToMeter = rules.getLastToMeter();
+        if (lastToMeter != null && distanceMeter > lastToMeter) {
+            // 超过最大距离，返回最后一个费率段的配送费
+            log.debug("配送距离 {} 米超过最大费率段 {} 米，使用最后一个费率段的配送费: {}",
+                    distanceMeter, lastToMeter, rules.getLastPrice());
+            return rules.getLastPrice();
+        }
 
-            // 查找匹配的距离段
-            for (Map<String, Object> variableRate : variableRates) {
-                Object fromObj = variableRate.get("from");
-                Object toObj = variableRate.get("to");
-                Object priceObj = variableRate.get("price");
-
-                if (fromObj != null && toObj != null && priceObj != null) {
-                    double fromMile = Double.parseDouble(fromObj.toString());
-                    double toMile = Double.parseDouble(toObj.toString());
-                    double fromMeter = googleMapsService.mileToMeter(fromMile);
-                    double toMeter = googleMapsService.mileToMeter(toMile);
-
-                    if (distanceMeter > fromMeter && distanceMeter <= toMeter) {
-                        BigDecimal price = new BigDecimal(priceObj.toString());
-                        log.debug("找到匹配的距离段，距离: {} 米 ({} 英里)，配送费: {}", distanceMeter, distanceMile, price);
-                        return price;
-                    }
-                }
-            }
+        // 查找匹配的距离段
+        BigDecimal price = rules.distanceBandPrice(distanceMeter);
+        if (price != null) {
+            log.debug("找到匹配的距离段，距离: {} 米 ({} 英里)，配送费: {}",
+                    distanceMeter, googleMapsService.meterToMile(distanceMeter), price);
+            return price;
+        }
 
-            // 如果未找到匹配的距离段，使用固定配送费
-            log.warn("订单 {} 的配送距离 {} 米未匹配到任何费率段，使用固定配送费", order.getId(), distanceMeter);
-            return config.getDeliveryFeeFixed() != null && config.getDeliveryFeeFixed().compareTo(BigDecimal.ZERO) > 0
-                    ? config.getDeliveryFeeFixed() : new BigDecimal("5.00");
+        // 如果未找到匹配的距离段，使用固定配送费
+        log.warn("订单 {} 的配送距离 {} 米未匹配到任何费率段，使用固定配送费", order.getId(), distanceMeter);
+        return fixedDeliveryFee(config);
+    }
 
-        } catch (BusinessException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("解析 deliveryVariableRate 失败，商户ID: {}", order.getMerchantId(), e);
-            throw new BusinessException("配送费配置解析失败: " + e.getMessage());
-        }
+    /**
+     * 固定配送费（未配置时默认 5 元）
+     */
+    private BigDecimal fixedDeliveryFee(MerchantFeeConfig config) {
+        return config.getDeliveryFeeFixed() != null && config.getDeliveryFeeFixed().compareTo(BigDecimal.ZERO) > 0
+                ? config.getDeliveryFeeFixed() : new BigDecimal("5.00");
     }
 
     /**
@@ -467,7 +416,7 @@ public class FeeCalculationService {
         String merchantId = order.getMerchantId();
 
         // 获取商户费用配置
-        MerchantFeeConfig config = merchantFeeConfigMapper.selectByMerchantId(merchantId);
+        MerchantFeeConfig config = merchantFeeRuleCache.get(merchantId).getConfig();
         if (config == null) {
             log.debug("商户 {} 未配置费用，税费为 0", merchantId);
             return BigDecimal.ZERO;
@@ -503,8 +452,9 @@ public class FeeCalculationService {
     public BigDecimal calculateOnlineServiceFee(Order order, BigDecimal subtotal) {
         String merchantId = order.getMerchantId();
 
-        // 获取商户费用配置
-        MerchantFeeConfig config = merchantFeeConfigMapper.selectByMerchantId(merchantId);
+        // 获取商户费用规则（已编译缓存）
+        MerchantFeeRules rules = merchantFeeRuleCache.get(merchantId);
+        MerchantFeeConfig config = rules.getConfig();
         if (config == null) {
             log.debug("商户 {} 未配置费用，在线服务费为 0", merchantId);
             return BigDecimal.ZERO;
@@ -517,62 +467,24 @@ public class FeeCalculationService {
 
         BigDecimal serviceFee = BigDecimal.ZERO;
 
-        // 检查是否有阶梯费率策略
-        String strategyJson = config.getOnlineServiceFeeStrategy();
-        if (strategyJson != null && !strategyJson.isEmpty()) {
-            try {
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> strategies = objectMapper.readValue(strategyJson, List.class);
-                if (strategies != null && !strategies.isEmpty()) {
-                    // 找到匹配的策略
-                    for (Map<String, Object> strategy : strategies) {
-                        Object fromObj = strategy.get("from");
-                        Object toObj = strategy.get("to");
-                        Object typeObj = strategy.get("type");
-                        Object feeObj = strategy.get("fee");
-
-                        if (fromObj != null && toObj != null && typeObj != null && feeObj != null) {
-                            double from = Double.parseDouble(fromObj.toString());
-                            double to = Double.parseDouble(toObj.toString());
-                            String type = typeObj.toString();
-                            double fee = Double.parseDouble(feeObj.toString());
-
-                            if (subtotal.doubleValue() >= from && subtotal.doubleValue() < to) {
-                                if ("PERCENTAGE".equalsIgnoreCase(type)) {
-                                    serviceFee = subtotal.multiply(BigDecimal.valueOf(fee))
-                                            .divide(new BigDecimal("100"), 2, RoundingMode.HALF_UP);
-                                } else if ("FLAT_FEE".equalsIgnoreCase(type)) {
-                                    serviceFee = BigDecimal.valueOf(fee);
-                                }
-                                break;
-                            }
-                        }
-                    }
-                    // 如果订单金额超过最后一个策略的 to，使用最后一个策略
-                    if (serviceFee.compareTo(BigDecimal.ZERO) == 0 && !strategies.isEmpty()) {
-                        Map<String, Object> lastStrategy = strategies.get(strategies.size() - 1);
-                        Object toObj = lastStrategy.get("to");
-                        if (toObj != null) {
-                            double to = Double.parseDouble(toObj.toString());
-                            if (subtotal.doubleValue() >= to) {
-                                Object typeObj = lastStrategy.get("type");
-                                Object feeObj = lastStrategy.get("fee");
-                                if (typeObj != null && feeObj != null) {
-                                    String type = typeObj.toString();
-                                    double fee = Double.parseDouble(feeObj.toString());
-                                    if ("PERCENTAGE".equalsIgnoreCase(type)) {
-                                        serviceFee = subtotal.multiply(BigDecimal.valueOf(fee))
-                                                .divide(new BigDecimal("100"), 2, RoundingMode.HALF_UP);
-                                    } else if ("FLAT_FEE".equalsIgnoreCase(type)) {
-                                        serviceFee = BigDecimal.valueOf(fee);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        // 检查是否有阶梯费率策略（已在编译规则时解析，解析失败时忽略策略）
+        List<MerchantFeeRules.ServiceFeeTier> tiers = rules.getServiceFeeTiers();
+        if (!tiers.isEmpty()) {
+            double amount = subtotal.doubleValue();
+            // 找到匹配的策略
+            for (MerchantFeeRules.ServiceFeeTier tier : tiers) {
+                if (tier.isComplete() && amount >= tier.from() && amount < tier.to()) {
+                    serviceFee = tierServiceFee(tier, subtotal);
+                    break;
+                }
+            }
+            // 如果订单金额超过最后一个策略的 to，使用最后一个策略
+            if (serviceFee.compareTo(BigDecimal.ZERO) == 0) {
+                MerchantFeeRules.ServiceFeeTier lastTier = tiers.get(tiers.size() - 1);
+                if (lastTier.to() != null && amount >= lastTier.to()
+                        && lastTier.type() != null && lastTier.fee() != null) {
+                    serviceFee = tierServiceFee(lastTier, subtotal);
                 }
-            } catch (Exception e) {
-                log.warn("解析在线服务费策略失败，商户ID: {}, 策略JSON: {}", merchantId, strategyJson, e);
             }
         }
 
@@ -594,5 +506,18 @@ public class FeeCalculationService {
         log.debug("计算在线服务费，商户ID: {}, 订单金额: {}, 服务费: {}", merchantId, subtotal, serviceFee);
         return serviceFee.setScale(2, RoundingMode.HALF_UP);
     }
+
+    /**
+     * 按阶梯策略计算服务费（未知类型返回 0）
+     */
+    private BigDecimal tierServiceFee(MerchantFeeRules.ServiceFeeTier tier, BigDecimal subtotal) {
+        if ("PERCENTAGE".equalsIgnoreCase(tier.type())) {
+            return subtotal.multiply(BigDecimal.valueOf(tier.fee()))
+                    .divide(new BigDecimal("100"), 2, RoundingMode.HALF_UP);
+        } else if ("FLAT_FEE".equalsIgnoreCase(tier.type())) {
+            return BigDecimal.valueOf(tier.fee());
+        }
+        return BigDecimal.ZERO;
+    }
 }
 
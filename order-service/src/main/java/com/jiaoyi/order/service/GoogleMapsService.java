@@ -1,12 +1,29 @@
 package com.jiaoyi.order.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Google Maps 服务
  * 用于计算配送距离和地理编码
  * 参照 OO 项目的 GoogleMapsServer
+ *
+ * 地理编码调用 Google Maps Geocoding API（google.maps.api-key 未配置时不调用，只能使用调用方提供的坐标），
+ * 结果按规范化地址缓存（同一地址重复报价不再调用外部 API，调用方提供的坐标不缓存），
+ * 距离使用本地 Haversine 公式计算（几次三角运算，比缓存查找更便宜，因此不缓存）
  */
 @Service
 @Slf4j
@@ -22,6 +39,32 @@ public class GoogleMapsService {
      */
     private static final double MILE_TO_METER = 1609.344;
 
+    /**
+     * 地理编码缓存：规范化地址 -> 坐标
+     */
+    private final Cache<String, GeocodeResult> geocodeCache;
+    private final LongAdder geocodeHits = new LongAdder();
+    private final LongAdder geocodeMisses = new LongAdder();
+    private final LongAdder geocodeApiCalls = new LongAdder();
+
+    private final RestTemplate restTemplate;
+    private final String geocodeUrl;
+    private final String apiKey;
+
+    public GoogleMapsService(RestTemplate restTemplate,
+                             @Value("${google.maps.geocode-url:https://maps.googleapis.com/maps/api/geocode/json}") String geocodeUrl,
+                             @Value("${google.maps.api-key:}") String apiKey,
+                             @Value("${geo.geocode-cache.max-size:100000}") long maxSize,
+                             @Value("${geo.geocode-cache.expire-hours:168}") long expireHours) {
+        this.restTemplate = restTemplate;
+        this.geocodeUrl = geocodeUrl;
+        this.apiKey = apiKey;
+        this.geocodeCache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxSize, 1))
+                .expireAfterWrite(Math.max(expireHours, 1), TimeUnit.HOURS)
+                .build();
+    }
+
     /**
      * 根据经纬度计算两点之间的距离（米）
      * 使用 Haversine 公式
@@ -69,22 +112,96 @@ public class GoogleMapsService {
 
     /**
      * 地理编码：根据地址获取经纬度
-     * TODO: 集成 Google Maps Geocoding API
-     * 目前返回 null，需要实际集成 API
+     * 调用方提供了坐标时直接使用（只对本次请求有效，不写入缓存，避免客户端坐标污染同一地址的其他请求）；
+     * 否则查缓存，未命中时调用地理编码接口，只有接口返回的结果写入缓存
      * 
      * @param formattedAddress 格式化地址
-     * @param latitude 已知纬度（如果地址解析失败，使用此值）
-     * @param longitude 已知经度（如果地址解析失败，使用此值）
+     * @param latitude 已知纬度（调用方提供时优先使用）
+     * @param longitude 已知经度（调用方提供时优先使用）
      * @return 经纬度对象，包含 destinationLatitude 和 destinationLongitude
      */
     public GeocodeResult getGeocode(String formattedAddress, Double latitude, Double longitude) {
-        // TODO: 集成 Google Maps Geocoding API
-        // 目前返回原始坐标（如果提供）
-        log.warn("Google Maps Geocoding API 未集成，使用提供的坐标");
         if (latitude != null && longitude != null) {
             return new GeocodeResult(latitude, longitude);
         }
-        return null;
+
+        String cacheKey = normalizeAddress(formattedAddress);
+        if (cacheKey == null) {
+            return null;
+        }
+        GeocodeResult cached = geocodeCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            geocodeHits.increment();
+            return cached;
+        }
+        geocodeMisses.increment();
+
+        GeocodeResult result = geocodeAddress(formattedAddress);
+        if (result != null) {
+            geocodeCache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * 调用 Google Maps Geocoding API 解析地址（取第一个结果）
+     * 未配置 API Key、地址无结果或调用失败时返回 null（不缓存，下次再查）
+     */
+    private GeocodeResult geocodeAddress(String formattedAddress) {
+        if (apiKey == null || apiKey.isEmpty()) {
+            log.warn("未配置 google.maps.api-key，无法解析地址，地址: {}", formattedAddress);
+            return null;
+        }
+        geocodeApiCalls.increment();
+        try {
+            URI url = UriComponentsBuilder.fromHttpUrl(geocodeUrl)
+                    .queryParam("address", formattedAddress)
+                    .queryParam("key", apiKey)
+                    .build()
+                    .encode()
+                    .toUri();
+            JsonNode response = restTemplate.getForObject(url, JsonNode.class);
+            String status = response != null ? response.path("status").asText() : null;
+            if (!"OK".equals(status)) {
+                // ZERO_RESULTS：地址无法解析；其余（OVER_QUERY_LIMIT、REQUEST_DENIED 等）为接口错误
+                log.warn("地理编码未返回结果，地址: {}, 状态: {}, 错误: {}", formattedAddress, status,
+                        response != null ? response.path("error_message").asText() : null);
+                return null;
+            }
+            JsonNode location = response.path("results").path(0).path("geometry").path("location");
+            if (!location.hasNonNull("lat") || !location.hasNonNull("lng")) {
+                log.warn("地理编码结果缺少坐标，地址: {}", formattedAddress);
+                return null;
+            }
+            return new GeocodeResult(location.get("lat").asDouble(), location.get("lng").asDouble());
+        } catch (Exception e) {
+            log.warn("调用地理编码接口失败，地址: {}", formattedAddress, e);
+            return null;
+        }
+    }
+
+    /**
+     * 地理编码缓存状态
+     */
+    public Map<String, Object> getGeocodeCacheStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("size", geocodeCache.size());
+        status.put("hits", geocodeHits.sum());
+        status.put("misses", geocodeMisses.sum());
+        status.put("apiCalls", geocodeApiCalls.sum());
+        status.put("apiEnabled", apiKey != null && !apiKey.isEmpty());
+        return status;
+    }
+
+    /**
+     * 地址规范化（忽略大小写、首尾空格和连续空白），用作缓存键
+     */
+    private String normalizeAddress(String formattedAddress) {
+        if (formattedAddress == null) {
+            return null;
+        }
+        String normalized = formattedAddress.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
     }
 
     /**
@@ -0,0 +1,174 @@
+package com.jiaoyi.order.service;
+
+import com.jiaoyi.order.entity.MerchantFeeConfig;
+import com.jiaoyi.order.mapper.MerchantFeeConfigMapper;
+import com.jiaoyi.order.util.GeoHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商户配送范围空间索引（本地内存，每个实例各自构建）
+ *
+ * 以 GeoHash 网格为索引：每个商户按坐标 + 最大配送距离覆盖的网格登记，
+ * 查询"哪些商户能配送到这个位置"时只取客户所在网格中的候选商户，再用 Haversine 精确过滤，
+ * 不需要遍历全部商户，也不调用外部 API
+ *
+ * - 只索引配置了坐标和最大配送距离（delivery_maximum_distance > 0）的商户；
+ *   只按邮编区域（ZONE_RATE）配送或不限距离的商户无法按位置判断，不在索引中
+ * - 索引是不可变快照，定时全量重建后整体替换，查询无锁
+ * - 配送半径相对网格精度过大（覆盖网格数超过 {@link GeoHash#MAX_COVER_CELLS}）的商户不登记网格，
+ *   查询时按外接矩形扫描这些商户，避免单个超大半径的配置让索引重建占满内存
+ */
+@Service
+@Slf4j
+public class MerchantDeliveryIndex {
+
+    private final MerchantFeeConfigMapper merchantFeeConfigMapper;
+    private final GoogleMapsService googleMapsService;
+    private final int precision;
+
+    private volatile Snapshot snapshot;
+
+    public MerchantDeliveryIndex(MerchantFeeConfigMapper merchantFeeConfigMapper,
+                                 GoogleMapsService googleMapsService,
+                                 @Value("${geo.delivery-index.precision:5}") int precision) {
+        this.merchantFeeConfigMapper = merchantFeeConfigMapper;
+        this.googleMapsService = googleMapsService;
+        this.precision = Math.min(Math.max(precision, 3), 7);
+    }
+
+    /**
+     * 查询能配送到指定位置的商户，按距离升序
+     */
+    public List<DeliveryCandidate> findMerchantsDeliveringTo(double latitude, double longitude) {
+        Snapshot current = snapshot();
+        List<MerchantArea> areas = current.cells.get(GeoHash.encode(latitude, longitude, precision));
+        if (areas == null && current.wideAreas.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DeliveryCandidate> result = new ArrayList<>();
+        if (areas != null) {
+            for (MerchantArea area : areas) {
+                addIfInRange(result, area, latitude, longitude);
+            }
+        }
+        for (MerchantArea area : current.wideAreas) {
+            if (area.contains(latitude, longitude)) {
+                addIfInRange(result, area, latitude, longitude);
+            }
+        }
+        result.sort(Comparator.comparingDouble(DeliveryCandidate::distanceMeter));
+        return result;
+    }
+
+    /**
+     * 定时重建索引
+     */
+    @Scheduled(fixedDelayString = "${geo.delivery-index.refresh-millis:60000}")
+    public void refresh() {
+        try {
+            snapshot = build();
+        } catch (Exception e) {
+            // 重建失败继续使用旧索引
+            log.error("【MerchantDeliveryIndex】重建配送范围索引失败", e);
+        }
+    }
+
+    private void addIfInRange(List<DeliveryCandidate> result, MerchantArea area, double latitude, double longitude) {
+        double distanceMeter = googleMapsService.calculateDistance(
+                area.latitude(), area.longitude(), latitude, longitude);
+        if (distanceMeter <= area.radiusMeter()) {
+            result.add(new DeliveryCandidate(area.merchantId(), distanceMeter, area.radiusMeter()));
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Snapshot current = snapshot;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("initialized", current != null);
+        status.put("precision", precision);
+        status.put("merchantCount", current != null ? current.merchantCount : 0);
+        status.put("cellCount", current != null ? current.cells.size() : 0);
+        status.put("wideMerchantCount", current != null ? current.wideAreas.size() : 0);
+        status.put("builtAt", current != null ? current.builtAt : null);
+        return status;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = build();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot build() {
+        List<MerchantFeeConfig> configs = merchantFeeConfigMapper.selectDeliveryLocations();
+        Map<String, List<MerchantArea>> cells = new HashMap<>();
+        List<MerchantArea> wideAreas = new ArrayList<>();
+        int merchantCount = 0;
+        for (MerchantFeeConfig config : configs) {
+            if (config.getMerchantLatitude() == null || config.getMerchantLongitude() == null
+                    || config.getDeliveryMaximumDistance() == null) {
+                continue;
+            }
+            double latitude = config.getMerchantLatitude().doubleValue();
+            double longitude = config.getMerchantLongitude().doubleValue();
+            double radiusMeter = googleMapsService.mileToMeter(config.getDeliveryMaximumDistance().doubleValue());
+            if (!(radiusMeter > 0)) {
+                continue;
+            }
+            MerchantArea area = new MerchantArea(config.getMerchantId(), latitude, longitude, radiusMeter,
+                    GeoHash.boundingBox(latitude, longitude, radiusMeter));
+            if (GeoHash.countCoverCells(latitude, longitude, radiusMeter, precision) > GeoHash.MAX_COVER_CELLS) {
+                log.warn("【MerchantDeliveryIndex】配送半径过大，改为外接矩形扫描，商户ID: {}, 半径: {} 米",
+                        area.merchantId(), radiusMeter);
+                wideAreas.add(area);
+            } else {
+                for (String cell : GeoHash.coverCircle(latitude, longitude, radiusMeter, precision)) {
+                    cells.computeIfAbsent(cell, key -> new ArrayList<>()).add(area);
+                }
+            }
+            merchantCount++;
+        }
+        log.info("【MerchantDeliveryIndex】配送范围索引已重建，商户数: {}, 网格数: {}, 外接矩形扫描商户数: {}",
+                merchantCount, cells.size(), wideAreas.size());
+        return new Snapshot(cells, List.copyOf(wideAreas), merchantCount, System.currentTimeMillis());
+    }
+
+    /**
+     * 能配送到该位置的商户
+     */
+    public record DeliveryCandidate(String merchantId, double distanceMeter, double maxDistanceMeter) {
+    }
+
+    /**
+     * @param box 外接矩形 {minLat, maxLat, minLon, maxLon}
+     */
+    private record MerchantArea(String merchantId, double latitude, double longitude, double radiusMeter, double[] box) {
+
+        boolean contains(double lat, double lon) {
+            return lat >= box[0] && lat <= box[1] && lon >= box[2] && lon <= box[3];
+        }
+    }
+
+    private record Snapshot(Map<String, List<MerchantArea>> cells, List<MerchantArea> wideAreas,
+                            int merchantCount, long builtAt) {
+    }
+}
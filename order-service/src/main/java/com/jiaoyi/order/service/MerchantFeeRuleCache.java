@@ -0,0 +1,117 @@
+package com.jiaoyi.order.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jiaoyi.order.entity.MerchantFeeConfig;
+import com.jiaoyi.order.mapper.MerchantFeeConfigMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商户费用规则缓存
+ *
+ * 下单时配送费、税费、服务费和配送规则检查都会读取 merchant_fee_config，原来每次读取都查库并重新解析 JSON。
+ * 这里按商户缓存编译后的 {@link MerchantFeeRules}：
+ * - 首次访问时查询配置并编译，之后直接使用编译结果
+ * - 每隔 fee-rules.version-check-seconds 秒由一个请求线程查询一次 version 列（只查一个字段），
+ *   版本号变化（配置更新时 version + 1）或配置被删除/新增时重新编译，其他线程继续使用旧规则
+ * - 未配置费用的商户也缓存（每个商户一个空规则实例），新增配置后在下一次核对时生效
+ * - 需要立即生效时可调用 {@link #invalidate(String)}（管理接口 /api/admin/fee-rules）
+ */
+@Service
+@Slf4j
+public class MerchantFeeRuleCache {
+
+    private final MerchantFeeConfigMapper merchantFeeConfigMapper;
+    private final GoogleMapsService googleMapsService;
+    private final Cache<String, MerchantFeeRules> rules;
+    private final long versionCheckMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder compiles = new LongAdder();
+    private final LongAdder versionChecks = new LongAdder();
+
+    public MerchantFeeRuleCache(MerchantFeeConfigMapper merchantFeeConfigMapper,
+                                GoogleMapsService googleMapsService,
+                                @Value("${fee-rules.version-check-seconds:30}") long versionCheckSeconds,
+                                @Value("${fee-rules.max-merchants:10000}") long maxMerchants) {
+        this.merchantFeeConfigMapper = merchantFeeConfigMapper;
+        this.googleMapsService = googleMapsService;
+        this.versionCheckMillis = Math.max(versionCheckSeconds, 0) * 1000L;
+        this.rules = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxMerchants, 1))
+                .build();
+    }
+
+    /**
+     * 获取商户的编译规则（不会返回 null，未配置时返回空规则）
+     */
+    public MerchantFeeRules get(String merchantId) {
+        MerchantFeeRules cached = rules.getIfPresent(merchantId);
+        if (cached == null) {
+            return rules.asMap().computeIfAbsent(merchantId, this::compile);
+        }
+        if (cached.claimVersionCheck(System.currentTimeMillis(), versionCheckMillis)) {
+            return refreshIfChanged(merchantId, cached);
+        }
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * 使某个商户的规则失效（配置修改后需要立即生效时调用）
+     */
+    public void invalidate(String merchantId) {
+        rules.invalidate(merchantId);
+        log.info("商户费用规则缓存已失效，商户ID: {}", merchantId);
+    }
+
+    /**
+     * 清空所有商户的规则
+     */
+    public void invalidateAll() {
+        rules.invalidateAll();
+        log.info("商户费用规则缓存已清空");
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("size", rules.size());
+        status.put("hits", hits.sum());
+        status.put("compiles", compiles.sum());
+        status.put("versionChecks", versionChecks.sum());
+        status.put("versionCheckSeconds", versionCheckMillis / 1000);
+        return status;
+    }
+
+    private MerchantFeeRules refreshIfChanged(String merchantId, MerchantFeeRules cached) {
+        versionChecks.increment();
+        Long version;
+        try {
+            version = merchantFeeConfigMapper.selectVersionByMerchantId(merchantId);
+        } catch (Exception e) {
+            // 核对失败继续使用旧规则，下一个周期再核对
+            log.warn("核对商户费用配置版本失败，继续使用已缓存规则，商户ID: {}", merchantId, e);
+            return cached;
+        }
+        if (Objects.equals(version, cached.getVersion())) {
+            return cached;
+        }
+        log.info("商户费用配置已变更，重新编译规则，商户ID: {}, 版本: {} -> {}", merchantId, cached.getVersion(), version);
+        MerchantFeeRules compiled = compile(merchantId);
+        rules.put(merchantId, compiled);
+        return compiled;
+    }
+
+    private MerchantFeeRules compile(String merchantId) {
+        compiles.increment();
+        MerchantFeeConfig config = merchantFeeConfigMapper.selectByMerchantId(merchantId);
+        return MerchantFeeRules.compile(config, googleMapsService.mileToMeter(1));
+    }
+}
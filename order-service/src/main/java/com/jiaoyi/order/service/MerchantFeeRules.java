@@ -0,0 +1,444 @@
+package com.jiaoyi.order.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.order.entity.MerchantFeeConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 编译后的商户费用/配送规则（由 {@link MerchantFeeRuleCache} 按商户缓存，费用计算和配送规则检查共用）
+ *
+ * merchant_fee_config 中的 JSON 列在这里一次性解析成查询结构，计价时不再反序列化：
+ * - deliveryZoneRate：邮编 -> 配送费的 HashMap（多个区域包含同一邮编时取第一个，与原来的顺序扫描一致）
+ * - deliveryVariableRate：距离段转换成米；段按起点有序且不重叠时用二分查找，否则按配置顺序扫描
+ * - deliveryTimeSlots：每周 7 天各一张分钟位图（1440 位），判断时段只需一次位运算
+ * - onlineServiceFeeStrategy：阶梯费率解析成数值
+ *
+ * JSON 解析失败时记录错误信息，由调用方按原来的方式报错（费用计算和规则检查的错误提示不同）
+ */
+@Slf4j
+@Getter
+public final class MerchantFeeRules {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final MerchantFeeConfig config;
+
+    /**
+     * 编译时的配置版本号（merchant_fee_config.version）
+     */
+    private final Long version;
+
+    // ========== 邮编区域 ==========
+
+    /**
+     * 是否配置了 deliveryZoneRate
+     */
+    private final boolean zoneRateConfigured;
+    private final String zoneRateError;
+    private final boolean zoneRateEmpty;
+    /**
+     * 所有区域中的邮编（规则检查只看邮编是否在区域内）
+     */
+    private final Set<String> zoneZipCodes;
+    /**
+     * 邮编 -> 配送费（只包含配置了价格的区域）
+     */
+    private final Map<String, BigDecimal> zonePrices;
+
+    // ========== 距离段 ==========
+
+    private final boolean variableRateConfigured;
+    private final String variableRateError;
+    private final boolean variableRateEmpty;
+    /**
+     * 第一个距离段的起点（米），小于它表示距离过近
+     */
+    private final Double firstFromMeter;
+    /**
+     * 最后一个距离段的终点（米）和价格，超过终点时使用该价格
+     */
+    private final Double lastToMeter;
+    private final BigDecimal lastPrice;
+    private final List<DistanceBand> distanceBands;
+    private final boolean distanceBandsSorted;
+
+    // ========== 配送时段 ==========
+
+    private final boolean timeSlotsConfigured;
+    private final String timeSlotsError;
+    /**
+     * 按 DayOfWeek.ordinal() 索引，null 表示当天未配置（不允许配送）
+     */
+    private final DaySlot[] daySlots;
+
+    // ========== 在线服务费阶梯 ==========
+
+    private final String serviceFeeStrategyError;
+    private final List<ServiceFeeTier> serviceFeeTiers;
+
+    /**
+     * 上次核对版本号的时间（由缓存使用）
+     */
+    private final AtomicLong checkedAt;
+
+    private MerchantFeeRules(MerchantFeeConfig config, double mileToMeter) {
+        this.config = config;
+        this.version = config != null ? config.getVersion() : null;
+        this.checkedAt = new AtomicLong(System.currentTimeMillis());
+
+        ZoneRate zoneRate = compileZoneRate(config);
+        this.zoneRateConfigured = zoneRate.configured;
+        this.zoneRateError = zoneRate.error;
+        this.zoneRateEmpty = zoneRate.empty;
+        this.zoneZipCodes = zoneRate.zipCodes;
+        this.zonePrices = zoneRate.prices;
+
+        VariableRate variableRate = compileVariableRate(config, mileToMeter);
+        this.variableRateConfigured = variableRate.configured;
+        this.variableRateError = variableRate.error;
+        this.variableRateEmpty = variableRate.empty;
+        this.firstFromMeter = variableRate.firstFromMeter;
+        this.lastToMeter = variableRate.lastToMeter;
+        this.lastPrice = variableRate.lastPrice;
+        this.distanceBands = variableRate.bands;
+        this.distanceBandsSorted = variableRate.sorted;
+
+        TimeSlots timeSlots = compileTimeSlots(config);
+        this.timeSlotsConfigured = timeSlots.configured;
+        this.timeSlotsError = timeSlots.error;
+        this.daySlots = timeSlots.days;
+
+        ServiceFeeStrategy strategy = compileServiceFeeStrategy(config);
+        this.serviceFeeStrategyError = strategy.error;
+        this.serviceFeeTiers = strategy.tiers;
+    }
+
+    /**
+     * 编译商户配置；商户未配置费用时返回空规则（同样缓存，避免每次计价都查库）。
+     * 空规则也按商户各建一个实例，各自记录核对时间
+     *
+     * @param mileToMeter 英里到米的换算系数（与 GoogleMapsService 保持一致）
+     */
+    public static MerchantFeeRules compile(MerchantFeeConfig config, double mileToMeter) {
+        return new MerchantFeeRules(config, mileToMeter);
+    }
+
+    /**
+     * 邮编对应的区域配送费，不在任何区域时返回 null
+     */
+    public BigDecimal zonePrice(String zipCode) {
+        return zonePrices.get(zipCode);
+    }
+
+    /**
+     * 距离所在距离段的价格（from < distance <= to），未匹配时返回 null
+     */
+    public BigDecimal distanceBandPrice(double distanceMeter) {
+        if (distanceBandsSorted) {
+            // 第一个 to >= distance 的段
+            int low = 0;
+            int high = distanceBands.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (distanceBands.get(mid).toMeter() < distanceMeter) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (low < distanceBands.size() && distanceMeter > distanceBands.get(low).fromMeter()) {
+                return distanceBands.get(low).price();
+            }
+            return null;
+        }
+        for (DistanceBand band : distanceBands) {
+            if (distanceMeter > band.fromMeter() && distanceMeter <= band.toMeter()) {
+                return band.price();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 当天的配送时段，未配置时返回 null
+     */
+    public DaySlot daySlot(DayOfWeek dayOfWeek) {
+        return daySlots[dayOfWeek.ordinal()];
+    }
+
+    /**
+     * 是否到了核对版本号的时间（同一时刻只有一个线程返回 true）
+     */
+    boolean claimVersionCheck(long now, long intervalMillis) {
+        long last = checkedAt.get();
+        return now - last >= intervalMillis && checkedAt.compareAndSet(last, now);
+    }
+
+    private static ZoneRate compileZoneRate(MerchantFeeConfig config) {
+        ZoneRate result = new ZoneRate();
+        String json = config != null ? config.getDeliveryZoneRate() : null;
+        if (json == null || json.isEmpty()) {
+            return result;
+        }
+        result.configured = true;
+        try {
+            List<?> zones = OBJECT_MAPPER.readValue(json, List.class);
+            if (zones == null || zones.isEmpty()) {
+                result.empty = true;
+                return result;
+            }
+            Set<String> zipCodes = new HashSet<>();
+            Map<String, BigDecimal> prices = new HashMap<>();
+            for (Object zoneObj : zones) {
+                Map<?, ?> zone = (Map<?, ?>) zoneObj;
+                List<?> zoneZipCodes = (List<?>) zone.get("zipcodes");
+                if (zoneZipCodes == null) {
+                    continue;
+                }
+                Object priceObj = zone.get("price");
+                BigDecimal price = priceObj != null ? new BigDecimal(priceObj.toString()) : null;
+                for (Object zipCode : zoneZipCodes) {
+                    String zip = String.valueOf(zipCode);
+                    zipCodes.add(zip);
+                    if (price != null) {
+                        prices.putIfAbsent(zip, price);
+                    }
+                }
+            }
+            result.zipCodes = zipCodes;
+            result.prices = prices;
+        } catch (Exception e) {
+            log.error("解析 deliveryZoneRate 失败，商户ID: {}", config.getMerchantId(), e);
+            result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        return result;
+    }
+
+    private static VariableRate compileVariableRate(MerchantFeeConfig config, double mileToMeter) {
+        VariableRate result = new VariableRate();
+        String json = config != null ? config.getDeliveryVariableRate() : null;
+        if (json == null || json.isEmpty()) {
+            return result;
+        }
+        result.configured = true;
+        try {
+            List<?> rates = OBJECT_MAPPER.readValue(json, List.class);
+            if (rates == null || rates.isEmpty()) {
+                result.empty = true;
+                return result;
+            }
+            Map<?, ?> first = (Map<?, ?>) rates.get(0);
+            if (first.get("from") != null) {
+                result.firstFromMeter = Double.parseDouble(first.get("from").toString()) * mileToMeter;
+            }
+            Map<?, ?> last = (Map<?, ?>) rates.get(rates.size() - 1);
+            if (last.get("to") != null && last.get("price") != null) {
+                result.lastToMeter = Double.parseDouble(last.get("to").toString()) * mileToMeter;
+                result.lastPrice = new BigDecimal(last.get("price").toString());
+            }
+
+            List<DistanceBand> bands = new ArrayList<>(rates.size());
+            for (Object rateObj : rates) {
+                Map<?, ?> rate = (Map<?, ?>) rateObj;
+                Object fromObj = rate.get("from");
+                Object toObj = rate.get("to");
+                Object priceObj = rate.get("price");
+                if (fromObj != null && toObj != null && priceObj != null) {
+                    bands.add(new DistanceBand(
+                            Double.parseDouble(fromObj.toString()) * mileToMeter,
+                            Double.parseDouble(toObj.toString()) * mileToMeter,
+                            new BigDecimal(priceObj.toString())));
+                }
+            }
+            boolean sorted = true;
+            for (int i = 0; i < bands.size(); i++) {
+                DistanceBand band = bands.get(i);
+                if (band.fromMeter() > band.toMeter()
+                        || (i > 0 && band.fromMeter() < bands.get(i - 1).toMeter())) {
+                    sorted = false;
+                    break;
+                }
+            }
+            result.bands = Collections.unmodifiableList(bands);
+            result.sorted = sorted;
+        } catch (Exception e) {
+            log.error("解析 deliveryVariableRate 失败，商户ID: {}", config.getMerchantId(), e);
+            result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        return result;
+    }
+
+    private static TimeSlots compileTimeSlots(MerchantFeeConfig config) {
+        TimeSlots result = new TimeSlots();
+        String json = config != null ? config.getDeliveryTimeSlots() : null;
+        if (json == null || json.isEmpty()) {
+            return result;
+        }
+        result.configured = true;
+        try {
+            Map<?, ?> timeSlots = OBJECT_MAPPER.readValue(json, Map.class);
+            Object daily = timeSlots.get("daily");
+            for (DayOfWeek day : DayOfWeek.values()) {
+                String dayKey = day.name().toLowerCase();
+                Object slot = daily != null ? daily : timeSlots.get(dayKey);
+                if (slot != null) {
+                    result.days[day.ordinal()] = DaySlot.compile((Map<?, ?>) slot, dayKey);
+                }
+            }
+        } catch (Exception e) {
+            log.error("解析配送时段配置失败，商户ID: {}", config.getMerchantId(), e);
+            result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        return result;
+    }
+
+    private static ServiceFeeStrategy compileServiceFeeStrategy(MerchantFeeConfig config) {
+        ServiceFeeStrategy result = new ServiceFeeStrategy();
+        String json = config != null ? config.getOnlineServiceFeeStrategy() : null;
+        if (json == null || json.isEmpty()) {
+            return result;
+        }
+        try {
+            List<?> strategies = OBJECT_MAPPER.readValue(json, List.class);
+            if (strategies == null) {
+                return result;
+            }
+            List<ServiceFeeTier> tiers = new ArrayList<>(strategies.size());
+            for (Object strategyObj : strategies) {
+                Map<?, ?> strategy = (Map<?, ?>) strategyObj;
+                tiers.add(new ServiceFeeTier(
+                        parseDouble(strategy.get("from")),
+                        parseDouble(strategy.get("to")),
+                        strategy.get("type") != null ? strategy.get("type").toString() : null,
+                        parseDouble(strategy.get("fee"))));
+            }
+            result.tiers = Collections.unmodifiableList(tiers);
+        } catch (Exception e) {
+            log.warn("解析在线服务费策略失败，商户ID: {}, 策略JSON: {}", config.getMerchantId(), json, e);
+            result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        return result;
+    }
+
+    private static Double parseDouble(Object value) {
+        return value != null ? Double.parseDouble(value.toString()) : null;
+    }
+
+    /**
+     * 距离段（米）
+     */
+    public record DistanceBand(double fromMeter, double toMeter, BigDecimal price) {
+    }
+
+    /**
+     * 在线服务费阶梯（字段缺失时为 null，匹配时跳过）
+     */
+    public record ServiceFeeTier(Double from, Double to, String type, Double fee) {
+
+        public boolean isComplete() {
+            return from != null && to != null && type != null && fee != null;
+        }
+    }
+
+    /**
+     * 某一天的配送时段：分钟位图 + 原始配置文本（用于提示）
+     * 配置缺失或格式错误时 error 不为空，检查到这一天时报错
+     */
+    public static final class DaySlot {
+
+        private final long[] minutes = new long[(MINUTES_PER_DAY + 63) / 64];
+        @Getter
+        private final String start;
+        @Getter
+        private final String end;
+        @Getter
+        private final String error;
+        private final int endMinute;
+
+        private DaySlot(String start, String end, String error, int startMinute, int endMinute) {
+            this.start = start;
+            this.end = end;
+            this.error = error;
+            this.endMinute = endMinute;
+            for (int minute = startMinute; minute <= endMinute; minute++) {
+                minutes[minute >>> 6] |= 1L << (minute & 63);
+            }
+        }
+
+        static DaySlot compile(Map<?, ?> slot, String dayKey) {
+            Object start = slot.get("start");
+            Object end = slot.get("end");
+            if (start == null || end == null) {
+                log.warn("时段配置缺少 start 或 end，day: {}", dayKey);
+                return new DaySlot(null, null, "配送时段配置不完整", 0, -1);
+            }
+            try {
+                LocalTime startTime = LocalTime.parse(start.toString(), TIME_FORMATTER);
+                LocalTime endTime = LocalTime.parse(end.toString(), TIME_FORMATTER);
+                return new DaySlot(start.toString(), end.toString(), null,
+                        startTime.getHour() * 60 + startTime.getMinute(),
+                        endTime.getHour() * 60 + endTime.getMinute());
+            } catch (Exception e) {
+                log.error("解析时段失败，start: {}, end: {}", start, end, e);
+                return new DaySlot(start.toString(), end.toString(), "配送时段格式错误", 0, -1);
+            }
+        }
+
+        /**
+         * 时间是否在时段内（首尾都包含；结束分钟只包含整分，与 LocalTime 比较的语义一致）
+         */
+        public boolean contains(LocalTime time) {
+            int minute = time.getHour() * 60 + time.getMinute();
+            if ((minutes[minute >>> 6] & (1L << (minute & 63))) == 0) {
+                return false;
+            }
+            return minute != endMinute || (time.getSecond() == 0 && time.getNano() == 0);
+        }
+    }
+
+    private static final class ZoneRate {
+        private boolean configured;
+        private boolean empty;
+        private String error;
+        private Set<String> zipCodes = Collections.emptySet();
+        private Map<String, BigDecimal> prices = Collections.emptyMap();
+    }
+
+    private static final class VariableRate {
+        private boolean configured;
+        private boolean empty;
+        private String error;
+        private Double firstFromMeter;
+        private Double lastToMeter;
+        private BigDecimal lastPrice;
+        private List<DistanceBand> bands = Collections.emptyList();
+        private boolean sorted;
+    }
+
+    private static final class TimeSlots {
+        private boolean configured;
+        private String error;
+        private final DaySlot[] days = new DaySlot[7];
+    }
+
+    private static final class ServiceFeeStrategy {
+        private String error;
+        private List<ServiceFeeTier> tiers = Collections.emptyList();
+    }
+}
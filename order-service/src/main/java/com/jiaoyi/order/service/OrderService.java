@@ -2,16 +2,20 @@ package com.jiaoyi.order.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.common.exception.BusinessException;
+import com.jiaoyi.order.client.AsyncFeignSupport;
+import com.jiaoyi.order.client.AsyncProductServiceClient;
 import com.jiaoyi.order.client.CouponServiceClient;
 import com.jiaoyi.order.client.ProductServiceClient;
 import com.jiaoyi.order.dto.CalculatePriceRequest;
 import com.jiaoyi.order.dto.CalculatePriceResponse;
 import com.jiaoyi.order.entity.Order;
 import com.jiaoyi.order.entity.OrderItem;
+import com.jiaoyi.order.entity.OrderPrice;
 import com.jiaoyi.order.entity.OrderCoupon;
 import com.jiaoyi.order.entity.CapabilityOfOrderConfig;
 import com.jiaoyi.order.entity.CapabilityOfOrder;
 import com.jiaoyi.order.entity.MerchantCapabilityConfig;
+import com.jiaoyi.order.enums.OrderCreateModeEnum;
 import com.jiaoyi.order.enums.OrderTypeEnum;
 import com.jiaoyi.order.mapper.OrderItemMapper;
 import com.jiaoyi.order.mapper.OrderMapper;
@@ -20,12 +24,16 @@ import com.jiaoyi.order.mapper.MerchantCapabilityConfigMapper;
 import com.jiaoyi.order.mapper.UserOrderIndexMapper;
 import com.jiaoyi.order.entity.UserOrderIndex;
 import com.jiaoyi.order.service.OutboxHelper;
+import com.jiaoyi.order.util.ShardGeneIdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -46,17 +54,28 @@ public class OrderService {
     private final OrderCouponMapper orderCouponMapper;
     private final UserOrderIndexMapper userOrderIndexMapper;
     private final ProductServiceClient productServiceClient;
+    private final AsyncProductServiceClient asyncProductServiceClient;
     private final CouponServiceClient couponServiceClient;
     private final RedissonClient redissonClient;
     private final OrderTimeoutMessageService orderTimeoutMessageService;
+    private final OrderTimeoutWheelService orderTimeoutWheelService;
     private final ObjectMapper objectMapper;
     private final FeeCalculationService feeCalculationService;
     private final OutboxHelper outboxHelper;
     private final DoorDashService doorDashService;
+    private final DoorDashQuoteCache doorDashQuoteCache;
     private final DeliveryRuleService deliveryRuleService;
     private final PaymentService paymentService;
     private final PeakHourRejectionService peakHourRejectionService;
     private final MerchantCapabilityConfigMapper merchantCapabilityConfigMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final ShardGeneIdGenerator shardGeneIdGenerator;
+
+    /**
+     * 下单流程模式：LEGACY（长事务）/ SAGA（事务外远程调用 + 本地短事务 + 补偿）
+     */
+    @Value("${order.create.mode:LEGACY}")
+    private String createMode;
 
     /**
      * 计算订单价格（预览价格，不创建订单）
@@ -93,6 +112,16 @@ public class OrderService {
         }
 
         // 2. 计算订单小计（从数据库查询商品价格，优先使用SKU价格）
+        // 先并发发起所有商品查询（同一商品只查一次），总耗时接近最慢的一次请求而不是逐个累加
+        Map<Long, java.util.concurrent.CompletableFuture<com.jiaoyi.common.ApiResponse<?>>> productFutures = new HashMap<>();
+        for (com.jiaoyi.order.dto.CalculatePriceRequest.OrderItemRequest itemRequest : request.getOrderItems()) {
+            if (itemRequest.getProductId() != null && itemRequest.getSkuId() != null
+                    && itemRequest.getQuantity() != null && itemRequest.getQuantity() > 0) {
+                productFutures.computeIfAbsent(itemRequest.getProductId(),
+                        productId -> asyncProductServiceClient.getProductByMerchantIdAndId(request.getMerchantId(), productId));
+            }
+        }
+
         BigDecimal subtotal = BigDecimal.ZERO;
         for (com.jiaoyi.order.dto.CalculatePriceRequest.OrderItemRequest itemRequest : request.getOrderItems()) {
             if (itemRequest.getProductId() == null || itemRequest.getQuantity() == null || itemRequest.getQuantity() <= 0) {
@@ -106,8 +135,8 @@ public class OrderService {
 
             // 从商品服务获取商品信息（使用 merchantId 和 productId，避免查询所有分片）
             log.debug("查询商品信息，商户ID: {}, 商品ID: {}, SKU ID: {}", request.getMerchantId(), itemRequest.getProductId(), itemRequest.getSkuId());
-            com.jiaoyi.common.ApiResponse<?> productResponse = productServiceClient.getProductByMerchantIdAndId(
-                    request.getMerchantId(), itemRequest.getProductId());
+            com.jiaoyi.common.ApiResponse<?> productResponse = AsyncFeignSupport.await(
+                    productFutures.get(itemRequest.getProductId()));
             
             if (productResponse.getCode() != 200) {
                 log.warn("商品查询失败，商户ID: {}, 商品ID: {}, 响应码: {}, 消息: {}", 
@@ -241,12 +270,10 @@ public class OrderService {
                         Map<String, Object> dropoffAddress = buildDropoffAddress(request);
                         
                         if (pickupAddress != null && dropoffAddress != null) {
-                            // 生成外部订单ID（用于 DoorDash quote，格式：order_{orderId}）
-                            // 注意：此时订单还未创建，使用临时ID，创建订单后需要更新
-                            String externalDeliveryId = "order_temp_" + System.currentTimeMillis();
-                            
-                            DoorDashService.DoorDashQuoteResponse quote = doorDashService.quoteDelivery(
-                                    externalDeliveryId,
+                            // 算价阶段使用报价缓存（同一地址重复刷新价格不再调用 DoorDash，并发相同报价只调用一次）
+                            // 此时订单还未创建，缓存内部使用临时 external_delivery_id
+                            DoorDashService.DoorDashQuoteResponse quote = doorDashQuoteCache.getQuote(
+                                    request.getMerchantId(),
                                     pickupAddress, 
                                     dropoffAddress, 
                                     subtotal
@@ -350,16 +377,193 @@ public class OrderService {
     /**
      * 创建订单（在线点餐，保留库存锁定、优惠券等功能）
      * 
+     * 根据 order.create.mode 选择流程：
+     * - LEGACY：原有流程，远程扣库存、核销优惠券与本地落库在同一个事务内
+     * - SAGA：远程调用在事务外执行，本地短事务只负责落库，失败时补偿
+     * 
      * @param order 订单实体（包含 merchantId, userId, orderType 等）
      * @param orderItems 订单项列表
      * @param couponIds 优惠券ID列表（可选）
      * @param couponCodes 优惠券代码列表（可选）
      * @return 创建后的订单
      */
-    @Transactional
     public Order createOrder(Order order, List<OrderItem> orderItems, List<Long> couponIds, List<String> couponCodes) {
+        if (resolveCreateMode() == OrderCreateModeEnum.SAGA) {
+            return createOrderSaga(order, orderItems, couponIds, couponCodes);
+        }
+        return newTransactionTemplate().execute(status -> createOrderLegacy(order, orderItems, couponIds, couponCodes));
+    }
+
+    /**
+     * 原有下单流程（整个过程在一个事务内，由 createOrder 开启事务）
+     */
+    private Order createOrderLegacy(Order order, List<OrderItem> orderItems, List<Long> couponIds, List<String> couponCodes) {
         log.info("创建在线点餐订单，merchantId: {}, userId: {}", order.getMerchantId(), order.getUserId());
         
+        boolean peakHourCounted = prepareOrderForCreate(order, orderItems);
+        
+        return releasePeakHourOnFailure(order, peakHourCounted, () -> executeWithCreateLocks(order, orderItems, () -> {
+            // 1. 按渠道扣减库存（下单即扣，取消时按订单归还）
+            boolean stockDeducted = false;
+
+            try {
+                stockDeducted = deductStockByChannel(order, orderItems);
+                
+                // 2. 设置订单默认值
+                applyOrderDefaults(order);
+                
+                // 3. 计算订单总金额（用于优惠券验证和计算）
+                BigDecimal orderSubtotal = calculateOrderSubtotal(orderItems);
+                log.info("订单小计: {}", orderSubtotal);
+                
+                // 4. 处理优惠券（完整实现）
+                List<OrderCoupon> orderCoupons = resolveOrderCoupons(couponIds, couponCodes, order.getUserId(), orderSubtotal, orderItems);
+                BigDecimal totalDiscountAmount = sumAppliedAmount(orderCoupons);
+                
+                // 5. 更新订单价格（包含优惠金额）
+                updateOrderPriceWithDiscount(order, orderSubtotal, totalDiscountAmount);
+                log.info("订单总金额: {}, 优惠金额: {}, 实际支付: {}", 
+                        orderSubtotal, totalDiscountAmount, orderSubtotal.subtract(totalDiscountAmount));
+                
+                // 6. 保存订单
+                orderMapper.insert(order);
+                log.info("订单插入成功，ID: {}", order.getId());
+
+                // 6.4 记录订单到Redis（用于高峰拒单统计，准入时已计入的订单跳过）
+                if (!peakHourCounted) {
+                    recordOrderForPeakHour(order);
+                }
+
+                // 6.5 写入用户订单索引表（用于按 userId 查询订单，避免广播查询）
+                insertUserOrderIndex(order);
+
+                // 7. 创建并保存订单项
+                insertOrderItems(order, orderItems);
+                
+                // 8. 保存订单优惠券关联记录（如果有）
+                if (!orderCoupons.isEmpty()) {
+                    insertOrderCoupons(order, orderCoupons);
+                    
+                    // 使用优惠券（调用优惠券服务）
+                    for (OrderCoupon orderCoupon : orderCoupons) {
+                        try {
+                            if (orderCoupon.getCouponCode() != null && !orderCoupon.getCouponCode().isEmpty()) {
+                                couponServiceClient.useCoupon(
+                                        orderCoupon.getCouponCode(),
+                                        order.getUserId(),
+                                        order.getId(),
+                                        orderCoupon.getAppliedAmount()
+                                );
+                                log.info("优惠券使用成功，优惠券代码: {}, 优惠金额: {}", 
+                                        orderCoupon.getCouponCode(), orderCoupon.getAppliedAmount());
+                            }
+                        } catch (Exception e) {
+                            log.error("使用优惠券失败，优惠券代码: {}, 订单ID: {}", 
+                                    orderCoupon.getCouponCode(), order.getId(), e);
+                            // 不抛出异常，记录日志即可（优惠券已保存到订单，后续可以手动处理）
+                        }
+                    }
+                }
+                
+                // 9-11. 查询插入后的订单并发送超时消息
+                return finishOrderCreation(order, orderItems, orderSubtotal, totalDiscountAmount);
+                
+            } catch (Exception e) {
+                // 如果订单创建失败，按订单归还已扣库存
+                log.error("在线点餐订单创建失败，尝试归还库存", e);
+                if (stockDeducted && order.getId() != null) {
+                    returnStockWithRetry(order.getId());
+                }
+                throw e;
+            }
+        }));
+    }
+
+    /**
+     * Saga 下单流程
+     * 
+     * 与原有流程的区别：远程调用不再占用分片库连接和事务
+     * 1. 事务外：校验、优惠券校验与优惠金额计算（只读远程调用）、计算价格
+     * 2. 事务外：按渠道扣减库存（按 orderId 幂等，相当于库存预留）
+     * 3. 本地短事务：订单、用户索引、订单项、订单优惠券落库 + 优惠券核销任务写入 outbox
+     * 4. 本地事务失败：补偿归还库存（优惠券尚未核销，无需补偿）
+     * 5. 事务提交后：高峰统计、超时消息（outbox 异步核销优惠券）
+     */
+    private Order createOrderSaga(Order order, List<OrderItem> orderItems, List<Long> couponIds, List<String> couponCodes) {
+        log.info("创建在线点餐订单（Saga），merchantId: {}, userId: {}", order.getMerchantId(), order.getUserId());
+        
+        boolean peakHourCounted = prepareOrderForCreate(order, orderItems);
+        
+        return releasePeakHourOnFailure(order, peakHourCounted, () -> executeWithCreateLocks(order, orderItems, () -> {
+            if (orderItems != null && orderItems.stream().anyMatch(i -> i.getProductId() == null || i.getSkuId() == null)) {
+                throw new BusinessException("订单项必须包含productId和skuId");
+            }
+            
+            // 1. 只读准备：默认值、小计、优惠券、价格（失败时尚未占用任何资源）
+            applyOrderDefaults(order);
+            BigDecimal orderSubtotal = calculateOrderSubtotal(orderItems);
+            List<OrderCoupon> orderCoupons = resolveOrderCoupons(couponIds, couponCodes, order.getUserId(), orderSubtotal, orderItems);
+            BigDecimal totalDiscountAmount = sumAppliedAmount(orderCoupons);
+            updateOrderPriceWithDiscount(order, orderSubtotal, totalDiscountAmount);
+            log.info("【Saga】价格计算完成，订单ID: {}, 小计: {}, 优惠金额: {}", order.getId(), orderSubtotal, totalDiscountAmount);
+            
+            // 2. 库存预留（事务外远程调用）
+            boolean stockDeducted = deductStockByChannel(order, orderItems);
+            
+            // 3. 本地短事务：只做落库和 outbox 写入
+            try {
+                newTransactionTemplate().executeWithoutResult(status -> {
+                    orderMapper.insert(order);
+                    insertUserOrderIndex(order);
+                    insertOrderItems(order, orderItems);
+                    if (!orderCoupons.isEmpty()) {
+                        insertOrderCoupons(order, orderCoupons);
+                        boolean enqueued = outboxHelper.enqueueUseCouponTask(
+                                order.getId(), order.getUserId(), order.getStoreId(), orderCoupons);
+                        if (!enqueued) {
+                            throw new BusinessException("优惠券核销任务写入失败");
+                        }
+                    }
+                });
+                log.info("【Saga】订单本地事务提交成功，订单ID: {}", order.getId());
+            } catch (Exception e) {
+                // 4. 补偿：本地事务已回滚，归还已预留的库存
+                log.error("【Saga】订单落库失败，执行库存补偿，订单ID: {}", order.getId(), e);
+                if (stockDeducted) {
+                    returnStockWithRetry(order.getId());
+                }
+                throw e;
+            }
+            
+            // 5. 事务提交后的非关键步骤
+            if (!peakHourCounted) {
+                recordOrderForPeakHour(order);
+            }
+            return finishOrderCreation(order, orderItems, orderSubtotal, totalDiscountAmount);
+        }));
+    }
+
+    /**
+     * 解析下单模式（配置非法时回退为 LEGACY）
+     */
+    private OrderCreateModeEnum resolveCreateMode() {
+        OrderCreateModeEnum mode = OrderCreateModeEnum.fromCode(createMode);
+        return mode != null ? mode : OrderCreateModeEnum.LEGACY;
+    }
+
+    /**
+     * 创建分片库事务模板（shardingTransactionManager 为 @Primary）
+     */
+    private TransactionTemplate newTransactionTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 下单前置处理：校验必要字段、确定 storeId/shardId、预生成订单ID、高峰拒单检查
+     *
+     * @return 本单是否已计入高峰拒单窗口（已计入的订单创建失败时需要归还）
+     */
+    private boolean prepareOrderForCreate(Order order, List<OrderItem> orderItems) {
         // 验证必要字段
         if (order.getMerchantId() == null || order.getMerchantId().isEmpty()) {
             throw new BusinessException("merchantId 不能为空");
@@ -417,8 +621,9 @@ public class OrderService {
             log.info("计算 shard_id: {} (基于 storeId: {})", shardId, storeId);
         }
         // 预生成订单ID（按渠道扣减需在 insert 前带 orderId 调用）
+        // 订单ID嵌入 shard_id 基因，之后只带 orderId 的查询也能精准路由到单表
         if (order.getId() == null) {
-            order.setId(com.jiaoyi.order.util.ShardUtil.generateOrderId());
+            order.setId(shardGeneIdGenerator.nextId(order.getShardId()));
         }
 
         // 高峰拒单检查（排除堂食订单）
@@ -474,10 +679,18 @@ public class OrderService {
                         config.getVersion()
                     );
                 }
+                return result.isCounted();
             }
         }
-        
-        // 用户级别的锁：确保同一用户同一时间只能处理一个下单请求
+        return false;
+    }
+
+    /**
+     * 在用户级锁和订单内容锁保护下执行下单逻辑
+     * 用户级锁：确保同一用户同一时间只能处理一个下单请求
+     * 内容锁：防重复提交相同订单（Controller 层 @PreventDuplicateSubmission 的双重保护）
+     */
+    private Order executeWithCreateLocks(Order order, List<OrderItem> orderItems, java.util.function.Supplier<Order> action) {
         String userLockKey = com.jiaoyi.order.constants.OrderConstants.ORDER_CREATE_USER_LOCK_PREFIX + order.getUserId();
         RLock userLock = redissonClient.getLock(userLockKey);
 
@@ -497,7 +710,6 @@ public class OrderService {
             log.info("成功获取用户级别锁，用户ID: {}, 开始处理订单创建（锁将自动续期）", order.getUserId());
             
             // 基于订单内容生成锁 key（防重复提交相同订单）
-            // 注意：Controller 层已经有 @PreventDuplicateSubmission 注解，这里作为双重保护
             // 使用更细粒度的锁：merchantId + userId + orderItems 的哈希
             StringBuilder lockContent = new StringBuilder();
             lockContent.append(order.getMerchantId()).append("|");
@@ -519,298 +731,319 @@ public class OrderService {
             RLock contentLock = redissonClient.getLock(contentLockKey);
 
             try {
-                    // 尝试获取订单内容级别的锁，使用配置的等待时间和持有时间
-                    // 注意：Redisson的WatchDog机制会自动续期（每10秒续期一次）
-                    boolean contentLockAcquired = contentLock.tryLock(
-                        com.jiaoyi.order.constants.OrderConstants.CONTENT_LOCK_WAIT_SECONDS,
-                        com.jiaoyi.order.constants.OrderConstants.CONTENT_LOCK_LEASE_SECONDS,
-                        TimeUnit.SECONDS);
-
-                    if (!contentLockAcquired) {
-                        log.warn("获取订单内容锁失败，可能存在重复提交，商户ID: {}, 用户ID: {}",
-                            order.getMerchantId(), order.getUserId());
-                        throw new BusinessException("请勿重复提交相同订单");
-                    }
-
-                    log.info("成功获取订单内容锁，开始处理在线点餐订单创建（锁将自动续期），内容锁key: {}", contentLockKey);
-                    
-                    // 1. 按渠道扣减库存（下单即扣，取消时按订单归还）
-                    List<Long> productIds = null;
-                    List<Long> skuIds = null;
-                    List<Integer> quantities = null;
-                    boolean stockDeducted = false;
-
-                    try {
-                        if (orderItems != null && !orderItems.isEmpty()) {
-                            skuIds = orderItems.stream()
-                                    .map(OrderItem::getSkuId)
-                                    .filter(Objects::nonNull)
-                                    .collect(Collectors.toList());
-                            productIds = orderItems.stream()
-                                    .map(OrderItem::getProductId)
-                                    .filter(Objects::nonNull)
-                                    .collect(Collectors.toList());
-                            quantities = orderItems.stream()
-                                    .map(OrderItem::getQuantity)
-                                    .collect(Collectors.toList());
-
-                            if (!productIds.isEmpty() && !skuIds.isEmpty() && productIds.size() == skuIds.size()
-                                    && order.getMerchantId() != null && order.getStoreId() != null && order.getId() != null) {
-                                log.info("按渠道扣减库存，订单ID: {}, 商品数量: {}", order.getId(), skuIds.size());
-                                ProductServiceClient.ChannelDeductBatchRequest deductRequest = new ProductServiceClient.ChannelDeductBatchRequest();
-                                deductRequest.setBrandId(order.getMerchantId());
-                                deductRequest.setStoreId(String.valueOf(order.getStoreId()));
-                                deductRequest.setChannelCode("ONLINE_ORDER");
-                                deductRequest.setOrderId(String.valueOf(order.getId()));
-                                List<ProductServiceClient.ChannelDeductItem> items = new java.util.ArrayList<>();
-                                for (int i = 0; i < skuIds.size(); i++) {
-                                    ProductServiceClient.ChannelDeductItem item = new ProductServiceClient.ChannelDeductItem();
-                                    item.setObjectId(skuIds.get(i));
-                                    item.setQuantity(java.math.BigDecimal.valueOf(quantities.get(i)));
-                                    items.add(item);
-                                }
-                                deductRequest.setItems(items);
-                                try {
-                                    productServiceClient.deductByChannelBatch(deductRequest);
-                                    stockDeducted = true;
-                                } catch (Exception e) {
-                                    log.error("按渠道扣减库存失败", e);
-                                    throw new BusinessException("库存不足或扣减失败: " + e.getMessage());
-                                }
-                            } else if (orderItems.stream().anyMatch(i -> i.getProductId() == null || i.getSkuId() == null)) {
-                                throw new BusinessException("订单项必须包含productId和skuId");
-                            }
-                        }
-                        
-                        // 2. 设置订单默认值
-                        if (order.getStatus() == null) {
-                            order.setStatus(com.jiaoyi.order.constants.OrderConstants.DEFAULT_ORDER_STATUS);
-                        }
-                        if (order.getLocalStatus() == null) {
-                            order.setLocalStatus(com.jiaoyi.order.constants.OrderConstants.DEFAULT_LOCAL_STATUS);
-                        }
-                        if (order.getKitchenStatus() == null) {
-                            order.setKitchenStatus(com.jiaoyi.order.constants.OrderConstants.DEFAULT_KITCHEN_STATUS);
-                        }
-                        order.setVersion(com.jiaoyi.order.constants.OrderConstants.DEFAULT_VERSION);
-                        order.setCreateTime(LocalDateTime.now());
-                        order.setUpdateTime(LocalDateTime.now());
-                        
-                        // 3. 计算订单总金额（用于优惠券验证和计算）
-                        BigDecimal orderSubtotal = calculateOrderSubtotal(orderItems);
-                        log.info("订单小计: {}", orderSubtotal);
-                        
-                        // 4. 处理优惠券（完整实现）
-                        List<OrderCoupon> orderCoupons = new ArrayList<>();
-                        BigDecimal totalDiscountAmount = BigDecimal.ZERO;
-                        
-                        if (couponIds != null && !couponIds.isEmpty()) {
-                            // 处理优惠券ID列表
-                            for (Long couponId : couponIds) {
-                                OrderCoupon orderCoupon = processCouponById(couponId, order.getUserId(), orderSubtotal, orderItems);
-                                if (orderCoupon != null) {
-                                    orderCoupons.add(orderCoupon);
-                                    totalDiscountAmount = totalDiscountAmount.add(orderCoupon.getAppliedAmount());
-                                }
-                            }
-                        } else if (couponCodes != null && !couponCodes.isEmpty()) {
-                            // 处理优惠券代码列表
-                            for (String couponCode : couponCodes) {
-                                OrderCoupon orderCoupon = processCouponByCode(couponCode, order.getUserId(), orderSubtotal, orderItems);
-                                if (orderCoupon != null) {
-                                    orderCoupons.add(orderCoupon);
-                                    totalDiscountAmount = totalDiscountAmount.add(orderCoupon.getAppliedAmount());
-                                }
-                            }
-                        }
-                        
-                        // 5. 更新订单价格（包含优惠金额）
-                        updateOrderPriceWithDiscount(order, orderSubtotal, totalDiscountAmount);
-                        log.info("订单总金额: {}, 优惠金额: {}, 实际支付: {}", 
-                                orderSubtotal, totalDiscountAmount, orderSubtotal.subtract(totalDiscountAmount));
-                        
-                        // 6. 保存订单
-                        orderMapper.insert(order);
-                        log.info("订单插入成功，ID: {}", order.getId());
-
-                        // 6.4 记录订单到Redis（用于高峰拒单统计）
-                        try {
-                            peakHourRejectionService.recordOrder(
-                                    order.getMerchantId(),
-                                order.getId()
-                            );
-                        } catch (Exception e) {
-                            log.error("记录订单到Redis失败，不影响订单创建: orderId={}", order.getId(), e);
-                        }
-
-                        // 6.5 写入用户订单索引表（用于按 userId 查询订单，避免广播查询）
-                        try {
-                            UserOrderIndex index = UserOrderIndex.builder()
-                                    .userId(order.getUserId())
-                                    .orderId(order.getId())
-                                    .storeId(order.getStoreId())
-                                    .merchantId(order.getMerchantId())
-                                    .orderStatus(order.getStatus())
-                                    .orderType(order.getOrderType() != null ? order.getOrderType().getCode() : null)
-                                    .totalAmount(extractTotalAmount(order))
-                                    .createdAt(LocalDateTime.now())
-                                    .build();
-                            userOrderIndexMapper.insert(index);
-                            log.info("用户订单索引插入成功，userId: {}, orderId: {}", order.getUserId(), order.getId());
-                        } catch (Exception e) {
-                            log.error("写入用户订单索引失败，orderId: {}, userId: {}", order.getId(), order.getUserId(), e);
-                            // 索引表写入失败不影响订单创建，记录日志即可（可以通过补偿任务修复）
-                        }
+                boolean contentLockAcquired = contentLock.tryLock(
+                    com.jiaoyi.order.constants.OrderConstants.CONTENT_LOCK_WAIT_SECONDS,
+                    com.jiaoyi.order.constants.OrderConstants.CONTENT_LOCK_LEASE_SECONDS,
+                    TimeUnit.SECONDS);
+
+                if (!contentLockAcquired) {
+                    log.warn("获取订单内容锁失败，可能存在重复提交，商户ID: {}, 用户ID: {}",
+                        order.getMerchantId(), order.getUserId());
+                    throw new BusinessException("请勿重复提交相同订单");
+                }
 
-                        // 7. 创建并保存订单项
-                        if (orderItems != null && !orderItems.isEmpty()) {
-                            int itemIndex = 0;
-                            for (OrderItem item : orderItems) {
-                                item.setOrderId(order.getId());
-                                item.setMerchantId(order.getMerchantId());
-                                // 设置 storeId 和 shardId（与订单保持一致，确保同库同表）
-                                item.setStoreId(order.getStoreId());
-                                item.setShardId(order.getShardId());
-                                
-                                // 确保 saleItemId 不为 null（数据库要求）
-                                if (item.getSaleItemId() == null) {
-                                    if (item.getProductId() != null) {
-                                        item.setSaleItemId(item.getProductId());
-                                    } else {
-                                        item.setSaleItemId(0L); // 默认值
-                                    }
-                                }
-                                
-                                // 确保 orderItemId 不为 null（数据库要求）
-                                if (item.getOrderItemId() == null) {
-                                    item.setOrderItemId((long) (itemIndex + 1));
-                                }
-                                
-                                if (item.getVersion() == null) {
-                                    item.setVersion(1L);
-                                }
-                                if (item.getCreateTime() == null) {
-                                    item.setCreateTime(LocalDateTime.now());
-                                }
-                                if (item.getUpdateTime() == null) {
-                                    item.setUpdateTime(LocalDateTime.now());
-                                }
-                                itemIndex++;
-                            }
-                            orderItemMapper.insertBatch(orderItems);
-                            log.info("订单项插入成功，数量: {}", orderItems.size());
-                        }
-                        
-                        // 8. 保存订单优惠券关联记录（如果有）
-                        if (!orderCoupons.isEmpty()) {
-                            orderCoupons.forEach(oc -> oc.setOrderId(order.getId()));
-                            // 设置 merchantId 和 storeId
-                            for (OrderCoupon coupon : orderCoupons) {
-                                coupon.setMerchantId(order.getMerchantId());
-                                coupon.setStoreId(order.getStoreId());
-                            }
-                            orderCouponMapper.batchInsert(orderCoupons);
-                            
-                            // 使用优惠券（调用优惠券服务）
-                            for (OrderCoupon orderCoupon : orderCoupons) {
-                                try {
-                                    if (orderCoupon.getCouponCode() != null && !orderCoupon.getCouponCode().isEmpty()) {
-                                        couponServiceClient.useCoupon(
-                                                orderCoupon.getCouponCode(),
-                                                order.getUserId(),
-                                                order.getId(),
-                                                orderCoupon.getAppliedAmount()
-                                        );
-                                        log.info("优惠券使用成功，优惠券代码: {}, 优惠金额: {}", 
-                                                orderCoupon.getCouponCode(), orderCoupon.getAppliedAmount());
-                                    }
-                                } catch (Exception e) {
-                                    log.error("使用优惠券失败，优惠券代码: {}, 订单ID: {}", 
-                                            orderCoupon.getCouponCode(), order.getId(), e);
-                                    // 不抛出异常，记录日志即可（优惠券已保存到订单，后续可以手动处理）
-                                }
-                            }
-                        }
-                        
-                        // 9. 查询插入后的订单（获取version）
-                        Order insertedOrder = orderMapper.selectByMerchantIdAndId(order.getMerchantId(), order.getId());
-                        if (insertedOrder == null) {
-                            throw new BusinessException("订单创建失败：插入后无法查询到订单记录");
-                        }
-                        
-                        // 10. 设置订单项到订单中
-                        insertedOrder.setOrderItems(orderItems);
-                        
-                        log.info("在线点餐订单创建完成，ID: {}, merchantId: {}, userId: {}, 总金额: {}, 优惠: {}", 
-                                insertedOrder.getId(), insertedOrder.getMerchantId(), insertedOrder.getUserId(),
-                                orderSubtotal, totalDiscountAmount);
-                        
-                        // 11. 发送订单超时延迟消息（配置的超时时间后自动取消）
-                        orderTimeoutMessageService.sendOrderTimeoutMessage(
-                            insertedOrder.getId(),
-                            order.getUserId(),
-                            com.jiaoyi.order.constants.OrderConstants.ORDER_TIMEOUT_MINUTES);
-                        log.info("订单超时延迟消息已发送，订单将在{}分钟后自动取消（如果未支付）",
-                            com.jiaoyi.order.constants.OrderConstants.ORDER_TIMEOUT_MINUTES);
-                        
-                        return insertedOrder;
-                        
-                    } catch (Exception e) {
-                        // 如果订单创建失败，按订单归还已扣库存
-                        log.error("在线点餐订单创建失败，尝试归还库存", e);
-                        if (stockDeducted && order.getId() != null) {
-                            int maxRetries = com.jiaoyi.order.constants.OrderConstants.STOCK_UNLOCK_MAX_RETRIES;
-                            boolean returnSuccess = false;
-                            for (int retryCount = 0; retryCount < maxRetries; retryCount++) {
-                                try {
-                                    if (retryCount > 0) {
-                                        log.info("重试归还库存，第 {} 次", retryCount);
-                                        Thread.sleep(1000L * retryCount);
-                                    }
-                                    productServiceClient.returnByOrder(String.valueOf(order.getId()));
-                                    returnSuccess = true;
-                                    log.info("库存归还成功，订单ID: {}", order.getId());
-                                    break;
-                                } catch (Exception returnException) {
-                                    log.error("归还库存失败，重试次数: {}/{}", retryCount + 1, maxRetries, returnException);
-                                    if (retryCount == maxRetries - 1) {
-                                        log.error("【库存泄漏警告】订单创建失败但归还库存失败，orderId: {}", order.getId());
-                                    }
-                                }
-                            }
-                            if (!returnSuccess) {
-                                log.error("库存归还失败，已达最大重试次数: {}，需要人工介入", maxRetries);
-                            }
-                        }
-                        throw e;
-                    }
-                } catch (InterruptedException e) {
-                    // 获取订单内容锁被中断
-                    log.error("获取订单内容锁被中断，用户ID: {}", order.getUserId(), e);
-                    Thread.currentThread().interrupt();
-                    throw new BusinessException("系统繁忙，请稍后重试");
-                } finally {
-                    // 释放订单内容级别的锁（无论成功还是失败都要释放）
-                    if (contentLock.isHeldByCurrentThread()) {
-                        contentLock.unlock();
-                        log.debug("释放订单内容锁，内容锁key: {}", contentLockKey);
-                    }
+                log.info("成功获取订单内容锁，开始处理在线点餐订单创建（锁将自动续期），内容锁key: {}", contentLockKey);
+                return action.get();
+            } catch (InterruptedException e) {
+                // 获取订单内容锁被中断
+                log.error("获取订单内容锁被中断，用户ID: {}", order.getUserId(), e);
+                Thread.currentThread().interrupt();
+                throw new BusinessException("系统繁忙，请稍后重试");
+            } finally {
+                // 释放订单内容级别的锁（无论成功还是失败都要释放）
+                if (contentLock.isHeldByCurrentThread()) {
+                    contentLock.unlock();
+                    log.debug("释放订单内容锁，内容锁key: {}", contentLockKey);
                 }
+            }
         } catch (InterruptedException e) {
             log.error("获取用户级别锁被中断，用户ID: {}", order.getUserId(), e);
             Thread.currentThread().interrupt();
             throw new BusinessException("系统繁忙，请稍后重试");
         } finally {
-                // 释放用户级别的锁
-                if (userLock.isHeldByCurrentThread()) {
-                    userLock.unlock();
-                    log.debug("释放用户级别锁，用户ID: {}", order.getUserId());
+            // 释放用户级别的锁
+            if (userLock.isHeldByCurrentThread()) {
+                userLock.unlock();
+                log.debug("释放用户级别锁，用户ID: {}", order.getUserId());
+            }
+        }
+    }
+
+    /**
+     * 按渠道扣减库存（下单即扣，按 orderId 幂等，取消时按订单归还）
+     * 
+     * @return 是否已发起扣减（用于失败时决定是否需要归还）
+     */
+    private boolean deductStockByChannel(Order order, List<OrderItem> orderItems) {
+        if (orderItems == null || orderItems.isEmpty()) {
+            return false;
+        }
+        List<Long> skuIds = orderItems.stream()
+                .map(OrderItem::getSkuId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        List<Long> productIds = orderItems.stream()
+                .map(OrderItem::getProductId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        List<Integer> quantities = orderItems.stream()
+                .map(OrderItem::getQuantity)
+                .collect(Collectors.toList());
+
+        if (!productIds.isEmpty() && !skuIds.isEmpty() && productIds.size() == skuIds.size()
+                && order.getMerchantId() != null && order.getStoreId() != null && order.getId() != null) {
+            log.info("按渠道扣减库存，订单ID: {}, 商品数量: {}", order.getId(), skuIds.size());
+            ProductServiceClient.ChannelDeductBatchRequest deductRequest = new ProductServiceClient.ChannelDeductBatchRequest();
+            deductRequest.setBrandId(order.getMerchantId());
+            deductRequest.setStoreId(String.valueOf(order.getStoreId()));
+            deductRequest.setChannelCode("ONLINE_ORDER");
+            deductRequest.setOrderId(String.valueOf(order.getId()));
+            List<ProductServiceClient.ChannelDeductItem> items = new java.util.ArrayList<>();
+            for (int i = 0; i < skuIds.size(); i++) {
+                ProductServiceClient.ChannelDeductItem item = new ProductServiceClient.ChannelDeductItem();
+                item.setObjectId(skuIds.get(i));
+                item.setQuantity(java.math.BigDecimal.valueOf(quantities.get(i)));
+                items.add(item);
+            }
+            deductRequest.setItems(items);
+            try {
+                productServiceClient.deductByChannelBatch(deductRequest);
+                return true;
+            } catch (Exception e) {
+                log.error("按渠道扣减库存失败", e);
+                throw new BusinessException("库存不足或扣减失败: " + e.getMessage());
+            }
+        } else if (orderItems.stream().anyMatch(i -> i.getProductId() == null || i.getSkuId() == null)) {
+            throw new BusinessException("订单项必须包含productId和skuId");
+        }
+        return false;
+    }
+
+    /**
+     * 归还已扣减的库存（订单创建失败时的补偿，带重试）
+     */
+    private void returnStockWithRetry(Long orderId) {
+        int maxRetries = com.jiaoyi.order.constants.OrderConstants.STOCK_UNLOCK_MAX_RETRIES;
+        boolean returnSuccess = false;
+        for (int retryCount = 0; retryCount < maxRetries; retryCount++) {
+            try {
+                if (retryCount > 0) {
+                    log.info("重试归还库存，第 {} 次", retryCount);
+                    Thread.sleep(1000L * retryCount);
+                }
+                productServiceClient.returnByOrder(String.valueOf(orderId));
+                returnSuccess = true;
+                log.info("库存归还成功，订单ID: {}", orderId);
+                break;
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                log.error("归还库存被中断，订单ID: {}", orderId);
+                break;
+            } catch (Exception returnException) {
+                log.error("归还库存失败，重试次数: {}/{}", retryCount + 1, maxRetries, returnException);
+                if (retryCount == maxRetries - 1) {
+                    log.error("【库存泄漏警告】订单创建失败但归还库存失败，orderId: {}", orderId);
                 }
             }
+        }
+        if (!returnSuccess) {
+            log.error("库存归还失败，已达最大重试次数: {}，需要人工介入", maxRetries);
+        }
+    }
+
+    /**
+     * 设置订单默认值
+     */
+    private void applyOrderDefaults(Order order) {
+        if (order.getStatus() == null) {
+            order.setStatus(com.jiaoyi.order.constants.OrderConstants.DEFAULT_ORDER_STATUS);
+        }
+        if (order.getLocalStatus() == null) {
+            order.setLocalStatus(com.jiaoyi.order.constants.OrderConstants.DEFAULT_LOCAL_STATUS);
+        }
+        if (order.getKitchenStatus() == null) {
+            order.setKitchenStatus(com.jiaoyi.order.constants.OrderConstants.DEFAULT_KITCHEN_STATUS);
+        }
+        order.setVersion(com.jiaoyi.order.constants.OrderConstants.DEFAULT_VERSION);
+        order.setCreateTime(LocalDateTime.now());
+        order.setUpdateTime(LocalDateTime.now());
+    }
+
+    /**
+     * 校验优惠券并计算优惠金额（只读远程调用，不核销）
+     */
+    private List<OrderCoupon> resolveOrderCoupons(List<Long> couponIds, List<String> couponCodes, Long userId,
+                                                  BigDecimal orderSubtotal, List<OrderItem> orderItems) {
+        List<OrderCoupon> orderCoupons = new ArrayList<>();
+        if (couponIds != null && !couponIds.isEmpty()) {
+            // 处理优惠券ID列表
+            for (Long couponId : couponIds) {
+                OrderCoupon orderCoupon = processCouponById(couponId, userId, orderSubtotal, orderItems);
+                if (orderCoupon != null) {
+                    orderCoupons.add(orderCoupon);
+                }
+            }
+        } else if (couponCodes != null && !couponCodes.isEmpty()) {
+            // 处理优惠券代码列表
+            for (String couponCode : couponCodes) {
+                OrderCoupon orderCoupon = processCouponByCode(couponCode, userId, orderSubtotal, orderItems);
+                if (orderCoupon != null) {
+                    orderCoupons.add(orderCoupon);
+                }
+            }
+        }
+        return orderCoupons;
     }
 
     /**
-     * 创建订单并处理支付（在同一事务中）
+     * 汇总优惠金额
+     */
+    private BigDecimal sumAppliedAmount(List<OrderCoupon> orderCoupons) {
+        return orderCoupons.stream()
+                .map(OrderCoupon::getAppliedAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    /**
+     * 已计入高峰拒单窗口的订单创建失败时归还名额（否则要等窗口滑过才释放）
+     */
+    private Order releasePeakHourOnFailure(Order order, boolean peakHourCounted, java.util.function.Supplier<Order> action) {
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            if (peakHourCounted) {
+                peakHourRejectionService.removeOrder(order.getMerchantId(), order.getId());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 记录订单到Redis（用于高峰拒单统计，失败不影响下单）
+     */
+    private void recordOrderForPeakHour(Order order) {
+        try {
+            peakHourRejectionService.recordOrder(
+                    order.getMerchantId(),
+                order.getId()
+            );
+        } catch (Exception e) {
+            log.error("记录订单到Redis失败，不影响订单创建: orderId={}", order.getId(), e);
+        }
+    }
+
+    /**
+     * 写入用户订单索引表（用于按 userId 查询订单，避免广播查询）
+     */
+    private void insertUserOrderIndex(Order order) {
+        try {
+            UserOrderIndex index = UserOrderIndex.builder()
+                    .userId(order.getUserId())
+                    .orderId(order.getId())
+                    .storeId(order.getStoreId())
+                    .merchantId(order.getMerchantId())
+                    .orderStatus(order.getStatus())
+                    .orderType(order.getOrderType() != null ? order.getOrderType().getCode() : null)
+                    .totalAmount(extractTotalAmount(order))
+                    .createdAt(LocalDateTime.now())
+                    .build();
+            userOrderIndexMapper.insert(index);
+            log.info("用户订单索引插入成功，userId: {}, orderId: {}", order.getUserId(), order.getId());
+        } catch (Exception e) {
+            log.error("写入用户订单索引失败，orderId: {}, userId: {}", order.getId(), order.getUserId(), e);
+            // 索引表写入失败不影响订单创建，记录日志即可（可以通过补偿任务修复）
+        }
+    }
+
+    /**
+     * 补全订单项字段并批量插入
+     */
+    private void insertOrderItems(Order order, List<OrderItem> orderItems) {
+        if (orderItems == null || orderItems.isEmpty()) {
+            return;
+        }
+        int itemIndex = 0;
+        for (OrderItem item : orderItems) {
+            item.setOrderId(order.getId());
+            item.setMerchantId(order.getMerchantId());
+            // 设置 storeId 和 shardId（与订单保持一致，确保同库同表）
+            item.setStoreId(order.getStoreId());
+            item.setShardId(order.getShardId());
+            
+            // 确保 saleItemId 不为 null（数据库要求）
+            if (item.getSaleItemId() == null) {
+                if (item.getProductId() != null) {
+                    item.setSaleItemId(item.getProductId());
+                } else {
+                    item.setSaleItemId(0L); // 默认值
+                }
+            }
+            
+            // 确保 orderItemId 不为 null（数据库要求）
+            if (item.getOrderItemId() == null) {
+                item.setOrderItemId((long) (itemIndex + 1));
+            }
+            
+            if (item.getVersion() == null) {
+                item.setVersion(1L);
+            }
+            if (item.getCreateTime() == null) {
+                item.setCreateTime(LocalDateTime.now());
+            }
+            if (item.getUpdateTime() == null) {
+                item.setUpdateTime(LocalDateTime.now());
+            }
+            itemIndex++;
+        }
+        orderItemMapper.insertBatch(orderItems);
+        log.info("订单项插入成功，数量: {}", orderItems.size());
+    }
+
+    /**
+     * 保存订单优惠券关联记录
+     */
+    private void insertOrderCoupons(Order order, List<OrderCoupon> orderCoupons) {
+        for (OrderCoupon coupon : orderCoupons) {
+            coupon.setOrderId(order.getId());
+            coupon.setMerchantId(order.getMerchantId());
+            coupon.setStoreId(order.getStoreId());
+        }
+        orderCouponMapper.batchInsert(orderCoupons);
+    }
+
+    /**
+     * 下单收尾：查询插入后的订单（获取version）、发送订单超时延迟消息
+     */
+    private Order finishOrderCreation(Order order, List<OrderItem> orderItems,
+                                      BigDecimal orderSubtotal, BigDecimal totalDiscountAmount) {
+        Order insertedOrder = orderMapper.selectByMerchantIdAndId(order.getMerchantId(), order.getId());
+        if (insertedOrder == null) {
+            throw new BusinessException("订单创建失败：插入后无法查询到订单记录");
+        }
+        
+        insertedOrder.setOrderItems(orderItems);
+        
+        log.info("在线点餐订单创建完成，ID: {}, merchantId: {}, userId: {}, 总金额: {}, 优惠: {}", 
+                insertedOrder.getId(), insertedOrder.getMerchantId(), insertedOrder.getUserId(),
+                orderSubtotal, totalDiscountAmount);
+        
+        // 登记订单超时（配置的超时时间后自动取消）
+        orderTimeoutMessageService.scheduleOrderTimeout(
+            insertedOrder.getId(),
+            order.getUserId(),
+            insertedOrder.getStoreId(),
+            com.jiaoyi.order.constants.OrderConstants.ORDER_TIMEOUT_MINUTES);
+        log.info("订单超时已登记，订单将在{}分钟后自动取消（如果未支付）",
+            com.jiaoyi.order.constants.OrderConstants.ORDER_TIMEOUT_MINUTES);
+        
+        return insertedOrder;
+    }
+
+    /**
+     * 创建订单并处理支付
+     * 
+     * LEGACY 模式：订单创建和支付在同一事务中
+     * SAGA 模式：订单创建使用本地短事务，支付在订单提交后处理（不持有下单事务）
      * 
      * @param order 订单实体
      * @param orderItems 订单项列表
@@ -819,13 +1052,25 @@ public class OrderService {
      * @param paymentRequest 支付请求（可选，如果为 null 则不处理支付）
      * @return 创建订单响应（包含订单和支付信息）
      */
-    @Transactional
     public com.jiaoyi.order.dto.CreateOrderResponse createOrderWithPayment(
             Order order, 
             List<OrderItem> orderItems, 
             List<Long> couponIds, 
             List<String> couponCodes,
             com.jiaoyi.order.dto.PaymentRequest paymentRequest) {
+        if (resolveCreateMode() == OrderCreateModeEnum.SAGA) {
+            return doCreateOrderWithPayment(order, orderItems, couponIds, couponCodes, paymentRequest);
+        }
+        return newTransactionTemplate().execute(status ->
+                doCreateOrderWithPayment(order, orderItems, couponIds, couponCodes, paymentRequest));
+    }
+
+    private com.jiaoyi.order.dto.CreateOrderResponse doCreateOrderWithPayment(
+            Order order, 
+            List<OrderItem> orderItems, 
+            List<Long> couponIds, 
+            List<String> couponCodes,
+            com.jiaoyi.order.dto.PaymentRequest paymentRequest) {
         
         log.info("创建订单并处理支付，merchantId: {}, userId: {}, paymentMethod: {}", 
                 order.getMerchantId(), order.getUserId(), 
@@ -838,7 +1083,7 @@ public class OrderService {
         com.jiaoyi.order.dto.CreateOrderResponse response = new com.jiaoyi.order.dto.CreateOrderResponse();
         response.setOrder(createdOrder);
         
-        // 3. 如果提供了支付请求，处理支付（在同一事务中）
+        // 3. 如果提供了支付请求，处理支付
         if (paymentRequest != null && paymentRequest.getPaymentMethod() != null && 
             !paymentRequest.getPaymentMethod().isEmpty()) {
             
@@ -941,26 +1186,10 @@ public class OrderService {
     }
 
     /**
-     * 从订单的 orderPrice JSON 中提取总金额
+     * 从订单的 orderPrice 中读取总金额
      */
     private BigDecimal extractTotalAmount(Order order) {
-        try {
-            if (order.getOrderPrice() != null && !order.getOrderPrice().isEmpty()) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> priceMap = objectMapper.readValue(order.getOrderPrice(), Map.class);
-                Object totalObj = priceMap.get("total");
-                if (totalObj != null) {
-                    if (totalObj instanceof BigDecimal) {
-                        return (BigDecimal) totalObj;
-                    } else if (totalObj instanceof Number) {
-                        return new BigDecimal(totalObj.toString());
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.warn("解析订单总金额失败，orderId: {}", order.getId(), e);
-        }
-        return BigDecimal.ZERO;
+        return com.jiaoyi.order.util.OrderPriceUtil.parseOrderTotal(order);
     }
 
     /**
@@ -1000,10 +1229,16 @@ public class OrderService {
             // 查询订单（带 store_id，精准路由）
             List<Order> orders = orderMapper.selectByStoreIdAndOrderIds(storeId, orderIds);
 
-            // 填充订单项
-            for (Order order : orders) {
-                List<OrderItem> orderItems = orderItemMapper.selectByOrderId(order.getId());
-                order.setOrderItems(orderItems);
+            // 填充订单项（同一个 store 一次 IN 查询，避免逐单查询）
+            if (!orders.isEmpty()) {
+                Map<Long, List<OrderItem>> itemsByOrderId = orderItemMapper.selectByStoreIdsAndOrderIds(
+                                Collections.singletonList(storeId),
+                                orders.stream().map(Order::getId).collect(Collectors.toList()))
+                        .stream()
+                        .collect(Collectors.groupingBy(OrderItem::getOrderId));
+                for (Order order : orders) {
+                    order.setOrderItems(itemsByOrderId.getOrDefault(order.getId(), new ArrayList<>()));
+                }
             }
 
             allOrders.addAll(orders);
@@ -1176,6 +1411,9 @@ public class OrderService {
                 log.info("订单状态已更新为已取消，订单ID: {}, 原状态: {}, 新状态: {}",
                         orderId, oldStatus, com.jiaoyi.order.enums.OrderStatusEnum.CANCELLED.getCode());
 
+                // 撤销超时到期索引（事务提交后执行）
+                orderTimeoutWheelService.unschedule(orderId, order.getStoreId());
+
                 // 1.5 从Redis移除订单（用于高峰拒单统计）
                 try {
                     peakHourRejectionService.removeOrder(
@@ -1491,7 +1729,7 @@ public class OrderService {
             orderPrice.put("total", total);
             orderPrice.put("priceSignature", priceSignature); // 添加价格签名
 
-            order.setOrderPrice(objectMapper.writeValueAsString(orderPrice));
+            order.setOrderPrice(OrderPrice.of(objectMapper.writeValueAsString(orderPrice)));
 
             log.info("订单价格更新完成，小计: {}, 配送费: {}, 税费: {}, 在线服务费: {}, 优惠: {}, 总金额: {}, 签名: {}",
                     subtotal, deliveryFee, taxTotal, charge, discountAmount, total, priceSignature);
@@ -1510,6 +1748,21 @@ public class OrderService {
         return true;
     }
     
+    /**
+     * 预取 DoorDash 报价（用户设置购物车收货地址时调用，结账算价时命中报价缓存）
+     * 异步执行，不检查配送规则，失败不影响用户操作
+     */
+    public void prefetchDeliveryQuote(CalculatePriceRequest request, BigDecimal subtotal) {
+        if (subtotal == null || subtotal.compareTo(BigDecimal.ZERO) <= 0 || !isDoorDashDelivery(request.getMerchantId())) {
+            return;
+        }
+        Map<String, Object> pickupAddress = getMerchantAddress(request.getMerchantId());
+        Map<String, Object> dropoffAddress = buildDropoffAddress(request);
+        if (pickupAddress != null && !dropoffAddress.isEmpty()) {
+            doorDashQuoteCache.prefetch(request.getMerchantId(), pickupAddress, dropoffAddress, subtotal);
+        }
+    }
+
     /**
      * 获取商户地址（用于 DoorDash 报价和创建配送）
      */
@@ -29,6 +29,7 @@ public class OrderTimeoutFallbackService {
 
     private final OrderMapper orderMapper;
     private final RedissonClient redissonClient;
+    private final OrderTimeoutWheelService orderTimeoutWheelService;
 
     @Value("${order.timeout.minutes:40}")
     private int timeoutMinutes;
@@ -39,6 +40,20 @@ public class OrderTimeoutFallbackService {
     @Value("${order.timeout.fallback.interval:300000}")
     private long fallbackInterval; // 5分钟执行一次
 
+    /**
+     * 时间轮启用时的轮询间隔（毫秒），只兜底时间轮漏掉的订单（Redis 数据丢失、写 outbox 失败被跳过等）
+     */
+    @Value("${order.timeout.fallback.wheel-scan-interval:1800000}")
+    private long wheelScanInterval;
+
+    /**
+     * 时间轮启用时轮询的额外宽限（分钟），避免和时间轮同时处理刚到期的订单
+     */
+    @Value("${order.timeout.fallback.wheel-grace-minutes:10}")
+    private int wheelGraceMinutes;
+
+    private volatile long lastWheelScanMillis;
+
     /**
      * 兜底定时任务 - 每5分钟执行一次
      * 检查是否有超时未支付的订单需要取消
@@ -49,12 +64,23 @@ public class OrderTimeoutFallbackService {
             log.debug("订单超时兜底任务已禁用");
             return;
         }
+        int graceMinutes = 0;
+        if (orderTimeoutWheelService.isEnabled()) {
+            // 时间轮负责准时取消，轮询降为低频兜底，并多留宽限时间
+            long now = System.currentTimeMillis();
+            if (now - lastWheelScanMillis < wheelScanInterval) {
+                log.debug("订单超时时间轮已启用，未到低频兜底时间，跳过全表轮询");
+                return;
+            }
+            lastWheelScanMillis = now;
+            graceMinutes = wheelGraceMinutes;
+        }
 
         log.info("开始执行订单超时兜底检查任务");
         
         try {
             // 计算超时时间点
-            LocalDateTime timeoutThreshold = LocalDateTime.now().minusMinutes(timeoutMinutes);
+            LocalDateTime timeoutThreshold = LocalDateTime.now().minusMinutes(timeoutMinutes + graceMinutes);
             
             // 查询超时未支付的订单
             List<Order> timeoutOrders = orderMapper.selectTimeoutOrders(timeoutThreshold);
@@ -66,10 +92,9 @@ public class OrderTimeoutFallbackService {
 
             log.info("发现 {} 个超时订单需要处理", timeoutOrders.size());
             
-            // 处理每个超时订单
-            for (Order order : timeoutOrders) {
-                processTimeoutOrder(order);
-            }
+            // 按物理库分组批量取消（条件批量更新 + 取消 outbox 任务），不再逐单加锁处理
+            int cancelled = orderTimeoutWheelService.cancelTimeoutOrders(timeoutOrders);
+            log.info("订单超时兜底检查完成，超时订单: {}, 取消: {}", timeoutOrders.size(), cancelled);
             
         } catch (Exception e) {
             log.error("订单超时兜底任务执行异常", e);
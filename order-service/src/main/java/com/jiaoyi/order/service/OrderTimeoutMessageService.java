@@ -41,6 +41,7 @@ public class OrderTimeoutMessageService implements RocketMQListener<OrderTimeout
     private final ProductServiceClient productServiceClient;
     private final CouponServiceClient couponServiceClient;
     private final RedissonClient redissonClient;
+    private final OrderTimeoutWheelService orderTimeoutWheelService;
     
     @Autowired
     private RocketMQTemplate rocketMQTemplate;
@@ -48,6 +49,27 @@ public class OrderTimeoutMessageService implements RocketMQListener<OrderTimeout
     @Autowired
     private ObjectMapper objectMapper;
 
+    /**
+     * 登记订单超时
+     * 时间轮启用时写入按分区的到期索引（秒级精度），否则退回 RocketMQ 延迟消息（按固定延迟级别向上取整）
+     *
+     * @param orderId 订单ID
+     * @param userId 用户ID
+     * @param storeId 门店ID（时间轮分区、取消时精准路由）
+     * @param delayMinutes 延迟分钟数
+     */
+    public void scheduleOrderTimeout(Long orderId, Long userId, Long storeId, int delayMinutes) {
+        if (orderTimeoutWheelService.isEnabled() && storeId != null) {
+            try {
+                orderTimeoutWheelService.schedule(orderId, storeId, delayMinutes);
+                return;
+            } catch (Exception e) {
+                log.error("登记订单超时到时间轮失败，降级为 RocketMQ 延迟消息，订单ID: {}", orderId, e);
+            }
+        }
+        sendOrderTimeoutMessage(orderId, userId, delayMinutes);
+    }
+
     /**
      * 发送订单超时延迟消息
      * @param orderId 订单ID
@@ -0,0 +1,578 @@
+package com.jiaoyi.order.service;
+
+import com.jiaoyi.order.config.RouteCache;
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.entity.OrderItem;
+import com.jiaoyi.order.enums.OrderStatusEnum;
+import com.jiaoyi.order.mapper.OrderItemMapper;
+import com.jiaoyi.order.mapper.OrderMapper;
+import com.jiaoyi.order.util.ShardUtil;
+import com.jiaoyi.order.util.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 基于时间轮的订单超时调度服务
+ *
+ * 替代 RocketMQ 固定延迟级别（15 分钟会被放大到 20 分钟），全表轮询兜底降为低频执行（见 OrderTimeoutFallbackService）：
+ * 1. 持久化：每个订单的到期时间写入 Redis ZSET（score = 到期毫秒，秒级精度），
+ *    ZSET 按 bucket（ShardUtil.calculateShardId(storeId)）划分为多个分区
+ * 2. 分区归属：各实例通过带租约的 owner key 认领分区，按存活实例数均分，每个实例只触发自己分区的超时
+ * 3. 内存时间轮：定期把自己分区内即将到期（lookahead 窗口内）的订单装入分层时间轮，每秒推进一次
+ * 4. 批量取消：到期订单按物理库分组，一次 IN 查询 + 一次条件批量更新 + 写入取消 outbox 任务（同一本地事务），
+ *    批量更新行数不一致时（部分订单刚好支付）退化为逐单条件更新
+ *
+ * 成员格式：storeId:orderId（取消时带 store_id 精准路由）
+ */
+@Service
+@Slf4j
+public class OrderTimeoutWheelService {
+
+    private static final String DUE_KEY_PREFIX = "order:timeout:due:";
+    private static final String OWNER_KEY_PREFIX = "order:timeout:owner:";
+    private static final String INSTANCES_KEY = "order:timeout:instances";
+
+    /**
+     * 续租：只有 owner 是自己时才延长过期时间
+     */
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "else return 0 end", Long.class);
+
+    /**
+     * 释放：只有 owner 是自己时才删除
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('del', KEYS[1]) " +
+                    "else return 0 end", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderMapper orderMapper;
+    private final OrderItemMapper orderItemMapper;
+    private final OutboxHelper outboxHelper;
+    private final PeakHourRejectionService peakHourRejectionService;
+    private final RouteCache routeCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${order.timeout.wheel.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * ZSET 分区数（bucket % partitions）
+     */
+    @Value("${order.timeout.wheel.partitions:64}")
+    private int partitions;
+
+    /**
+     * 装入内存时间轮的提前量（秒）
+     */
+    @Value("${order.timeout.wheel.lookahead-seconds:300}")
+    private int lookaheadSeconds;
+
+    /**
+     * 每个分区每次最多装入的订单数
+     */
+    @Value("${order.timeout.wheel.load-batch-size:2000}")
+    private int loadBatchSize;
+
+    /**
+     * 分区归属租约（秒），续租间隔必须明显小于租约
+     */
+    @Value("${order.timeout.wheel.owner-lease-seconds:30}")
+    private int ownerLeaseSeconds;
+
+    /**
+     * 每批取消的订单数
+     */
+    @Value("${order.timeout.wheel.cancel-batch-size:200}")
+    private int cancelBatchSize;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * 当前实例持有的分区
+     */
+    private final Set<Integer> ownedPartitions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已装入时间轮、尚未触发的成员（成员 -> 分区），用于去重；分区失去归属时清理
+     */
+    private final Map<String, Integer> scheduledMembers = new ConcurrentHashMap<>();
+
+    private TimingWheel<String> timingWheel;
+    private ScheduledExecutorService ticker;
+    private ExecutorService firingExecutor;
+
+    public OrderTimeoutWheelService(StringRedisTemplate stringRedisTemplate,
+                                    OrderMapper orderMapper,
+                                    OrderItemMapper orderItemMapper,
+                                    OutboxHelper outboxHelper,
+                                    PeakHourRejectionService peakHourRejectionService,
+                                    RouteCache routeCache,
+                                    @Qualifier("shardingTransactionManager") PlatformTransactionManager transactionManager) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderMapper = orderMapper;
+        this.orderItemMapper = orderItemMapper;
+        this.outboxHelper = outboxHelper;
+        this.peakHourRejectionService = peakHourRejectionService;
+        this.routeCache = routeCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            log.info("订单超时时间轮未启用，使用 RocketMQ 延迟消息 + 定时轮询兜底");
+            return;
+        }
+        timingWheel = new TimingWheel<>(1000, 60, System.currentTimeMillis());
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-timeout-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 触发（查库、批量取消）放在单独线程，避免阻塞时间轮推进
+        firingExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "order-timeout-fire");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+        log.info("订单超时时间轮已启动，instanceId: {}, 分区数: {}, 提前装载: {}秒", instanceId, partitions, lookaheadSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        ticker.shutdownNow();
+        firingExecutor.shutdown();
+        try {
+            // 主动释放分区，其他实例下次再平衡时即可接管，不必等租约过期
+            for (Integer partition : new ArrayList<>(ownedPartitions)) {
+                stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(ownerKey(partition)), instanceId);
+            }
+            stringRedisTemplate.opsForZSet().remove(INSTANCES_KEY, instanceId);
+        } catch (Exception e) {
+            log.warn("释放订单超时分区失败，等待租约自动过期", e);
+        }
+        ownedPartitions.clear();
+        scheduledMembers.clear();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 登记订单超时（秒级精度）
+     *
+     * @param orderId      订单ID
+     * @param storeId      门店ID（决定分区，取消时精准路由）
+     * @param delayMinutes 超时分钟数
+     */
+    public void schedule(Long orderId, Long storeId, int delayMinutes) {
+        schedule(orderId, storeId, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(delayMinutes));
+    }
+
+    /**
+     * 登记订单超时（到期时间向上取整到秒）
+     */
+    public void schedule(Long orderId, Long storeId, long dueAtMillis) {
+        long dueMillis = (dueAtMillis + 999) / 1000 * 1000;
+        int partition = partitionOf(storeId);
+        String member = member(storeId, orderId);
+        stringRedisTemplate.opsForZSet().add(dueKey(partition), member, dueMillis);
+        log.info("订单超时已登记，订单ID: {}, storeId: {}, 分区: {}, 到期时间: {}", orderId, storeId, partition, dueMillis);
+
+        // 本实例持有该分区且在提前量内，直接装入时间轮，不必等下次装载
+        if (ownedPartitions.contains(partition)
+                && dueMillis <= System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(lookaheadSeconds)) {
+            addToWheel(member, partition, dueMillis);
+        }
+    }
+
+    /**
+     * 撤销订单超时（订单已支付/已取消），到期时也会检查订单状态，撤销只是减少无效触发
+     * 在事务中调用时等事务提交后再撤销（事务回滚时订单仍待支付，需要保留到期索引），撤销失败不影响业务
+     */
+    public void unschedule(Long orderId, Long storeId) {
+        if (!enabled || orderId == null || storeId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeScheduled(orderId, storeId);
+                }
+            });
+            return;
+        }
+        removeScheduled(orderId, storeId);
+    }
+
+    private void removeScheduled(Long orderId, Long storeId) {
+        String member = member(storeId, orderId);
+        try {
+            stringRedisTemplate.opsForZSet().remove(dueKey(partitionOf(storeId)), member);
+            scheduledMembers.remove(member);
+        } catch (Exception e) {
+            log.warn("撤销订单超时失败，到期时按订单状态忽略，订单ID: {}, storeId: {}", orderId, storeId, e);
+        }
+    }
+
+    /**
+     * 分区再平衡：心跳、续租、按存活实例数释放多余分区或认领空闲分区
+     */
+    @Scheduled(fixedDelayString = "${order.timeout.wheel.rebalance-interval-millis:5000}")
+    public void rebalance() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            long leaseMillis = TimeUnit.SECONDS.toMillis(ownerLeaseSeconds);
+            ZSetOperations<String, String> zSetOps = stringRedisTemplate.opsForZSet();
+
+            // 1. 心跳，清理租约过期的实例
+            zSetOps.add(INSTANCES_KEY, instanceId, now);
+            zSetOps.removeRangeByScore(INSTANCES_KEY, 0, now - leaseMillis);
+            Long liveInstances = zSetOps.zCard(INSTANCES_KEY);
+            int instanceCount = liveInstances == null || liveInstances < 1 ? 1 : liveInstances.intValue();
+            int target = (partitions + instanceCount - 1) / instanceCount;
+
+            // 2. 续租已持有的分区
+            for (Integer partition : new ArrayList<>(ownedPartitions)) {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                        Collections.singletonList(ownerKey(partition)), instanceId, String.valueOf(leaseMillis));
+                if (renewed == null || renewed == 0) {
+                    log.warn("订单超时分区 {} 的归属已丢失（租约过期被其他实例认领）", partition);
+                    releaseLocally(partition);
+                }
+            }
+
+            // 3. 持有分区超过目标数（有新实例加入）：释放多余分区
+            Iterator<Integer> iterator = new ArrayList<>(ownedPartitions).iterator();
+            while (ownedPartitions.size() > target && iterator.hasNext()) {
+                Integer partition = iterator.next();
+                stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(ownerKey(partition)), instanceId);
+                releaseLocally(partition);
+                log.info("释放订单超时分区 {}（存活实例: {}, 目标分区数: {}）", partition, instanceCount, target);
+            }
+
+            // 4. 持有分区不足目标数：认领空闲分区（随机顺序，减少多实例同时争抢同一分区）
+            if (ownedPartitions.size() < target) {
+                List<Integer> candidates = new ArrayList<>();
+                for (int partition = 0; partition < partitions; partition++) {
+                    if (!ownedPartitions.contains(partition)) {
+                        candidates.add(partition);
+                    }
+                }
+                Collections.shuffle(candidates);
+                for (Integer partition : candidates) {
+                    if (ownedPartitions.size() >= target) {
+                        break;
+                    }
+                    Boolean acquired = stringRedisTemplate.opsForValue()
+                            .setIfAbsent(ownerKey(partition), instanceId, Duration.ofMillis(leaseMillis));
+                    if (Boolean.TRUE.equals(acquired)) {
+                        ownedPartitions.add(partition);
+                        log.info("认领订单超时分区 {}（存活实例: {}, 目标分区数: {}）", partition, instanceCount, target);
+                        loadPartition(partition, now);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("订单超时分区再平衡失败", e);
+        }
+    }
+
+    /**
+     * 定期把持有分区内即将到期的订单装入时间轮
+     */
+    @Scheduled(fixedDelayString = "${order.timeout.wheel.load-interval-millis:10000}")
+    public void loadDueEntries() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Integer partition : new ArrayList<>(ownedPartitions)) {
+            try {
+                loadPartition(partition, now);
+            } catch (Exception e) {
+                log.error("装载订单超时分区 {} 失败", partition, e);
+            }
+        }
+    }
+
+    private void loadPartition(int partition, long now) {
+        long horizon = now + TimeUnit.SECONDS.toMillis(lookaheadSeconds);
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(dueKey(partition), 0, horizon, 0, loadBatchSize);
+        if (tuples == null || tuples.isEmpty()) {
+            return;
+        }
+        List<String> alreadyDue = new ArrayList<>();
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getValue() == null || tuple.getScore() == null) {
+                continue;
+            }
+            if (addToWheel(tuple.getValue(), partition, tuple.getScore().longValue()) == Boolean.FALSE) {
+                alreadyDue.add(tuple.getValue());
+            }
+        }
+        if (!alreadyDue.isEmpty()) {
+            // 已过期（宕机恢复、分区刚被接管、上次取消失败）的订单立即触发
+            firingExecutor.execute(() -> fire(alreadyDue));
+        }
+    }
+
+    /**
+     * 装入时间轮
+     *
+     * @return true 已装入；false 已到期需立即触发；null 已在时间轮中
+     */
+    private Boolean addToWheel(String member, int partition, long dueMillis) {
+        if (scheduledMembers.putIfAbsent(member, partition) != null) {
+            return null;
+        }
+        return timingWheel.add(dueMillis, member);
+    }
+
+    private void tick() {
+        try {
+            List<String> expired = timingWheel.advance(System.currentTimeMillis());
+            if (!expired.isEmpty()) {
+                firingExecutor.execute(() -> fire(expired));
+            }
+        } catch (Exception e) {
+            log.error("订单超时时间轮推进失败", e);
+        }
+    }
+
+    /**
+     * 触发到期订单：过滤已撤销/已失去归属的成员，按物理库分组批量取消
+     */
+    private void fire(List<String> members) {
+        Map<Integer, List<String>> membersByPartition = new HashMap<>();
+        List<Order> candidates = new ArrayList<>();
+        for (String member : members) {
+            Integer partition = scheduledMembers.remove(member);
+            if (partition == null || !ownedPartitions.contains(partition)) {
+                continue;
+            }
+            int separator = member.indexOf(':');
+            Order order = new Order();
+            order.setStoreId(Long.parseLong(member.substring(0, separator)));
+            order.setId(Long.parseLong(member.substring(separator + 1)));
+            candidates.add(order);
+            membersByPartition.computeIfAbsent(partition, k -> new ArrayList<>()).add(member);
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        try {
+            int cancelled = cancelTimeoutOrders(candidates);
+            // 处理完成的成员从 ZSET 移除（单个订单写 outbox 失败时保持待支付，交给低频轮询兜底，避免反复触发）；
+            // 整批失败（如数据库不可用）时保留，下次装载时重试
+            membersByPartition.forEach((partition, partitionMembers) ->
+                    stringRedisTemplate.opsForZSet().remove(dueKey(partition), partitionMembers.toArray()));
+            log.info("时间轮触发超时订单 {} 个，取消 {} 个", candidates.size(), cancelled);
+        } catch (Exception e) {
+            log.error("时间轮批量取消超时订单失败，等待下次装载重试，订单数: {}", candidates.size(), e);
+        }
+    }
+
+    /**
+     * 批量取消超时订单（时间轮触发和轮询兜底共用）
+     * 按物理库分组，每组按 cancel-batch-size 分批，每批一个本地事务
+     *
+     * @param orders 候选订单（至少包含 id 和 storeId）
+     * @return 实际取消的订单数
+     */
+    public int cancelTimeoutOrders(List<Order> orders) {
+        Map<String, List<Order>> ordersByDataSource = orders.stream()
+                .filter(order -> order.getId() != null && order.getStoreId() != null)
+                .collect(Collectors.groupingBy(order -> resolveDataSourceKey(order.getStoreId())));
+
+        int cancelled = 0;
+        for (List<Order> group : ordersByDataSource.values()) {
+            for (int from = 0; from < group.size(); from += cancelBatchSize) {
+                List<Order> batch = group.subList(from, Math.min(from + cancelBatchSize, group.size()));
+                cancelled += cancelBatch(batch);
+            }
+        }
+        return cancelled;
+    }
+
+    private int cancelBatch(List<Order> batch) {
+        Set<Long> storeIds = batch.stream().map(Order::getStoreId).collect(Collectors.toSet());
+        List<Long> orderIds = batch.stream().map(Order::getId).collect(Collectors.toList());
+
+        // 1. 一次 IN 查询，过滤出仍待支付的订单
+        Integer pendingStatus = OrderStatusEnum.PENDING.getCode();
+        List<Order> pending = orderMapper.selectByStoreIdsAndOrderIds(storeIds, orderIds).stream()
+                .filter(order -> pendingStatus.equals(order.getStatus()))
+                .collect(Collectors.toList());
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        // 2. 快路径：一次条件批量更新 + 写入取消 outbox 任务（有订单写 outbox 失败时整批回滚，退化为逐单处理）
+        List<Order> cancelled = transactionTemplate.execute(status -> {
+            Set<Long> pendingStoreIds = pending.stream().map(Order::getStoreId).collect(Collectors.toSet());
+            List<Long> pendingIds = pending.stream().map(Order::getId).collect(Collectors.toList());
+            int updated = orderMapper.batchUpdateStatusIfPending(pendingStoreIds, pendingIds,
+                    pendingStatus, OrderStatusEnum.CANCELLED.getCode());
+            if (updated != pending.size()) {
+                // 查询和更新之间有订单被支付/取消，无法确定是哪些，回滚后逐单处理
+                status.setRollbackOnly();
+                return null;
+            }
+            if (!enqueueCancelTasks(pending, pendingStoreIds).isEmpty()) {
+                status.setRollbackOnly();
+                return null;
+            }
+            return pending;
+        });
+
+        // 3. 慢路径：逐单条件更新，单个订单失败只回滚该订单（保持待支付，由轮询兜底重试），不影响其他订单
+        if (cancelled == null) {
+            log.info("批量取消超时订单时部分订单状态已变更或写入 outbox 失败，退化为逐单取消，订单数: {}", pending.size());
+            cancelled = new ArrayList<>();
+            for (Order order : pending) {
+                try {
+                    Boolean success = transactionTemplate.execute(status -> {
+                        int updated = orderMapper.updateStatusIfPendingByStoreId(order.getStoreId(), order.getId(),
+                                pendingStatus, OrderStatusEnum.CANCELLED.getCode());
+                        if (updated == 0) {
+                            return false;
+                        }
+                        if (!enqueueCancelTasks(Collections.singletonList(order), Collections.singleton(order.getStoreId())).isEmpty()) {
+                            status.setRollbackOnly();
+                            return false;
+                        }
+                        return true;
+                    });
+                    if (Boolean.TRUE.equals(success)) {
+                        cancelled.add(order);
+                    }
+                } catch (Exception e) {
+                    log.error("取消超时订单失败，跳过该订单，订单ID: {}", order.getId(), e);
+                }
+            }
+        }
+
+        for (Order order : cancelled) {
+            try {
+                peakHourRejectionService.removeOrder(order.getMerchantId(), order.getId());
+            } catch (Exception e) {
+                log.error("从Redis移除订单失败，不影响超时取消: orderId={}", order.getId(), e);
+            }
+        }
+        return cancelled.size();
+    }
+
+    /**
+     * 批量查询订单项并写入取消 outbox 任务（退优惠券、还库存）
+     *
+     * @return 写入失败的订单（调用方回滚对应的状态更新）
+     */
+    private List<Order> enqueueCancelTasks(List<Order> orders, Set<Long> storeIds) {
+        List<Long> orderIds = orders.stream().map(Order::getId).collect(Collectors.toList());
+        Map<Long, List<OrderItem>> itemsByOrderId = orderItemMapper.selectByStoreIdsAndOrderIds(storeIds, orderIds)
+                .stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+        List<Order> failed = new ArrayList<>();
+        for (Order order : orders) {
+            List<OrderItem> items = itemsByOrderId.get(order.getId());
+            if (items == null || items.isEmpty()) {
+                log.warn("超时订单没有订单项，跳过写入取消 outbox 任务，订单ID: {}", order.getId());
+                continue;
+            }
+            boolean enqueued;
+            try {
+                enqueued = outboxHelper.enqueueCancelOrderTask(order.getId(), items);
+            } catch (Exception e) {
+                log.error("写入超时订单取消 outbox 任务异常，订单ID: {}", order.getId(), e);
+                enqueued = false;
+            }
+            if (!enqueued) {
+                log.warn("写入超时订单取消 outbox 任务失败，订单ID: {}", order.getId());
+                failed.add(order);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 当前状态（用于监控）
+     */
+    public String getStatus() {
+        if (!enabled) {
+            return "时间轮未启用";
+        }
+        return String.format("时间轮状态 - instanceId: %s, 持有分区: %s, 时间轮任务数: %d",
+                instanceId, new TreeSet<>(ownedPartitions), timingWheel.size());
+    }
+
+    private void releaseLocally(int partition) {
+        ownedPartitions.remove(partition);
+        // 时间轮里的条目无法按分区删除，触发时会因为不在 scheduledMembers 中被忽略
+        scheduledMembers.values().removeIf(p -> p == partition);
+    }
+
+    private String resolveDataSourceKey(Long storeId) {
+        int shardId = ShardUtil.calculateShardId(storeId);
+        if (routeCache.isInitialized()) {
+            try {
+                return routeCache.getDataSourceName(shardId);
+            } catch (IllegalStateException e) {
+                log.warn("获取分片路由失败，按 bucket 分组取消，storeId: {}, shardId: {}", storeId, shardId);
+            }
+        }
+        return "bucket_" + shardId;
+    }
+
+    private int partitionOf(Long storeId) {
+        return ShardUtil.calculateShardId(storeId) % partitions;
+    }
+
+    private static String member(Long storeId, Long orderId) {
+        return storeId + ":" + orderId;
+    }
+
+    private static String dueKey(int partition) {
+        return DUE_KEY_PREFIX + partition;
+    }
+
+    private static String ownerKey(int partition) {
+        return OWNER_KEY_PREFIX + partition;
+    }
+}
@@ -3,6 +3,8 @@ package com.jiaoyi.order.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.order.dto.CancelOrderCommand;
 import com.jiaoyi.order.dto.DeductStockCommand;
+import com.jiaoyi.order.dto.UseCouponCommand;
+import com.jiaoyi.order.entity.OrderCoupon;
 import com.jiaoyi.order.entity.OrderItem;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -213,5 +215,62 @@ public class OutboxHelper {
             return false;
         }
     }
+    
+    /**
+     * 创建并写入优惠券核销任务到 outbox（Saga 下单流程使用）
+     * 必须在下单本地事务内调用，保证订单落库与核销任务原子写入
+     * 
+     * @param orderId 订单ID
+     * @param userId 用户ID
+     * @param storeId 门店ID（用于分库路由）
+     * @param orderCoupons 订单优惠券关联记录
+     * @return 是否成功写入
+     */
+    public boolean enqueueUseCouponTask(Long orderId, Long userId, Long storeId, List<OrderCoupon> orderCoupons) {
+        if (orderCoupons == null || orderCoupons.isEmpty()) {
+            return true;
+        }
+        if (storeId == null) {
+            log.warn("缺少 storeId，无法写入优惠券核销 outbox，orderId: {}", orderId);
+            return false;
+        }
+        
+        List<UseCouponCommand.CouponItem> coupons = orderCoupons.stream()
+                .filter(oc -> oc.getCouponCode() != null && !oc.getCouponCode().isEmpty())
+                .map(oc -> new UseCouponCommand.CouponItem(oc.getCouponCode(), oc.getAppliedAmount()))
+                .collect(Collectors.toList());
+        if (coupons.isEmpty()) {
+            return true;
+        }
+        
+        try {
+            UseCouponCommand useCouponCommand = UseCouponCommand.builder()
+                    .orderId(orderId)
+                    .userId(userId)
+                    .coupons(coupons)
+                    .build();
+            
+            String payload = objectMapper.writeValueAsString(useCouponCommand);
+            int shardId = com.jiaoyi.order.util.ShardUtil.calculateShardId(storeId);
+            
+            com.jiaoyi.outbox.entity.Outbox outbox = outboxService.enqueue(
+                    "USE_COUPON_HTTP",  // type
+                    String.valueOf(orderId),  // bizKey（用于唯一约束）
+                    payload,  // payload
+                    null,  // topic（HTTP 类型不需要）
+                    null,  // tag（HTTP 类型不需要）
+                    null,  // messageKey（HTTP 类型不需要）
+                    String.valueOf(storeId),  // shardingKey（通用分片键字段，存 storeId 的字符串形式）
+                    shardId  // shardId（0-1023，用于扫描优化）
+            );
+            
+            log.info("【OutboxHelper】✓ 优惠券核销任务已写入 outbox，outboxId: {}, orderId: {}, 优惠券数量: {}", 
+                    outbox != null ? outbox.getId() : "null", orderId, coupons.size());
+            return true;
+            
+        } catch (Exception e) {
+            log.error("【OutboxHelper】✗ 写入优惠券核销 outbox 失败，orderId: {}, 错误: {}", orderId, e.getMessage(), e);
+            return false;
+        }
+    }
 }
-
@@ -5,6 +5,7 @@ import com.jiaoyi.common.exception.BusinessException;
 import com.jiaoyi.order.dto.PaymentRequest;
 import com.jiaoyi.order.dto.PaymentResponse;
 import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.entity.OrderPrice;
 import com.jiaoyi.order.entity.Payment;
 import com.jiaoyi.order.enums.*;
 import com.jiaoyi.order.mapper.OrderMapper;
@@ -20,6 +21,7 @@ import com.jiaoyi.order.service.AlipayService;
 import com.jiaoyi.order.service.StripeService;
 import com.jiaoyi.order.client.ProductServiceClient;
 import com.jiaoyi.order.util.OrderPriceUtil;
+import com.jiaoyi.order.util.ShardGeneIdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
@@ -89,6 +91,8 @@ public class PaymentService {
     private final ProductServiceClient productServiceClient;
     private final DoorDashRetryService doorDashRetryService;
     private final RedissonClient redissonClient;
+    private final ShardGeneIdGenerator shardGeneIdGenerator;
+    private final OrderTimeoutWheelService orderTimeoutWheelService;
     
     @Value("${order.timeout.minutes:40}")
     private int orderTimeoutMinutes;
@@ -120,40 +124,27 @@ public class PaymentService {
             throw new RuntimeException("订单状态不正确，无法支付");
         }
         
-        // 3. 验证支付金额（从 orderPrice JSON 中解析）
-        BigDecimal expectedAmount = com.jiaoyi.order.util.OrderPriceUtil.parseOrderTotal(order);
+        // 3. 验证支付金额（orderPrice 只解析一次，金额和签名共用解析结果）
+        OrderPrice orderPrice = order.getOrderPrice();
+        BigDecimal expectedAmount = orderPrice != null ? orderPrice.getTotal() : BigDecimal.ZERO;
         if (expectedAmount.compareTo(request.getAmount()) != 0) {
             log.error("支付金额不匹配，订单ID: {}, 期望金额: {}, 实际金额: {}", orderId, expectedAmount, request.getAmount());
             throw new RuntimeException("支付金额不匹配");
         }
 
         // 4. 验证价格签名（防篡改）
-        if (order.getOrderPrice() != null && !order.getOrderPrice().isEmpty()) {
-            try {
-                com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                @SuppressWarnings("unchecked")
-                java.util.Map<String, Object> priceMap = mapper.readValue(order.getOrderPrice(), java.util.Map.class);
-
-                String signature = priceMap.get("priceSignature") != null ?
-                        priceMap.get("priceSignature").toString() : null;
+        if (orderPrice != null) {
+            String signature = orderPrice.getPriceSignature();
+            if (signature != null && !signature.isEmpty()) {
+                boolean verified = com.jiaoyi.order.util.PriceSignatureUtil.verifySignature(orderPrice, signature);
 
-                if (signature != null && !signature.isEmpty()) {
-                    boolean verified = com.jiaoyi.order.util.PriceSignatureUtil.verifySignature(
-                            order.getOrderPrice(), signature);
-
-                    if (!verified) {
-                        log.error("价格签名验证失败，订单ID: {}, 价格可能被篡改", orderId);
-                        throw new RuntimeException("价格签名验证失败，请重新下单");
-                    }
-                    log.info("价格签名验证通过，订单ID: {}", orderId);
-                } else {
-                    log.warn("订单价格缺少签名，订单ID: {} (可能是旧订单)", orderId);
+                if (!verified) {
+                    log.error("价格签名验证失败，订单ID: {}, 价格可能被篡改", orderId);
+                    throw new RuntimeException("价格签名验证失败，请重新下单");
                 }
-            } catch (RuntimeException e) {
-                throw e; // 重新抛出业务异常
-            } catch (Exception e) {
-                log.error("验证价格签名时发生异常，订单ID: {}", orderId, e);
-                // 签名验证异常不阻塞支付流程（向后兼容）
+                log.info("价格签名验证通过，订单ID: {}", orderId);
+            } else {
+                log.warn("订单价格缺少签名，订单ID: {} (可能是旧订单)", orderId);
             }
         }
         
@@ -234,6 +225,7 @@ public class PaymentService {
                     );
                     if (orderUpdated > 0) {
                         log.info("现金支付成功，已更新订单状态为已支付，订单ID: {}", orderId);
+                        orderTimeoutWheelService.unschedule(orderId, order.getStoreId());
                     } else {
                         log.warn("现金支付成功，但订单状态更新失败（可能已被其他线程处理），订单ID: {}", orderId);
                     }
@@ -391,6 +383,9 @@ public class PaymentService {
             metadata.put("orderId", String.valueOf(order.getId()));
             metadata.put("merchantId", order.getMerchantId());
             metadata.put("userId", order.getUserId() != null ? String.valueOf(order.getUserId()) : "");
+            // 支付回调凭 storeId/paymentId 精准路由查询订单和支付记录
+            metadata.put("storeId", order.getStoreId() != null ? String.valueOf(order.getStoreId()) : "");
+            metadata.put("paymentId", String.valueOf(payment.getId()));
             
             // 获取商户 Stripe 配置（支持 Stripe Connect）
             MerchantStripeConfig merchantConfig = merchantStripeConfigMapper.selectByMerchantId(order.getMerchantId());
@@ -501,10 +496,12 @@ public class PaymentService {
         } else {
             throw new IllegalStateException("无法获取 storeId 或 shardId，无法创建支付记录");
         }
+        // 支付ID嵌入 shard_id 基因（按支付ID查询可精准路由）
+        payment.setId(shardGeneIdGenerator.nextId(payment.getShardId()));
         payment.setStatus(PaymentStatusEnum.PENDING.getCode());
         payment.setType(PaymentTypeEnum.CHARGE.getCode());
         payment.setAmount(amount);
-        payment.setOrderPrice(order.getOrderPrice());
+        payment.setOrderPrice(order.getOrderPrice() != null ? order.getOrderPrice().toJson() : null);
         // 生成支付流水号（格式：PAY_{订单ID}_{时间戳}）
         String paymentNo = "PAY_" + order.getId() + "_" + System.currentTimeMillis();
         payment.setPaymentNo(paymentNo);
@@ -540,6 +537,7 @@ public class PaymentService {
     
     /**
      * 处理支付成功回调（参照 OO 项目的支付回调处理）
+     * 只有订单ID和第三方交易号的入口（支付宝回调），订单按ID查询
      * 
      * @param orderIdStr 订单ID（字符串）
      * @param thirdPartyTradeNo 第三方交易号
@@ -547,132 +545,85 @@ public class PaymentService {
      */
     @Transactional
     public boolean handlePaymentSuccess(String orderIdStr, String thirdPartyTradeNo) {
-        log.info("处理支付成功回调，订单ID: {}, 第三方交易号: {}", orderIdStr, thirdPartyTradeNo);
+        Long orderId;
+        try {
+            orderId = Long.parseLong(orderIdStr);
+        } catch (NumberFormatException e) {
+            log.error("订单ID格式错误: {}", orderIdStr, e);
+            return false;
+        }
+        return handlePaymentSuccess(orderId, null, null, thirdPartyTradeNo);
+    }
+    
+    /**
+     * 处理支付成功回调（快速路径）
+     * 
+     * 1. 幂等：INSERT ... ON DUPLICATE KEY 一条语句抢占回调日志，首次回调不再先查后插；
+     *    只有重复回调才查询日志状态（已成功直接返回，处理中返回 false，之前失败则条件更新重新抢占）
+     * 2. 路由：storeId/paymentId 来自支付元数据（Stripe PaymentIntent metadata），订单和支付记录都带 store_id 精准查询；
+     *    没有元数据时（支付宝、历史 PaymentIntent）按订单ID查询订单，再用订单的 store_id 查询扣款记录
+     * 3. 状态流转：订单从"已下单"一条条件更新直接到"制作中/待接单"，不再先写"已支付"再写下一状态
+     * 
+     * @param orderId 订单ID
+     * @param storeId 门店ID（来自支付元数据，可为 null）
+     * @param paymentId 支付记录ID（来自支付元数据，可为 null）
+     * @param thirdPartyTradeNo 第三方交易号
+     * @return true 如果支付成功处理完成，false 如果订单超时已退款或正在被其他请求处理
+     */
+    @Transactional
+    public boolean handlePaymentSuccess(Long orderId, Long storeId, Long paymentId, String thirdPartyTradeNo) {
+        log.info("处理支付成功回调，订单ID: {}, 门店ID: {}, 支付ID: {}, 第三方交易号: {}",
+                orderId, storeId, paymentId, thirdPartyTradeNo);
         
-        // ========== 幂等性检查：先检查回调日志表（基于 thirdPartyTradeNo 去重） ==========
-        PaymentCallbackLog existingLog = null;
+        // ========== 幂等性：抢占回调日志（基于 thirdPartyTradeNo 唯一键） ==========
+        PaymentCallbackLog callbackLog = null;
         if (thirdPartyTradeNo != null && !thirdPartyTradeNo.isEmpty()) {
-            existingLog = paymentCallbackLogMapper.selectByThirdPartyTradeNo(thirdPartyTradeNo);
-            if (existingLog != null) {
-                // 如果已处理成功，直接返回
-                if (PaymentCallbackLogStatusEnum.SUCCESS.equals(existingLog.getStatus())) {
+            callbackLog = buildCallbackLog(orderId, storeId, paymentId, thirdPartyTradeNo);
+            if (paymentCallbackLogMapper.claim(callbackLog) != 1) {
+                PaymentCallbackLog existingLog = paymentCallbackLogMapper.selectByThirdPartyTradeNo(thirdPartyTradeNo);
+                if (existingLog == null) {
+                    log.warn("回调日志抢占结果异常，按无日志继续处理，第三方交易号: {}", thirdPartyTradeNo);
+                    callbackLog = null;
+                } else if (PaymentCallbackLogStatusEnum.SUCCESS.equals(existingLog.getStatus())) {
                     log.info("支付回调已处理（幂等性检查），第三方交易号: {}, 订单ID: {}, 处理时间: {}", 
                             thirdPartyTradeNo, existingLog.getOrderId(), existingLog.getProcessedAt());
                     return true;
-                }
-                // 如果正在处理中，等待或返回（避免并发处理）
-                if (PaymentCallbackLogStatusEnum.PROCESSING.equals(existingLog.getStatus())) {
+                } else if (PaymentCallbackLogStatusEnum.TIMEOUT_REFUNDED.equals(existingLog.getStatus())) {
+                    log.info("支付回调对应订单已超时退款（幂等性检查），第三方交易号: {}, 订单ID: {}",
+                            thirdPartyTradeNo, existingLog.getOrderId());
+                    return false;
+                } else if (PaymentCallbackLogStatusEnum.PROCESSING.equals(existingLog.getStatus())) {
                     log.warn("支付回调正在处理中（可能并发调用），第三方交易号: {}, 订单ID: {}", 
                             thirdPartyTradeNo, existingLog.getOrderId());
-                    // 可以选择等待或直接返回 false，让调用方重试
                     return false;
+                } else if (paymentCallbackLogMapper.reclaimFailed(existingLog.getId()) == 0) {
+                    log.warn("支付回调重试已被其他请求抢占，第三方交易号: {}, 订单ID: {}", 
+                            thirdPartyTradeNo, existingLog.getOrderId());
+                    return false;
+                } else {
+                    log.info("支付回调之前处理失败，将重试，第三方交易号: {}, 订单ID: {}, 错误: {}", 
+                            thirdPartyTradeNo, existingLog.getOrderId(), existingLog.getErrorMessage());
+                    callbackLog = existingLog;
                 }
-                // 如果之前处理失败，可以重试
-                log.info("支付回调之前处理失败，将重试，第三方交易号: {}, 订单ID: {}, 错误: {}", 
-                        thirdPartyTradeNo, existingLog.getOrderId(), existingLog.getErrorMessage());
             }
         }
         
-        // 创建或更新回调日志（标记为处理中）
-        PaymentCallbackLog callbackLog = null;
-        Long orderId = null;
         try {
-            orderId = Long.parseLong(orderIdStr);
-        } catch (NumberFormatException e) {
-            log.error("订单ID格式错误: {}", orderIdStr, e);
-            return false;
-        }
-        
-        // 先查询订单和支付记录，以便在创建回调日志时设置 paymentService
-        Order order = orderMapper.selectById(orderId);
-        if (order == null) {
-            log.warn("订单不存在，订单ID: {}", orderId);
-            return false;
-        }
-        
-        // 查询支付记录（幂等性检查）
-        Payment payment = paymentMapper.selectByOrderId(orderId).stream()
-                .filter(p -> p.getType() != null && p.getType().equals(PaymentTypeEnum.CHARGE.getCode()))
-                .findFirst()
-                .orElse(null);
-        
-        // 确定支付服务类型：优先从 Payment 记录获取，如果没有则根据 thirdPartyTradeNo 判断（Stripe 的 paymentIntentId）
-        PaymentServiceEnum paymentService = null;
-        if (payment != null && payment.getPaymentService() != null) {
-            paymentService = payment.getPaymentService();
-        } else {
-            // 如果没有 Payment 记录，根据 thirdPartyTradeNo 判断（Stripe 的 paymentIntentId 通常以 pi_ 开头）
-            if (thirdPartyTradeNo != null && thirdPartyTradeNo.startsWith("pi_")) {
-                paymentService = PaymentServiceEnum.STRIPE;
-            } else {
-                // 默认使用 STRIPE（因为当前主要使用 Stripe）
-                paymentService = PaymentServiceEnum.STRIPE;
-                log.warn("无法确定支付服务类型，使用默认值 STRIPE，订单ID: {}, thirdPartyTradeNo: {}", orderId, thirdPartyTradeNo);
-            }
-        }
-        
-        if (existingLog != null) {
-            callbackLog = existingLog;
-            // 更新状态为处理中，并更新支付ID和支付服务（如果之前没有设置）
-            if (callbackLog.getPaymentId() == null && payment != null) {
-                callbackLog.setPaymentId(payment.getId());
-            }
-            if (callbackLog.getPaymentService() == null) {
-                callbackLog.setPaymentService(paymentService);
-            }
-            paymentCallbackLogMapper.updateStatus(
-                    callbackLog.getId(), 
-                    PaymentCallbackLogStatusEnum.PROCESSING, 
-                    null, 
-                    null
-            );
-        } else {
-            // 创建新的回调日志
-            callbackLog = new PaymentCallbackLog();
-            callbackLog.setOrderId(orderId);
-            callbackLog.setThirdPartyTradeNo(thirdPartyTradeNo);
-            callbackLog.setStatus(PaymentCallbackLogStatusEnum.PROCESSING);
-            callbackLog.setCreateTime(LocalDateTime.now());
-            callbackLog.setPaymentService(paymentService); // 设置支付服务类型
-            if (payment != null) {
-                callbackLog.setPaymentId(payment.getId());
-            }
-            // 保存回调数据（用于审计）
-            try {
-                Map<String, Object> callbackData = new HashMap<>();
-                callbackData.put("orderId", orderIdStr);
-                callbackData.put("thirdPartyTradeNo", thirdPartyTradeNo);
-                callbackData.put("timestamp", LocalDateTime.now().toString());
-                callbackLog.setCallbackData(objectMapper.writeValueAsString(callbackData));
-            } catch (Exception e) {
-                log.warn("序列化回调数据失败，但不影响主流程", e);
-            }
-            try {
-                paymentCallbackLogMapper.insert(callbackLog);
-            } catch (Exception e) {
-                // 如果插入失败（可能是并发插入导致唯一键冲突），查询已存在的记录
-                log.warn("插入回调日志失败（可能是并发插入），第三方交易号: {}, 错误: {}", thirdPartyTradeNo, e.getMessage());
-                existingLog = paymentCallbackLogMapper.selectByThirdPartyTradeNo(thirdPartyTradeNo);
-                if (existingLog != null && PaymentCallbackLogStatusEnum.SUCCESS.equals(existingLog.getStatus())) {
-                    log.info("并发插入时发现已处理成功的记录，第三方交易号: {}", thirdPartyTradeNo);
-                    return true;
-                }
-                // 如果插入失败且没有已存在的记录，继续处理（可能是数据库问题）
-                callbackLog = null;
+            // 1. 查询订单（带 storeId 时精准路由，否则靠基因ID路由）
+            Order order = storeId != null
+                    ? orderMapper.selectByStoreIdAndId(storeId, orderId)
+                    : orderMapper.selectById(orderId);
+            if (order == null) {
+                log.warn("订单不存在，订单ID: {}, 门店ID: {}", orderId, storeId);
+                completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.FAILED, null, null, "订单不存在");
+                return false;
             }
-        }
-        
-        try {
+            
+            // 2. 查询扣款记录（按订单的 store_id 精准路由）
+            Payment payment = findChargePayment(order, paymentId);
             if (payment == null) {
                 log.warn("支付记录不存在，订单ID: {}", orderId);
-                if (callbackLog != null) {
-                    paymentCallbackLogMapper.updateStatus(
-                            callbackLog.getId(), 
-                            PaymentCallbackLogStatusEnum.FAILED, 
-                            null, 
-                            "支付记录不存在"
-                    );
-                }
+                completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.FAILED, null, null, "支付记录不存在");
                 return false;
             }
             
@@ -682,9 +633,7 @@ public class PaymentService {
                     payment.getStatus().equals(PaymentStatusEnum.SUCCESS.getCode());
             
             if (paymentAlreadySuccess) {
-                // 支付已成功，检查订单状态
-                Integer currentOrderStatus = order.getStatus() instanceof Integer ? 
-                    (Integer) order.getStatus() : null;
+                Integer currentOrderStatus = order.getStatus();
                 
                 // 如果订单状态还是"已下单"（PENDING），说明之前的状态更新失败了，需要重新更新
                 if (OrderStatusEnum.PENDING.getCode().equals(currentOrderStatus)) {
@@ -695,7 +644,9 @@ public class PaymentService {
                           OrderStatusEnum.WAITING_ACCEPT.getCode().equals(currentOrderStatus)) {
                     // 订单状态已经是支付后的状态，说明已处理完成
                     log.info("支付已处理，订单ID: {}, 支付ID: {}, 当前订单状态: {}", orderId, payment.getId(), currentOrderStatus);
-                    return true; // 已处理，返回 true
+                    completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.SUCCESS, payment.getId(),
+                            buildCallbackResult(orderId, payment.getId(), currentOrderStatus), null);
+                    return true;
                 } else {
                     // 订单状态异常，记录日志但继续处理
                     log.warn("支付已成功，但订单状态异常，订单ID: {}, 支付ID: {}, 当前订单状态: {}", 
@@ -708,14 +659,21 @@ public class PaymentService {
                 log.warn("订单已超时，但收到支付成功回调，订单ID: {}, 创建时间: {}, 超时时间: {} 分钟", 
                         orderId, order.getCreateTime(), orderTimeoutMinutes);
                 
-                // 自动退款
-                processTimeoutRefund(order, payment, thirdPartyTradeNo);
+                // 自动退款：退款成功记为终态（重投不再重复退款），失败记为失败（重投时重试退款）
+                if (processTimeoutRefund(order, payment, thirdPartyTradeNo)) {
+                    completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.TIMEOUT_REFUNDED, payment.getId(),
+                            buildCallbackResult(orderId, payment.getId(), OrderStatusEnum.REFUNDED.getCode()), null);
+                } else {
+                    completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.FAILED, payment.getId(), null,
+                            "订单已超时，自动退款失败");
+                }
                 return false; // 订单超时已退款，返回 false，不继续处理
             }
             
             // 4. 原子更新支付状态（如果还没有更新）
             if (!paymentAlreadySuccess) {
-                int updated = paymentMapper.updateStatusIfPending(
+                int updated = paymentMapper.updateStatusIfPendingByStoreId(
+                        order.getStoreId(),
                         payment.getId(),
                         PaymentStatusEnum.PENDING.getCode(),
                         PaymentStatusEnum.SUCCESS.getCode(),
@@ -724,47 +682,40 @@ public class PaymentService {
                 
                 if (updated == 0) {
                     log.warn("支付状态更新失败（可能已被其他线程处理），订单ID: {}, 支付ID: {}", orderId, payment.getId());
+                    // 记为失败：重投时可重新抢占，按最新的支付状态重新判断
+                    completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.FAILED, payment.getId(), null,
+                            "支付状态不是待支付，更新失败");
                     return false;
                 }
             }
             
-            // 5. 更新订单状态为"已支付"（原子操作）
-            int orderUpdated = orderMapper.updateStatusIfPending(
-                    orderId, 
-                    OrderStatusEnum.PENDING.getCode(), 
-                    OrderStatusEnum.PAID.getCode()
-            );
-            if (orderUpdated == 0) {
-                log.warn("订单状态更新失败（可能已被其他线程处理或状态不正确），订单ID: {}", orderId);
-                return false;
-            }
-            
-            // 5.5. 根据商户自动接单配置，决定下一步状态
-            // 如果是自动接单，立即更新为"制作中"；如果不是，更新为"待接单"
+            // 5. 根据商户自动接单配置，决定支付后的状态
+            // 如果是自动接单，直接进入"制作中"；如果不是，进入"待接单"
             boolean autoAccept = checkMerchantAutoAccept(order.getMerchantId(), order.getOrderType());
             Integer nextStatus;
             if (autoAccept) {
-                // 自动接单：立即更新为"制作中"
                 nextStatus = OrderStatusEnum.PREPARING.getCode();
                 log.info("商户已开启自动接单，支付成功后立即更新为制作中，订单ID: {}, 商户ID: {}", orderId, order.getMerchantId());
             } else {
-                // 非自动接单：更新为"待接单"
                 nextStatus = OrderStatusEnum.WAITING_ACCEPT.getCode();
                 log.info("商户未开启自动接单，支付成功后更新为待接单，订单ID: {}, 商户ID: {}", orderId, order.getMerchantId());
             }
             
-            // 原子更新订单状态（从"已支付"更新为下一步状态）
-            int nextStatusUpdated = orderMapper.updateStatusIfPending(
+            // 6. 原子更新订单状态："已下单" -> 下一步状态（一条带 store_id 的条件更新）
+            int orderUpdated = orderMapper.updateStatusIfPendingByStoreId(
+                    order.getStoreId(),
                     orderId,
-                    OrderStatusEnum.PAID.getCode(),
+                    OrderStatusEnum.PENDING.getCode(),
                     nextStatus
             );
-            if (nextStatusUpdated == 0) {
-                log.warn("订单状态更新失败（可能已被其他线程处理），订单ID: {}, 目标状态: {}", orderId, nextStatus);
-                // 不返回 false，因为支付已成功，状态更新失败可以后续重试
+            if (orderUpdated == 0) {
+                // 抛出异常回滚本事务中的支付状态更新（回调日志的抢占随之回滚，重投时可重新抢占）
+                throw new IllegalStateException("订单状态更新失败（可能已被其他线程处理或状态不正确），目标状态: " + nextStatus);
             }
+            // 已支付，撤销超时到期索引（事务提交后执行）
+            orderTimeoutWheelService.unschedule(orderId, order.getStoreId());
             
-            // 6. 如果是 DoorDash 配送订单，创建配送订单
+            // 7. 如果是 DoorDash 配送订单，创建配送订单
             // 注意：即使没有 deliveryFeeQuoted，只要是 DELIVERY 订单就尝试创建
             // 因为 deliveryFeeQuoted 可能在创建订单时没有保存（比如地址信息不完整时使用了本地计算）
             if (OrderTypeEnum.DELIVERY.equals(order.getOrderType())) {
@@ -773,7 +724,7 @@ public class PaymentService {
                     boolean useDoorDash = isDoorDashDelivery(order.getMerchantId());
                     if (useDoorDash) {
                         createDoorDashDelivery(order);
-            } else {
+                    } else {
                         log.info("订单不是 DoorDash 配送订单，跳过创建 DoorDash 配送，订单ID: {}", orderId);
                     }
                 } catch (Exception e) {
@@ -788,50 +739,99 @@ public class PaymentService {
                 }
             }
             
-            // 7. 更新回调日志为成功
-            if (callbackLog != null) {
-                try {
-                    Map<String, Object> result = new HashMap<>();
-                    result.put("orderId", orderId);
-                    result.put("paymentId", payment.getId());
-                    result.put("orderStatus", order.getStatus());
-                    result.put("processedAt", LocalDateTime.now().toString());
-                    
-                    paymentCallbackLogMapper.updateStatus(
-                            callbackLog.getId(), 
-                            PaymentCallbackLogStatusEnum.SUCCESS, 
-                            objectMapper.writeValueAsString(result), 
-                            null
-                    );
-                } catch (Exception e) {
-                    log.warn("更新回调日志失败，但不影响主流程，订单ID: {}", orderId, e);
-                }
-            }
+            // 8. 更新回调日志为成功（同时补齐支付ID）
+            completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.SUCCESS, payment.getId(),
+                    buildCallbackResult(orderId, payment.getId(), nextStatus), null);
             
             log.info("支付成功处理完成，订单ID: {}, 支付ID: {}, 第三方交易号: {}", orderId, payment.getId(), thirdPartyTradeNo);
             return true; // 支付成功处理完成
             
         } catch (Exception e) {
-            log.error("处理支付成功回调异常，订单ID: {}", orderIdStr, e);
+            log.error("处理支付成功回调异常，订单ID: {}", orderId, e);
             
             // 更新回调日志为失败
-            if (callbackLog != null) {
-                try {
-                    paymentCallbackLogMapper.updateStatus(
-                            callbackLog.getId(), 
-                            PaymentCallbackLogStatusEnum.FAILED, 
-                            null, 
-                            e.getMessage()
-                    );
-                } catch (Exception logError) {
-                    log.warn("更新回调日志失败，订单ID: {}", orderIdStr, logError);
-                }
-            }
+            completeCallbackLog(callbackLog, PaymentCallbackLogStatusEnum.FAILED, null, null, e.getMessage());
             
             throw new RuntimeException("处理支付成功失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 构建待抢占的回调日志
+     */
+    private PaymentCallbackLog buildCallbackLog(Long orderId, Long storeId, Long paymentId, String thirdPartyTradeNo) {
+        PaymentCallbackLog callbackLog = new PaymentCallbackLog();
+        callbackLog.setOrderId(orderId);
+        callbackLog.setPaymentId(paymentId);
+        callbackLog.setThirdPartyTradeNo(thirdPartyTradeNo);
+        // Stripe 的 paymentIntentId / chargeId 以 pi_ / ch_ 开头，其余回调来自支付宝
+        callbackLog.setPaymentService(thirdPartyTradeNo.startsWith("pi_") || thirdPartyTradeNo.startsWith("ch_")
+                ? PaymentServiceEnum.STRIPE : PaymentServiceEnum.ALIPAY);
+        // 保存回调数据（用于审计）
+        try {
+            Map<String, Object> callbackData = new HashMap<>();
+            callbackData.put("orderId", String.valueOf(orderId));
+            callbackData.put("storeId", storeId);
+            callbackData.put("paymentId", paymentId);
+            callbackData.put("thirdPartyTradeNo", thirdPartyTradeNo);
+            callbackData.put("timestamp", LocalDateTime.now().toString());
+            callbackLog.setCallbackData(objectMapper.writeValueAsString(callbackData));
+        } catch (Exception e) {
+            log.warn("序列化回调数据失败，但不影响主流程", e);
+        }
+        return callbackLog;
+    }
+    
+    /**
+     * 查询订单的扣款记录：优先用元数据中的支付ID精准查询，校验不通过时按订单查询（都带 store_id）
+     */
+    private Payment findChargePayment(Order order, Long paymentId) {
+        if (order.getStoreId() == null) {
+            return paymentMapper.selectByOrderId(order.getId()).stream()
+                    .filter(p -> p.getType() != null && p.getType().equals(PaymentTypeEnum.CHARGE.getCode()))
+                    .findFirst()
+                    .orElse(null);
+        }
+        if (paymentId != null) {
+            Payment payment = paymentMapper.selectByStoreIdAndId(order.getStoreId(), paymentId);
+            if (payment != null && order.getId().equals(payment.getOrderId())
+                    && PaymentTypeEnum.CHARGE.getCode().equals(payment.getType())) {
+                return payment;
+            }
+            log.warn("支付元数据中的支付ID与订单不匹配，按订单查询扣款记录，订单ID: {}, 支付ID: {}", order.getId(), paymentId);
+        }
+        return paymentMapper.selectChargeByStoreIdAndOrderId(order.getStoreId(), order.getId(), PaymentTypeEnum.CHARGE.getCode());
+    }
+    
+    private String buildCallbackResult(Long orderId, Long paymentId, Integer orderStatus) {
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("orderId", orderId);
+            result.put("paymentId", paymentId);
+            result.put("orderStatus", orderStatus);
+            result.put("processedAt", LocalDateTime.now().toString());
+            return objectMapper.writeValueAsString(result);
+        } catch (Exception e) {
+            log.warn("序列化回调处理结果失败，订单ID: {}", orderId, e);
+            return null;
+        }
+    }
+    
+    /**
+     * 更新回调日志处理结果（失败不影响主流程）
+     */
+    private void completeCallbackLog(PaymentCallbackLog callbackLog, PaymentCallbackLogStatusEnum status,
+                                     Long paymentId, String result, String errorMessage) {
+        if (callbackLog == null || callbackLog.getId() == null) {
+            return;
+        }
+        try {
+            paymentCallbackLogMapper.complete(callbackLog.getId(), status, paymentId, result, errorMessage);
+        } catch (Exception e) {
+            log.warn("更新回调日志失败，但不影响主流程，回调日志ID: {}", callbackLog.getId(), e);
+        }
+    }
+    
     /**
      * 检查商户是否开启自动接单
      * @param merchantId 商户ID
@@ -1059,24 +1059,25 @@ public class PaymentService {
      * @param order 订单
      * @param payment 支付记录
      * @param thirdPartyTradeNo 第三方交易号
+     * @return true 如果已向支付渠道退款成功
      */
-    private void processTimeoutRefund(Order order, Payment payment, String thirdPartyTradeNo) {
+    private boolean processTimeoutRefund(Order order, Payment payment, String thirdPartyTradeNo) {
         log.warn("开始处理超时订单自动退款，订单ID: {}, 支付ID: {}, 第三方交易号: {}", 
                 order.getId(), payment.getId(), thirdPartyTradeNo);
         
+        boolean refundSuccess = false;
         try {
             // 解析订单金额
             BigDecimal refundAmount = OrderPriceUtil.parseOrderTotal(order);
             if (refundAmount.compareTo(BigDecimal.ZERO) <= 0) {
                 log.warn("订单金额为0或无效，无法退款，订单ID: {}", order.getId());
-                return;
+                return false;
             }
             
             String refundReason = "订单超时自动退款（订单创建后超过 " + orderTimeoutMinutes + " 分钟未支付）";
             
             // 根据支付方式选择退款服务
             PaymentServiceEnum paymentService = payment.getPaymentService();
-            boolean refundSuccess = false;
             
             if (PaymentServiceEnum.ALIPAY.equals(paymentService)) {
                 // 支付宝退款
@@ -1087,7 +1088,7 @@ public class PaymentService {
                     String paymentIntentId = payment.getStripePaymentIntentId();
                     if (paymentIntentId == null || paymentIntentId.isEmpty()) {
                         log.warn("Stripe 支付记录缺少 Payment Intent ID，无法退款，支付ID: {}", payment.getId());
-                        return;
+                        return false;
                     }
                     
                     stripeService.createRefund(paymentIntentId, refundAmount, refundReason);
@@ -1100,7 +1101,7 @@ public class PaymentService {
             } else {
                 log.warn("不支持的支付方式，无法自动退款，支付方式: {}, 订单ID: {}", 
                         paymentService != null ? paymentService.getCode() : "null", order.getId());
-                return;
+                return false;
             }
             
             if (refundSuccess) {
@@ -1127,6 +1128,7 @@ public class PaymentService {
             } else {
                 throw new IllegalStateException("无法获取 storeId 或 shardId，无法创建退款支付记录");
             }
+            refundPayment.setId(shardGeneIdGenerator.nextId(refundPayment.getShardId()));
             // 生成退款支付流水号（格式：REFUND_{订单ID}_{时间戳}）
             String refundPaymentNo = "REFUND_" + order.getId() + "_" + System.currentTimeMillis();
             refundPayment.setPaymentNo(refundPaymentNo);
@@ -1149,6 +1151,7 @@ public class PaymentService {
         } catch (Exception e) {
             log.error("处理超时订单退款异常，订单ID: {}", order.getId(), e);
         }
+        return refundSuccess;
     }
     
     /**
@@ -1197,7 +1200,7 @@ public class PaymentService {
                 log.info("重新获取 DoorDash 报价，订单ID: {}", order.getId());
                 
                 // 解析订单小计（用于报价）
-                BigDecimal subtotal = com.jiaoyi.order.util.OrderPriceUtil.parseOrderSubtotal(order.getOrderPrice());
+                BigDecimal subtotal = order.getOrderPrice() != null ? order.getOrderPrice().getSubtotal() : BigDecimal.ZERO;
                 if (subtotal == null || subtotal.compareTo(BigDecimal.ZERO) <= 0) {
                     log.warn("订单小计无效，无法重新报价，订单ID: {}", order.getId());
                     // 如果无法重新报价，使用原报价继续（可能费用会有差异，但至少能创建配送）
@@ -1630,23 +1633,11 @@ public class PaymentService {
     }
     
     /**
-     * 从订单的 orderPrice JSON 中解析小费
+     * 从订单的 orderPrice 中读取小费
      */
     private BigDecimal parseTipsFromOrder(Order order) {
-        try {
-            if (order.getOrderPrice() != null && !order.getOrderPrice().isEmpty()) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> orderPriceMap = objectMapper.readValue(
-                        order.getOrderPrice(), 
-                        Map.class
-                );
-                Object tipsObj = orderPriceMap.get("tips");
-                if (tipsObj instanceof Number) {
-                    return new BigDecimal(tipsObj.toString());
-                }
-            }
-        } catch (Exception e) {
-            log.warn("解析订单小费失败，订单ID: {}", order.getId(), e);
+        if (order.getOrderPrice() != null) {
+            return order.getOrderPrice().getTips();
         }
         return BigDecimal.ZERO;
     }
@@ -1,40 +1,136 @@
 package com.jiaoyi.order.service;
 
-import com.jiaoyi.common.exception.BusinessException;
 import com.jiaoyi.order.entity.CapabilityOfOrder;
 import com.jiaoyi.order.entity.CapabilityOfOrderConfig;
 import com.jiaoyi.order.entity.Order;
 import com.jiaoyi.order.enums.OrderStatusEnum;
 import com.jiaoyi.order.mapper.OrderMapper;
+import com.jiaoyi.order.util.ShardGeneIdGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 高峰拒单服务
  * 实现订单接单能力限制（Capability of Order）功能
  * 用于在高峰时段自动限制订单数量，防止商家接单过多导致服务质量下降
+ *
+ * Redis 模式（peak-hour.use-redis=true）下，每个商户一个按时间分桶的环形计数器（Hash：桶序号 -> 订单数）：
+ * 1. 下单前的判断由 {@link #ADMIT_SCRIPT} 一次调用完成：清理窗口外的桶、统计窗口内订单数、未达阈值时计入当前桶，
+ *    检查和占位是原子的，并发下单不会超卖接单能力；之前是 removeRangeByScore + count + 下单后 add/expire 多次往返
+ * 2. 离阈值很远时脚本会多发放几个令牌（同样计入当前桶），本实例在 peak-hour.local-lease-millis 内直接消耗，不访问 Redis；
+ *    发放后窗口使用率不超过 peak-hour.local-lease-max-usage，所以多实例同时持有令牌也不会超过阈值，
+ *    过期未用完的令牌在下一次调用脚本时顺带归还
+ * 3. 窗口按桶对齐（peak-hour.bucket-seconds），最旧的桶整体计入，统计结果最多多算一个桶的订单（偏保守）
+ *
+ * Redis 不可用或 use-redis=false 时按订单表统计（检查与下单之间不占位）
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class PeakHourRejectionService {
 
+    private static final String BUCKET_KEY_PREFIX = "merchant:order-buckets:";
+
+    /**
+     * 准入：归还过期令牌 -> 清理过期桶 -> 统计窗口 -> 未达阈值时计入当前桶（含额外租给本地的令牌）
+     *
+     * KEYS[1] 计数 Hash
+     * ARGV: 1 当前桶, 2 清理此桶之前的数据, 3 从此桶开始统计, 4 阈值, 5 本地令牌上限,
+     *       6 发放本地令牌后至少保留的剩余额度, 7 key 过期毫秒, 8 归还令牌所在桶, 9 归还令牌数
+     * 返回 {窗口内订单数（不含本次）, 发放数（0 表示拒绝，1 表示只准入本单，大于 1 时多出的为本地令牌）}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ADMIT_SCRIPT = new DefaultRedisScript<>(
+            "local refund = tonumber(ARGV[9]) " +
+                    "if refund > 0 then " +
+                    "  local left = tonumber(redis.call('hget', KEYS[1], ARGV[8]) or '0') - refund " +
+                    "  if left > 0 then redis.call('hset', KEYS[1], ARGV[8], left) " +
+                    "  else redis.call('hdel', KEYS[1], ARGV[8]) end " +
+                    "end " +
+                    "local trimBefore = tonumber(ARGV[2]) " +
+                    "local countFrom = tonumber(ARGV[3]) " +
+                    "local count = 0 " +
+                    "local fields = redis.call('hgetall', KEYS[1]) " +
+                    "for i = 1, #fields, 2 do " +
+                    "  local bucket = tonumber(fields[i]) " +
+                    "  if bucket < trimBefore then redis.call('hdel', KEYS[1], fields[i]) " +
+                    "  elseif bucket >= countFrom then count = count + tonumber(fields[i + 1]) end " +
+                    "end " +
+                    "local limit = tonumber(ARGV[4]) " +
+                    "if count >= limit then return {count, 0} end " +
+                    "local granted = 1 " +
+                    "local spare = limit - count - 1 - tonumber(ARGV[6]) " +
+                    "if spare > 0 then granted = granted + math.min(tonumber(ARGV[5]), spare) end " +
+                    "redis.call('hincrby', KEYS[1], ARGV[1], granted) " +
+                    "redis.call('pexpire', KEYS[1], ARGV[7]) " +
+                    "return {count, granted}", List.class);
+
+    /**
+     * 计数：不经过准入判断直接计入（堂食等不参与限流的订单）
+     */
+    private static final DefaultRedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>(
+            "local count = redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "return count", Long.class);
+
+    /**
+     * 归还：对应桶减一，减到 0 删除字段（桶已过期时忽略）
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local left = tonumber(redis.call('hget', KEYS[1], ARGV[1]) or '0') - 1 " +
+                    "if left > 0 then redis.call('hset', KEYS[1], ARGV[1], left) return left end " +
+                    "redis.call('hdel', KEYS[1], ARGV[1]) " +
+                    "return 0", Long.class);
+
     private final OrderMapper orderMapper;
 
     @Autowired(required = false)
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Value("${peak-hour.use-redis:false}")
     private boolean useRedis;
+
+    /**
+     * 计数桶宽度（秒）
+     */
+    @Value("${peak-hour.bucket-seconds:30}")
+    private int bucketSeconds;
+
+    /**
+     * 单次最多租给本地的令牌数（0 表示关闭本地令牌，每单都访问 Redis）
+     */
+    @Value("${peak-hour.local-lease-size:5}")
+    private int localLeaseSize;
+
+    /**
+     * 本地令牌有效期（毫秒），过期后剩余令牌归还
+     */
+    @Value("${peak-hour.local-lease-millis:1000}")
+    private long localLeaseMillis;
+
+    /**
+     * 只有发放后窗口使用率不超过该比例时才租给本地令牌
+     */
+    @Value("${peak-hour.local-lease-max-usage:0.5}")
+    private double localLeaseMaxUsage;
+
+    /**
+     * 商户ID -> 本实例持有的令牌
+     */
+    private final Map<String, LocalLease> localLeases = new ConcurrentHashMap<>();
     
     /**
      * 判断是否允许接单（高峰拒单检查）
@@ -42,7 +138,7 @@ public class PeakHourRejectionService {
      * @param merchantId 商户ID
      * @param config 限流配置
      * @param currentCapability 当前能力状态
-     * @return 判断结果
+     * @return 判断结果（Redis 模式下允许接单时本单已计入窗口，见 {@link PeakHourRejectionResult#isCounted()}）
      */
     public PeakHourRejectionResult judgeCapabilityOfOrder(
             String merchantId,
@@ -77,84 +173,139 @@ public class PeakHourRejectionService {
         
         log.debug("商户 {} 统计订单时间窗口: {} - {}", merchantId, timeInterval, now);
 
-        // 4. 统计时间窗口内的订单数量（支持Redis优化）
-        int qtyOfOrder = useRedis && redisTemplate != null
-            ? countOrdersByRedis(merchantId, config.getTimeInterval())
-            : countOrdersByDatabase(merchantId, timeInterval, now);
+        // 4. Redis 模式：本地令牌 -> 准入脚本（一次往返完成统计和占位）
+        if (useRedis && stringRedisTemplate != null) {
+            try {
+                int qtyOfOrder = admitByRedis(merchantId, config, timeInterval, now);
+                if (qtyOfOrder >= 0) {
+                    log.debug("商户 {} 未达到限流条件，本单已计入窗口", merchantId);
+                    return PeakHourRejectionResult.admitted();
+                }
+                return triggerRejection(merchantId, config, -qtyOfOrder - 1, now);
+            } catch (Exception e) {
+                log.error("Redis准入失败，降级到DB查询: merchantId={}", merchantId, e);
+            }
+        }
 
-        log.info("商户 {} 在时间窗口内订单数量: {} (方式: {}), 阈值: {}",
-            merchantId, qtyOfOrder, useRedis ? "Redis" : "DB", config.getQtyOfOrders());
-        
-        // 5. 判断是否达到限流条件
+        // 5. DB 模式：统计时间窗口内的订单数量
+        int qtyOfOrder = countOrdersByDatabase(merchantId, timeInterval, now);
+        log.info("商户 {} 在时间窗口内订单数量: {} (方式: DB), 阈值: {}",
+            merchantId, qtyOfOrder, config.getQtyOfOrders());
         if (qtyOfOrder >= config.getQtyOfOrders()) {
-            // 触发限流
-            long nextOpenAt = now + (config.getClosingDuration() * 60 * 1000L);
-            log.warn("商户 {} 触发高峰限流，订单数: {}, 阈值: {}, 下次开放时间: {}", 
-                merchantId, qtyOfOrder, config.getQtyOfOrders(), nextOpenAt);
-            
-            return PeakHourRejectionResult.triggerRejection(nextOpenAt);
-        } else {
-            // 未达到限流条件，允许接单
-            log.debug("商户 {} 未达到限流条件，允许接单", merchantId);
-            return PeakHourRejectionResult.enableOrder();
+            return triggerRejection(merchantId, config, qtyOfOrder, now);
         }
+        // 未达到限流条件，允许接单
+        log.debug("商户 {} 未达到限流条件，允许接单", merchantId);
+        return PeakHourRejectionResult.enableOrder();
     }
 
     /**
-     * 记录订单到Redis（订单创建成功后调用）
+     * 触发限流
      */
-    public void recordOrder(String merchantId, Long orderId) {
-        if (!useRedis || redisTemplate == null) {
-            return;
+    private PeakHourRejectionResult triggerRejection(String merchantId, CapabilityOfOrderConfig config,
+                                                     int qtyOfOrder, long now) {
+        long nextOpenAt = now + (config.getClosingDuration() * 60 * 1000L);
+        log.warn("商户 {} 触发高峰限流，订单数: {}, 阈值: {}, 下次开放时间: {}", 
+            merchantId, qtyOfOrder, config.getQtyOfOrders(), nextOpenAt);
+        return PeakHourRejectionResult.triggerRejection(nextOpenAt);
+    }
+
+    /**
+     * Redis 准入
+     *
+     * @return 允许接单时返回窗口内订单数（不含本单，本地令牌准入时返回 0）；拒绝时返回 -(窗口内订单数 + 1)
+     */
+    private int admitByRedis(String merchantId, CapabilityOfOrderConfig config, long windowStart, long now) {
+        int limit = config.getQtyOfOrders();
+        long bucketMillis = bucketSeconds * 1000L;
+        long windowMillis = config.getTimeInterval() * 60 * 1000L;
+        long countFrom = windowStart / bucketMillis;
+
+        // 1. 本地令牌（同一阈值、同一窗口起点、未过期）
+        LocalLease lease = localLeases.get(merchantId);
+        if (lease != null && lease.matches(limit, countFrom, now) && lease.tryAcquire()) {
+            log.debug("商户 {} 使用本地令牌接单，剩余: {}", merchantId, lease.tokens.get());
+            return 0;
         }
 
-        try {
-            String key = "merchant:orders:" + merchantId;
-            long timestamp = System.currentTimeMillis();
-            redisTemplate.opsForZSet().add(key, orderId.toString(), timestamp);
-            redisTemplate.expire(key, 1, java.util.concurrent.TimeUnit.HOURS);
-        } catch (Exception e) {
-            log.error("记录订单到Redis失败: merchantId={}, orderId={}", merchantId, orderId, e);
+        // 2. 令牌已失效：取回剩余令牌，随本次脚本调用一起归还
+        int refund = 0;
+        long refundBucket = 0;
+        if (lease != null && localLeases.remove(merchantId, lease)) {
+            refund = lease.drain();
+            refundBucket = lease.bucket;
+        }
+
+        long bucket = now / bucketMillis;
+        int reserve = limit - (int) Math.floor(limit * localLeaseMaxUsage);
+        @SuppressWarnings("unchecked")
+        List<Long> result = stringRedisTemplate.execute(ADMIT_SCRIPT,
+                Collections.singletonList(BUCKET_KEY_PREFIX + merchantId),
+                String.valueOf(bucket),
+                String.valueOf((now - windowMillis) / bucketMillis),
+                String.valueOf(countFrom),
+                String.valueOf(limit),
+                String.valueOf(Math.max(localLeaseSize, 0)),
+                String.valueOf(reserve),
+                String.valueOf(windowMillis + bucketMillis),
+                String.valueOf(refundBucket),
+                String.valueOf(refund));
+        if (result == null || result.size() < 2) {
+            throw new IllegalStateException("高峰准入脚本返回为空");
+        }
+        int qtyOfOrder = result.get(0).intValue();
+        int granted = result.get(1).intValue();
+        log.debug("商户 {} 在时间窗口内订单数量: {} (方式: Redis), 阈值: {}, 发放: {}",
+                merchantId, qtyOfOrder, limit, granted);
+        if (granted <= 0) {
+            return -qtyOfOrder - 1;
+        }
+        if (granted > 1) {
+            localLeases.put(merchantId, new LocalLease(limit, bucket, now + localLeaseMillis, granted - 1));
         }
+        return qtyOfOrder;
     }
 
     /**
-     * 从Redis移除订单（订单取消时调用）
+     * 计入订单（不经过准入判断的订单在创建成功后调用，如堂食、未启用限流的商户；已准入的订单不要重复调用）
      */
-    public void removeOrder(String merchantId, Long orderId) {
-        if (!useRedis || redisTemplate == null) {
+    public void recordOrder(String merchantId, Long orderId) {
+        if (!useRedis || stringRedisTemplate == null) {
             return;
         }
 
         try {
-            String key = "merchant:orders:" + merchantId;
-            redisTemplate.opsForZSet().remove(key, orderId.toString());
+            long bucketMillis = bucketSeconds * 1000L;
+            // 未启用限流的商户没有窗口配置，按最大统计范围（2.5小时）过期
+            long ttlMillis = (long) (2.5 * 3600 * 1000) + bucketMillis;
+            stringRedisTemplate.execute(RECORD_SCRIPT,
+                    Collections.singletonList(BUCKET_KEY_PREFIX + merchantId),
+                    String.valueOf(System.currentTimeMillis() / bucketMillis),
+                    String.valueOf(ttlMillis));
         } catch (Exception e) {
-            log.error("从Redis移除订单失败: merchantId={}, orderId={}", merchantId, orderId, e);
+            log.error("记录订单到Redis失败: merchantId={}, orderId={}", merchantId, orderId, e);
         }
     }
 
     /**
-     * 使用Redis统计订单数
+     * 从窗口中移除订单（订单取消、或已准入但创建失败时调用）
+     *
+     * 按订单ID中的生成时间定位桶（历史ID没有时间基因，按当前桶处理）
      */
-    private int countOrdersByRedis(String merchantId, int windowMinutes) {
-        try {
-            String key = "merchant:orders:" + merchantId;
-            long now = System.currentTimeMillis();
-            long windowStart = now - windowMinutes * 60 * 1000L;
-
-            // 清理过期数据
-            redisTemplate.opsForZSet().removeRangeByScore(key, 0, windowStart);
-
-            // 统计窗口内数量
-            Long count = redisTemplate.opsForZSet().count(key, windowStart, now);
-            return count == null ? 0 : count.intValue();
+    public void removeOrder(String merchantId, Long orderId) {
+        if (!useRedis || stringRedisTemplate == null) {
+            return;
+        }
 
+        try {
+            long createdAt = ShardGeneIdGenerator.hasShardGene(orderId)
+                    ? ShardGeneIdGenerator.extractTimestamp(orderId)
+                    : System.currentTimeMillis();
+            stringRedisTemplate.execute(RELEASE_SCRIPT,
+                    Collections.singletonList(BUCKET_KEY_PREFIX + merchantId),
+                    String.valueOf(createdAt / (bucketSeconds * 1000L)));
         } catch (Exception e) {
-            log.error("Redis统计失败，降级到DB查询: merchantId={}", merchantId, e);
-            return countOrdersByDatabase(merchantId,
-                System.currentTimeMillis() - windowMinutes * 60 * 1000L,
-                System.currentTimeMillis());
+            log.error("从Redis移除订单失败: merchantId={}, orderId={}", merchantId, orderId, e);
         }
     }
 
@@ -212,17 +363,68 @@ public class PeakHourRejectionService {
          * 是否触发限流
          */
         private boolean triggered;
+
+        /**
+         * 本单是否已计入 Redis 窗口（为 true 时创建成功无需 recordOrder，创建失败需要 removeOrder 归还）
+         */
+        private boolean counted;
         
         public static PeakHourRejectionResult enableOrder() {
-            return new PeakHourRejectionResult(true, null, false, false);
+            return new PeakHourRejectionResult(true, null, false, false, false);
+        }
+
+        public static PeakHourRejectionResult admitted() {
+            return new PeakHourRejectionResult(true, null, false, false, true);
         }
         
         public static PeakHourRejectionResult rejectOrder(Long nextOpenAt) {
-            return new PeakHourRejectionResult(false, nextOpenAt, false, false);
+            return new PeakHourRejectionResult(false, nextOpenAt, false, false, false);
         }
         
         public static PeakHourRejectionResult triggerRejection(Long nextOpenAt) {
-            return new PeakHourRejectionResult(false, nextOpenAt, true, true);
+            return new PeakHourRejectionResult(false, nextOpenAt, true, true, false);
+        }
+    }
+
+    /**
+     * 本实例持有的令牌（已在 Redis 中计入 bucket）
+     */
+    private static final class LocalLease {
+        private final int limit;
+        private final long bucket;
+        private final long expiresAt;
+        private final AtomicInteger tokens;
+
+        private LocalLease(int limit, long bucket, long expiresAt, int tokens) {
+            this.limit = limit;
+            this.bucket = bucket;
+            this.expiresAt = expiresAt;
+            this.tokens = new AtomicInteger(tokens);
+        }
+
+        /**
+         * 阈值变化、令牌所在桶已不在统计窗口内（重新开放）、令牌过期时不能再用
+         */
+        private boolean matches(int limit, long countFrom, long now) {
+            return this.limit == limit && bucket >= countFrom && now < expiresAt;
+        }
+
+        private boolean tryAcquire() {
+            int current;
+            do {
+                current = tokens.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        /**
+         * 取走剩余令牌（之后 tryAcquire 都会失败）
+         */
+        private int drain() {
+            return Math.max(tokens.getAndSet(0), 0);
         }
     }
 }
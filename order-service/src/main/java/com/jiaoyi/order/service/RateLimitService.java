@@ -0,0 +1,220 @@
+package com.jiaoyi.order.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import com.jiaoyi.order.config.RateLimitProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接口限流引擎（{@link com.jiaoyi.order.aspect.RateLimitAspect} 调用）
+ *
+ * 每个策略 + key 一个额度：
+ * 1. 集群模式：按固定窗口在 Redis 中计数，实例每次通过 {@link #LEASE_SCRIPT} 租用一批额度（窗口额度 * lease-fraction）
+ *    放在本地消耗，用完再租；Redis 返回额度已用完后，本窗口剩余时间内直接在本地拒绝，不再访问 Redis。
+ *    所以限额随实例数不变，而热点 key 每个窗口只访问几次 Redis
+ * 2. 单机模式（cluster=false 或未配置策略）：本地 Guava 令牌桶
+ * 3. Redis 不可用时降级为本地令牌桶（每个实例按 permitsPerSecond 放行，集群总量会放大为实例数倍）
+ *
+ * 按 key 限流（商户、用户）时每个 key 独立计数，本地状态有上限，超出后淘汰最久未访问的 key
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RateLimitService {
+
+    private static final String KEY_PREFIX = "rate:limit:";
+
+    /**
+     * 整个接口共用额度时的 key
+     */
+    private static final String GLOBAL_KEY = "_";
+
+    /**
+     * 租用额度：窗口内已用量未达上限时增加 min(申请数, 剩余额度)，返回实际租到的数量
+     *
+     * KEYS[1] 窗口计数 key
+     * ARGV: 1 窗口额度, 2 申请数, 3 过期毫秒
+     */
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>(
+            "local used = tonumber(redis.call('get', KEYS[1]) or '0') " +
+                    "local limit = tonumber(ARGV[1]) " +
+                    "if used >= limit then return 0 end " +
+                    "local granted = math.min(tonumber(ARGV[2]), limit - used) " +
+                    "redis.call('incrby', KEYS[1], granted) " +
+                    "redis.call('pexpire', KEYS[1], ARGV[3]) " +
+                    "return granted", Long.class);
+
+    private final RateLimitProperties properties;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 策略名 -> 限流器
+     */
+    private final Map<String, PolicyLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 尝试获取一个许可
+     *
+     * @param policyName 策略名
+     * @param key 限流维度 key（null 表示整个接口共用额度）
+     * @param defaultPermitsPerSecond 未配置策略时的单机速率（0 表示不限流）
+     * @return false 表示被限流
+     */
+    public boolean tryAcquire(String policyName, String key, double defaultPermitsPerSecond) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        PolicyLimiter limiter = limiters.computeIfAbsent(policyName,
+                name -> createLimiter(name, defaultPermitsPerSecond));
+        return limiter.tryAcquire(key != null ? key : GLOBAL_KEY);
+    }
+
+    /**
+     * 各策略的放行/限流统计
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", properties.isEnabled());
+        Map<String, Object> policies = new LinkedHashMap<>();
+        limiters.forEach((name, limiter) -> policies.put(name, limiter.getStatus()));
+        status.put("policies", policies);
+        return status;
+    }
+
+    private PolicyLimiter createLimiter(String name, double defaultPermitsPerSecond) {
+        RateLimitProperties.Policy policy = properties.getPolicies().get(name);
+        if (policy == null) {
+            policy = new RateLimitProperties.Policy();
+            policy.setPermitsPerSecond(defaultPermitsPerSecond);
+            policy.setCluster(false);
+        }
+        if (policy.getPermitsPerSecond() <= 0) {
+            log.warn("限流策略 {} 未配置速率，不限流", name);
+        } else {
+            log.info("限流策略初始化: {}, 速率: {} QPS, 窗口: {}s, 集群: {}",
+                    name, policy.getPermitsPerSecond(), policy.getWindowSeconds(), policy.isCluster());
+        }
+        return new PolicyLimiter(name, policy);
+    }
+
+    /**
+     * 单个策略的限流器
+     */
+    private final class PolicyLimiter {
+        private final String name;
+        private final RateLimitProperties.Policy policy;
+        private final long windowMillis;
+        private final int windowLimit;
+        private final int leaseSize;
+        private final Cache<String, KeyState> states;
+
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder redisLeases = new LongAdder();
+        private final LongAdder redisFailures = new LongAdder();
+
+        private PolicyLimiter(String name, RateLimitProperties.Policy policy) {
+            this.name = name;
+            this.policy = policy;
+            int windowSeconds = Math.max(policy.getWindowSeconds(), 1);
+            this.windowMillis = windowSeconds * 1000L;
+            this.windowLimit = Math.max((int) Math.round(policy.getPermitsPerSecond() * windowSeconds), 1);
+            this.leaseSize = Math.max((int) (windowLimit * properties.getLeaseFraction()), 1);
+            this.states = CacheBuilder.newBuilder()
+                    .maximumSize(Math.max(policy.getMaxKeys(), 1))
+                    .expireAfterAccess(Math.max(windowSeconds * 2L, 60L), TimeUnit.SECONDS)
+                    .build();
+        }
+
+        private boolean tryAcquire(String key) {
+            if (policy.getPermitsPerSecond() <= 0) {
+                return true;
+            }
+            KeyState state = states.asMap().computeIfAbsent(key,
+                    k -> new KeyState(RateLimiter.create(policy.getPermitsPerSecond())));
+            boolean acquired = policy.isCluster() ? acquireFromLease(key, state) : state.local.tryAcquire();
+            (acquired ? passed : throttled).increment();
+            return acquired;
+        }
+
+        /**
+         * 先消耗本地租到的额度，用完再向 Redis 租下一批
+         */
+        private boolean acquireFromLease(String key, KeyState state) {
+            long window = System.currentTimeMillis() / windowMillis;
+            synchronized (state) {
+                if (state.leaseWindow == window && state.leaseTokens > 0) {
+                    state.leaseTokens--;
+                    return true;
+                }
+                if (state.exhaustedWindow == window) {
+                    return false;
+                }
+                int granted;
+                try {
+                    Long result = stringRedisTemplate.execute(LEASE_SCRIPT,
+                            Collections.singletonList(KEY_PREFIX + name + ":" + key + ":" + window),
+                            String.valueOf(windowLimit),
+                            String.valueOf(leaseSize),
+                            String.valueOf(windowMillis * 2));
+                    granted = result == null ? 0 : result.intValue();
+                    redisLeases.increment();
+                } catch (Exception e) {
+                    redisFailures.increment();
+                    log.warn("限流额度租用失败，降级为本地限流，策略: {}, key: {}, 原因: {}", name, key, e.getMessage());
+                    return state.local.tryAcquire();
+                }
+                if (granted <= 0) {
+                    state.exhaustedWindow = window;
+                    return false;
+                }
+                state.leaseWindow = window;
+                state.leaseTokens = granted - 1;
+                return true;
+            }
+        }
+
+        private Map<String, Object> getStatus() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("permitsPerSecond", policy.getPermitsPerSecond());
+            status.put("windowSeconds", windowMillis / 1000);
+            status.put("cluster", policy.isCluster());
+            status.put("leaseSize", leaseSize);
+            status.put("trackedKeys", states.size());
+            status.put("passed", passed.sum());
+            status.put("throttled", throttled.sum());
+            status.put("redisLeases", redisLeases.sum());
+            status.put("redisFailures", redisFailures.sum());
+            return status;
+        }
+    }
+
+    /**
+     * 单个 key 的本地状态（租用字段由 synchronized 保护）
+     */
+    private static final class KeyState {
+        /**
+         * 单机模式的令牌桶，集群模式下作为 Redis 不可用时的降级
+         */
+        private final RateLimiter local;
+        private long leaseWindow = -1;
+        private int leaseTokens;
+        private long exhaustedWindow = -1;
+
+        private KeyState(RateLimiter local) {
+            this.local = local;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.jiaoyi.order.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.common.exception.BusinessException;
 import com.jiaoyi.order.dto.OrderReconciliationResponse;
 import com.jiaoyi.order.entity.*;
@@ -14,7 +13,6 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -31,7 +29,6 @@ public class ReconciliationService {
     private final RefundMapper refundMapper;
     private final RefundItemMapper refundItemMapper;
     private final OrderCouponMapper orderCouponMapper;
-    private final ObjectMapper objectMapper;
     
     /**
      * 获取订单资金分解（对账）
@@ -69,25 +66,22 @@ public class ReconciliationService {
     /**
      * 解析订单价格分解
      */
-    @SuppressWarnings("unchecked")
     private OrderReconciliationResponse.FinancialBreakdown parseOrderPriceBreakdown(Order order) {
         OrderReconciliationResponse.FinancialBreakdown breakdown = 
             new OrderReconciliationResponse.FinancialBreakdown();
         
         try {
-            String orderPriceStr = order.getOrderPrice();
-            if (orderPriceStr == null || !orderPriceStr.startsWith("{")) {
+            OrderPrice orderPrice = order.getOrderPrice();
+            if (orderPrice == null || !orderPrice.isValid()) {
                 throw new BusinessException("订单价格信息格式错误");
             }
             
-            Map<String, Object> orderPrice = (Map<String, Object>) objectMapper.readValue(orderPriceStr, Map.class);
-            
-            // 解析各项金额
-            breakdown.setItemsSubtotal(parseDecimal(orderPrice.get("subtotal")));
-            breakdown.setTax(parseDecimal(orderPrice.get("tax")));
-            breakdown.setDeliveryFee(parseDecimal(orderPrice.get("deliveryFee")));
-            breakdown.setTips(parseDecimal(orderPrice.get("tips")));
-            breakdown.setPlatformCharge(parseDecimal(orderPrice.get("charge")));
+            // 各项金额（税费字段名为 taxTotal，与下单写入的 JSON 一致）
+            breakdown.setItemsSubtotal(orderPrice.getSubtotal());
+            breakdown.setTax(orderPrice.getTaxTotal());
+            breakdown.setDeliveryFee(orderPrice.getDeliveryFee());
+            breakdown.setTips(orderPrice.getTips());
+            breakdown.setPlatformCharge(orderPrice.getCharge());
             
             // 计算优惠券折扣
             BigDecimal couponDiscount = calculateCouponDiscount(order.getId());
@@ -233,28 +227,4 @@ public class ReconciliationService {
             .filter(amount -> amount != null)
             .reduce(BigDecimal.ZERO, BigDecimal::add);
     }
-    
-    /**
-     * 解析 Decimal 值
-     */
-    private BigDecimal parseDecimal(Object value) {
-        if (value == null) {
-            return BigDecimal.ZERO;
-        }
-        if (value instanceof BigDecimal) {
-            return (BigDecimal) value;
-        }
-        if (value instanceof Number) {
-            return BigDecimal.valueOf(((Number) value).doubleValue());
-        }
-        try {
-            return new BigDecimal(value.toString());
-        } catch (Exception e) {
-            return BigDecimal.ZERO;
-        }
-    }
 }
-
-
-
-
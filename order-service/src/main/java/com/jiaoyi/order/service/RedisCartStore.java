@@ -0,0 +1,657 @@
+package com.jiaoyi.order.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.common.exception.BusinessException;
+import com.jiaoyi.common.id.SnowflakeIdGenerator;
+import com.jiaoyi.order.entity.ShoppingCart;
+import com.jiaoyi.order.entity.ShoppingCartItem;
+import com.jiaoyi.order.util.ShardUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis 购物车存储（购物车的在线数据，MySQL 由 {@link com.jiaoyi.order.task.CartWriteBehindTask} 异步落库）
+ *
+ * 每个购物车一个 hash（cart:data:{cartId}）：
+ * - 元数据：id / userId / tableId / storeId / merchantId / ctime / mtime / exp / ver
+ * - 汇总：qty（总数量）、amt（总金额，单位分，整数运算避免精度问题）
+ * - 购物车项：i:{productId}:{skuId} -> itemId，q:{itemId} 数量，p:{itemId} 单价（分），
+ *   k:{itemId} 商品键，d:{itemId} 展示字段 JSON（商品名、图片、选项等，写入后不再修改）
+ * 用户/桌码到购物车的映射：cart:owner:{storeId}:u:{userId} 或 cart:owner:{storeId}:t:{tableId} -> cartId
+ * （既没有用户也没有桌码的匿名购物车不能按 owner 查找，只能按 cartId 操作，映射为 cart:owner:{storeId}:c:{cartId}，互不冲突）
+ * 合并后删除的购物车 ID 记入 cart:deleted，落库任务只对其中的购物车删除数据库记录（Redis 淘汰/过期的购物车保留数据库记录）
+ *
+ * 每次修改是一个 Lua 脚本：购物车项和汇总原子更新、刷新 TTL、把 cartId 加入待落库集合，
+ * 并直接返回修改后的整个 hash，一次往返完成（不再需要分布式锁、乐观锁重试和回表查询）。
+ * 待落库集合按 cartId 分区（cart:dirty:{cartId % partitions}），每个分区是一个 zset，score 为购物车变脏的时间
+ * （ZADD NX，落库前的多次修改保留最早时间），落库任务按分区加锁并行处理，最早 score 即该分区的落库延迟。
+ *
+ * 注意：脚本会访问由 cartId 拼出的 key，要求购物车相关 key 在同一个 Redis 节点上（当前为单节点/哨兵部署）
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RedisCartStore {
+
+    public static final String CART_KEY_PREFIX = "cart:data:";
+    public static final String OWNER_KEY_PREFIX = "cart:owner:";
+    public static final String DIRTY_KEY_PREFIX = "cart:dirty:";
+    public static final String DELETED_SET_KEY = "cart:deleted";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String STATUS_OK = "ok";
+    private static final String STATUS_MISSING_CART = "missing-cart";
+    private static final String STATUS_MISSING_ITEM = "missing-item";
+    private static final String STATUS_CONFLICT = "conflict";
+
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+
+    /**
+     * 修改类脚本的公共结尾：版本号 +1、刷新修改时间和 TTL、标记待落库、返回整个 hash
+     * （ARGV[1]=cartId, ARGV[2]=ttl秒, ARGV[3]=过期时间毫秒, ARGV[4]=当前毫秒）
+     */
+    private static final String TOUCH_AND_RETURN =
+            "redis.call('hincrby', KEYS[1], 'ver', 1) " +
+                    "redis.call('hset', KEYS[1], 'mtime', ARGV[4], 'exp', ARGV[3]) " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "redis.call('zadd', KEYS[2], 'NX', ARGV[4], ARGV[1]) " +
+                    "local r = redis.call('hgetall', KEYS[1]) " +
+                    "table.insert(r, 1, 'ok') " +
+                    "return r";
+
+    private static final String CART_EXISTS =
+            "if redis.call('exists', KEYS[1]) == 0 then return {'missing-cart'} end ";
+
+    /**
+     * 按用户/桌码打开购物车：KEYS[1]=owner，ARGV[1]=cart key 前缀, ARGV[2]=是否刷新TTL, ARGV[3]=ttl, ARGV[4]=过期时间
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> OPEN_SCRIPT = new DefaultRedisScript<>(
+            "local id = redis.call('get', KEYS[1]) " +
+                    "if not id then return {'missing-cart'} end " +
+                    "local key = ARGV[1] .. id " +
+                    "if redis.call('exists', key) == 0 then return {'missing-cart'} end " +
+                    "if ARGV[2] == '1' then " +
+                    "  redis.call('expire', KEYS[1], ARGV[3]) " +
+                    "  redis.call('expire', key, ARGV[3]) " +
+                    "  redis.call('hset', key, 'exp', ARGV[4]) " +
+                    "end " +
+                    "local r = redis.call('hgetall', key) " +
+                    "table.insert(r, 1, 'ok') " +
+                    "return r",
+            List.class);
+
+    /**
+     * 创建购物车或从数据库加载到 Redis
+     * KEYS[1]=owner, KEYS[2]=候选 cart key；ARGV[1]=前缀, [2]=ttl, [3]=过期时间, [4]=cartId, [5]=userId, [6]=tableId,
+     * [7]=storeId, [8]=merchantId, [9]=ctime, [10]=mtime, [11]=ver, [12]=是否强制使用该 cartId，[13..] 每 5 个一组的购物车项
+     *
+     * 非强制模式下 owner 已指向有效购物车时直接返回它（并发创建只会有一个生效）；
+     * 强制模式用于按 cartId 从数据库加载，owner 已被其他购物车占用时不修改 owner
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CREATE_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = ARGV[2] " +
+                    "local force = ARGV[12] == '1' " +
+                    "local id = redis.call('get', KEYS[1]) " +
+                    "local key " +
+                    "if not force and id and redis.call('exists', ARGV[1] .. id) == 1 then " +
+                    "  key = ARGV[1] .. id " +
+                    "else " +
+                    "  key = KEYS[2] " +
+                    "  if redis.call('exists', key) == 0 then " +
+                    "    redis.call('hset', key, 'id', ARGV[4], 'userId', ARGV[5], 'tableId', ARGV[6], 'storeId', ARGV[7], " +
+                    "      'merchantId', ARGV[8], 'ctime', ARGV[9], 'mtime', ARGV[10], 'ver', ARGV[11], 'qty', 0, 'amt', 0) " +
+                    "    for i = 13, #ARGV - 4, 5 do " +
+                    "      local pk, itemId = ARGV[i], ARGV[i + 1] " +
+                    "      local q, p = tonumber(ARGV[i + 2]), tonumber(ARGV[i + 3]) " +
+                    "      redis.call('hset', key, 'i:' .. pk, itemId, 'q:' .. itemId, q, 'p:' .. itemId, p, " +
+                    "        'k:' .. itemId, pk, 'd:' .. itemId, ARGV[i + 4]) " +
+                    "      redis.call('hincrby', key, 'qty', q) " +
+                    "      redis.call('hincrby', key, 'amt', q * p) " +
+                    "    end " +
+                    "  end " +
+                    "  if not force or not id or redis.call('exists', ARGV[1] .. id) == 0 then " +
+                    "    redis.call('set', KEYS[1], ARGV[4]) " +
+                    "  end " +
+                    "end " +
+                    "redis.call('expire', KEYS[1], ttl) " +
+                    "redis.call('expire', key, ttl) " +
+                    "redis.call('hset', key, 'exp', ARGV[3]) " +
+                    "local r = redis.call('hgetall', key) " +
+                    "table.insert(r, 1, 'ok') " +
+                    "return r",
+            List.class);
+
+    /**
+     * 加购：KEYS[1]=cart, KEYS[2]=dirty；ARGV[5]=商品键, [6]=新项ID, [7]=数量增量, [8]=单价（分）, [9]=展示字段
+     * 已有同商品同SKU的项时累加数量（沿用已有单价），否则新建
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> ADD_ITEM_SCRIPT = new DefaultRedisScript<>(
+            CART_EXISTS +
+                    "local itemId = redis.call('hget', KEYS[1], 'i:' .. ARGV[5]) " +
+                    "local price " +
+                    "if itemId then " +
+                    "  price = tonumber(redis.call('hget', KEYS[1], 'p:' .. itemId)) " +
+                    "else " +
+                    "  itemId = ARGV[6] " +
+                    "  price = tonumber(ARGV[8]) " +
+                    "  redis.call('hset', KEYS[1], 'i:' .. ARGV[5], itemId, 'q:' .. itemId, 0, 'p:' .. itemId, price, " +
+                    "    'k:' .. itemId, ARGV[5], 'd:' .. itemId, ARGV[9]) " +
+                    "end " +
+                    "local delta = tonumber(ARGV[7]) " +
+                    "redis.call('hincrby', KEYS[1], 'q:' .. itemId, delta) " +
+                    "redis.call('hincrby', KEYS[1], 'qty', delta) " +
+                    "redis.call('hincrby', KEYS[1], 'amt', delta * price) " +
+                    TOUCH_AND_RETURN,
+            List.class);
+
+    /**
+     * 修改数量：ARGV[5]=itemId, ARGV[6]=新数量
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SET_QUANTITY_SCRIPT = new DefaultRedisScript<>(
+            CART_EXISTS +
+                    "local old = redis.call('hget', KEYS[1], 'q:' .. ARGV[5]) " +
+                    "if not old then return {'missing-item'} end " +
+                    "local delta = tonumber(ARGV[6]) - tonumber(old) " +
+                    "local price = tonumber(redis.call('hget', KEYS[1], 'p:' .. ARGV[5])) " +
+                    "redis.call('hset', KEYS[1], 'q:' .. ARGV[5], ARGV[6]) " +
+                    "redis.call('hincrby', KEYS[1], 'qty', delta) " +
+                    "redis.call('hincrby', KEYS[1], 'amt', delta * price) " +
+                    TOUCH_AND_RETURN,
+            List.class);
+
+    /**
+     * 删除购物车项：ARGV[5]=itemId
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> REMOVE_ITEM_SCRIPT = new DefaultRedisScript<>(
+            CART_EXISTS +
+                    "local id = ARGV[5] " +
+                    "local q = redis.call('hget', KEYS[1], 'q:' .. id) " +
+                    "if not q then return {'missing-item'} end " +
+                    "q = tonumber(q) " +
+                    "local price = tonumber(redis.call('hget', KEYS[1], 'p:' .. id)) " +
+                    "local pk = redis.call('hget', KEYS[1], 'k:' .. id) " +
+                    "redis.call('hdel', KEYS[1], 'i:' .. pk, 'q:' .. id, 'p:' .. id, 'k:' .. id, 'd:' .. id) " +
+                    "redis.call('hincrby', KEYS[1], 'qty', -q) " +
+                    "redis.call('hincrby', KEYS[1], 'amt', -q * price) " +
+                    TOUCH_AND_RETURN,
+            List.class);
+
+    /**
+     * 清空：删除所有购物车项字段（第二个字符是 ':' 的字段），汇总归零
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLEAR_SCRIPT = new DefaultRedisScript<>(
+            CART_EXISTS +
+                    "for _, f in ipairs(redis.call('hkeys', KEYS[1])) do " +
+                    "  if string.sub(f, 2, 2) == ':' then redis.call('hdel', KEYS[1], f) end " +
+                    "end " +
+                    "redis.call('hset', KEYS[1], 'qty', 0, 'amt', 0) " +
+                    TOUCH_AND_RETURN,
+            List.class);
+
+    /**
+     * 合并：KEYS[3]=临时购物车, KEYS[4]=临时购物车 owner, KEYS[5]=已删除集合, KEYS[6]=临时购物车的待落库分区；ARGV[5]=临时 cartId, [6]=读取时临时购物车版本，[7..] 每 5 个一组的购物车项
+     * 临时购物车在读取后被修改过时返回 conflict，由调用方重新读取后重试
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> MERGE_SCRIPT = new DefaultRedisScript<>(
+            CART_EXISTS +
+                    "if redis.call('hget', KEYS[3], 'ver') ~= ARGV[6] then return {'conflict'} end " +
+                    "for i = 7, #ARGV - 4, 5 do " +
+                    "  local pk, q = ARGV[i], tonumber(ARGV[i + 2]) " +
+                    "  local itemId = redis.call('hget', KEYS[1], 'i:' .. pk) " +
+                    "  local price " +
+                    "  if itemId then " +
+                    "    price = tonumber(redis.call('hget', KEYS[1], 'p:' .. itemId)) " +
+                    "  else " +
+                    "    itemId = ARGV[i + 1] " +
+                    "    price = tonumber(ARGV[i + 3]) " +
+                    "    redis.call('hset', KEYS[1], 'i:' .. pk, itemId, 'q:' .. itemId, 0, 'p:' .. itemId, price, " +
+                    "      'k:' .. itemId, pk, 'd:' .. itemId, ARGV[i + 4]) " +
+                    "  end " +
+                    "  redis.call('hincrby', KEYS[1], 'q:' .. itemId, q) " +
+                    "  redis.call('hincrby', KEYS[1], 'qty', q) " +
+                    "  redis.call('hincrby', KEYS[1], 'amt', q * price) " +
+                    "end " +
+                    "redis.call('del', KEYS[3]) " +
+                    "if redis.call('get', KEYS[4]) == ARGV[5] then redis.call('del', KEYS[4]) end " +
+                    "redis.call('sadd', KEYS[5], ARGV[5]) " +
+                    "redis.call('zadd', KEYS[6], 'NX', ARGV[4], ARGV[5]) " +
+                    TOUCH_AND_RETURN,
+            List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+
+    @Value("${cart.expire-hours:24}")
+    private int expireHours;
+
+    /**
+     * 待落库集合分区数（修改前需等待所有分区落库完成，否则旧分区中的 cartId 不会再被处理）
+     */
+    @Value("${cart.write-behind.partitions:16}")
+    private int dirtyPartitions;
+
+    /**
+     * 按用户/桌码查找购物车
+     *
+     * @param touch 是否刷新过期时间
+     * @return Redis 中没有时返回 null
+     */
+    public ShoppingCart findByOwner(Long userId, Integer tableId, Long storeId, boolean touch) {
+        if (userId == null && tableId == null) {
+            throw new IllegalArgumentException("匿名购物车只能按 cartId 查找");
+        }
+        long now = System.currentTimeMillis();
+        return parse(stringRedisTemplate.execute(OPEN_SCRIPT,
+                Collections.singletonList(ownerKey(userId, tableId, storeId, null)),
+                CART_KEY_PREFIX, touch ? "1" : "0", String.valueOf(ttlSeconds()), String.valueOf(expireAt(now))));
+    }
+
+    /**
+     * 按 cartId 读取购物车
+     *
+     * @return Redis 中没有时返回 null
+     */
+    public ShoppingCart findById(Long cartId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(CART_KEY_PREFIX + cartId);
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Map<String, String> fields = new HashMap<>(entries.size() * 2);
+        entries.forEach((k, v) -> fields.put((String) k, (String) v));
+        return toCart(fields);
+    }
+
+    /**
+     * 创建新购物车；同一用户/桌码并发创建时返回先创建的那个
+     */
+    public ShoppingCart create(Long userId, Integer tableId, Long storeId, String merchantId) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(snowflakeIdGenerator.nextId());
+        cart.setUserId(userId);
+        cart.setTableId(tableId);
+        cart.setStoreId(storeId);
+        cart.setMerchantId(merchantId);
+        cart.setVersion(1L);
+        cart.setItems(Collections.emptyList());
+        return load(cart, false);
+    }
+
+    /**
+     * 把数据库中的购物车加载到 Redis（Redis 中已过期/被清理，或切换存储模式之前创建的购物车）
+     *
+     * @param force true 表示必须使用该购物车（按 cartId 操作时），false 表示 owner 已有其他购物车时以 Redis 为准
+     */
+    public ShoppingCart load(ShoppingCart cart, boolean force) {
+        long now = System.currentTimeMillis();
+        long createTime = cart.getCreateTime() != null ? toMillis(cart.getCreateTime()) : now;
+        List<String> args = new ArrayList<>();
+        args.add(CART_KEY_PREFIX);
+        args.add(String.valueOf(ttlSeconds()));
+        args.add(String.valueOf(expireAt(now)));
+        args.add(String.valueOf(cart.getId()));
+        args.add(cart.getUserId() != null ? String.valueOf(cart.getUserId()) : "");
+        args.add(cart.getTableId() != null ? String.valueOf(cart.getTableId()) : "");
+        args.add(String.valueOf(cart.getStoreId()));
+        args.add(cart.getMerchantId() != null ? cart.getMerchantId() : "");
+        args.add(String.valueOf(createTime));
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(cart.getVersion() != null ? cart.getVersion() : 1L));
+        args.add(force ? "1" : "0");
+        if (cart.getItems() != null) {
+            for (ShoppingCartItem item : cart.getItems()) {
+                addItemArgs(args, item, item.getId(), item.getQuantity());
+            }
+        }
+        return parse(stringRedisTemplate.execute(CREATE_SCRIPT,
+                Arrays.asList(ownerKey(cart.getUserId(), cart.getTableId(), cart.getStoreId(), cart.getId()),
+                        CART_KEY_PREFIX + cart.getId()),
+                args.toArray()));
+    }
+
+    /**
+     * 加购（同商品同SKU累加数量）
+     *
+     * @return 购物车不在 Redis 中时返回 null
+     */
+    public ShoppingCart addItem(Long cartId, ShoppingCartItem item, int quantity) {
+        List<String> args = touchArgs(cartId);
+        addItemArgs(args, item, snowflakeIdGenerator.nextId(), quantity);
+        return parse(stringRedisTemplate.execute(ADD_ITEM_SCRIPT, cartKeys(cartId), args.toArray()));
+    }
+
+    /**
+     * 修改购物车项数量
+     *
+     * @return 购物车不在 Redis 中时返回 null
+     */
+    public ShoppingCart setQuantity(Long cartId, Long itemId, int quantity) {
+        List<String> args = touchArgs(cartId);
+        args.add(String.valueOf(itemId));
+        args.add(String.valueOf(quantity));
+        return parse(stringRedisTemplate.execute(SET_QUANTITY_SCRIPT, cartKeys(cartId), args.toArray()));
+    }
+
+    /**
+     * 删除购物车项
+     *
+     * @return 购物车不在 Redis 中时返回 null
+     */
+    public ShoppingCart removeItem(Long cartId, Long itemId) {
+        List<String> args = touchArgs(cartId);
+        args.add(String.valueOf(itemId));
+        return parse(stringRedisTemplate.execute(REMOVE_ITEM_SCRIPT, cartKeys(cartId), args.toArray()));
+    }
+
+    /**
+     * 清空购物车
+     *
+     * @return 购物车不在 Redis 中时返回 null
+     */
+    public ShoppingCart clear(Long cartId) {
+        return parse(stringRedisTemplate.execute(CLEAR_SCRIPT, cartKeys(cartId), touchArgs(cartId).toArray()));
+    }
+
+    /**
+     * 合并购物车：在内存中读取临时购物车，一次脚本把所有项合并到用户购物车并删除临时购物车
+     *
+     * @return 用户购物车不在 Redis 中时返回 null
+     */
+    public ShoppingCart merge(Long userCartId, Long tempCartId) {
+        for (int attempt = 1; attempt <= MAX_MERGE_ATTEMPTS; attempt++) {
+            ShoppingCart tempCart = findById(tempCartId);
+            if (tempCart == null) {
+                throw new BusinessException("临时购物车不存在");
+            }
+            List<String> args = touchArgs(userCartId);
+            args.add(String.valueOf(tempCartId));
+            args.add(String.valueOf(tempCart.getVersion()));
+            for (ShoppingCartItem item : tempCart.getItems()) {
+                addItemArgs(args, item, snowflakeIdGenerator.nextId(), item.getQuantity());
+            }
+            List<String> keys = Arrays.asList(CART_KEY_PREFIX + userCartId, dirtyKey(userCartId),
+                    CART_KEY_PREFIX + tempCartId,
+                    ownerKey(tempCart.getUserId(), tempCart.getTableId(), tempCart.getStoreId(), tempCartId),
+                    DELETED_SET_KEY, dirtyKey(tempCartId));
+            List<?> result = stringRedisTemplate.execute(MERGE_SCRIPT, keys, args.toArray());
+            if (result == null || result.isEmpty() || !STATUS_CONFLICT.equals(result.get(0))) {
+                return parse(result);
+            }
+            log.info("合并购物车时临时购物车被修改，重试，tempCartId: {}, 第 {} 次", tempCartId, attempt);
+        }
+        throw new BusinessException("购物车正在更新，请稍后重试");
+    }
+
+    public int getDirtyPartitions() {
+        return dirtyPartitions;
+    }
+
+    /**
+     * 按变脏时间从早到晚取出分区中的一批待落库购物车（取出后如果落库失败，调用方需要 {@link #markDirty(int, Map)} 放回）
+     *
+     * @return cartId -> 变脏时间（毫秒），按变脏时间排序
+     */
+    public Map<Long, Long> popDirty(int partition, int count) {
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                stringRedisTemplate.opsForZSet().popMin(DIRTY_KEY_PREFIX + partition, count);
+        if (tuples == null || tuples.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Long> dirty = new LinkedHashMap<>(tuples.size() * 2);
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            dirty.put(Long.parseLong(tuple.getValue()), tuple.getScore() != null ? tuple.getScore().longValue() : 0L);
+        }
+        return dirty;
+    }
+
+    /**
+     * 放回落库失败的购物车，保留原变脏时间（期间再次修改已重新加入时保留较早的那次）
+     */
+    public void markDirty(int partition, Map<Long, Long> dirty) {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(dirty.size() * 2);
+        dirty.forEach((cartId, since) -> tuples.add(ZSetOperations.TypedTuple.of(String.valueOf(cartId), since.doubleValue())));
+        stringRedisTemplate.opsForZSet().addIfAbsent(DIRTY_KEY_PREFIX + partition, tuples);
+    }
+
+    /**
+     * 购物车是否已被合并删除（Redis 中不存在但不在该集合中的购物车是被淘汰/过期，不能删除数据库记录）
+     */
+    public boolean isDeleted(Long cartId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(DELETED_SET_KEY, String.valueOf(cartId)));
+    }
+
+    /**
+     * 数据库记录删除完成后清除删除标记
+     */
+    public void clearDeleted(Long cartId) {
+        stringRedisTemplate.opsForSet().remove(DELETED_SET_KEY, String.valueOf(cartId));
+    }
+
+    public long dirtyCount(int partition) {
+        Long size = stringRedisTemplate.opsForZSet().zCard(DIRTY_KEY_PREFIX + partition);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * 分区中最早变脏的时间（毫秒），分区为空时返回 null；当前时间减去它即该分区的落库延迟
+     */
+    public Long oldestDirtyMillis(int partition) {
+        Set<ZSetOperations.TypedTuple<String>> oldest =
+                stringRedisTemplate.opsForZSet().rangeWithScores(DIRTY_KEY_PREFIX + partition, 0, 0);
+        if (oldest == null || oldest.isEmpty()) {
+            return null;
+        }
+        Double score = oldest.iterator().next().getScore();
+        return score != null ? score.longValue() : null;
+    }
+
+    private ShoppingCart parse(List<?> result) {
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        Object status = result.get(0);
+        if (STATUS_MISSING_CART.equals(status)) {
+            return null;
+        }
+        if (STATUS_MISSING_ITEM.equals(status)) {
+            throw new BusinessException("购物车项不存在");
+        }
+        if (!STATUS_OK.equals(status)) {
+            throw new IllegalStateException("购物车脚本返回未知状态: " + status);
+        }
+        Map<String, String> fields = new HashMap<>(result.size());
+        for (int i = 1; i + 1 < result.size(); i += 2) {
+            fields.put((String) result.get(i), (String) result.get(i + 1));
+        }
+        return toCart(fields);
+    }
+
+    /**
+     * hash 字段转换成购物车（与数据库读出的结构一致，接口返回格式不变）
+     */
+    private ShoppingCart toCart(Map<String, String> fields) {
+        ShoppingCart cart = new ShoppingCart();
+        cart.setId(Long.parseLong(fields.get("id")));
+        cart.setUserId(parseLong(fields.get("userId")));
+        String tableId = fields.get("tableId");
+        cart.setTableId(tableId == null || tableId.isEmpty() ? null : Integer.parseInt(tableId));
+        cart.setStoreId(parseLong(fields.get("storeId")));
+        cart.setMerchantId(fields.get("merchantId"));
+        cart.setShardId(cart.getStoreId() != null ? ShardUtil.calculateShardId(cart.getStoreId()) : null);
+        cart.setTotalQuantity(Integer.parseInt(fields.getOrDefault("qty", "0")));
+        cart.setTotalAmount(BigDecimal.valueOf(Long.parseLong(fields.getOrDefault("amt", "0")), 2));
+        cart.setVersion(Long.parseLong(fields.getOrDefault("ver", "1")));
+        LocalDateTime updateTime = toDateTime(Long.parseLong(fields.get("mtime")));
+        cart.setCreateTime(toDateTime(Long.parseLong(fields.get("ctime"))));
+        cart.setUpdateTime(updateTime);
+        cart.setExpireTime(toDateTime(Long.parseLong(fields.get("exp"))));
+
+        List<ShoppingCartItem> items = new ArrayList<>();
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            if (!entry.getKey().startsWith("q:")) {
+                continue;
+            }
+            String itemId = entry.getKey().substring(2);
+            int quantity = Integer.parseInt(entry.getValue());
+            long priceCents = Long.parseLong(fields.get("p:" + itemId));
+            ShoppingCartItem item = readDetail(fields.get("d:" + itemId));
+            item.setId(Long.parseLong(itemId));
+            item.setCartId(cart.getId());
+            item.setQuantity(quantity);
+            item.setUnitPrice(BigDecimal.valueOf(priceCents, 2));
+            item.setSubtotal(BigDecimal.valueOf(priceCents * quantity, 2));
+            item.setVersion(cart.getVersion());
+            item.setUpdateTime(updateTime);
+            items.add(item);
+        }
+        items.sort(Comparator.comparing(ShoppingCartItem::getCreateTime).thenComparing(ShoppingCartItem::getId));
+        cart.setItems(items);
+        return cart;
+    }
+
+    private void addItemArgs(List<String> args, ShoppingCartItem item, Long itemId, int quantity) {
+        args.add(productKey(item.getProductId(), item.getSkuId()));
+        args.add(String.valueOf(itemId));
+        args.add(String.valueOf(quantity));
+        args.add(String.valueOf(item.getUnitPrice().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact()));
+        args.add(writeDetail(item));
+    }
+
+    private List<String> touchArgs(Long cartId) {
+        long now = System.currentTimeMillis();
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(cartId));
+        args.add(String.valueOf(ttlSeconds()));
+        args.add(String.valueOf(expireAt(now)));
+        args.add(String.valueOf(now));
+        return args;
+    }
+
+    private List<String> cartKeys(Long cartId) {
+        return Arrays.asList(CART_KEY_PREFIX + cartId, dirtyKey(cartId));
+    }
+
+    /**
+     * 购物车所在的待落库分区
+     */
+    public int dirtyPartition(Long cartId) {
+        return (int) Math.floorMod(cartId, (long) dirtyPartitions);
+    }
+
+    private String dirtyKey(Long cartId) {
+        return DIRTY_KEY_PREFIX + dirtyPartition(cartId);
+    }
+
+    private static String ownerKey(Long userId, Integer tableId, Long storeId, Long cartId) {
+        if (tableId != null) {
+            return OWNER_KEY_PREFIX + storeId + ":t:" + tableId;
+        }
+        if (userId != null) {
+            return OWNER_KEY_PREFIX + storeId + ":u:" + userId;
+        }
+        // 匿名购物车（数据库中的历史数据）：每个购物车单独一个映射，不同匿名用户之间不会共用购物车
+        return OWNER_KEY_PREFIX + storeId + ":c:" + cartId;
+    }
+
+    private static String productKey(Long productId, Long skuId) {
+        return productId + ":" + (skuId != null ? skuId : 0);
+    }
+
+    /**
+     * 展示字段（写入后不再修改，Lua 脚本不解析）
+     */
+    private static String writeDetail(ShoppingCartItem item) {
+        Map<String, Object> detail = new HashMap<>();
+        detail.put("productId", item.getProductId());
+        detail.put("skuId", item.getSkuId());
+        detail.put("skuName", item.getSkuName());
+        detail.put("skuAttributes", item.getSkuAttributes());
+        detail.put("productName", item.getProductName());
+        detail.put("productImage", item.getProductImage());
+        detail.put("options", item.getOptions());
+        detail.put("comboDetail", item.getComboDetail());
+        detail.put("createTime", item.getCreateTime() != null ? toMillis(item.getCreateTime()) : System.currentTimeMillis());
+        try {
+            return OBJECT_MAPPER.writeValueAsString(detail);
+        } catch (Exception e) {
+            throw new IllegalStateException("序列化购物车项失败, productId=" + item.getProductId(), e);
+        }
+    }
+
+    private static ShoppingCartItem readDetail(String json) {
+        ShoppingCartItem item = new ShoppingCartItem();
+        try {
+            Map<?, ?> detail = OBJECT_MAPPER.readValue(json, Map.class);
+            item.setProductId(toLong(detail.get("productId")));
+            Long skuId = toLong(detail.get("skuId"));
+            item.setSkuId(skuId);
+            item.setSkuName((String) detail.get("skuName"));
+            item.setSkuAttributes((String) detail.get("skuAttributes"));
+            item.setProductName((String) detail.get("productName"));
+            item.setProductImage((String) detail.get("productImage"));
+            item.setOptions((String) detail.get("options"));
+            item.setComboDetail((String) detail.get("comboDetail"));
+            Long createTime = toLong(detail.get("createTime"));
+            item.setCreateTime(toDateTime(createTime != null ? createTime : 0L));
+        } catch (Exception e) {
+            log.error("解析购物车项失败: {}", json, e);
+            item.setCreateTime(toDateTime(0L));
+        }
+        return item;
+    }
+
+    private long ttlSeconds() {
+        return expireHours * 3600L;
+    }
+
+    private long expireAt(long now) {
+        return now + ttlSeconds() * 1000;
+    }
+
+    private static Long parseLong(String value) {
+        return value == null || value.isEmpty() ? null : Long.parseLong(value);
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : null;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -1,9 +1,9 @@
 package com.jiaoyi.order.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.order.dto.*;
 import com.jiaoyi.order.entity.Order;
 import com.jiaoyi.order.entity.OrderItem;
+import com.jiaoyi.order.entity.OrderPrice;
 import com.jiaoyi.order.enums.RefundSubject;
 import com.jiaoyi.order.enums.RefundType;
 import lombok.RequiredArgsConstructor;
@@ -14,7 +14,6 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 退款计算器
@@ -25,8 +24,6 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class RefundCalculator {
     
-    private final ObjectMapper objectMapper;
-    
     /**
      * 计算退款明细
      */
@@ -36,13 +33,13 @@ public class RefundCalculator {
             RefundRequest request) {
         
         // 1. 解析订单价格
-        Map<String, Object> orderPrice = parseOrderPrice(order);
-        BigDecimal subtotal = getBigDecimal(orderPrice, "subtotal");
-        BigDecimal taxTotal = getBigDecimal(orderPrice, "taxTotal");
-        BigDecimal deliveryFee = getBigDecimal(orderPrice, "deliveryFee");
-        BigDecimal tips = getBigDecimal(orderPrice, "tips");
-        BigDecimal charge = getBigDecimal(orderPrice, "charge");
-        BigDecimal discount = getBigDecimal(orderPrice, "discount");
+        OrderPrice orderPrice = requireOrderPrice(order);
+        BigDecimal subtotal = orderPrice.getSubtotal();
+        BigDecimal taxTotal = orderPrice.getTaxTotal();
+        BigDecimal deliveryFee = orderPrice.getDeliveryFee();
+        BigDecimal tips = orderPrice.getTips();
+        BigDecimal charge = orderPrice.getCharge();
+        BigDecimal discount = orderPrice.getDiscount();
         
         List<RefundItemDetail> refundItems = new ArrayList<>();
         BigDecimal totalRefundAmount = BigDecimal.ZERO;
@@ -266,33 +263,16 @@ public class RefundCalculator {
     }
     
     /**
-     * 解析订单价格 JSON
+     * 获取订单价格（字段在 OrderPrice 内只解析一次）
      */
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> parseOrderPrice(Order order) {
-        if (order.getOrderPrice() == null) {
+    private OrderPrice requireOrderPrice(Order order) {
+        OrderPrice orderPrice = order.getOrderPrice();
+        if (orderPrice == null) {
             throw new RuntimeException("订单价格信息为空");
         }
-        try {
-            String orderPriceStr = order.getOrderPrice();
-            if (orderPriceStr.startsWith("{")) {
-                return (Map<String, Object>) objectMapper.readValue(orderPriceStr, Map.class);
-            }
+        if (!orderPrice.isValid()) {
             throw new RuntimeException("订单价格格式错误");
-        } catch (Exception e) {
-            throw new RuntimeException("解析订单价格失败: " + e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * 从 Map 中获取 BigDecimal
-     */
-    private BigDecimal getBigDecimal(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        if (value == null) {
-            return BigDecimal.ZERO;
         }
-        return new BigDecimal(value.toString());
+        return orderPrice;
     }
 }
-
@@ -9,6 +9,7 @@ import com.jiaoyi.order.mapper.*;
 import com.jiaoyi.order.security.UserContext;
 import com.jiaoyi.order.security.UserContextHolder;
 import com.jiaoyi.order.security.UserType;
+import com.jiaoyi.order.util.ShardGeneIdGenerator;
 import java.security.MessageDigest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,7 +22,6 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -48,6 +48,7 @@ public class RefundService {
     private final RedissonClient redissonClient;
     private final ObjectMapper objectMapper;
     private final com.jiaoyi.order.config.StripeConfig stripeConfig;
+    private final ShardGeneIdGenerator shardGeneIdGenerator;
     
     /**
      * 创建退款（幂等、并发安全）
@@ -214,6 +215,8 @@ public class RefundService {
             } else {
                 throw new IllegalStateException("无法获取 storeId 或 shardId，无法创建退款单");
             }
+            // 退款ID嵌入 shard_id 基因（refunds / refund_items 按 refund_id 查询可精准路由）
+            refund.setRefundId(shardGeneIdGenerator.nextId(refund.getShardId()));
             refund.setRequestNo(request.getRequestNo());
             refund.setRefundAmount(calculation.getTotalRefundAmount());
             refund.setReason(request.getReason());
@@ -283,48 +286,25 @@ public class RefundService {
     /**
      * 解析订单总金额
      */
-    @SuppressWarnings("unchecked")
     private BigDecimal parseOrderPrice(Order order) {
-        if (order.getOrderPrice() == null) {
+        OrderPrice orderPrice = order.getOrderPrice();
+        if (orderPrice == null) {
             throw new RuntimeException("订单价格信息为空");
         }
-        try {
-            String orderPriceStr = order.getOrderPrice();
-            if (orderPriceStr.startsWith("{")) {
-                Map<String, Object> orderPrice = (Map<String, Object>) objectMapper.readValue(orderPriceStr, Map.class);
-                Object totalObj = orderPrice.get("total");
-                if (totalObj != null) {
-                    return new BigDecimal(totalObj.toString());
-                }
-            }
+        if (!orderPrice.isValid()) {
             throw new RuntimeException("订单价格格式错误");
-        } catch (Exception e) {
-            throw new RuntimeException("解析订单价格失败: " + e.getMessage(), e);
         }
+        return orderPrice.getTotal();
     }
     
     /**
      * 从订单价格中获取平台抽成（charge）
      */
-    @SuppressWarnings("unchecked")
     private BigDecimal getChargeFromOrderPrice(Order order) {
         if (order.getOrderPrice() == null) {
             return BigDecimal.ZERO;
         }
-        try {
-            String orderPriceStr = order.getOrderPrice();
-            if (orderPriceStr.startsWith("{")) {
-                Map<String, Object> orderPrice = (Map<String, Object>) objectMapper.readValue(orderPriceStr, Map.class);
-                Object chargeObj = orderPrice.get("charge");
-                if (chargeObj != null) {
-                    return new BigDecimal(chargeObj.toString());
-                }
-            }
-            return BigDecimal.ZERO;
-        } catch (Exception e) {
-            log.warn("解析订单平台抽成失败: {}", e.getMessage());
-            return BigDecimal.ZERO;
-        }
+        return order.getOrderPrice().getCharge();
     }
     
     /**
@@ -0,0 +1,64 @@
+package com.jiaoyi.order.service;
+
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.enums.OrderStatusEnum;
+import com.jiaoyi.order.mapper.OrderMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Saga 下单优惠券核销补偿
+ * 延迟核销最终失败（优惠券已不可用，或 outbox 重试耗尽变成死信）时补偿订单：
+ * - 订单待支付：取消订单（取消流程经 outbox 退还已核销的优惠券并归还库存）
+ * - 订单已取消/已退款：无需处理
+ * - 订单已支付：按优惠后金额支付，差价无法自动补收，记录告警等待人工处理
+ *
+ * @author system
+ * @since 2024-01-01
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SagaCouponCompensationService {
+
+    private final OrderMapper orderMapper;
+    private final OrderService orderService;
+
+    /**
+     * 订单是否已取消或已退款（此时不应再核销优惠券）
+     */
+    public boolean isClosed(Order order) {
+        return order != null && (OrderStatusEnum.CANCELLED.getCode().equals(order.getStatus())
+                || OrderStatusEnum.REFUNDED.getCode().equals(order.getStatus()));
+    }
+
+    /**
+     * 补偿优惠券核销失败的订单
+     */
+    public void compensate(Long orderId, String reason) {
+        Order order = orderMapper.selectById(orderId);
+        if (order == null) {
+            log.warn("【Saga补偿】订单不存在，跳过优惠券核销补偿，orderId: {}", orderId);
+            return;
+        }
+        if (isClosed(order)) {
+            log.info("【Saga补偿】订单已取消或已退款，无需补偿，orderId: {}, status: {}", orderId, order.getStatus());
+            return;
+        }
+        if (OrderStatusEnum.PENDING.getCode().equals(order.getStatus())) {
+            boolean cancelled = orderService.cancelOrder(orderId);
+            if (cancelled) {
+                log.warn("【Saga补偿】优惠券核销失败，已取消订单，orderId: {}, 原因: {}", orderId, reason);
+                return;
+            }
+            // 取消失败（并发支付/取消中），重新读取状态判断
+            order = orderMapper.selectById(orderId);
+            if (order == null || isClosed(order)) {
+                return;
+            }
+        }
+        log.error("【Saga补偿】优惠券核销失败但订单已支付，需人工处理差价，orderId: {}, status: {}, 原因: {}",
+                orderId, order.getStatus(), reason);
+    }
+}
@@ -11,16 +11,24 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * 购物车服务层
+ *
+ * 两种存储模式（cart.storage）：
+ * - db：购物车直接读写 MySQL（分布式锁 + 乐观锁）
+ * - redis：在线购物车保存在 Redis（{@link RedisCartStore}，每次操作一个 Lua 脚本），
+ *   由 {@link com.jiaoyi.order.task.CartWriteBehindTask} 异步写回 MySQL；Redis 中没有的购物车从 MySQL 加载
  */
 @Service
 @RequiredArgsConstructor
@@ -31,6 +39,13 @@ public class ShoppingCartService {
     private final ShoppingCartItemMapper shoppingCartItemMapper;
     private final ProductServiceClient productServiceClient;
     private final RedissonClient redissonClient;
+    private final RedisCartStore redisCartStore;
+
+    /**
+     * 购物车存储模式：db / redis
+     */
+    @Value("${cart.storage:db}")
+    private String storage;
 
     /**
      * 默认购物车过期时间（24小时）
@@ -42,6 +57,10 @@ public class ShoppingCartService {
      */
     @Transactional
     public ShoppingCart getOrCreateCart(Long userId, Integer tableId, Long storeId, String merchantId) {
+        if (isRedisStorage()) {
+            return getOrCreateRedisCart(userId, tableId, storeId, merchantId);
+        }
+
         // 计算分片ID
         Integer shardId = ShardUtil.calculateShardId(storeId);
 
@@ -128,6 +147,10 @@ public class ShoppingCartService {
             throw new BusinessException("商品数量必须大于0");
         }
 
+        if (isRedisStorage()) {
+            return addRedisCartItem(userId, tableId, storeId, merchantId, productId, skuId, quantity);
+        }
+
         // 获取或创建购物车
         ShoppingCart cart = getOrCreateCart(userId, tableId, storeId, merchantId);
 
@@ -189,6 +212,10 @@ public class ShoppingCartService {
             throw new BusinessException("商品数量必须大于0");
         }
 
+        if (isRedisStorage()) {
+            return executeOnRedisCart(cartId, "购物车不存在", id -> redisCartStore.setQuantity(id, itemId, quantity));
+        }
+
         ShoppingCartItem item = shoppingCartItemMapper.selectById(itemId);
         if (item == null) {
             throw new BusinessException("购物车项不存在");
@@ -217,6 +244,10 @@ public class ShoppingCartService {
      */
     @Transactional
     public ShoppingCart removeItem(Long cartId, Long itemId) {
+        if (isRedisStorage()) {
+            return executeOnRedisCart(cartId, "购物车不存在", id -> redisCartStore.removeItem(id, itemId));
+        }
+
         ShoppingCartItem item = shoppingCartItemMapper.selectById(itemId);
         if (item == null) {
             throw new BusinessException("购物车项不存在");
@@ -238,6 +269,14 @@ public class ShoppingCartService {
      * 根据ID查询购物车（包含购物车项）
      */
     public ShoppingCart getCartById(Long cartId) {
+        if (isRedisStorage()) {
+            ShoppingCart cart = redisCartStore.findById(cartId);
+            if (cart != null) {
+                return cart;
+            }
+            // Redis 中没有（已过期或切换存储模式前创建），按数据库读取
+        }
+
         ShoppingCart cart = shoppingCartMapper.selectById(cartId);
         if (cart == null) {
             return null;
@@ -260,6 +299,14 @@ public class ShoppingCartService {
      * 查询用户购物车
      */
     public ShoppingCart getCartByUser(Long userId, Long storeId, Integer tableId) {
+        if (isRedisStorage()) {
+            requireCartOwner(userId, tableId);
+            ShoppingCart cart = redisCartStore.findByOwner(userId, tableId, storeId, false);
+            if (cart != null) {
+                return cart;
+            }
+        }
+
         ShoppingCart cart;
         if (tableId != null) {
             cart = shoppingCartMapper.selectByTableIdAndStoreId(tableId, storeId);
@@ -289,6 +336,12 @@ public class ShoppingCartService {
      */
     @Transactional
     public void clearCart(Long cartId) {
+        if (isRedisStorage()) {
+            executeOnRedisCart(cartId, "购物车不存在", redisCartStore::clear);
+            log.info("清空购物车成功，cartId: {}", cartId);
+            return;
+        }
+
         ShoppingCart cart = shoppingCartMapper.selectById(cartId);
         if (cart == null) {
             throw new BusinessException("购物车不存在");
@@ -336,6 +389,10 @@ public class ShoppingCartService {
      */
     @Transactional
     public ShoppingCart mergeCart(Long userId, Long tempCartId, Long storeId, String merchantId) {
+        if (isRedisStorage()) {
+            return mergeRedisCart(userId, tempCartId, storeId, merchantId);
+        }
+
         ShoppingCart tempCart = shoppingCartMapper.selectById(tempCartId);
         if (tempCart == null) {
             throw new BusinessException("临时购物车不存在");
@@ -384,6 +441,161 @@ public class ShoppingCartService {
 
         return getCartById(userCart.getId());
     }
-}
 
+    private boolean isRedisStorage() {
+        return "redis".equalsIgnoreCase(storage);
+    }
+
+    /**
+     * Redis 模式获取或创建购物车：Redis 命中时一次脚本调用完成（同时刷新过期时间），
+     * 未命中时先从数据库加载已有购物车，数据库也没有才新建
+     */
+    private ShoppingCart getOrCreateRedisCart(Long userId, Integer tableId, Long storeId, String merchantId) {
+        requireCartOwner(userId, tableId);
+        ShoppingCart cart = redisCartStore.findByOwner(userId, tableId, storeId, true);
+        if (cart != null) {
+            return cart;
+        }
+
+        ShoppingCart dbCart = tableId != null
+                ? shoppingCartMapper.selectByTableIdAndStoreId(tableId, storeId)
+                : shoppingCartMapper.selectByUserIdAndStoreId(userId, storeId, null);
+        if (dbCart == null) {
+            cart = redisCartStore.create(userId, tableId, storeId, merchantId);
+            log.info("创建购物车成功，cartId: {}, userId: {}, tableId: {}, storeId: {}",
+                    cart.getId(), userId, tableId, storeId);
+            return cart;
+        }
+
+        if (dbCart.getExpireTime().isBefore(LocalDateTime.now())) {
+            // 购物车已过期：沿用原购物车ID，清空后由异步落库覆盖数据库中的旧购物车项
+            dbCart.setItems(Collections.emptyList());
+            redisCartStore.load(dbCart, false);
+            log.info("购物车已过期，已清空，cartId: {}", dbCart.getId());
+            return redisCartStore.clear(dbCart.getId());
+        }
+
+        dbCart.setItems(shoppingCartItemMapper.selectByCartId(dbCart.getId()));
+        return redisCartStore.load(dbCart, false);
+    }
+
+    private ShoppingCart addRedisCartItem(Long userId, Integer tableId, Long storeId, String merchantId,
+                                          Long productId, Long skuId, Integer quantity) {
+        ShoppingCartItem item = buildCartItem(merchantId, productId, skuId);
+
+        ShoppingCart cart = getOrCreateRedisCart(userId, tableId, storeId, merchantId);
+        ShoppingCart updated = redisCartStore.addItem(cart.getId(), item, quantity);
+        if (updated == null) {
+            // 两次调用之间购物车恰好过期，重新获取后再加一次
+            cart = getOrCreateRedisCart(userId, tableId, storeId, merchantId);
+            updated = redisCartStore.addItem(cart.getId(), item, quantity);
+            if (updated == null) {
+                throw new BusinessException("购物车已过期，请重试");
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Redis 模式按用户/桌码定位购物车，两者都没有的匿名请求会共用同一个购物车，直接拒绝
+     */
+    private static void requireCartOwner(Long userId, Integer tableId) {
+        if (userId == null && tableId == null) {
+            throw new BusinessException("请先登录或扫描桌码后再使用购物车");
+        }
+    }
+
+    /**
+     * 从商品服务查询商品信息组装购物车项（优先使用 SKU 价格，没有时使用商品价格）
+     */
+    private ShoppingCartItem buildCartItem(String merchantId, Long productId, Long skuId) {
+        com.jiaoyi.common.ApiResponse<?> productResponse;
+        try {
+            productResponse = merchantId != null
+                    ? productServiceClient.getProductByMerchantIdAndId(merchantId, productId)
+                    : productServiceClient.getProductById(productId);
+        } catch (Exception e) {
+            log.warn("查询商品信息失败，商户ID: {}, 商品ID: {}", merchantId, productId, e);
+            throw new BusinessException("查询商品信息失败，请稍后重试");
+        }
+        if (productResponse == null || productResponse.getCode() != 200 || productResponse.getData() == null) {
+            throw new BusinessException("商品不存在，商品ID: " + productId);
+        }
+        @SuppressWarnings("unchecked")
+        java.util.Map<String, Object> productMap = (java.util.Map<String, Object>) productResponse.getData();
+
+        ShoppingCartItem item = new ShoppingCartItem();
+        item.setProductId(productId);
+        item.setSkuId(skuId);
+        item.setProductName(productMap.get("productName") != null ? productMap.get("productName").toString() : null);
+        item.setProductImage(productMap.get("productImage") != null ? productMap.get("productImage").toString() : null);
+
+        BigDecimal unitPrice = null;
+        if (skuId != null && productMap.get("skus") instanceof List<?> skus) {
+            for (Object skuObj : skus) {
+                if (!(skuObj instanceof java.util.Map<?, ?> sku) || sku.get("id") == null
+                        || !sku.get("id").toString().equals(skuId.toString())) {
+                    continue;
+                }
+                if (sku.get("skuPrice") != null) {
+                    unitPrice = new BigDecimal(sku.get("skuPrice").toString());
+                }
+                item.setSkuName(sku.get("skuName") != null ? sku.get("skuName").toString() : null);
+                item.setSkuAttributes(sku.get("skuAttributes") != null ? sku.get("skuAttributes").toString() : null);
+                break;
+            }
+        }
+        if (unitPrice == null && productMap.get("unitPrice") != null) {
+            unitPrice = new BigDecimal(productMap.get("unitPrice").toString());
+        }
+        if (unitPrice == null || unitPrice.compareTo(BigDecimal.ZERO) <= 0) {
+            log.warn("商品价格无效，商户ID: {}, 商品ID: {}, SKU ID: {}, 价格: {}", merchantId, productId, skuId, unitPrice);
+            throw new BusinessException("商品价格无效，商品ID: " + productId);
+        }
+        item.setUnitPrice(unitPrice);
+        item.setCreateTime(LocalDateTime.now());
+        return item;
+    }
+
+    /**
+     * Redis 模式合并购物车：临时购物车一次读出，在内存中组装后一次脚本合并到用户购物车并删除临时购物车
+     */
+    private ShoppingCart mergeRedisCart(Long userId, Long tempCartId, Long storeId, String merchantId) {
+        if (redisCartStore.findById(tempCartId) == null) {
+            loadCartFromDb(tempCartId, "临时购物车不存在");
+        }
+
+        ShoppingCart userCart = getOrCreateRedisCart(userId, null, storeId, merchantId);
+        if (tempCartId.equals(userCart.getId())) {
+            return userCart;
+        }
+        return executeOnRedisCart(userCart.getId(), "购物车不存在",
+                id -> redisCartStore.merge(id, tempCartId));
+    }
 
+    /**
+     * 在 Redis 购物车上执行操作；购物车不在 Redis 中时从数据库加载后重试一次
+     */
+    private ShoppingCart executeOnRedisCart(Long cartId, String notFoundMessage,
+                                            Function<Long, ShoppingCart> operation) {
+        ShoppingCart cart = operation.apply(cartId);
+        if (cart != null) {
+            return cart;
+        }
+        loadCartFromDb(cartId, notFoundMessage);
+        cart = operation.apply(cartId);
+        if (cart == null) {
+            throw new BusinessException(notFoundMessage);
+        }
+        return cart;
+    }
+
+    private void loadCartFromDb(Long cartId, String notFoundMessage) {
+        ShoppingCart dbCart = shoppingCartMapper.selectById(cartId);
+        if (dbCart == null) {
+            throw new BusinessException(notFoundMessage);
+        }
+        dbCart.setItems(shoppingCartItemMapper.selectByCartId(cartId));
+        redisCartStore.load(dbCart, true);
+    }
+}
@@ -0,0 +1,551 @@
+package com.jiaoyi.order.service;
+
+import com.jiaoyi.order.constants.OrderConstants;
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.entity.OrderItem;
+import com.jiaoyi.order.entity.Payment;
+import com.jiaoyi.order.entity.WebhookEventLog;
+import com.jiaoyi.order.mapper.OrderItemMapper;
+import com.jiaoyi.order.mapper.OrderMapper;
+import com.jiaoyi.order.mapper.PaymentMapper;
+import com.jiaoyi.order.mapper.WebhookEventLogMapper;
+import com.stripe.model.Charge;
+import com.stripe.model.Event;
+import com.stripe.model.PaymentIntent;
+import com.stripe.net.ApiResource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stripe Webhook 异步处理服务
+ *
+ * 回调链路：StripeWebhookController 验签后调用 {@link #enqueue}，事件（含原始报文）落库 webhook_event_log 后立即返回 200；
+ * 处理链路：{@link WebhookDispatcher} 按订单ID分区投递到 worker，worker 抢占处理权后执行业务，
+ * 失败时按退避时间延迟重新投递，超过最大重试次数标记为 FAILED；
+ * 补偿：定时回收处理权过期的事件、重新投递到期未处理的事件（实例重启、队列满被拒绝等）
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StripeWebhookService {
+
+    /**
+     * 需要异步处理的事件类型，其他类型直接确认
+     */
+    private static final Set<String> HANDLED_EVENT_TYPES = Set.of(
+            "payment_intent.succeeded",
+            "payment_intent.payment_failed",
+            "charge.succeeded",
+            "charge.failed");
+
+    private final PaymentService paymentService;
+    private final PaymentMapper paymentMapper;
+    private final OrderMapper orderMapper;
+    private final OrderItemMapper orderItemMapper;
+    private final StripeService stripeService;
+    private final WebhookEventLogService webhookEventLogService;
+    private final WebhookEventLogMapper webhookEventLogMapper;
+    private final OutboxHelper outboxHelper;
+    private final RedissonClient redissonClient;
+    private final WebhookDispatcher webhookDispatcher;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${webhook.stripe.max-retries:5}")
+    private int maxRetries;
+
+    /**
+     * 处理权租约（秒），必须大于单个事件的最长处理时间
+     */
+    @Value("${webhook.stripe.lock-seconds:60}")
+    private int lockSeconds;
+
+    /**
+     * 补偿扫描宽限期（秒）：到期超过该时间仍未被 worker 处理的事件才由扫描重新投递
+     */
+    @Value("${webhook.stripe.recover-grace-seconds:30}")
+    private int recoverGraceSeconds;
+
+    @Value("${webhook.stripe.recover-batch-size:200}")
+    private int recoverBatchSize;
+
+    /**
+     * 持久化事件并投递到 worker
+     *
+     * @param event   已验签的事件
+     * @param payload 原始报文
+     * @return true 表示需要处理的新事件已入队；false 表示重复事件或无需处理的事件类型
+     */
+    public boolean enqueue(Event event, String payload) {
+        if (!HANDLED_EVENT_TYPES.contains(event.getType())) {
+            log.info("未处理的事件类型: {}", event.getType());
+            return false;
+        }
+
+        String paymentIntentId = null;
+        String chargeId = null;
+        Long orderId = null;
+        if (event.getType().startsWith("payment_intent.")) {
+            ParsedPaymentIntent parsed = parsePaymentIntent(event);
+            if (parsed != null) {
+                paymentIntentId = parsed.paymentIntentId;
+                chargeId = parsed.latestChargeId;
+                orderId = parsed.orderId;
+            }
+        } else {
+            Charge charge = (Charge) event.getDataObjectDeserializer().getObject().orElse(null);
+            if (charge != null) {
+                chargeId = charge.getId();
+                paymentIntentId = charge.getPaymentIntent();
+                orderId = parseLongOrNull(charge.getMetadata() != null ? charge.getMetadata().get("orderId") : null);
+            }
+        }
+
+        boolean isFirstTime = webhookEventLogService.tryEnqueue(
+                event.getId(), event.getType(), paymentIntentId, chargeId, orderId, payload);
+        if (!isFirstTime) {
+            return false;
+        }
+        dispatch(event.getId(), orderId);
+        return true;
+    }
+
+    /**
+     * 补偿扫描：回收处理权过期的事件，重新投递到期未处理的事件
+     */
+    @Scheduled(fixedDelayString = "${webhook.stripe.recover-interval-millis:10000}")
+    public void recoverPendingEvents() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            int recovered = webhookEventLogMapper.recoverStuck(now);
+            if (recovered > 0) {
+                log.warn("【StripeWebhook】回收处理权过期的事件 {} 个", recovered);
+            }
+            List<WebhookEventLog> dueEvents = webhookEventLogMapper.selectDueEvents(
+                    now.minusSeconds(recoverGraceSeconds), recoverBatchSize);
+            for (WebhookEventLog eventLog : dueEvents) {
+                dispatch(eventLog.getEventId(), eventLog.getOrderId());
+            }
+            if (!dueEvents.isEmpty()) {
+                log.info("【StripeWebhook】补偿投递到期事件 {} 个", dueEvents.size());
+            }
+        } catch (Exception e) {
+            log.error("【StripeWebhook】补偿扫描异常", e);
+        }
+    }
+
+    private void dispatch(String eventId, Long orderId) {
+        webhookDispatcher.dispatch(orderId != null ? orderId : eventId, () -> process(eventId));
+    }
+
+    /**
+     * worker 入口：抢占处理权 -> 重建事件 -> 执行业务 -> 标记结果或退避重试
+     */
+    void process(String eventId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (webhookEventLogMapper.claim(eventId, instanceId, now.plusSeconds(lockSeconds), now) == 0) {
+            log.debug("【StripeWebhook】事件已被处理或未到重试时间，eventId: {}", eventId);
+            return;
+        }
+        WebhookEventLog eventLog = webhookEventLogMapper.selectByEventId(eventId);
+        int retryCount = eventLog.getRetryCount() != null ? eventLog.getRetryCount() : 0;
+        try {
+            Event event = ApiResource.GSON.fromJson(eventLog.getPayload(), Event.class);
+            if (handleEvent(event)) {
+                webhookEventLogMapper.markProcessedIfClaimed(eventId, instanceId, LocalDateTime.now());
+                log.info("【StripeWebhook】事件处理完成，eventId: {}, eventType: {}, orderId: {}",
+                        eventId, eventLog.getEventType(), eventLog.getOrderId());
+            } else {
+                retryLater(eventLog, retryCount + 1, "处理未完成（锁竞争或 outbox 写入失败）");
+            }
+        } catch (Exception e) {
+            log.error("【StripeWebhook】事件处理失败，重试次数: {}/{}, eventId: {}, orderId: {}",
+                    retryCount + 1, maxRetries, eventId, eventLog.getOrderId(), e);
+            retryLater(eventLog, retryCount + 1, e.getMessage());
+        }
+    }
+
+    private void retryLater(WebhookEventLog eventLog, int retryCount, String errorMessage) {
+        String eventId = eventLog.getEventId();
+        if (retryCount >= maxRetries) {
+            log.error("【StripeWebhook】已达最大重试次数: {}, eventId: {}, orderId: {}", maxRetries, eventId, eventLog.getOrderId());
+            webhookEventLogService.markFailed(eventId, "已达最大重试次数: " + errorMessage);
+            return;
+        }
+        long backoffMillis = webhookDispatcher.backoffMillis(retryCount);
+        int updated = webhookEventLogMapper.scheduleRetry(eventId, instanceId, retryCount,
+                LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(backoffMillis)), errorMessage);
+        if (updated > 0) {
+            log.info("【StripeWebhook】{}ms 后第 {} 次重试，eventId: {}, orderId: {}", backoffMillis, retryCount, eventId, eventLog.getOrderId());
+            Object partitionKey = eventLog.getOrderId() != null ? eventLog.getOrderId() : eventId;
+            webhookDispatcher.dispatchLater(partitionKey, () -> process(eventId), backoffMillis);
+        }
+    }
+
+    /**
+     * 按事件类型执行业务
+     *
+     * @return true 表示处理完成（含业务上的失败），false 表示需要重试
+     */
+    private boolean handleEvent(Event event) throws InterruptedException {
+        switch (event.getType()) {
+            case "payment_intent.succeeded":
+                return handlePaymentIntentSucceeded(event);
+            case "payment_intent.payment_failed":
+                handlePaymentIntentFailed(event);
+                return true;
+            case "charge.succeeded":
+                handleChargeSucceeded(event);
+                return true;
+            case "charge.failed":
+                handleChargeFailed(event);
+                return true;
+            default:
+                log.info("未处理的事件类型: {}", event.getType());
+                return true;
+        }
+    }
+
+    /**
+     * 处理 Payment Intent 成功事件
+     * 事件幂等已由 webhook_event_log 保证（入队去重 + 抢占处理权），同一订单的事件在同一 worker 内串行；
+     * 分布式锁只防止其他实例并发处理同一订单，拿不到锁时不等待，直接退避重试
+     */
+    private boolean handlePaymentIntentSucceeded(Event event) throws InterruptedException {
+        String eventId = event.getId();
+        ParsedPaymentIntent parsed = parsePaymentIntent(event);
+        if (parsed == null || parsed.paymentIntentId == null || parsed.orderId == null) {
+            log.warn("无法解析 PaymentIntent 信息，eventId: {}", eventId);
+            webhookEventLogService.markFailed(eventId, "无法解析 PaymentIntent 信息");
+            return true;
+        }
+
+        String paymentIntentId = parsed.paymentIntentId;
+        Long orderId = parsed.orderId;
+
+        String lockKey = OrderConstants.PAYMENT_CALLBACK_LOCK_PREFIX + orderId;
+        RLock lock = redissonClient.getLock(lockKey);
+        if (!lock.tryLock(0, OrderConstants.PAYMENT_CALLBACK_LOCK_LEASE_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("【StripeWebhook】获取分布式锁失败，订单可能正在被其他实例处理，稍后重试，orderId: {}, eventId: {}",
+                    orderId, eventId);
+            return false;
+        }
+
+        try {
+            log.info("【StripeWebhook】开始处理支付成功，orderId: {}, eventId: {}, paymentIntentId: {}",
+                    orderId, eventId, paymentIntentId);
+
+            boolean paymentProcessed = paymentService.handlePaymentSuccess(
+                    orderId, parsed.storeId, parsed.paymentId, paymentIntentId);
+            if (!paymentProcessed) {
+                log.warn("【StripeWebhook】支付处理失败或订单已超时退款，orderId: {}, eventId: {}", orderId, eventId);
+                webhookEventLogService.markFailed(eventId, "支付处理失败或订单已超时退款");
+                return true; // 业务上处理完成（虽然失败），不需要重试
+            }
+
+            // 查询订单项，写入库存扣减任务到 outbox
+            List<OrderItem> orderItems = orderItemMapper.selectByOrderId(orderId);
+            if (orderItems == null || orderItems.isEmpty()) {
+                log.warn("【StripeWebhook】订单项为空，无法写入库存扣减任务，orderId: {}, eventId: {}", orderId, eventId);
+                return true;
+            }
+
+            if (!outboxHelper.enqueueDeductStockTask(orderId, orderItems)) {
+                log.error("【StripeWebhook】✗ 写入库存扣减 outbox 失败，orderId: {}, eventId: {}", orderId, eventId);
+                return false;
+            }
+            log.info("【StripeWebhook】✓ 库存扣减任务写入成功，orderId: {}, eventId: {}", orderId, eventId);
+            return true;
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 解析 PaymentIntent 信息
+     * 返回解析结果，包含 paymentIntentId, orderId, storeId, paymentId, latestChargeId
+     */
+    private ParsedPaymentIntent parsePaymentIntent(Event event) {
+        String paymentIntentId = null;
+        Map<String, String> metadata = null;
+        String latestChargeId = null;
+
+        try {
+            // 方法1：尝试从 getDataObjectDeserializer 获取
+            java.util.Optional<com.stripe.model.StripeObject> dataObject = event.getDataObjectDeserializer().getObject();
+
+            if (dataObject.isPresent()) {
+                com.stripe.model.StripeObject obj = dataObject.get();
+                if (obj instanceof PaymentIntent paymentIntent) {
+                    paymentIntentId = paymentIntent.getId();
+                    metadata = paymentIntent.getMetadata();
+                    latestChargeId = paymentIntent.getLatestCharge();
+                } else {
+                    log.warn("事件数据对象不是 PaymentIntent 类型，实际类型: {}", obj.getClass().getName());
+                }
+            }
+
+            // 方法2：如果方法1失败（API 版本不一致时反序列化为空），直接从事件数据中解析 JSON
+            if (paymentIntentId == null) {
+                Event.Data eventData = event.getData();
+                if (eventData != null && eventData.getObject() != null) {
+                    com.google.gson.JsonElement jsonElement = ApiResource.GSON.toJsonTree(eventData.getObject());
+                    com.google.gson.JsonObject jsonObject = null;
+                    if (jsonElement.isJsonObject()) {
+                        com.google.gson.JsonObject rootObject = jsonElement.getAsJsonObject();
+                        if (rootObject.has("object") && rootObject.get("object").isJsonObject()) {
+                            jsonObject = rootObject.getAsJsonObject("object");
+                        } else {
+                            jsonObject = rootObject;
+                        }
+                    }
+                    if (jsonObject != null) {
+                        if (jsonObject.has("id") && jsonObject.get("id").isJsonPrimitive()) {
+                            paymentIntentId = jsonObject.get("id").getAsString();
+                        }
+                        if (jsonObject.has("metadata") && jsonObject.get("metadata").isJsonObject()) {
+                            metadata = new HashMap<>();
+                            for (Map.Entry<String, com.google.gson.JsonElement> entry : jsonObject.getAsJsonObject("metadata").entrySet()) {
+                                if (entry.getValue().isJsonPrimitive()) {
+                                    metadata.put(entry.getKey(), entry.getValue().getAsString());
+                                }
+                            }
+                        }
+                        if (jsonObject.has("latest_charge")) {
+                            com.google.gson.JsonElement latestChargeElement = jsonObject.get("latest_charge");
+                            if (latestChargeElement.isJsonPrimitive() && !latestChargeElement.isJsonNull()) {
+                                latestChargeId = latestChargeElement.getAsString();
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (paymentIntentId == null) {
+                log.error("无法从事件中解析 PaymentIntent ID");
+                return null;
+            }
+            if (metadata == null) {
+                metadata = Collections.emptyMap();
+            }
+            Long orderId = parseLongOrNull(metadata.get("orderId"));
+            if (orderId == null) {
+                log.warn("Payment Intent 元数据中缺少 orderId，Payment Intent ID: {}", paymentIntentId);
+            }
+            // storeId/paymentId 用于支付回调精准路由（旧的 PaymentIntent 没有这两个字段）
+            return new ParsedPaymentIntent(paymentIntentId, orderId, parseLongOrNull(metadata.get("storeId")),
+                    parseLongOrNull(metadata.get("paymentId")), latestChargeId);
+
+        } catch (Exception e) {
+            log.error("解析 PaymentIntent 信息异常", e);
+            return null;
+        }
+    }
+
+    private static Long parseLongOrNull(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析结果
+     */
+    private record ParsedPaymentIntent(String paymentIntentId, Long orderId, Long storeId, Long paymentId,
+                                       String latestChargeId) {}
+
+    /**
+     * 处理 Payment Intent 失败事件
+     */
+    private void handlePaymentIntentFailed(Event event) {
+        PaymentIntent paymentIntent = (PaymentIntent) event.getDataObjectDeserializer()
+                .getObject().orElse(null);
+        if (paymentIntent == null) {
+            return;
+        }
+
+        String paymentIntentId = paymentIntent.getId();
+        log.warn("Payment Intent 支付失败，ID: {}, 失败原因: {}",
+                paymentIntentId, paymentIntent.getLastPaymentError());
+
+        // 更新支付状态为失败
+        Payment payment = paymentMapper.selectByPaymentIntentId(paymentIntentId);
+        if (payment != null) {
+            paymentMapper.updateStatus(
+                    payment.getId(),
+                    com.jiaoyi.order.enums.PaymentStatusEnum.FAILED.getCode(),
+                    paymentIntentId
+            );
+        }
+    }
+
+    /**
+     * 处理 Charge 成功事件（兼容旧版本）
+     */
+    private void handleChargeSucceeded(Event event) {
+        Charge charge = (Charge) event.getDataObjectDeserializer()
+                .getObject().orElse(null);
+        if (charge == null) {
+            log.warn("Charge 为空");
+            return;
+        }
+
+        String chargeId = charge.getId();
+        String orderIdStr = charge.getMetadata() != null ? charge.getMetadata().get("orderId") : null;
+        Long orderId = parseLongOrNull(orderIdStr);
+        if (orderId == null) {
+            log.warn("Charge 元数据中缺少 orderId，Charge ID: {}", chargeId);
+            return;
+        }
+
+        log.info("Charge 支付成功，Charge ID: {}, 订单ID: {}", chargeId, orderId);
+
+        Order order = orderMapper.selectById(orderId);
+        if (order == null) {
+            log.warn("订单不存在，订单ID: {}", orderId);
+            return;
+        }
+
+        // 检查订单是否已取消（如果已取消，需要自动退款）
+        if (com.jiaoyi.order.enums.OrderStatusEnum.CANCELLED.getCode().equals(order.getStatus())) {
+            log.warn("订单已取消，但收到支付成功回调，订单ID: {}, Charge ID: {}, 当前状态: {}",
+                    orderId, chargeId, order.getStatus());
+            Payment payment = paymentMapper.selectByThirdPartyTradeNo(chargeId);
+            if (payment != null) {
+                handleCancelledOrderPayment(order, payment, chargeId);
+            } else {
+                log.warn("支付记录不存在，无法处理已取消订单的退款，Charge ID: {}", chargeId);
+            }
+            return;
+        }
+
+        // 检查订单是否已支付（幂等处理）
+        if (com.jiaoyi.order.enums.OrderStatusEnum.PAID.getCode().equals(order.getStatus())) {
+            log.info("订单已支付，重复回调（幂等处理），订单ID: {}", orderId);
+            return;
+        }
+
+        // 检查订单状态是否允许支付
+        if (!com.jiaoyi.order.enums.OrderStatusEnum.PENDING.getCode().equals(order.getStatus())) {
+            log.warn("订单状态不允许支付，订单ID: {}, 当前状态: {}", orderId, order.getStatus());
+            return;
+        }
+
+        boolean paymentProcessed = paymentService.handlePaymentSuccess(orderId, order.getStoreId(), null, chargeId);
+        if (paymentProcessed) {
+            log.info("Charge 支付成功处理完成，订单ID: {}, Charge ID: {}", orderIdStr, chargeId);
+        } else {
+            log.warn("Charge 支付成功回调处理未完成（可能已超时并退款），订单ID: {}, Charge ID: {}", orderIdStr, chargeId);
+        }
+    }
+
+    /**
+     * 处理 Charge 失败事件（兼容旧版本）
+     */
+    private void handleChargeFailed(Event event) {
+        Charge charge = (Charge) event.getDataObjectDeserializer()
+                .getObject().orElse(null);
+        if (charge == null) {
+            log.warn("Charge 为空");
+            return;
+        }
+
+        String chargeId = charge.getId();
+        String orderIdStr = charge.getMetadata() != null ? charge.getMetadata().get("orderId") : null;
+        String failureMessage = charge.getFailureMessage() != null ? charge.getFailureMessage() : "未知失败";
+
+        log.warn("Charge 支付失败，Charge ID: {}, 订单ID: {}, 失败原因: {}",
+                chargeId, orderIdStr, failureMessage);
+
+        if (orderIdStr != null) {
+            paymentService.handlePaymentFailed(orderIdStr, chargeId, failureMessage);
+        }
+    }
+
+    /**
+     * 处理已取消订单的支付回调（Stripe）
+     * 这种情况需要自动退款：订单已取消但支付成功了
+     * 退款调用第三方接口，异常时只记录日志不重试，避免重复退款
+     *
+     * @param order    订单
+     * @param payment  支付记录
+     * @param stripeId Payment Intent ID 或 Charge ID
+     */
+    private void handleCancelledOrderPayment(Order order, Payment payment, String stripeId) {
+        log.warn("处理已取消订单的支付回调（Stripe），订单ID: {}, Stripe ID: {}",
+                order.getId(), stripeId);
+
+        try {
+            // 解析订单金额
+            java.math.BigDecimal refundAmount = com.jiaoyi.order.util.OrderPriceUtil.parseOrderTotal(order);
+            if (refundAmount.compareTo(java.math.BigDecimal.ZERO) <= 0) {
+                log.warn("订单金额为0或无效，无法退款，订单ID: {}", order.getId());
+                return;
+            }
+
+            String refundReason = "订单已取消但支付成功，自动退款";
+
+            // 使用 Stripe 退款（支持 Payment Intent ID 或 Charge ID）
+            com.stripe.model.Refund refund = stripeService.createRefund(
+                    stripeId,
+                    refundAmount,
+                    refundReason
+            );
+
+            if (refund != null && "succeeded".equals(refund.getStatus())) {
+                log.info("已取消订单自动退款成功，订单ID: {}, Stripe ID: {}, 退款金额: {}, Refund ID: {}",
+                        order.getId(), stripeId, refundAmount, refund.getId());
+
+                // 更新订单状态为已退款
+                order.setStatus(com.jiaoyi.order.enums.OrderStatusEnum.REFUNDED.getCode());
+                order.setRefundAmount(refundAmount);
+                order.setRefundReason(refundReason);
+                order.setUpdateTime(LocalDateTime.now());
+                orderMapper.updateStatus(order.getId(), order.getStatus());
+
+                // 创建退款支付记录
+                Payment refundPayment = new Payment();
+                refundPayment.setOrderId(order.getId());
+                refundPayment.setMerchantId(order.getMerchantId());
+                refundPayment.setStatus(com.jiaoyi.order.enums.PaymentStatusEnum.SUCCESS.getCode());
+                refundPayment.setType(com.jiaoyi.order.enums.PaymentTypeEnum.REFUND.getCode());
+                refundPayment.setAmount(refundAmount);
+                refundPayment.setThirdPartyTradeNo(refund.getId());
+                refundPayment.setPaymentService(com.jiaoyi.order.enums.PaymentServiceEnum.STRIPE);
+                refundPayment.setCategory(com.jiaoyi.order.enums.PaymentCategoryEnum.CREDIT_CARD.getCode());
+                refundPayment.setCreateTime(LocalDateTime.now());
+                refundPayment.setUpdateTime(LocalDateTime.now());
+                refundPayment.setVersion(1);
+                paymentMapper.insert(refundPayment);
+
+                log.info("已取消订单退款处理完成，订单ID: {}, 退款支付记录ID: {}", order.getId(), refundPayment.getId());
+            } else {
+                log.error("已取消订单自动退款失败，订单ID: {}, Stripe ID: {}, 退款状态: {}",
+                        order.getId(), stripeId, refund != null ? refund.getStatus() : "null");
+            }
+        } catch (Exception e) {
+            log.error("处理已取消订单支付回调异常，订单ID: {}, Stripe ID: {}", order.getId(), stripeId, e);
+        }
+    }
+}
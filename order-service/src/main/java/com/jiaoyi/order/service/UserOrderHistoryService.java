@@ -0,0 +1,204 @@
+package com.jiaoyi.order.service;
+
+import com.jiaoyi.common.exception.BusinessException;
+import com.jiaoyi.order.config.RouteCache;
+import com.jiaoyi.order.dto.UserOrderHistoryCursor;
+import com.jiaoyi.order.dto.UserOrderHistoryResponse;
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.entity.OrderItem;
+import com.jiaoyi.order.entity.UserOrderIndex;
+import com.jiaoyi.order.mapper.OrderItemMapper;
+import com.jiaoyi.order.mapper.OrderMapper;
+import com.jiaoyi.order.mapper.UserOrderIndexMapper;
+import com.jiaoyi.order.util.ShardUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 用户订单历史查询服务（读模型）
+ *
+ * 查询流程：
+ * 1. 按 (created_at, order_id) 游标从 user_order_index 取一页（按 user_id 精准路由，走覆盖索引不回表）
+ * 2. 摘要模式直接返回索引行，不访问订单分片
+ * 3. 详情模式把本页订单按物理分片（ds + 表）分组，每个分片一次 IN 查订单、一次 IN 查订单项，
+ *    多个分片并行查询，最后按索引顺序组装
+ */
+@Service
+@Slf4j
+public class UserOrderHistoryService {
+
+    private final UserOrderIndexMapper userOrderIndexMapper;
+    private final OrderMapper orderMapper;
+    private final OrderItemMapper orderItemMapper;
+    private final RouteCache routeCache;
+    private final Executor orderQueryExecutor;
+
+    @Value("${order.history.default-page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${order.history.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${order.history.query-timeout-millis:3000}")
+    private long queryTimeoutMillis;
+
+    public UserOrderHistoryService(UserOrderIndexMapper userOrderIndexMapper,
+                                   OrderMapper orderMapper,
+                                   OrderItemMapper orderItemMapper,
+                                   RouteCache routeCache,
+                                   @Qualifier("orderQueryExecutor") Executor orderQueryExecutor) {
+        this.userOrderIndexMapper = userOrderIndexMapper;
+        this.orderMapper = orderMapper;
+        this.orderItemMapper = orderItemMapper;
+        this.routeCache = routeCache;
+        this.orderQueryExecutor = orderQueryExecutor;
+    }
+
+    /**
+     * 游标分页查询用户订单历史
+     *
+     * @param userId      用户ID
+     * @param cursor      上一页返回的 nextCursor，首页传 null
+     * @param limit       每页数量（为空时使用默认值，超过上限时截断）
+     * @param orderStatus 订单状态过滤（可选）
+     * @param summaryOnly 是否只返回摘要（不查询订单分片）
+     */
+    public UserOrderHistoryResponse getOrderHistory(Long userId, String cursor, Integer limit,
+                                                    Integer orderStatus, boolean summaryOnly) {
+        int pageSize = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+        UserOrderHistoryCursor current = UserOrderHistoryCursor.decode(cursor);
+
+        // 多取一条用于判断是否还有下一页
+        List<UserOrderIndex> indexes = userOrderIndexMapper.selectByUserIdAfterCursor(
+                userId,
+                orderStatus,
+                current != null ? current.getCreatedAt() : null,
+                current != null ? current.getOrderId() : null,
+                pageSize + 1);
+
+        boolean hasMore = indexes.size() > pageSize;
+        if (hasMore) {
+            indexes = new ArrayList<>(indexes.subList(0, pageSize));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            UserOrderIndex last = indexes.get(indexes.size() - 1);
+            nextCursor = new UserOrderHistoryCursor(last.getCreatedAt(), last.getOrderId()).encode();
+        }
+
+        UserOrderHistoryResponse.UserOrderHistoryResponseBuilder response = UserOrderHistoryResponse.builder()
+                .nextCursor(nextCursor)
+                .hasMore(hasMore);
+        if (summaryOnly) {
+            log.debug("查询用户订单摘要，userId: {}, 数量: {}, hasMore: {}", userId, indexes.size(), hasMore);
+            return response.summaries(indexes).build();
+        }
+
+        List<Order> orders = loadOrders(indexes);
+        log.debug("查询用户订单详情，userId: {}, 索引数量: {}, 订单数量: {}, hasMore: {}",
+                userId, indexes.size(), orders.size(), hasMore);
+        return response.orders(orders).build();
+    }
+
+    /**
+     * 按物理分片并行加载订单详情（含订单项），返回顺序与索引顺序一致
+     */
+    List<Order> loadOrders(List<UserOrderIndex> indexes) {
+        if (indexes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, List<UserOrderIndex>> indexesByShard = indexes.stream()
+                .collect(Collectors.groupingBy(index -> resolveShardKey(index.getStoreId()),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        Map<Long, Order> ordersById = new HashMap<>();
+        if (indexesByShard.size() == 1) {
+            // 只涉及一个分片时直接在当前线程查询，省去线程切换
+            loadShard(indexesByShard.values().iterator().next()).forEach(order -> ordersById.put(order.getId(), order));
+        } else {
+            List<CompletableFuture<List<Order>>> futures = indexesByShard.values().stream()
+                    .map(shardIndexes -> CompletableFuture.supplyAsync(() -> loadShard(shardIndexes), orderQueryExecutor))
+                    .collect(Collectors.toList());
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                        .get(queryTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException("查询订单历史被中断");
+            } catch (TimeoutException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw new BusinessException("查询订单历史超时，请稍后重试");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("并行查询订单分片失败", cause);
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new BusinessException("查询订单历史失败: " + cause.getMessage());
+            }
+            futures.forEach(future -> future.join().forEach(order -> ordersById.put(order.getId(), order)));
+        }
+
+        List<Order> orders = new ArrayList<>(indexes.size());
+        for (UserOrderIndex index : indexes) {
+            Order order = ordersById.get(index.getOrderId());
+            if (order == null) {
+                // 索引存在但订单不存在（索引补偿未完成等），跳过该条，由修复任务处理
+                log.warn("用户订单索引指向的订单不存在，userId: {}, orderId: {}, storeId: {}",
+                        index.getUserId(), index.getOrderId(), index.getStoreId());
+                continue;
+            }
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * 查询单个物理分片上的订单和订单项：各一次 IN 查询
+     */
+    private List<Order> loadShard(List<UserOrderIndex> shardIndexes) {
+        Set<Long> storeIds = shardIndexes.stream().map(UserOrderIndex::getStoreId).collect(Collectors.toSet());
+        List<Long> orderIds = shardIndexes.stream().map(UserOrderIndex::getOrderId).collect(Collectors.toList());
+
+        List<Order> orders = orderMapper.selectByStoreIdsAndOrderIds(storeIds, orderIds);
+        if (orders.isEmpty()) {
+            return orders;
+        }
+
+        List<Long> foundOrderIds = orders.stream().map(Order::getId).collect(Collectors.toList());
+        Map<Long, List<OrderItem>> itemsByOrderId = orderItemMapper.selectByStoreIdsAndOrderIds(storeIds, foundOrderIds)
+                .stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+        for (Order order : orders) {
+            order.setOrderItems(itemsByOrderId.getOrDefault(order.getId(), new ArrayList<>()));
+        }
+        return orders;
+    }
+
+    /**
+     * 计算 storeId 所在的物理分片（ds + 表后缀）
+     * 路由缓存不可用时退化为按 bucket 分组（分组变多，但结果仍然正确）
+     */
+    private String resolveShardKey(Long storeId) {
+        int shardId = ShardUtil.calculateShardId(storeId);
+        if (routeCache.isInitialized()) {
+            try {
+                return routeCache.getDataSourceName(shardId) + "." + routeCache.getTableId(shardId);
+            } catch (IllegalStateException e) {
+                log.warn("获取分片路由失败，按 bucket 分组查询，storeId: {}, shardId: {}", storeId, shardId);
+            }
+        }
+        return "bucket_" + shardId;
+    }
+}
@@ -0,0 +1,146 @@
+package com.jiaoyi.order.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Webhook 异步处理调度器（按订单分区的单线程 worker 池）
+ *
+ * 回调接口只负责验签 + 落库（webhook_event_log / doordash_webhook_log）+ 立即返回 200，
+ * 真正的业务处理交给这里：
+ * 1. 分区：partitionKey（订单ID）取模选择 worker，同一订单的事件在同一线程内串行执行，不同订单互不阻塞
+ * 2. 有界队列：队列满时拒绝入队，事件仍在日志表中，由各业务的补偿扫描在宽限期后重新投递
+ * 3. 退避：失败后通过调度线程延迟重新入队，不再在 worker 线程中 Thread.sleep
+ */
+@Service
+@Slf4j
+public class WebhookDispatcher {
+
+    @Value("${webhook.dispatcher.partitions:16}")
+    private int partitions;
+
+    @Value("${webhook.dispatcher.queue-capacity:2000}")
+    private int queueCapacity;
+
+    @Value("${webhook.dispatcher.base-backoff-millis:1000}")
+    private long baseBackoffMillis;
+
+    @Value("${webhook.dispatcher.max-backoff-millis:60000}")
+    private long maxBackoffMillis;
+
+    private final List<ThreadPoolExecutor> workers = new ArrayList<>();
+    private ScheduledExecutorService retryScheduler;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < partitions; i++) {
+            String threadName = "webhook-worker-" + i;
+            workers.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    r -> {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy()));
+        }
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "webhook-retry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Webhook 调度器初始化完成，分区数: {}, 每分区队列: {}", partitions, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * 投递到 partitionKey 对应的 worker
+     *
+     * @return false 表示队列已满或调度器已关闭（事件留在日志表中等待补偿扫描）
+     */
+    public boolean dispatch(Object partitionKey, Runnable task) {
+        ThreadPoolExecutor worker = workers.get(partitionOf(partitionKey));
+        try {
+            worker.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Webhook 任务执行异常，partitionKey: {}", partitionKey, e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Webhook worker 队列已满，等待补偿扫描重新投递，partitionKey: {}, 队列长度: {}",
+                    partitionKey, worker.getQueue().size());
+            return false;
+        }
+    }
+
+    /**
+     * 延迟投递（失败退避），等待期间不占用 worker 线程
+     */
+    public void dispatchLater(Object partitionKey, Runnable task, long delayMillis) {
+        try {
+            retryScheduler.schedule(() -> dispatch(partitionKey, task), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("Webhook 重试调度器已关闭，等待补偿扫描重新投递，partitionKey: {}", partitionKey);
+        }
+    }
+
+    /**
+     * 第 retryCount 次重试前的退避时间：base * 2^(retryCount-1)，封顶 max，叠加最多 20% 的随机抖动
+     */
+    public long backoffMillis(int retryCount) {
+        int exponent = Math.min(Math.max(retryCount - 1, 0), 20);
+        long backoff = Math.min(baseBackoffMillis << exponent, maxBackoffMillis);
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+    }
+
+    /**
+     * 各分区队列积压情况
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        int totalQueued = 0;
+        List<Integer> queueSizes = new ArrayList<>(workers.size());
+        for (ThreadPoolExecutor worker : workers) {
+            int size = worker.getQueue().size();
+            queueSizes.add(size);
+            totalQueued += size;
+        }
+        status.put("partitions", workers.size());
+        status.put("queueCapacity", queueCapacity);
+        status.put("totalQueued", totalQueued);
+        status.put("queueSizes", queueSizes);
+        return status;
+    }
+
+    private int partitionOf(Object partitionKey) {
+        int hash = partitionKey == null ? 0 : partitionKey.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), workers.size());
+    }
+}
@@ -64,6 +64,38 @@ public class WebhookEventLogService {
         }
     }
     
+    /**
+     * 持久化待异步处理的事件（带原始报文，幂等：eventId 已存在则返回 false）
+     * 
+     * @param payload 已验签的原始事件报文，worker 据此重建事件
+     * @return true 如果首次接收（调用方负责投递到 worker），false 如果是重复事件
+     */
+    @Transactional
+    public boolean tryEnqueue(String eventId, String eventType, String paymentIntentId,
+                              String thirdPartyTradeNo, Long orderId, String payload) {
+        LocalDateTime now = LocalDateTime.now();
+        WebhookEventLog eventLog = WebhookEventLog.builder()
+                .eventId(eventId)
+                .eventType(eventType)
+                .paymentIntentId(paymentIntentId)
+                .thirdPartyTradeNo(thirdPartyTradeNo)
+                .orderId(orderId)
+                .status(WebhookEventLog.EventStatus.RECEIVED)
+                .payload(payload)
+                .retryCount(0)
+                .nextRetryTime(now)
+                .createdAt(now)
+                .build();
+        
+        int inserted = webhookEventLogMapper.tryInsert(eventLog);
+        if (inserted > 0) {
+            log.info("事件已入队，eventId: {}, eventType: {}, orderId: {}", eventId, eventType, orderId);
+            return true;
+        }
+        log.info("重复事件，已存在，eventId: {}, eventType: {}", eventId, eventType);
+        return false;
+    }
+    
     /**
      * 更新事件状态为已处理
      */
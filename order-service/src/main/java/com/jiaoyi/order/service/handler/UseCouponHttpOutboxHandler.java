@@ -0,0 +1,104 @@
+package com.jiaoyi.order.service.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.common.constants.ResponseCode;
+import com.jiaoyi.order.client.CouponServiceClient;
+import com.jiaoyi.order.dto.UseCouponCommand;
+import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.mapper.OrderMapper;
+import com.jiaoyi.order.service.SagaCouponCompensationService;
+import com.jiaoyi.outbox.entity.Outbox;
+import com.jiaoyi.outbox.service.OutboxHandler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * 核销优惠券 HTTP 调用 Handler
+ * 处理 USE_COUPON_HTTP 类型任务（Saga 下单流程），调用 coupon-service 核销优惠券
+ *
+ * 注意：
+ * 1. coupon-service 按 (orderId, couponId) 幂等，outbox 重试不会重复核销
+ * 2. 核销前检查订单状态，已取消/已退款的订单不再核销；核销后再检查一次，
+ *    期间订单被取消（取消流程的退券可能先于核销执行）时主动退还，避免已取消订单占用优惠券
+ * 3. 优惠券已不可用（coupon-service 返回 COUPON_VALIDATE_FAILED）时不再重试，直接补偿订单；
+ *    其他失败由 outbox 重试，重试耗尽后由死信监听器补偿
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UseCouponHttpOutboxHandler implements OutboxHandler {
+
+    private final CouponServiceClient couponServiceClient;
+    private final OrderMapper orderMapper;
+    private final SagaCouponCompensationService sagaCouponCompensationService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(String type) {
+        return "USE_COUPON_HTTP".equals(type);
+    }
+
+    @Override
+    public void handle(Outbox outbox) throws Exception {
+        UseCouponCommand command = objectMapper.readValue(outbox.getPayload(), UseCouponCommand.class);
+
+        if (command.getOrderId() == null) {
+            throw new IllegalArgumentException("核销优惠券命令缺少 orderId");
+        }
+        if (command.getCoupons() == null || command.getCoupons().isEmpty()) {
+            log.debug("核销优惠券任务无优惠券，直接视为成功，outboxId: {}, orderId: {}", outbox.getId(), command.getOrderId());
+            return;
+        }
+
+        Long orderId = command.getOrderId();
+        Order order = orderMapper.selectById(orderId);
+        if (order == null) {
+            log.warn("【UseCouponHandler】订单不存在，不再核销优惠券，outboxId: {}, orderId: {}", outbox.getId(), orderId);
+            return;
+        }
+        if (sagaCouponCompensationService.isClosed(order)) {
+            // 不再核销；上次执行可能已核销部分优惠券后失败，退还一次（无使用记录时幂等成功）
+            refundClosedOrder(outbox, orderId);
+            return;
+        }
+
+        for (UseCouponCommand.CouponItem coupon : command.getCoupons()) {
+            com.jiaoyi.common.ApiResponse<Void> response = couponServiceClient.useCoupon(
+                    coupon.getCouponCode(),
+                    command.getUserId(),
+                    orderId,
+                    coupon.getAppliedAmount());
+            if (response != null && response.getCode() == ResponseCode.COUPON_VALIDATE_FAILED.getCode()) {
+                // 优惠券已不可用，重试不会成功：补偿订单（取消流程会退还本订单已核销的优惠券）
+                log.warn("【UseCouponHandler】优惠券已不可用，补偿订单，outboxId: {}, orderId: {}, couponCode: {}, 原因: {}",
+                        outbox.getId(), orderId, coupon.getCouponCode(), response.getMessage());
+                sagaCouponCompensationService.compensate(orderId, response.getMessage());
+                return;
+            }
+            if (response == null || response.getCode() != 200) {
+                // 抛出异常，由 outbox 重试（已核销的优惠券重试时幂等跳过）
+                throw new RuntimeException("优惠券核销失败: " + coupon.getCouponCode()
+                        + (response != null ? ", " + response.getMessage() : ""));
+            }
+            log.info("【UseCouponHandler】优惠券核销成功，outboxId: {}, orderId: {}, couponCode: {}, 优惠金额: {}",
+                    outbox.getId(), orderId, coupon.getCouponCode(), coupon.getAppliedAmount());
+        }
+
+        // 核销期间订单被取消：取消流程的退券可能已经执行过（当时还没有使用记录），这里补退
+        if (sagaCouponCompensationService.isClosed(orderMapper.selectById(orderId))) {
+            refundClosedOrder(outbox, orderId);
+        }
+    }
+
+    /**
+     * 退还已取消/已退款订单的优惠券（失败时抛出异常由 outbox 重试）
+     */
+    private void refundClosedOrder(Outbox outbox, Long orderId) {
+        com.jiaoyi.common.ApiResponse<com.jiaoyi.common.OperationResult> refund = couponServiceClient.refundCouponByOrderId(orderId);
+        if (refund == null || refund.getCode() != 200) {
+            throw new RuntimeException("订单已取消，退还优惠券失败: " + (refund != null ? refund.getMessage() : "未知错误"));
+        }
+        log.info("【UseCouponHandler】订单已取消或已退款，不再核销，已退还优惠券，outboxId: {}, orderId: {}", outbox.getId(), orderId);
+    }
+}
@@ -2,6 +2,8 @@ package com.jiaoyi.order.service.listener;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.order.dto.DeductStockCommand;
+import com.jiaoyi.order.dto.UseCouponCommand;
+import com.jiaoyi.order.service.SagaCouponCompensationService;
 import com.jiaoyi.outbox.event.OutboxDeadLetterEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +13,7 @@ import org.springframework.stereotype.Component;
 
 /**
  * Outbox 死信监听器
- * 当库存扣减任务变成 DEAD 时，记录日志
+ * 当库存扣减任务变成 DEAD 时，记录日志；优惠券核销任务（Saga 下单）变成 DEAD 时补偿订单
  */
 @Slf4j
 @Component
@@ -19,6 +21,7 @@ import org.springframework.stereotype.Component;
 public class OutboxDeadLetterListener {
     
     private final ObjectMapper objectMapper;
+    private final SagaCouponCompensationService sagaCouponCompensationService;
     
     /**
      * 监听死信事件，更新订单状态
@@ -29,6 +32,19 @@ public class OutboxDeadLetterListener {
         try {
             com.jiaoyi.outbox.entity.Outbox outbox = event.outbox();
             
+            // 优惠券核销任务重试耗尽：补偿订单（待支付订单直接取消）
+            if ("USE_COUPON_HTTP".equals(outbox.getType())) {
+                UseCouponCommand command = objectMapper.readValue(outbox.getPayload(), UseCouponCommand.class);
+                if (command.getOrderId() == null) {
+                    log.warn("死信任务缺少 orderId，无法补偿订单，outboxId: {}", outbox.getId());
+                    return;
+                }
+                log.warn("【订单死信】优惠券核销任务已变成死信，补偿订单，orderId: {}, outboxId: {}, retryCount: {}, 错误: {}",
+                        command.getOrderId(), outbox.getId(), event.retryCount(), outbox.getLastError());
+                sagaCouponCompensationService.compensate(command.getOrderId(), outbox.getLastError());
+                return;
+            }
+            
             // 只处理库存扣减任务
             if (!"DEDUCT_STOCK_HTTP".equals(outbox.getType())) {
                 return;
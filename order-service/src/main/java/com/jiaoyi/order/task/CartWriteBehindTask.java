@@ -0,0 +1,311 @@
+package com.jiaoyi.order.task;
+
+import com.jiaoyi.order.entity.ShoppingCart;
+import com.jiaoyi.order.entity.ShoppingCartItem;
+import com.jiaoyi.order.mapper.ShoppingCartItemMapper;
+import com.jiaoyi.order.mapper.ShoppingCartMapper;
+import com.jiaoyi.order.service.RedisCartStore;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis 购物车异步落库任务（write-behind）
+ *
+ * Redis 购物车每次修改都会把 cartId 放入待落库集合（按 cartId 分区，见 {@link RedisCartStore}），
+ * 这里定时按分区批量取出并写入 shopping_carts / shopping_cart_items：
+ * - 取出 cartId 之后再读取购物车快照，取出之后发生的修改会重新加入集合，下一轮再落库，不会丢更新
+ * - 同一购物车在一轮内多次修改只落库一次（集合去重），落库次数与点击次数无关
+ * - 每批购物车一个事务：批量删除旧购物车项、批量 upsert 购物车行、批量插入当前购物车项；
+ *   合并后删除的购物车（记在 cart:deleted 中）删除数据库记录；
+ *   Redis 中不存在但没有删除标记的购物车（内存淘汰、过期）跳过，保留数据库中最后一次落库的数据
+ * - 批量事务失败时逐个购物车重试，只有失败的购物车放回集合，下一轮重试
+ * - 每个分区一把分布式锁：同一购物车只会被一个实例落库（避免旧快照覆盖新快照），不同分区可由多个实例并行处理
+ * - 落库延迟（最早变脏时间距今）见 {@link #getStatus()}，超过 cart.write-behind.lag-warn-millis 时告警
+ */
+@Component
+@Slf4j
+public class CartWriteBehindTask {
+
+    private static final String LOCK_KEY_PREFIX = "cart:write-behind:lock:";
+
+    private final RedisCartStore redisCartStore;
+    private final ShoppingCartMapper shoppingCartMapper;
+    private final ShoppingCartItemMapper shoppingCartItemMapper;
+    private final RedissonClient redissonClient;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 最近一轮的统计（本实例）
+     */
+    private final AtomicLong lastRunFlushed = new AtomicLong();
+    private final AtomicLong lastRunPartitions = new AtomicLong();
+    private final AtomicLong totalFlushed = new AtomicLong();
+    private final AtomicLong totalBatchFallbacks = new AtomicLong();
+
+    @Value("${cart.storage:db}")
+    private String storage;
+
+    /**
+     * 每批取出的购物车数
+     */
+    @Value("${cart.write-behind.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 每轮每个分区最多处理的批数（积压时分多轮处理，避免长时间持有锁）
+     */
+    @Value("${cart.write-behind.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    /**
+     * 落库延迟告警阈值（毫秒）
+     */
+    @Value("${cart.write-behind.lag-warn-millis:60000}")
+    private long lagWarnMillis;
+
+    public CartWriteBehindTask(RedisCartStore redisCartStore,
+                               ShoppingCartMapper shoppingCartMapper,
+                               ShoppingCartItemMapper shoppingCartItemMapper,
+                               RedissonClient redissonClient,
+                               @Qualifier("shardingTransactionManager") PlatformTransactionManager transactionManager) {
+        this.redisCartStore = redisCartStore;
+        this.shoppingCartMapper = shoppingCartMapper;
+        this.shoppingCartItemMapper = shoppingCartItemMapper;
+        this.redissonClient = redissonClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.write-behind.interval-millis:1000}")
+    public void flush() {
+        if (!"redis".equalsIgnoreCase(storage)) {
+            return;
+        }
+        int partitions = redisCartStore.getDirtyPartitions();
+        // 各实例从随机分区开始，减少抢同一把锁
+        int start = ThreadLocalRandom.current().nextInt(partitions);
+        int flushed = 0;
+        int lockedPartitions = 0;
+        for (int i = 0; i < partitions; i++) {
+            int partition = (start + i) % partitions;
+            RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX + partition);
+            boolean locked = false;
+            try {
+                locked = lock.tryLock(0, TimeUnit.SECONDS);
+                if (!locked) {
+                    continue;
+                }
+                lockedPartitions++;
+                flushed += flushPartition(partition);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("购物车落库任务执行失败，分区: {}", partition, e);
+            } finally {
+                if (locked && lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+        }
+        lastRunFlushed.set(flushed);
+        lastRunPartitions.set(lockedPartitions);
+        totalFlushed.addAndGet(flushed);
+        if (flushed > 0) {
+            log.debug("购物车落库完成，本轮: {}, 处理分区数: {}", flushed, lockedPartitions);
+        }
+        checkLag();
+    }
+
+    /**
+     * 落库状态：各分区待落库数和落库延迟（最早变脏时间距今，毫秒）
+     */
+    public Map<String, Object> getStatus() {
+        long now = System.currentTimeMillis();
+        long dirty = 0;
+        long maxLagMillis = 0;
+        List<Map<String, Object>> partitionStatus = new ArrayList<>();
+        for (int partition = 0; partition < redisCartStore.getDirtyPartitions(); partition++) {
+            long count = redisCartStore.dirtyCount(partition);
+            Long oldest = redisCartStore.oldestDirtyMillis(partition);
+            long lagMillis = oldest != null ? Math.max(0, now - oldest) : 0;
+            dirty += count;
+            maxLagMillis = Math.max(maxLagMillis, lagMillis);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("partition", partition);
+            item.put("dirty", count);
+            item.put("lagMillis", lagMillis);
+            partitionStatus.add(item);
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("storage", storage);
+        status.put("dirty", dirty);
+        status.put("maxLagMillis", maxLagMillis);
+        status.put("lastRunFlushed", lastRunFlushed.get());
+        status.put("lastRunPartitions", lastRunPartitions.get());
+        status.put("totalFlushed", totalFlushed.get());
+        status.put("totalBatchFallbacks", totalBatchFallbacks.get());
+        status.put("partitions", partitionStatus);
+        return status;
+    }
+
+    private void checkLag() {
+        long now = System.currentTimeMillis();
+        for (int partition = 0; partition < redisCartStore.getDirtyPartitions(); partition++) {
+            try {
+                Long oldest = redisCartStore.oldestDirtyMillis(partition);
+                if (oldest != null && now - oldest > lagWarnMillis) {
+                    log.warn("购物车落库延迟过高，分区: {}, 延迟: {} ms, 待落库: {}",
+                            partition, now - oldest, redisCartStore.dirtyCount(partition));
+                }
+            } catch (Exception e) {
+                log.warn("检查购物车落库延迟失败，分区: {}", partition, e);
+                return;
+            }
+        }
+    }
+
+    private int flushPartition(int partition) {
+        int flushed = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            Map<Long, Long> dirty = redisCartStore.popDirty(partition, batchSize);
+            if (dirty.isEmpty()) {
+                break;
+            }
+            flushed += flushBatch(partition, dirty);
+            if (dirty.size() < batchSize) {
+                break;
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * 落库一批购物车：先整批一个事务，失败时逐个购物车重试，只放回失败的购物车
+     *
+     * @param dirty cartId -> 变脏时间
+     */
+    private int flushBatch(int partition, Map<Long, Long> dirty) {
+        Map<Long, Long> failed = new LinkedHashMap<>();
+        Map<Long, ShoppingCart> snapshots = new LinkedHashMap<>();
+        List<Long> deleted = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : dirty.entrySet()) {
+            Long cartId = entry.getKey();
+            try {
+                ShoppingCart cart = redisCartStore.findById(cartId);
+                if (cart != null) {
+                    snapshots.put(cartId, cart);
+                } else if (redisCartStore.isDeleted(cartId)) {
+                    deleted.add(cartId);
+                } else {
+                    log.warn("购物车已不在 Redis 中（淘汰或过期），跳过落库并保留数据库记录，cartId: {}", cartId);
+                }
+            } catch (Exception e) {
+                log.warn("读取购物车快照失败，稍后重试，cartId: {}", cartId, e);
+                failed.put(cartId, entry.getValue());
+            }
+        }
+
+        int flushed = 0;
+        try {
+            transactionTemplate.executeWithoutResult(status -> persistBatch(snapshots.values(), deleted));
+            flushed = snapshots.size() + deleted.size();
+            clearDeleted(deleted);
+        } catch (Exception e) {
+            log.warn("购物车批量落库失败，逐个重试，分区: {}, 数量: {}", partition, snapshots.size() + deleted.size(), e);
+            totalBatchFallbacks.incrementAndGet();
+            for (ShoppingCart cart : snapshots.values()) {
+                if (persistOne(cart.getId(), cart)) {
+                    flushed++;
+                } else {
+                    failed.put(cart.getId(), dirty.get(cart.getId()));
+                }
+            }
+            for (Long cartId : deleted) {
+                if (persistOne(cartId, null)) {
+                    flushed++;
+                    clearDeleted(Collections.singletonList(cartId));
+                } else {
+                    failed.put(cartId, dirty.get(cartId));
+                }
+            }
+        }
+        redisCartStore.markDirty(partition, failed);
+        return flushed;
+    }
+
+    private void persistBatch(Collection<ShoppingCart> carts, List<Long> deleted) {
+        List<Long> cartIds = new ArrayList<>(carts.size() + deleted.size());
+        List<ShoppingCartItem> items = new ArrayList<>();
+        for (ShoppingCart cart : carts) {
+            cartIds.add(cart.getId());
+            if (cart.getItems() != null) {
+                items.addAll(cart.getItems());
+            }
+        }
+        cartIds.addAll(deleted);
+        if (cartIds.isEmpty()) {
+            return;
+        }
+        shoppingCartItemMapper.deleteByCartIds(cartIds);
+        if (!deleted.isEmpty()) {
+            shoppingCartMapper.deleteByIds(deleted);
+        }
+        if (!carts.isEmpty()) {
+            shoppingCartMapper.upsertBatch(new ArrayList<>(carts));
+        }
+        if (!items.isEmpty()) {
+            shoppingCartItemMapper.insertBatchWithId(items);
+        }
+    }
+
+    private boolean persistOne(Long cartId, ShoppingCart cart) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(cartId, cart));
+            return true;
+        } catch (Exception e) {
+            log.warn("购物车落库失败，稍后重试，cartId: {}", cartId, e);
+            return false;
+        }
+    }
+
+    private void clearDeleted(List<Long> cartIds) {
+        for (Long cartId : cartIds) {
+            try {
+                redisCartStore.clearDeleted(cartId);
+            } catch (Exception e) {
+                // 删除标记残留只会让下一次（已无数据的）落库重复删除，不影响正确性
+                log.warn("清除购物车删除标记失败，cartId: {}", cartId, e);
+            }
+        }
+    }
+
+    private void persist(Long cartId, ShoppingCart cart) {
+        shoppingCartItemMapper.deleteByCartId(cartId);
+        if (cart == null) {
+            shoppingCartMapper.deleteById(cartId);
+            return;
+        }
+        shoppingCartMapper.upsert(cart);
+        List<ShoppingCartItem> items = cart.getItems();
+        if (items != null && !items.isEmpty()) {
+            shoppingCartItemMapper.insertBatchWithId(items);
+        }
+    }
+}
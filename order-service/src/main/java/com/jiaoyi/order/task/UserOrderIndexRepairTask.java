@@ -1,20 +1,32 @@
 package com.jiaoyi.order.task;
 
-import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.config.OrderShardDataSources;
+import com.jiaoyi.order.entity.OrderPrice;
 import com.jiaoyi.order.entity.UserOrderIndex;
-import com.jiaoyi.order.mapper.OrderMapper;
 import com.jiaoyi.order.mapper.UserOrderIndexMapper;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * 用户订单索引表补偿任务
@@ -25,102 +37,257 @@ import java.util.Map;
  * 1. 索引表写入失败（事务未回滚，订单创建成功但索引未写入）
  * 2. 历史数据迁移（订单表有数据，但索引表为空）
  *
- * 策略：
- * - 每天凌晨 4 点执行一次
- * - 查询最近 7 天的订单，检查索引表是否存在
- * - 如果不存在，补写索引记录
+ * 策略（增量、按物理分表并行）：
+ * - 每天凌晨 4 点执行一次，多实例通过分布式锁保证只有一个实例执行
+ * - 每张物理订单表（ds0.orders_00 .. ds2.orders_31）一个扫描单元，线程池并行处理
+ * - 每个单元按 (create_time, id) 游标分批扫描，只查询构建索引需要的列
+ * - 每批按 (user_id, order_id) 批量反连接索引表，只对缺失的订单批量补写（INSERT IGNORE）
+ * - 每批处理完持久化水位（user_order_index_repair_checkpoint），下次只处理水位之后的新数据
+ * - 水位回退一个重叠窗口再开始扫描，覆盖扫描时尚未提交的订单；补写是幂等的，重复扫描无副作用
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class UserOrderIndexRepairTask {
 
-    private final OrderMapper orderMapper;
+    private static final String LOCK_KEY = "user_order_index:repair:lock";
+
+    private final OrderShardDataSources orderShardDataSources;
     private final UserOrderIndexMapper userOrderIndexMapper;
-    private final ObjectMapper objectMapper;
+    private final RedissonClient redissonClient;
+    private final JdbcTemplate checkpointJdbcTemplate;
+
+    /**
+     * 每批扫描的订单数
+     */
+    @Value("${order.index-repair.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 并行扫描的分表数
+     */
+    @Value("${order.index-repair.parallelism:4}")
+    private int parallelism;
+
+    /**
+     * 首次执行（没有水位）时回溯的天数
+     */
+    @Value("${order.index-repair.initial-lookback-days:7}")
+    private int initialLookbackDays;
+
+    /**
+     * 每次从水位回退的分钟数（覆盖上次扫描时未提交的订单）
+     */
+    @Value("${order.index-repair.overlap-minutes:30}")
+    private int overlapMinutes;
+
+    /**
+     * 扫描上界距当前时间的分钟数（最近的订单可能还在下单流程中，由下次扫描处理）
+     */
+    @Value("${order.index-repair.safety-lag-minutes:5}")
+    private int safetyLagMinutes;
+
+    public UserOrderIndexRepairTask(OrderShardDataSources orderShardDataSources,
+                                    UserOrderIndexMapper userOrderIndexMapper,
+                                    RedissonClient redissonClient) {
+        this.orderShardDataSources = orderShardDataSources;
+        this.userOrderIndexMapper = userOrderIndexMapper;
+        this.redissonClient = redissonClient;
+        this.checkpointJdbcTemplate = new JdbcTemplate(orderShardDataSources.getBaseDataSource());
+    }
 
     /**
      * 补偿任务：每天凌晨 4 点执行
      */
-    @Scheduled(cron = "0 0 4 * * ?")
+    @Scheduled(cron = "${order.index-repair.cron:0 0 4 * * ?}")
     public void repairUserOrderIndex() {
-        log.info("【UserOrderIndexRepairTask】开始执行用户订单索引表补偿任务");
-
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        boolean locked = false;
         try {
-            // 1. 查询最近 7 天的订单（可配置）
-            LocalDateTime sevenDaysAgo = LocalDateTime.now().minusDays(7);
-            List<Order> recentOrders = orderMapper.selectTimeoutOrders(sevenDaysAgo);
-
-            if (recentOrders == null || recentOrders.isEmpty()) {
-                log.info("【UserOrderIndexRepairTask】没有需要补偿的订单");
+            // 不设置 leaseTime，由看门狗续期（任务耗时取决于增量数据量）
+            locked = lock.tryLock(0, TimeUnit.SECONDS);
+            if (!locked) {
+                log.info("【UserOrderIndexRepairTask】其他实例正在执行补偿任务，跳过");
                 return;
             }
+            runRepair();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("【UserOrderIndexRepairTask】补偿任务被中断");
+        } catch (Exception e) {
+            log.error("【UserOrderIndexRepairTask】补偿任务执行失败", e);
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
 
-            log.info("【UserOrderIndexRepairTask】查询到 {} 个最近 7 天的订单，开始检查索引表", recentOrders.size());
+    private void runRepair() throws InterruptedException {
+        LocalDateTime upperBound = LocalDateTime.now().minusMinutes(safetyLagMinutes);
+        List<ShardUnit> units = buildShardUnits();
+        log.info("【UserOrderIndexRepairTask】开始执行用户订单索引表补偿任务，分表数: {}, 并行度: {}, 扫描上界: {}",
+                units.size(), parallelism, upperBound);
 
-            int repairedCount = 0;
-            int errorCount = 0;
+        long start = System.currentTimeMillis();
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "index-repair-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
 
-            // 2. 逐个检查索引表是否存在
-            for (Order order : recentOrders) {
+        long scannedCount = 0;
+        long repairedCount = 0;
+        List<String> failedUnits = new ArrayList<>();
+        try {
+            List<Future<long[]>> futures = new ArrayList<>(units.size());
+            for (ShardUnit unit : units) {
+                futures.add(executor.submit(() -> repairShard(unit, upperBound)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
                 try {
-                    // 2.1 查询索引表（会触发广播查询，但补偿任务低频执行，可以接受）
-                    UserOrderIndex existingIndex = userOrderIndexMapper.selectByOrderId(order.getId());
-
-                    // 2.2 如果索引不存在，补写
-                    if (existingIndex == null) {
-                        UserOrderIndex newIndex = UserOrderIndex.builder()
-                                .userId(order.getUserId())
-                                .orderId(order.getId())
-                                .storeId(order.getStoreId())
-                                .merchantId(order.getMerchantId())
-                                .orderStatus(order.getStatus())
-                                .orderType(order.getOrderType() != null ? order.getOrderType().getCode() : null)
-                                .totalAmount(extractTotalAmount(order))
-                                .createdAt(order.getCreateTime() != null ? order.getCreateTime() : LocalDateTime.now())
-                                .build();
-
-                        userOrderIndexMapper.insert(newIndex);
-                        repairedCount++;
-
-                        log.info("【UserOrderIndexRepairTask】补写索引记录，orderId: {}, userId: {}",
-                                order.getId(), order.getUserId());
-                    }
-
-                } catch (Exception e) {
-                    log.error("【UserOrderIndexRepairTask】补偿失败，orderId: {}", order.getId(), e);
-                    errorCount++;
+                    long[] result = futures.get(i).get();
+                    scannedCount += result[0];
+                    repairedCount += result[1];
+                } catch (java.util.concurrent.ExecutionException e) {
+                    ShardUnit unit = units.get(i);
+                    failedUnits.add(unit.key());
+                    log.error("【UserOrderIndexRepairTask】分表补偿失败，分表: {}，水位保留在最后成功的批次，下次继续",
+                            unit.key(), e.getCause());
                 }
             }
+        } finally {
+            executor.shutdownNow();
+        }
 
-            log.info("【UserOrderIndexRepairTask】补偿任务执行完成，补偿记录数: {}, 失败数: {}", repairedCount, errorCount);
+        log.info("【UserOrderIndexRepairTask】补偿任务执行完成，扫描订单数: {}, 补偿记录数: {}, 失败分表: {}, 耗时: {}ms",
+                scannedCount, repairedCount, failedUnits, System.currentTimeMillis() - start);
+    }
 
-        } catch (Exception e) {
-            log.error("【UserOrderIndexRepairTask】补偿任务执行失败", e);
+    /**
+     * 补偿单张物理订单表
+     *
+     * @return [扫描订单数, 补写索引数]
+     */
+    private long[] repairShard(ShardUnit unit, LocalDateTime upperBound) {
+        LocalDateTime watermark = loadWatermark(unit.key());
+        LocalDateTime cursorTime = watermark != null
+                ? watermark.minusMinutes(overlapMinutes)
+                : upperBound.minusDays(initialLookbackDays);
+        long cursorId = 0L;
+        if (!cursorTime.isBefore(upperBound)) {
+            return new long[]{0, 0};
         }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(unit.dataSource());
+        String sql = "SELECT id, user_id, store_id, merchant_id, status, order_type, order_price, create_time" +
+                " FROM " + unit.tableName() +
+                " WHERE create_time < ?" +
+                " AND (create_time > ? OR (create_time = ? AND id > ?))" +
+                " ORDER BY create_time ASC, id ASC LIMIT ?";
+
+        long scanned = 0;
+        long repaired = 0;
+        while (true) {
+            Timestamp cursorTimestamp = Timestamp.valueOf(cursorTime);
+            List<UserOrderIndex> batch = jdbcTemplate.query(sql, (rs, rowNum) -> UserOrderIndex.builder()
+                            .orderId(rs.getLong("id"))
+                            .userId(rs.getLong("user_id"))
+                            .storeId(rs.getLong("store_id"))
+                            .merchantId(rs.getString("merchant_id"))
+                            .orderStatus(rs.getInt("status"))
+                            .orderType(rs.getString("order_type"))
+                            .totalAmount(extractTotalAmount(rs.getString("order_price")))
+                            .createdAt(rs.getTimestamp("create_time").toLocalDateTime())
+                            .build(),
+                    Timestamp.valueOf(upperBound), cursorTimestamp, cursorTimestamp, cursorId, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            int batchRepaired = repairBatch(unit, batch);
+            scanned += batch.size();
+            repaired += batchRepaired;
+
+            UserOrderIndex last = batch.get(batch.size() - 1);
+            cursorTime = last.getCreatedAt();
+            cursorId = last.getOrderId();
+            // 每批持久化进度，任务中断后从这里继续（会再回退一个重叠窗口）
+            saveWatermark(unit.key(), cursorTime, cursorId, batch.size(), batchRepaired);
+
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+
+        // 扫描到上界，水位推进到上界
+        saveWatermark(unit.key(), upperBound, cursorId, 0, 0);
+        if (repaired > 0) {
+            log.info("【UserOrderIndexRepairTask】分表 {} 补偿完成，扫描: {}, 补写: {}", unit.key(), scanned, repaired);
+        }
+        return new long[]{scanned, repaired};
     }
 
     /**
-     * 从订单的 orderPrice JSON 中提取总金额
+     * 一批订单与索引表反连接，批量补写缺失的索引
      */
-    private BigDecimal extractTotalAmount(Order order) {
-        try {
-            if (order.getOrderPrice() != null && !order.getOrderPrice().isEmpty()) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> priceMap = objectMapper.readValue(order.getOrderPrice(), Map.class);
-                Object totalObj = priceMap.get("total");
-                if (totalObj != null) {
-                    if (totalObj instanceof BigDecimal) {
-                        return (BigDecimal) totalObj;
-                    } else if (totalObj instanceof Number) {
-                        return new BigDecimal(totalObj.toString());
-                    }
-                }
+    private int repairBatch(ShardUnit unit, List<UserOrderIndex> batch) {
+        Set<Long> userIds = batch.stream().map(UserOrderIndex::getUserId).collect(Collectors.toSet());
+        List<Long> orderIds = batch.stream().map(UserOrderIndex::getOrderId).collect(Collectors.toList());
+
+        Set<Long> existingOrderIds = new HashSet<>(userOrderIndexMapper.selectExistingOrderIds(userIds, orderIds));
+        List<UserOrderIndex> missing = batch.stream()
+                .filter(index -> !existingOrderIds.contains(index.getOrderId()))
+                .collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        int inserted = userOrderIndexMapper.batchInsertIgnore(missing);
+        log.info("【UserOrderIndexRepairTask】补写索引记录，分表: {}, 缺失: {}, 实际写入: {}, orderIds: {}",
+                unit.key(), missing.size(), inserted,
+                missing.stream().map(UserOrderIndex::getOrderId).collect(Collectors.toList()));
+        return inserted;
+    }
+
+    /**
+     * 枚举全部物理订单表
+     */
+    private List<ShardUnit> buildShardUnits() {
+        List<ShardUnit> units = new ArrayList<>();
+        for (Map.Entry<String, DataSource> entry : orderShardDataSources.getShardDataSources().entrySet()) {
+            for (int tableIndex = 0; tableIndex < orderShardDataSources.getTableCountPerDb(); tableIndex++) {
+                units.add(new ShardUnit(entry.getKey(), entry.getValue(), "orders_" + String.format("%02d", tableIndex)));
             }
-        } catch (Exception e) {
-            log.warn("解析订单总金额失败，orderId: {}", order.getId(), e);
         }
-        return BigDecimal.ZERO;
+        return units;
+    }
+
+    private LocalDateTime loadWatermark(String shardKey) {
+        List<Timestamp> result = checkpointJdbcTemplate.query(
+                "SELECT watermark_time FROM user_order_index_repair_checkpoint WHERE shard_key = ?",
+                (rs, rowNum) -> rs.getTimestamp("watermark_time"), shardKey);
+        return result.isEmpty() || result.get(0) == null ? null : result.get(0).toLocalDateTime();
+    }
+
+    private void saveWatermark(String shardKey, LocalDateTime watermark, long lastOrderId, int scanned, int repaired) {
+        checkpointJdbcTemplate.update(
+                "INSERT INTO user_order_index_repair_checkpoint" +
+                        " (shard_key, watermark_time, last_order_id, scanned_count, repaired_count)" +
+                        " VALUES (?, ?, ?, ?, ?)" +
+                        " ON DUPLICATE KEY UPDATE watermark_time = VALUES(watermark_time)," +
+                        " last_order_id = VALUES(last_order_id)," +
+                        " scanned_count = scanned_count + VALUES(scanned_count)," +
+                        " repaired_count = repaired_count + VALUES(repaired_count)",
+                shardKey, Timestamp.valueOf(watermark), lastOrderId, scanned, repaired);
+    }
+
+    /**
+     * 从订单的 orderPrice JSON 中提取总金额（只扫描顶层字段，不反序列化为 Map）
+     */
+    private BigDecimal extractTotalAmount(String orderPrice) {
+        OrderPrice price = OrderPrice.of(orderPrice);
+        return price != null ? price.getTotal() : BigDecimal.ZERO;
     }
 
     /**
@@ -130,4 +297,13 @@ public class UserOrderIndexRepairTask {
         log.info("【UserOrderIndexRepairTask】手动触发补偿任务");
         repairUserOrderIndex();
     }
+
+    /**
+     * 扫描单元：一张物理订单表
+     */
+    private record ShardUnit(String dataSourceName, DataSource dataSource, String tableName) {
+        String key() {
+            return dataSourceName + "." + tableName;
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package com.jiaoyi.order.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * GeoHash 编码工具
+ *
+ * 把经纬度编码成 base32 字符串，同一前缀表示同一网格；精度（字符数）越高网格越小：
+ * 4 位约 39km x 19.5km，5 位约 4.9km x 4.9km，6 位约 1.2km x 0.6km
+ */
+public final class GeoHash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * 纬度一度对应的米数（近似）
+     */
+    private static final double METERS_PER_DEGREE = 111_320D;
+
+    /**
+     * coverCircle 最多返回的网格数：半径相对精度过大（或靠近两极）时网格数按平方增长，超过后由调用方改为外接矩形扫描
+     */
+    public static final int MAX_COVER_CELLS = 4096;
+
+    private GeoHash() {
+    }
+
+    /**
+     * 编码
+     *
+     * @param precision 字符数（1-12）
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * 网格纬度跨度（度）
+     */
+    public static double latitudeSpan(int precision) {
+        int latBits = (precision * 5) / 2;
+        return 180D / (1L << latBits);
+    }
+
+    /**
+     * 网格经度跨度（度）
+     */
+    public static double longitudeSpan(int precision) {
+        int lonBits = (precision * 5 + 1) / 2;
+        return 360D / (1L << lonBits);
+    }
+
+    /**
+     * 覆盖圆所需的网格数（按外接矩形估算，上界）
+     */
+    public static long countCoverCells(double latitude, double longitude, double radiusMeter, int precision) {
+        double[] box = boundingBox(latitude, longitude, radiusMeter);
+        long rows = (long) Math.ceil((box[1] - box[0]) / latitudeSpan(precision)) + 1;
+        long cols = (long) Math.ceil((box[3] - box[2]) / longitudeSpan(precision)) + 1;
+        return rows * cols;
+    }
+
+    /**
+     * 覆盖以 (latitude, longitude) 为圆心、radiusMeter 为半径的圆的所有网格（按外接矩形计算，会多出少量网格）
+     *
+     * @throws IllegalArgumentException 网格数超过 {@link #MAX_COVER_CELLS}（先用 {@link #countCoverCells} 判断）
+     */
+    public static Set<String> coverCircle(double latitude, double longitude, double radiusMeter, int precision) {
+        long estimated = countCoverCells(latitude, longitude, radiusMeter, precision);
+        if (estimated > MAX_COVER_CELLS) {
+            throw new IllegalArgumentException("覆盖网格数过多: " + estimated + "，半径: " + radiusMeter + "，精度: " + precision);
+        }
+        double[] box = boundingBox(latitude, longitude, radiusMeter);
+        double minLat = box[0];
+        double maxLat = box[1];
+        double minLon = box[2];
+        double maxLon = box[3];
+
+        double latStep = latitudeSpan(precision);
+        double lonStep = longitudeSpan(precision);
+        Set<String> cells = new LinkedHashSet<>();
+        for (double lat = minLat; ; lat += latStep) {
+            double cellLat = Math.min(lat, maxLat);
+            for (double lon = minLon; ; lon += lonStep) {
+                double cellLon = Math.min(lon, maxLon);
+                cells.add(encode(cellLat, cellLon, precision));
+                if (cellLon >= maxLon) {
+                    break;
+                }
+            }
+            if (cellLat >= maxLat) {
+                break;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * 圆的外接矩形（不跨越 ±180 经线，超出部分截断）
+     *
+     * @return {minLat, maxLat, minLon, maxLon}
+     */
+    public static double[] boundingBox(double latitude, double longitude, double radiusMeter) {
+        double latDelta = radiusMeter / METERS_PER_DEGREE;
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double lonDelta = cosLat > 1e-6 ? radiusMeter / (METERS_PER_DEGREE * cosLat) : 180D;
+        return new double[]{
+                Math.max(latitude - latDelta, -90D),
+                Math.min(latitude + latDelta, 90D),
+                Math.max(longitude - lonDelta, -180D),
+                Math.min(longitude + lonDelta, 180D)
+        };
+    }
+}
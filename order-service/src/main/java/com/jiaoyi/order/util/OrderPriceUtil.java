@@ -1,21 +1,20 @@
 package com.jiaoyi.order.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.order.entity.Order;
-import lombok.extern.slf4j.Slf4j;
+import com.jiaoyi.order.entity.OrderPrice;
 
 import java.math.BigDecimal;
-import java.util.Map;
+import java.util.function.Function;
 
 /**
  * 订单价格工具类
  * 统一处理订单价格JSON的解析
+ *
+ * 解析逻辑在 {@link OrderPrice} 中（流式解析一次，结果缓存）；Order 上的 orderPrice 已经是 OrderPrice，
+ * 直接调用其 getter 即可。这里保留原有静态入口，供仍持有 JSON 字符串的调用方使用
  */
-@Slf4j
 public class OrderPriceUtil {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-
     private OrderPriceUtil() {
         throw new IllegalStateException("Utility class");
     }
@@ -26,10 +25,10 @@ public class OrderPriceUtil {
      * @return 总金额，解析失败返回ZERO
      */
     public static BigDecimal parseOrderTotal(Order order) {
-        if (order == null || order.getOrderPrice() == null || order.getOrderPrice().isEmpty()) {
+        if (order == null || order.getOrderPrice() == null) {
             return BigDecimal.ZERO;
         }
-        return parseOrderTotal(order.getOrderPrice());
+        return order.getOrderPrice().getTotal();
     }
 
     /**
@@ -38,24 +37,7 @@ public class OrderPriceUtil {
      * @return 总金额，解析失败返回ZERO
      */
     public static BigDecimal parseOrderTotal(String orderPriceJson) {
-        if (orderPriceJson == null || orderPriceJson.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        try {
-            if (orderPriceJson.startsWith("{")) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> orderPrice = OBJECT_MAPPER.readValue(orderPriceJson, Map.class);
-                Object totalObj = orderPrice.get("total");
-                if (totalObj != null) {
-                    return PriceUtil.parse(totalObj);
-                }
-            }
-        } catch (Exception e) {
-            log.error("解析订单价格JSON失败，orderPriceJson: {}", orderPriceJson, e);
-        }
-
-        return BigDecimal.ZERO;
+        return parseField(orderPriceJson, OrderPrice::getTotal);
     }
 
     /**
@@ -64,7 +46,7 @@ public class OrderPriceUtil {
      * @return 小计，解析失败返回ZERO
      */
     public static BigDecimal parseOrderSubtotal(String orderPriceJson) {
-        return parseField(orderPriceJson, "subtotal");
+        return parseField(orderPriceJson, OrderPrice::getSubtotal);
     }
 
     /**
@@ -73,7 +55,7 @@ public class OrderPriceUtil {
      * @return 优惠金额，解析失败返回ZERO
      */
     public static BigDecimal parseOrderDiscount(String orderPriceJson) {
-        return parseField(orderPriceJson, "discount");
+        return parseField(orderPriceJson, OrderPrice::getDiscount);
     }
 
     /**
@@ -82,7 +64,7 @@ public class OrderPriceUtil {
      * @return 配送费，解析失败返回ZERO
      */
     public static BigDecimal parseOrderDeliveryFee(String orderPriceJson) {
-        return parseField(orderPriceJson, "deliveryFee");
+        return parseField(orderPriceJson, OrderPrice::getDeliveryFee);
     }
 
     /**
@@ -91,7 +73,7 @@ public class OrderPriceUtil {
      * @return 税费，解析失败返回ZERO
      */
     public static BigDecimal parseOrderTax(String orderPriceJson) {
-        return parseField(orderPriceJson, "taxTotal");
+        return parseField(orderPriceJson, OrderPrice::getTaxTotal);
     }
 
     /**
@@ -100,7 +82,7 @@ public class OrderPriceUtil {
      * @return 小费，解析失败返回ZERO
      */
     public static BigDecimal parseOrderTips(String orderPriceJson) {
-        return parseField(orderPriceJson, "tips");
+        return parseField(orderPriceJson, OrderPrice::getTips);
     }
 
     /**
@@ -109,34 +91,18 @@ public class OrderPriceUtil {
      * @return 服务费，解析失败返回ZERO
      */
     public static BigDecimal parseOrderCharge(String orderPriceJson) {
-        return parseField(orderPriceJson, "charge");
+        return parseField(orderPriceJson, OrderPrice::getCharge);
     }
 
     /**
      * 通用字段解析方法
      * @param orderPriceJson 订单价格JSON字符串
-     * @param fieldName 字段名
+     * @param field 字段读取方法
      * @return 字段值，解析失败返回ZERO
      */
-    private static BigDecimal parseField(String orderPriceJson, String fieldName) {
-        if (orderPriceJson == null || orderPriceJson.isEmpty()) {
-            return BigDecimal.ZERO;
-        }
-
-        try {
-            if (orderPriceJson.startsWith("{")) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> orderPrice = OBJECT_MAPPER.readValue(orderPriceJson, Map.class);
-                Object fieldValue = orderPrice.get(fieldName);
-                if (fieldValue != null) {
-                    return PriceUtil.parse(fieldValue);
-                }
-            }
-        } catch (Exception e) {
-            log.error("解析订单价格字段失败，fieldName: {}, orderPriceJson: {}", fieldName, orderPriceJson, e);
-        }
-
-        return BigDecimal.ZERO;
+    private static BigDecimal parseField(String orderPriceJson, Function<OrderPrice, BigDecimal> field) {
+        OrderPrice orderPrice = OrderPrice.of(orderPriceJson);
+        return orderPrice == null ? BigDecimal.ZERO : field.apply(orderPrice);
     }
 
     /**
@@ -145,7 +111,7 @@ public class OrderPriceUtil {
      * @return true表示有效
      */
     public static boolean isValidOrderPrice(Order order) {
-        if (order == null || order.getOrderPrice() == null || order.getOrderPrice().isEmpty()) {
+        if (order == null || order.getOrderPrice() == null) {
             return false;
         }
 
@@ -1,6 +1,7 @@
 package com.jiaoyi.order.util;
 
 import com.jiaoyi.order.entity.Order;
+import com.jiaoyi.order.entity.OrderPrice;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.DigestUtils;
 
@@ -58,28 +59,20 @@ public class PriceSignatureUtil {
      * @return MD5签名
      */
     public static String generateSignature(String orderPriceJson) {
-        if (orderPriceJson == null || orderPriceJson.isEmpty()) {
-            return "";
-        }
-
-        try {
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            @SuppressWarnings("unchecked")
-            java.util.Map<String, Object> priceMap = mapper.readValue(orderPriceJson, java.util.Map.class);
-
-            BigDecimal subtotal = PriceUtil.parse(priceMap.get("subtotal"));
-            BigDecimal discount = PriceUtil.parse(priceMap.get("discount"));
-            BigDecimal deliveryFee = PriceUtil.parse(priceMap.get("deliveryFee"));
-            BigDecimal taxTotal = PriceUtil.parse(priceMap.get("taxTotal"));
-            BigDecimal tips = PriceUtil.parse(priceMap.get("tips"));
-            BigDecimal total = PriceUtil.parse(priceMap.get("total"));
-
-            return generateSignature(subtotal, discount, deliveryFee, taxTotal, tips, total);
+        return generateSignature(OrderPrice.of(orderPriceJson));
+    }
 
-        } catch (Exception e) {
-            log.error("解析订单价格JSON失败，无法生成签名", e);
+    /**
+     * 从订单价格对象生成签名
+     * @param orderPrice 订单价格
+     * @return MD5签名，价格JSON无法解析时返回空串
+     */
+    public static String generateSignature(OrderPrice orderPrice) {
+        if (orderPrice == null || !orderPrice.isValid()) {
             return "";
         }
+        return generateSignature(orderPrice.getSubtotal(), orderPrice.getDiscount(), orderPrice.getDeliveryFee(),
+                orderPrice.getTaxTotal(), orderPrice.getTips(), orderPrice.getTotal());
     }
 
     /**
@@ -101,12 +94,22 @@ public class PriceSignatureUtil {
      * @return true表示验证通过
      */
     public static boolean verifySignature(String orderPriceJson, String signature) {
+        return verifySignature(OrderPrice.of(orderPriceJson), signature);
+    }
+
+    /**
+     * 验证价格签名
+     * @param orderPrice 订单价格
+     * @param signature 签名
+     * @return true表示验证通过
+     */
+    public static boolean verifySignature(OrderPrice orderPrice, String signature) {
         if (signature == null || signature.isEmpty()) {
             log.warn("签名为空，验证失败");
             return false;
         }
 
-        String expectedSignature = generateSignature(orderPriceJson);
+        String expectedSignature = generateSignature(orderPrice);
         boolean verified = signature.equals(expectedSignature);
 
         if (!verified) {
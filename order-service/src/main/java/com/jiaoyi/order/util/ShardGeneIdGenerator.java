@@ -0,0 +1,200 @@
+package com.jiaoyi.order.util;
+
+import com.jiaoyi.common.id.WorkerIdLeaseAllocator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * 基因ID生成器（把分片基因嵌入ID，按ID查询也能精准路由）
+ *
+ * 问题：订单按 store_id 分片，但 orders.id 来自普通雪花算法，
+ * selectById(orderId) 这类只带ID的查询没有分片键，ShardingSphere 只能广播到全部 96 张物理表
+ *
+ * ID 位布局（64 位）：
+ * <pre>
+ * | 0 | 1 | 40 位时间戳（毫秒，自 2024-01-01） | 7 位 workerId | 5 位序列号 | 10 位分片基因 |
+ * </pre>
+ * - 最高位为 0（正数）
+ * - 第 62 位固定为 1（基因标记），用于区分历史ID（毫秒*10000+序列 / ShardingSphere 雪花），历史ID该位恒为 0
+ * - 分片基因 = shard_id（0-1023，与 {@link ShardUtil#calculateShardId(Long)} 一致），是逻辑桶而不是物理表，
+ *   桶迁移只改 shard_bucket_route，ID 中的基因永远有效
+ * - 序列号按桶独立计数：同一毫秒同一实例每个桶可生成 32 个ID（订单分散在 1024 个桶，单桶单实例 3.2 万/秒）
+ *
+ * 时钟回拨：每个桶记录上次使用的毫秒，回拨或序列号用尽时沿用/借用下一毫秒，保证单桶单调递增；
+ * 借用的毫秒最多领先本机时钟 MAX_BORROW_MILLIS，超过时等待时钟追上，
+ * 需要等待超过 MAX_BORROW_WAIT_MILLIS（时钟大幅回拨或 worker-id 历史时间戳领先太多）时拒绝发号并抛出 IllegalStateException
+ *
+ * workerId 通过 {@link WorkerIdLeaseAllocator} 租约分配（bizTag = order-service:shard-gene，0-127），
+ * 租约失效时拒绝发号；worker-id 切换时各桶时间戳不小于该 worker-id 的历史最大时间戳
+ */
+@Slf4j
+@Component
+public class ShardGeneIdGenerator {
+
+    /**
+     * 起始时间（2024-01-01 00:00:00 UTC）
+     */
+    public static final long EPOCH_MILLIS = 1704067200000L;
+
+    public static final int GENE_BITS = 10;
+    public static final int SEQUENCE_BITS = 5;
+    public static final int WORKER_BITS = 7;
+    public static final int TIMESTAMP_BITS = 40;
+    public static final int MAX_WORKER_ID = (1 << WORKER_BITS) - 1;
+
+    /**
+     * 借用的毫秒最多领先本机时钟多少（毫秒）
+     */
+    public static final long MAX_BORROW_MILLIS = 100L;
+
+    /**
+     * 超过借用上限时最多等待多久让时钟追上（毫秒）
+     */
+    public static final long MAX_BORROW_WAIT_MILLIS = 1000L;
+
+    private static final long GENE_MASK = (1L << GENE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long TIMESTAMP_MASK = (1L << TIMESTAMP_BITS) - 1;
+
+    private static final int SEQUENCE_SHIFT = GENE_BITS;
+    private static final int WORKER_SHIFT = GENE_BITS + SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = GENE_BITS + SEQUENCE_BITS + WORKER_BITS;
+
+    /**
+     * 基因标记位（第 62 位）
+     */
+    private static final long GENE_FLAG = 1L << (TIMESTAMP_SHIFT + TIMESTAMP_BITS);
+
+    /**
+     * 每个桶上次使用的毫秒（相对 EPOCH）
+     */
+    private final long[] lastMillis = new long[ShardUtil.BUCKET_COUNT];
+
+    /**
+     * 每个桶当前毫秒内的序列号
+     */
+    private final int[] sequences = new int[ShardUtil.BUCKET_COUNT];
+
+    private final WorkerIdLeaseAllocator workerIdAllocator;
+
+    private int currentWorkerId = -1;
+
+    public ShardGeneIdGenerator(@Qualifier("shardGeneWorkerIdAllocator") WorkerIdLeaseAllocator workerIdAllocator) {
+        this.workerIdAllocator = workerIdAllocator;
+        log.info("基因ID生成器初始化完成，workerId={}", workerIdAllocator.getWorkerId());
+    }
+
+    /**
+     * 生成带分片基因的ID
+     *
+     * @param shardId 分片ID（0-1023）
+     */
+    public long nextId(int shardId) {
+        if (!ShardUtil.isValidShardId(shardId)) {
+            throw new IllegalArgumentException("无效的 shardId: " + shardId);
+        }
+        long millis;
+        int sequence;
+        int workerId;
+        synchronized (this) {
+            workerId = workerIdAllocator.getWorkerId();
+            if (workerId != currentWorkerId) {
+                // worker-id 切换：各桶时间戳不得小于该 worker-id 的历史最大时间戳
+                long floor = workerIdAllocator.getTimestampFloor() - EPOCH_MILLIS;
+                for (int i = 0; i < lastMillis.length; i++) {
+                    lastMillis[i] = Math.max(lastMillis[i], floor);
+                }
+                Arrays.fill(sequences, (int) SEQUENCE_MASK);
+                currentWorkerId = workerId;
+            }
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long ahead = lastMillis[shardId] - now;
+            if (ahead >= MAX_BORROW_MILLIS) {
+                if (ahead - MAX_BORROW_MILLIS >= MAX_BORROW_WAIT_MILLIS) {
+                    throw new IllegalStateException("基因ID桶 " + shardId + " 的时间戳领先本机时钟 " + ahead
+                            + "ms，超过借用上限 " + MAX_BORROW_MILLIS + "ms + 等待上限 " + MAX_BORROW_WAIT_MILLIS + "ms，拒绝生成ID");
+                }
+                // 有限等待时钟追上，之后最多再借用 MAX_BORROW_MILLIS
+                now = waitUntilAfter(lastMillis[shardId] - MAX_BORROW_MILLIS + EPOCH_MILLIS) - EPOCH_MILLIS;
+            }
+            if (now > lastMillis[shardId]) {
+                lastMillis[shardId] = now;
+                sequences[shardId] = 0;
+            } else if (++sequences[shardId] > SEQUENCE_MASK) {
+                // 序列号用尽或时钟回拨：借用下一毫秒
+                lastMillis[shardId]++;
+                sequences[shardId] = 0;
+            }
+            millis = lastMillis[shardId];
+            sequence = sequences[shardId];
+            if (!workerIdAllocator.isLeaseValid(millis + EPOCH_MILLIS)) {
+                throw new IllegalStateException("基因ID worker-id " + workerId + " 租约已失效，拒绝生成ID");
+            }
+            workerIdAllocator.reportTimestamp(millis + EPOCH_MILLIS);
+        }
+        return GENE_FLAG
+                | ((millis & TIMESTAMP_MASK) << TIMESTAMP_SHIFT)
+                | ((long) workerId << WORKER_SHIFT)
+                | ((long) sequence << SEQUENCE_SHIFT)
+                | shardId;
+    }
+
+    /**
+     * 生成带分片基因的ID（基于 storeId 计算分片基因）
+     */
+    public long nextIdForStore(Long storeId) {
+        return nextId(ShardUtil.calculateShardId(storeId));
+    }
+
+    /**
+     * 是否为带分片基因的ID（历史ID返回 false，只能按 store_id 路由或广播）
+     */
+    public static boolean hasShardGene(Long id) {
+        return id != null && id > 0 && (id & GENE_FLAG) != 0;
+    }
+
+    /**
+     * 从基因ID中提取 shard_id
+     *
+     * @return shard_id（0-1023）；历史ID返回 -1
+     */
+    public static int extractShardId(Long id) {
+        if (!hasShardGene(id)) {
+            return -1;
+        }
+        return (int) (id & GENE_MASK);
+    }
+
+    /**
+     * 从基因ID中提取生成时间（毫秒时间戳）
+     */
+    public static long extractTimestamp(long id) {
+        return ((id >>> TIMESTAMP_SHIFT) & TIMESTAMP_MASK) + EPOCH_MILLIS;
+    }
+
+    public int getWorkerId() {
+        return workerIdAllocator.getWorkerId();
+    }
+
+    private static long waitUntilAfter(long timestamp) {
+        long now = System.currentTimeMillis();
+        while (now <= timestamp) {
+            long gap = timestamp - now;
+            if (gap > 1) {
+                try {
+                    Thread.sleep(gap);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("等待时钟追上时被中断", e);
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+}
@@ -123,7 +123,10 @@ public class ShardUtil {
     /**
      * 预生成订单ID（用于下单时先按渠道扣减再 insert，需在 insert 前有 orderId）
      * 格式：当前毫秒 * 10000 + 自增序列，单机近似唯一；生产环境建议用雪花或 DB 序列
+     *
+     * @deprecated 不带分片基因，按ID查询只能广播；请使用 {@link ShardGeneIdGenerator#nextId(int)}
      */
+    @Deprecated
     public static long generateOrderId() {
         return System.currentTimeMillis() * 10000L + (ORDER_ID_SEQ.incrementAndGet() % 10000);
     }
@@ -0,0 +1,155 @@
+package com.jiaoyi.order.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮（Hierarchical Timing Wheel）
+ *
+ * 结构：
+ * - 第 0 层：tickMs 精度（如 1 秒），wheelSize 个槽（如 60 个，覆盖 1 分钟）
+ * - 第 n 层：tick = 第 n-1 层的总跨度，按需创建（1 分钟 / 1 小时 / ...）
+ * - 任务放入能容纳其到期时间的最低层；上层的槽到期时把任务重新放回时间轮，逐层降级直到第 0 层
+ *
+ * 时间轮本身不带线程，由调用方定时调用 {@link #advance(long)} 推进时钟并取出到期任务；
+ * add/advance 都是 O(1)（降级时每个任务最多移动层数次），适合大量订单超时这类“大多数任务会被提前作废”的场景
+ *
+ * 线程安全：所有方法加锁，调用方可以在任意线程添加任务
+ *
+ * @param <T> 任务负载类型
+ */
+public class TimingWheel<T> {
+
+    private final Level root;
+
+    /**
+     * @param tickMs      最小精度（毫秒）
+     * @param wheelSize   每层槽数
+     * @param startMs     起始时间（毫秒）
+     */
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMs 和 wheelSize 必须大于 0");
+        }
+        this.root = new Level(tickMs, wheelSize, startMs);
+    }
+
+    /**
+     * 添加任务
+     *
+     * @param expirationMs 到期时间（毫秒时间戳）
+     * @param payload      任务负载
+     * @return false 表示任务已到期（不会放入时间轮，调用方应立即执行）
+     */
+    public synchronized boolean add(long expirationMs, T payload) {
+        // 向上取整到最小精度，保证任务只会延后（不超过一个 tick）触发，不会提前
+        long remainder = expirationMs % root.tickMs;
+        long alignedExpirationMs = remainder == 0 ? expirationMs : expirationMs - remainder + root.tickMs;
+        return root.add(new Entry<>(alignedExpirationMs, payload));
+    }
+
+    /**
+     * 推进时钟到 nowMs，返回期间到期的全部任务
+     */
+    public synchronized List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        while (root.currentTime + root.tickMs <= nowMs) {
+            long tickTime = root.currentTime + root.tickMs;
+            // 先把各层时钟推进到 tickTime（按各层精度对齐），记录时钟发生变化的层
+            List<Level> changed = new ArrayList<>();
+            for (Level level = root; level != null; level = level.overflow) {
+                long levelTime = tickTime - (tickTime % level.tickMs);
+                if (levelTime != level.currentTime) {
+                    level.currentTime = levelTime;
+                    changed.add(level);
+                }
+            }
+            // 从高层到低层取出当前槽：上层的任务降级放回时间轮，第 0 层的任务直接到期
+            for (int i = changed.size() - 1; i >= 0; i--) {
+                Level level = changed.get(i);
+                for (Entry<T> entry : level.drain(level.currentTime)) {
+                    if (!root.add(entry)) {
+                        expired.add(entry.payload);
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 当前时间轮中的任务数
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Level level = root; level != null; level = level.overflow) {
+            for (List<Entry<T>> bucket : level.buckets) {
+                size += bucket.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 时间轮的一层
+     */
+    private final class Level {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long interval;
+        private final List<Entry<T>>[] buckets;
+        private long currentTime;
+        private Level overflow;
+
+        @SuppressWarnings("unchecked")
+        Level(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.interval = tickMs * wheelSize;
+            this.currentTime = startMs - (startMs % tickMs);
+            this.buckets = new List[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new ArrayList<>();
+            }
+        }
+
+        boolean add(Entry<T> entry) {
+            if (entry.expirationMs < currentTime + tickMs) {
+                // 已到期
+                return false;
+            }
+            if (entry.expirationMs < currentTime + interval) {
+                buckets[slot(entry.expirationMs)].add(entry);
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, wheelSize, currentTime);
+            }
+            return overflow.add(entry);
+        }
+
+        List<Entry<T>> drain(long time) {
+            int slot = slot(time);
+            List<Entry<T>> bucket = buckets[slot];
+            if (bucket.isEmpty()) {
+                return bucket;
+            }
+            buckets[slot] = new ArrayList<>();
+            return bucket;
+        }
+
+        private int slot(long time) {
+            return (int) ((time / tickMs) % wheelSize);
+        }
+    }
+
+    private static final class Entry<T> {
+        private final long expirationMs;
+        private final T payload;
+
+        Entry(long expirationMs, T payload) {
+            this.expirationMs = expirationMs;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+-- ============================================
+-- 为 user_order_index 表添加覆盖索引（用户订单历史游标分页）
+-- ============================================
+-- 说明：
+-- 1. 游标分页查询：WHERE user_id = ? AND (created_at, order_id) < (?, ?) ORDER BY created_at DESC, order_id DESC LIMIT ?
+-- 2. 索引包含查询返回的全部列（store_id, merchant_id, order_status, order_type, total_amount），不需要回表
+-- 3. 原 idx_userid_created 是该索引的前缀，添加后可删除
+-- 4. 在 jiaoyi_order_0, jiaoyi_order_1, jiaoyi_order_2 三个数据库中分别执行
+-- ============================================
+
+DELIMITER $$
+
+CREATE PROCEDURE IF NOT EXISTS add_user_order_index_covering_index(db_name VARCHAR(255))
+BEGIN
+    DECLARE i INT DEFAULT 0;
+    DECLARE table_name VARCHAR(255);
+    DECLARE index_exists INT DEFAULT 0;
+    DECLARE table_exists INT DEFAULT 0;
+
+    WHILE i < 32 DO
+        SET table_name = CONCAT('user_order_index_', i);
+
+        SELECT COUNT(*) INTO table_exists
+        FROM INFORMATION_SCHEMA.TABLES
+        WHERE TABLE_SCHEMA = db_name
+          AND TABLE_NAME = table_name;
+
+        IF table_exists > 0 THEN
+            -- 检查覆盖索引是否已存在
+            SELECT COUNT(*) INTO index_exists
+            FROM INFORMATION_SCHEMA.STATISTICS
+            WHERE TABLE_SCHEMA = db_name
+              AND TABLE_NAME = table_name
+              AND INDEX_NAME = 'idx_userid_created_cover';
+
+            IF index_exists = 0 THEN
+                SET @sql = CONCAT('ALTER TABLE `', db_name, '`.`', table_name, '` ',
+                    'ADD KEY `idx_userid_created_cover` (`user_id`, `created_at`, `order_id`, `store_id`, ',
+                    '`merchant_id`, `order_status`, `order_type`, `total_amount`)');
+                PREPARE stmt FROM @sql;
+                EXECUTE stmt;
+                DEALLOCATE PREPARE stmt;
+            END IF;
+
+            -- 删除被覆盖的旧索引
+            SELECT COUNT(*) INTO index_exists
+            FROM INFORMATION_SCHEMA.STATISTICS
+            WHERE TABLE_SCHEMA = db_name
+              AND TABLE_NAME = table_name
+              AND INDEX_NAME = 'idx_userid_created';
+
+            IF index_exists > 0 THEN
+                SET @sql = CONCAT('ALTER TABLE `', db_name, '`.`', table_name, '` DROP INDEX `idx_userid_created`');
+                PREPARE stmt FROM @sql;
+                EXECUTE stmt;
+                DEALLOCATE PREPARE stmt;
+            END IF;
+        END IF;
+
+        SET i = i + 1;
+    END WHILE;
+END$$
+
+DELIMITER ;
+
+CALL add_user_order_index_covering_index('jiaoyi_order_0');
+CALL add_user_order_index_covering_index('jiaoyi_order_1');
+CALL add_user_order_index_covering_index('jiaoyi_order_2');
+
+DROP PROCEDURE IF EXISTS add_user_order_index_covering_index;
@@ -35,7 +35,7 @@ CREATE TABLE IF NOT EXISTS `user_order_index_0` (
 
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_userid_orderid` (`user_id`, `order_id`),
-    KEY `idx_userid_created` (`user_id`, `created_at` DESC),
+    KEY `idx_userid_created_cover` (`user_id`, `created_at`, `order_id`, `store_id`, `merchant_id`, `order_status`, `order_type`, `total_amount`),
     KEY `idx_userid_status` (`user_id`, `order_status`),
     KEY `idx_orderid` (`order_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户订单索引表_0（按 user_id 分片）';
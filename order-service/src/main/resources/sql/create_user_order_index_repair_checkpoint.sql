@@ -0,0 +1,19 @@
+-- ============================================
+-- 用户订单索引补偿任务水位表（基础数据库 jiaoyi）
+-- ============================================
+-- 说明：
+-- 1. UserOrderIndexRepairTask 按物理订单表（ds0.orders_00 .. ds2.orders_31）增量扫描
+-- 2. 每张物理表一行，记录已扫描到的 create_time 水位，下次从水位（回退重叠窗口）继续
+-- 3. 删除某一行即可让该分表从 initial-lookback-days 重新扫描
+-- ============================================
+
+USE jiaoyi;
+
+CREATE TABLE IF NOT EXISTS user_order_index_repair_checkpoint (
+    shard_key VARCHAR(64) NOT NULL PRIMARY KEY COMMENT '物理分表（如 ds0.orders_07）',
+    watermark_time DATETIME NOT NULL COMMENT '已扫描到的订单创建时间（水位）',
+    last_order_id BIGINT NOT NULL DEFAULT 0 COMMENT '最后扫描的订单ID',
+    scanned_count BIGINT NOT NULL DEFAULT 0 COMMENT '累计扫描订单数',
+    repaired_count BIGINT NOT NULL DEFAULT 0 COMMENT '累计补写索引数',
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户订单索引补偿任务水位表';
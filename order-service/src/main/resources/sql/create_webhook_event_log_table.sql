@@ -7,14 +7,20 @@ CREATE TABLE IF NOT EXISTS webhook_event_log (
     payment_intent_id VARCHAR(255) COMMENT 'Stripe Payment Intent ID',
     third_party_trade_no VARCHAR(255) COMMENT '第三方交易号（支付宝 trade_no 或 Stripe charge.id）',
     order_id BIGINT COMMENT '订单ID',
-    status VARCHAR(20) NOT NULL DEFAULT 'RECEIVED' COMMENT '状态：RECEIVED-已接收，PROCESSED-已处理，FAILED-处理失败',
+    status VARCHAR(20) NOT NULL DEFAULT 'RECEIVED' COMMENT '状态：RECEIVED-已接收，PROCESSING-处理中，PROCESSED-已处理，FAILED-处理失败',
     error_message TEXT COMMENT '错误信息（处理失败时记录）',
+    payload MEDIUMTEXT COMMENT '原始事件报文（异步处理时重建事件）',
+    retry_count INT NOT NULL DEFAULT 0 COMMENT '已重试次数',
+    next_retry_time DATETIME COMMENT '下次可处理时间（失败退避）',
+    lock_owner VARCHAR(64) COMMENT '持有处理权的实例',
+    lock_until DATETIME COMMENT '处理权过期时间',
     created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     processed_at DATETIME COMMENT '处理完成时间',
     UNIQUE KEY uk_event_id (event_id),
     INDEX idx_payment_intent_id (payment_intent_id),
     INDEX idx_order_id (order_id),
     INDEX idx_status (status),
+    INDEX idx_status_next_retry (status, next_retry_time),
     INDEX idx_created_at (created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='Webhook事件日志表（事件幂等）';
 
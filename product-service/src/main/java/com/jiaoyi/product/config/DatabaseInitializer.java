@@ -45,7 +45,7 @@ public class DatabaseInitializer {
             // 1.6. 强制更新所有 inventory 表结构（确保 stock_mode 字段存在）
             updateAllInventoryTables(actualJdbcUrl, actualUsername, actualPassword);
             
-            // 2. 创建stores表、users表、outbox_node表和snowflake_worker表（在 jiaoyi 基础数据库中）
+            // 2. 创建stores表、users表、outbox_node表和snowflake_worker_lease表（在 jiaoyi 基础数据库中）
             // 注意：outbox 表已迁移到分片库（jiaoyi_product_0/1/2），不再在基础库创建
             // 构建连接 jiaoyi 的URL：将数据库名插入到端口号和参数之间
             String dbUrl = buildDatabaseUrl(actualJdbcUrl, "jiaoyi");
@@ -56,7 +56,7 @@ public class DatabaseInitializer {
                 createUsersTable(conn, metaData); // 新增：用户表（不分片）
                 createOutboxNodeTable(conn, metaData);
                 // outbox 表已在分片库中创建，不再在基础库创建
-                createSnowflakeWorkerTable(conn, metaData);
+                createSnowflakeWorkerLeaseTable(conn, metaData);
             }
             
             // 3. 创建 online-order-v2 相关的分片表（merchants, store_services, menu_items）
@@ -1213,39 +1213,37 @@ public class DatabaseInitializer {
     }
     
     /**
-     * 创建 snowflake_worker 表（用于管理雪花算法 worker-id）
+     * 创建 snowflake_worker_lease 表（雪花算法 worker-id 租约，见 common 模块 WorkerIdLeaseAllocator）
+     * 分配器启动时也会自动建表，这里提前创建便于运维查看
      */
-    private void createSnowflakeWorkerTable(Connection conn, DatabaseMetaData metaData) {
+    private void createSnowflakeWorkerLeaseTable(Connection conn, DatabaseMetaData metaData) {
         try {
-            ResultSet tables = metaData.getTables(null, null, "snowflake_worker", null);
+            ResultSet tables = metaData.getTables(null, null, "snowflake_worker_lease", null);
             
             if (tables.next()) {
-                log.info("snowflake_worker表已存在，跳过创建");
+                log.info("snowflake_worker_lease表已存在，跳过创建");
                 tables.close();
                 return;
             }
             tables.close();
             
-            // 创建 snowflake_worker 表
-            String createTableSql = "CREATE TABLE snowflake_worker (" +
-                    "worker_id INT PRIMARY KEY COMMENT '工作机器ID（0-1023）', " +
-                    "instance VARCHAR(128) NOT NULL UNIQUE COMMENT '实例标识（hostname或IP:PORT）', " +
-                    "last_heartbeat TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后心跳时间', " +
-                    "INDEX idx_last_heartbeat (last_heartbeat)" +
-                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='雪花算法Worker-ID分配表'";
+            String createTableSql = "CREATE TABLE IF NOT EXISTS snowflake_worker_lease (" +
+                    "biz_tag VARCHAR(64) NOT NULL COMMENT '业务标识', " +
+                    "worker_id INT NOT NULL COMMENT '工作机器ID', " +
+                    "instance VARCHAR(128) NOT NULL COMMENT '当前持有实例', " +
+                    "lease_expire_at BIGINT NOT NULL COMMENT '租约到期时间（毫秒）', " +
+                    "last_timestamp BIGINT NOT NULL DEFAULT 0 COMMENT '已发出的最大时间戳（毫秒）', " +
+                    "updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, " +
+                    "PRIMARY KEY (biz_tag, worker_id)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='雪花算法Worker-ID租约表'";
             
             try (Statement stmt = conn.createStatement()) {
                 stmt.executeUpdate(createTableSql);
-                log.info("✓ snowflake_worker表创建成功！");
+                log.info("✓ snowflake_worker_lease表创建成功！");
             }
             
         } catch (Exception e) {
-            String errorMsg = e.getMessage();
-            if (errorMsg != null && (errorMsg.contains("already exists") || errorMsg.contains("Table 'snowflake_worker' already exists"))) {
-                log.info("snowflake_worker表已存在，跳过创建");
-            } else {
-                log.error("创建snowflake_worker表失败: {}", errorMsg, e);
-            }
+            log.error("创建snowflake_worker_lease表失败: {}", e.getMessage(), e);
         }
     }
     
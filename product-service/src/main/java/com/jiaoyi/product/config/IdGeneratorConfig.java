@@ -0,0 +1,66 @@
+package com.jiaoyi.product.config;
+
+import com.jiaoyi.common.id.LeasedSnowflakeKeyGenerateAlgorithm;
+import com.jiaoyi.common.id.SnowflakeIdGenerator;
+import com.jiaoyi.common.id.WorkerIdLeaseAllocator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+
+/**
+ * ID 生成配置
+ *
+ * ShardingSphere 主键生成（LEASED_SNOWFLAKE）使用的雪花ID生成器，
+ * worker-id 通过基础库 snowflake_worker_lease 表租约分配，多实例部署无需手工配置
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Value("${spring.application.name:product-service}")
+    private String applicationName;
+
+    @Value("${server.port:8081}")
+    private String serverPort;
+
+    @Value("${snowflake.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${snowflake.ring-buffer-size:8192}")
+    private int ringBufferSize;
+
+    @Value("${snowflake.padding-percent:50}")
+    private int paddingPercent;
+
+    @Value("${snowflake.max-backward-millis:10}")
+    private long maxBackwardMillis;
+
+    @Bean(name = "snowflakeWorkerIdAllocator", initMethod = "start", destroyMethod = "shutdown")
+    public WorkerIdLeaseAllocator snowflakeWorkerIdAllocator(@Qualifier("primaryDataSource") DataSource dataSource) {
+        return new WorkerIdLeaseAllocator(dataSource, applicationName + ":snowflake",
+                SnowflakeIdGenerator.MAX_WORKER_ID, leaseSeconds * 1000, instanceId());
+    }
+
+    @Bean(name = "snowflakeIdGenerator", initMethod = "start", destroyMethod = "shutdown")
+    public SnowflakeIdGenerator snowflakeIdGenerator(@Qualifier("snowflakeWorkerIdAllocator") WorkerIdLeaseAllocator allocator) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(allocator, ringBufferSize, paddingPercent, maxBackwardMillis);
+        LeasedSnowflakeKeyGenerateAlgorithm.bind(generator);
+        return generator;
+    }
+
+    /**
+     * 实例标识：应用名@主机名:端口（同一实例重启后不变，可复用原 worker-id）
+     */
+    private String instanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return applicationName + "@" + host + ":" + serverPort;
+    }
+}
@@ -32,5 +32,10 @@ public class RocketMQConfig {
     public static final String INVENTORY_STOCK_SYNC_TOPIC = "inventory-stock-sync-topic";
     public static final String INVENTORY_STOCK_SYNC_TAG = "sync-to-pos";
     public static final String INVENTORY_STOCK_SYNC_CONSUMER_GROUP = "inventory-stock-sync-consumer-group";
+
+    // 库存变更流（按门店合并的库存变更帧，消费方批量刷新缓存、按门店下发 POS）
+    public static final String INVENTORY_CHANGE_TOPIC = "inventory-change-topic";
+    public static final String INVENTORY_CHANGE_TAG = "delta";
+    public static final String INVENTORY_CHANGE_CONSUMER_GROUP = "inventory-change-consumer-group";
 }
 
@@ -35,6 +35,7 @@ import com.jiaoyi.product.config.ProductShardIdTableShardingAlgorithm;
 public class ShardingSphereConfig {
 
     @Bean(name = "shardingSphereDataSource")
+    @org.springframework.context.annotation.DependsOn("snowflakeIdGenerator")  // 主键生成器需先绑定到 LEASED_SNOWFLAKE
     public DataSource shardingSphereDataSource() throws SQLException {
         Map<String, DataSource> dataSourceMap = createDataSourceMap();
         ShardingRuleConfiguration shardingRuleConfig = createShardingRuleConfiguration();
@@ -51,7 +52,7 @@ public class ShardingSphereConfig {
     private Map<String, DataSource> createDataSourceMap() {
         Map<String, DataSource> dataSourceMap = new HashMap<>();
         
-        // 基础数据库 jiaoyi（用于非分片表：stores, users, outbox_node, snowflake_worker）
+        // 基础数据库 jiaoyi（用于非分片表：stores, users, outbox_node）
         HikariDataSource dsBase = new HikariDataSource();
         dsBase.setDriverClassName("com.mysql.cj.jdbc.Driver");
         dsBase.setJdbcUrl("jdbc:mysql://localhost:3306/jiaoyi?useUnicode=true&characterEncoding=utf8&useSSL=false&serverTimezone=Asia/Shanghai");
@@ -104,7 +105,6 @@ public class ShardingSphereConfig {
         shardingRuleConfig.getTables().add(createStoresTableRule());
         shardingRuleConfig.getTables().add(createUsersTableRule());
         shardingRuleConfig.getTables().add(createOutboxNodeTableRule());
-        shardingRuleConfig.getTables().add(createSnowflakeWorkerTableRule());
         
         // 配置库存扣减幂等性日志表（每个分片库一张表，不分片）
         shardingRuleConfig.getTables().add(createInventoryDeductionIdempotencyTableRule());
@@ -320,14 +320,6 @@ public class ShardingSphereConfig {
         return tableRule;
     }
     
-    /**
-     * 创建 snowflake_worker 表规则（非分片表，存在于基础数据库 jiaoyi）
-     */
-    private ShardingTableRuleConfiguration createSnowflakeWorkerTableRule() {
-        ShardingTableRuleConfiguration tableRule = new ShardingTableRuleConfiguration("snowflake_worker", "ds_base.snowflake_worker");
-        return tableRule;
-    }
-    
     /**
      * 创建库存扣减幂等性日志表规则（使用 product_shard_id 作为分片键）
      * 物理分表：每个库一张表（inventory_deduction_idempotency）
@@ -342,9 +334,12 @@ public class ShardingSphereConfig {
         return tableRule;
     }
     
+    /**
+     * 主键生成：租约 worker-id 的雪花算法（见 IdGeneratorConfig），位布局与内置 SNOWFLAKE 一致
+     */
     private AlgorithmConfiguration createSnowflakeKeyGenerator() {
         Properties props = new Properties();
-        return new AlgorithmConfiguration("SNOWFLAKE", props);
+        return new AlgorithmConfiguration("LEASED_SNOWFLAKE", props);
     }
     
     /**
@@ -4,9 +4,11 @@ import com.jiaoyi.common.ApiResponse;
 import com.jiaoyi.product.dto.ChannelDeductBatchRequest;
 import com.jiaoyi.product.dto.ChannelDeductRequest;
 import com.jiaoyi.product.dto.ChannelDeductResult;
+import com.jiaoyi.product.dto.ChannelQuotaAllocationResult;
 import com.jiaoyi.product.dto.PosOfflineReplayRequest;
 import com.jiaoyi.product.dto.PosOfflineReplayResult;
 import com.jiaoyi.product.dto.StockSyncFromPosRequest;
+import com.jiaoyi.product.dto.StoreAvailabilitySnapshot;
 import com.jiaoyi.product.entity.Inventory;
 import com.jiaoyi.product.entity.InventoryOversellRecord;
 import com.jiaoyi.product.entity.InventoryTransaction;
@@ -121,6 +123,17 @@ public class InventoryController {
         return ResponseEntity.ok(ApiResponse.success(inventoryService.getInventoryByStoreId(storeId)));
     }
 
+    /**
+     * 门店可售位图（菜单渲染售罄/库存紧张角标，一次请求返回整个门店）
+     * ordinalVersion 传本地缓存的序号表版本，未变化时不再返回序号表
+     */
+    @GetMapping("/store/{storeId}/availability")
+    public ResponseEntity<ApiResponse<StoreAvailabilitySnapshot>> getStoreAvailability(
+            @PathVariable Long storeId,
+            @RequestParam(required = false) Long ordinalVersion) {
+        return ResponseEntity.ok(ApiResponse.success(inventoryService.getStoreAvailability(storeId, ordinalVersion)));
+    }
+
     @GetMapping("/low-stock")
     public ResponseEntity<ApiResponse<List<Inventory>>> getLowStockItems(
             @RequestParam(required = false) Long storeId) {
@@ -288,6 +301,21 @@ public class InventoryController {
         }
     }
 
+    /**
+     * 门店渠道额度批量分配（整个门店一次重平衡）
+     */
+    @PostMapping("/poi/stock/allocate-channel-quotas/store")
+    public ResponseEntity<ApiResponse<ChannelQuotaAllocationResult>> poiAllocateStoreChannelQuotas(
+            @RequestParam Long storeId) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success("门店渠道额度分配成功",
+                    inventoryService.allocateStoreChannelQuotas(storeId)));
+        } catch (Exception e) {
+            log.error("门店渠道额度分配失败: storeId={}", storeId, e);
+            return ResponseEntity.ok(ApiResponse.error(500, e.getMessage()));
+        }
+    }
+
     @PutMapping("/poi/stock/allocation-mode")
     public ResponseEntity<ApiResponse<Void>> poiSetAllocationMode(@RequestBody SetAllocationModeRequest request) {
         try {
@@ -0,0 +1,30 @@
+package com.jiaoyi.product.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 门店渠道额度批量分配结果
+ */
+@Data
+@NoArgsConstructor
+public class ChannelQuotaAllocationResult {
+
+    /** 门店ID */
+    private Long storeId;
+
+    /** 是否增量分配（只处理指定库存） */
+    private boolean incremental;
+
+    /** 完成分配的库存数 */
+    private int inventoryCount;
+
+    /** 写回的渠道数 */
+    private int channelCount;
+
+    /** 没有渠道记录而跳过的库存数 */
+    private int skippedCount;
+
+    /** 耗时（毫秒） */
+    private long elapsedMillis;
+}
@@ -0,0 +1,76 @@
+package com.jiaoyi.product.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 库存变更帧（库存变更流消息）
+ *
+ * 一个帧只包含同一门店的变更，同一库存在一个事务内的多次变更合并为一条（delta 累加）；
+ * 帧只携带变更的键和增量，消费方按门店批量回查最新库存后刷新缓存、下发 POS，因此帧乱序或重复都不影响结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryChangeFrame {
+
+    /**
+     * 门店ID
+     */
+    private Long storeId;
+
+    /**
+     * 分片ID（按门店计算，消费方回查库存时路由）
+     */
+    private Integer productShardId;
+
+    /**
+     * 帧生成时间（毫秒）
+     */
+    private Long frameTime;
+
+    /**
+     * 变更列表
+     */
+    private List<Change> changes = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Change {
+        /**
+         * 库存ID
+         */
+        private Long inventoryId;
+
+        /**
+         * 商品ID
+         */
+        private Long productId;
+
+        /**
+         * SKU ID
+         */
+        private Long skuId;
+
+        /**
+         * 变更类型：DEDUCT / RETURN / POS_SYNC / CLOUD_SET / RESTORE / POS_REPLAY（合并后为最后一次的类型）
+         */
+        private String changeType;
+
+        /**
+         * 库存增量（合并后为累加值；绝对设置、恢复等非增量变更为 0）
+         */
+        private BigDecimal delta;
+
+        /**
+         * 变更来源：POS / CLOUD（合并后只要有一次来自 CLOUD 即为 CLOUD，来源于 POS 的变更不回推 POS）
+         */
+        private String source;
+    }
+}
@@ -36,6 +36,12 @@ public class StockSyncToPosMessage {
      */
     private StockData data;
 
+    /**
+     * 批量数据（库存变更流按门店合并下发，一条消息包含该门店本次变更的所有商品）
+     * 只有一个商品时同时填充 data，兼容按单品消费的 POS
+     */
+    private List<StockData> items;
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
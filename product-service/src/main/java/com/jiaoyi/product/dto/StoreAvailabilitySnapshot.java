@@ -0,0 +1,35 @@
+package com.jiaoyi.product.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 门店可售位图快照（菜单渲染售罄/库存紧张角标用，一次读取整个门店）
+ *
+ * 每个 商品+SKU 在门店内有一个固定序号（只增不减，不复用），位图第 n 位对应序号 n；
+ * 位序与 Redis 位图一致：第 n 位在第 n/8 个字节，字节内从高位到低位
+ */
+@Data
+@NoArgsConstructor
+public class StoreAvailabilitySnapshot {
+
+    /** 门店ID */
+    private Long storeId;
+
+    /** 序号表版本（只增不减，序号表有变化时变大；版本相同则序号表相同） */
+    private Long ordinalVersion;
+
+    /**
+     * 序号表：productId:skuId -> 序号（商品级库存 skuId 为 0）
+     * 调用方传入的 ordinalVersion 与当前一致时不返回（为 null），继续使用本地缓存的序号表
+     */
+    private Map<String, Long> ordinals;
+
+    /** 售罄位图（JSON 中为 Base64） */
+    private byte[] soldOut;
+
+    /** 库存紧张位图：未售罄且可用库存低于预警线（JSON 中为 Base64） */
+    private byte[] lowStock;
+}
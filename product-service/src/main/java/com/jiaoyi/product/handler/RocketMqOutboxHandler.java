@@ -14,6 +14,7 @@ import org.springframework.stereotype.Component;
  * 处理以 _MQ 结尾的任务类型，包括：
  * - PRODUCT_CACHE_UPDATE_TOPIC_MQ：商品缓存更新
  * - INVENTORY_STOCK_SYNC_MQ：库存同步到 POS
+ * - INVENTORY_CHANGE_MQ：库存变更流（按门店合并的库存变更帧）
  */
 @Component
 @RequiredArgsConstructor
@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -26,6 +27,17 @@ public interface InventoryChannelMapper {
      */
     List<InventoryChannel> selectByInventoryId(@Param("inventoryId") Long inventoryId);
 
+    /**
+     * 批量查询多个库存的渠道库存
+     */
+    List<InventoryChannel> selectByInventoryIds(@Param("inventoryIds") Collection<Long> inventoryIds);
+
+    /**
+     * 查询门店的渠道库存（inventoryIds 为空时查整个门店，渠道额度批量分配用）
+     */
+    List<InventoryChannel> selectByStoreId(@Param("storeId") Long storeId,
+                                           @Param("inventoryIds") Collection<Long> inventoryIds);
+
     /**
      * 插入渠道库存记录
      */
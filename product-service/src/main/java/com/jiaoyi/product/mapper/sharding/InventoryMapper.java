@@ -6,6 +6,7 @@ import org.apache.ibatis.annotations.Param;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -159,6 +160,33 @@ public interface InventoryMapper {
      */
     int disableExpiredRestoreConfig(@Param("cutoffTime") LocalDateTime cutoffTime);
 
+    /**
+     * 按 id 游标分批查询待恢复库存（只返回 id、store_id、product_shard_id、product_id、sku_id、restore_stock）
+     *
+     * @param productShardIds 本批扫描的 product_shard_id
+     * @param restoreMode TOMORROW 或 SCHEDULED
+     * @param dayStart 今天零点（TOMORROW 模式：今天已恢复过的跳过）
+     * @param now 当前时间（SCHEDULED 模式：restore_time <= now）
+     * @param afterId 游标（上一批最后一条记录的 id）
+     */
+    List<Inventory> selectRestoreCandidates(@Param("productShardIds") Collection<Integer> productShardIds,
+                                            @Param("restoreMode") Inventory.RestoreMode restoreMode,
+                                            @Param("dayStart") LocalDateTime dayStart,
+                                            @Param("now") LocalDateTime now,
+                                            @Param("afterId") Long afterId,
+                                            @Param("limit") int limit);
+
+    /**
+     * 批量恢复库存（CAS：只更新仍满足到期条件的记录）
+     *
+     * @return 实际恢复的记录数
+     */
+    int batchRestoreInventory(@Param("productShardIds") Collection<Integer> productShardIds,
+                              @Param("ids") Collection<Long> ids,
+                              @Param("restoreMode") Inventory.RestoreMode restoreMode,
+                              @Param("dayStart") LocalDateTime dayStart,
+                              @Param("now") LocalDateTime now);
+
     // ========================= POI 渠道库存扩展方法 =========================
 
     /**
@@ -166,6 +194,41 @@ public interface InventoryMapper {
      */
     Inventory selectByIdForUpdate(@Param("id") Long id);
 
+    /**
+     * 批量加行锁查询门店下多个商品的库存（POS 离线批量回放用，按 id 排序加锁避免死锁）
+     */
+    List<Inventory> selectByStoreIdAndProductIdsForUpdate(
+        @Param("productShardId") Integer productShardId,
+        @Param("storeId") Long storeId,
+        @Param("productIds") List<Long> productIds
+    );
+
+    /**
+     * 批量查询门店下多个商品的库存（不加锁，库存变更流刷新缓存用）
+     */
+    List<Inventory> selectByStoreIdAndProductIds(
+        @Param("productShardId") Integer productShardId,
+        @Param("storeId") Long storeId,
+        @Param("productIds") Collection<Long> productIds
+    );
+
+    /**
+     * 查询门店全部库存的可售相关字段（重建门店可售位图用）
+     */
+    List<Inventory> selectAvailabilityByStoreId(
+        @Param("productShardId") Integer productShardId,
+        @Param("storeId") Long storeId
+    );
+
+    /**
+     * 加行锁查询门店内参与渠道额度分配的限量库存（inventoryIds 为空时查整个门店；按 id 排序加锁，与扣减路径的行锁互斥）
+     */
+    List<Inventory> selectForChannelAllocationForUpdate(
+        @Param("productShardId") Integer productShardId,
+        @Param("storeId") Long storeId,
+        @Param("inventoryIds") Collection<Long> inventoryIds
+    );
+
     /**
      * 原子扣减 current_stock（WHERE current_stock >= delta）
      * 返回 affected rows：1=成功，0=库存不足
@@ -216,5 +279,12 @@ public interface InventoryMapper {
      * 更新共享池库存（渠道额度重新分配时使用）
      */
     int updateSharedPoolQuantity(@Param("id") Long id, @Param("sharedPoolQuantity") BigDecimal sharedPoolQuantity);
+
+    /**
+     * 更新共享池库存（带分片键，批量写回时每条语句只路由到一个分片表）
+     */
+    int updateSharedPoolQuantityInShard(@Param("productShardId") Integer productShardId,
+                                        @Param("id") Long id,
+                                        @Param("sharedPoolQuantity") BigDecimal sharedPoolQuantity);
 }
 
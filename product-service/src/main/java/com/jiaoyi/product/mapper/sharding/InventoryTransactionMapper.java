@@ -18,6 +18,11 @@ public interface InventoryTransactionMapper {
      * 插入库存变动记录
      */
     int insert(InventoryTransaction transaction);
+
+    /**
+     * 批量插入库存变动记录（同一分片，POS 离线批量回放用）
+     */
+    int insertBatch(@Param("list") List<InventoryTransaction> transactions);
     
     /**
      * 尝试插入库存变动记录（用于幂等性校验）
@@ -132,6 +137,15 @@ public interface InventoryTransactionMapper {
         @Param("inventoryId") Long inventoryId
     );
 
+    /**
+     * 批量扣减幂等检查：返回已有扣减日志的 (inventory_id, order_id)
+     */
+    List<InventoryTransaction> selectDeductedOrders(
+        @Param("productShardId") Integer productShardId,
+        @Param("inventoryIds") List<Long> inventoryIds,
+        @Param("orderIds") List<Long> orderIds
+    );
+
     /**
      * 按库存ID查询变动记录（POI 库存日志，支持 limit）
      */
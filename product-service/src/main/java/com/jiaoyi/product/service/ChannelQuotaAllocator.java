@@ -0,0 +1,253 @@
+package com.jiaoyi.product.service;
+
+import com.jiaoyi.product.dto.ChannelQuotaAllocationResult;
+import com.jiaoyi.product.entity.Inventory;
+import com.jiaoyi.product.entity.InventoryChannel;
+import com.jiaoyi.product.mapper.sharding.InventoryChannelMapper;
+import com.jiaoyi.product.mapper.sharding.InventoryMapper;
+import com.jiaoyi.product.util.ProductShardUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 门店渠道额度批量分配
+ *
+ * 与 InventoryService#allocateChannelQuotas（单个库存）规则一致：按渠道权重把当前库存分给各渠道（保留 1 位小数向下取整），
+ * 余数进共享池，并重置渠道已售数；总库存不大于 0 时额度和共享池清零；权重合计不大于 0 时所有渠道按权重 1 平分。
+ * 区别在于整个门店一起处理，加载、计算、写回都在 sharding 事务管理器的一个事务里（门店的库存只在一个分片上，即每个分片一个事务）：
+ * 1. 两次查询加载门店的限量库存和渠道库存（增量模式只加载指定库存）；库存行按 id 排序加行锁，
+ *    与扣减路径（selectByIdForUpdate）互斥，分配期间的扣减等待提交后再基于新额度和重置后的已售数执行，不会超卖
+ * 2. 权重换算成定点整数（WEIGHT_SCALE 位小数）用 long 计算额度，库存数量较多时并行计算
+ * 3. 用 MyBatis BATCH 执行器批量写回
+ * 只处理 WEIGHTED_QUOTA 分配方式的库存（SAFETY_STOCK 方式不使用渠道额度）。
+ * 注意：BATCH 执行器不能和同一事务里已经用过的普通 Mapper 会话混用，不要在已开启的分片事务内调用
+ */
+@Service
+@Slf4j
+public class ChannelQuotaAllocator {
+
+    /** 权重定点小数位数（超出部分向下截断） */
+    private static final int WEIGHT_SCALE = 6;
+
+    /** 额度定点小数位数（与单个库存分配的 divide(totalWeight, 1, DOWN) 一致） */
+    private static final int QUOTA_SCALE = 1;
+    private static final long QUOTA_UNIT = 10L;
+
+    /** 库存数量达到该值时并行计算 */
+    private static final int PARALLEL_THRESHOLD = 2000;
+
+    /** 批量写回时每多少条语句提交一次批次 */
+    private static final int FLUSH_BATCH_SIZE = 1000;
+
+    private static final String ALLOCATION_MODE_WEIGHTED_QUOTA = "WEIGHTED_QUOTA";
+
+    private final SqlSessionTemplate batchSqlSession;
+    private final TransactionTemplate shardingTransactionTemplate;
+
+    public ChannelQuotaAllocator(@Qualifier("shardingSqlSessionFactory") SqlSessionFactory shardingSqlSessionFactory,
+                                 @Qualifier("shardingTransactionManager") DataSourceTransactionManager shardingTransactionManager) {
+        this.batchSqlSession = new SqlSessionTemplate(shardingSqlSessionFactory, ExecutorType.BATCH);
+        this.shardingTransactionTemplate = new TransactionTemplate(shardingTransactionManager);
+    }
+
+    /**
+     * 整个门店重新分配渠道额度（开店前整体重平衡）
+     */
+    public ChannelQuotaAllocationResult allocateStore(Long storeId) {
+        return allocate(storeId, null);
+    }
+
+    /**
+     * 只对指定库存重新分配渠道额度（库存变化后增量触发）
+     */
+    public ChannelQuotaAllocationResult allocateChanged(Long storeId, Collection<Long> inventoryIds) {
+        if (inventoryIds == null || inventoryIds.isEmpty()) {
+            ChannelQuotaAllocationResult result = new ChannelQuotaAllocationResult();
+            result.setStoreId(storeId);
+            result.setIncremental(true);
+            return result;
+        }
+        return allocate(storeId, inventoryIds);
+    }
+
+    private ChannelQuotaAllocationResult allocate(Long storeId, Collection<Long> inventoryIds) {
+        long start = System.currentTimeMillis();
+        boolean incremental = inventoryIds != null;
+        int productShardId = ProductShardUtil.calculateProductShardId(storeId);
+
+        ChannelQuotaAllocationResult result = shardingTransactionTemplate.execute(status -> {
+            InventoryMapper batchInventoryMapper = batchSqlSession.getMapper(InventoryMapper.class);
+            InventoryChannelMapper batchChannelMapper = batchSqlSession.getMapper(InventoryChannelMapper.class);
+
+            // 1. 两次查询加载库存（加行锁）和渠道
+            List<Inventory> inventories = batchInventoryMapper
+                    .selectForChannelAllocationForUpdate(productShardId, storeId, inventoryIds).stream()
+                    .filter(inventory -> inventory.getAllocationMode() == null
+                            || ALLOCATION_MODE_WEIGHTED_QUOTA.equalsIgnoreCase(inventory.getAllocationMode()))
+                    .collect(Collectors.toList());
+            Map<Long, List<InventoryChannel>> channelsByInventory = inventories.isEmpty()
+                    ? Collections.emptyMap()
+                    : batchChannelMapper.selectByStoreId(storeId, inventoryIds).stream()
+                        .collect(Collectors.groupingBy(InventoryChannel::getInventoryId));
+
+            // 2. 计算分配方案
+            Stream<Inventory> stream = inventories.size() >= PARALLEL_THRESHOLD
+                    ? inventories.parallelStream() : inventories.stream();
+            List<Plan> plans = stream
+                    .map(inventory -> plan(inventory, channelsByInventory.get(inventory.getId())))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            // 3. 同一事务内批量写回
+            int channelCount = write(plans, batchInventoryMapper, batchChannelMapper);
+
+            ChannelQuotaAllocationResult allocated = new ChannelQuotaAllocationResult();
+            allocated.setInventoryCount(plans.size());
+            allocated.setChannelCount(channelCount);
+            allocated.setSkippedCount(inventories.size() - plans.size());
+            return allocated;
+        });
+
+        if (result == null) {
+            result = new ChannelQuotaAllocationResult();
+        }
+        result.setStoreId(storeId);
+        result.setIncremental(incremental);
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        log.info("门店渠道额度分配完成: storeId={}, incremental={}, inventories={}, channels={}, skipped={}, elapsed={}ms",
+                storeId, incremental, result.getInventoryCount(), result.getChannelCount(), result.getSkippedCount(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * 计算单个库存的分配方案（没有渠道记录时返回 null）
+     */
+    static Plan plan(Inventory inventory, List<InventoryChannel> channels) {
+        if (channels == null || channels.isEmpty()) {
+            return null;
+        }
+        int size = channels.size();
+        long[] weights = new long[size];
+        long[] quotas = new long[size];
+        long totalStock = inventory.getCurrentStock() != null ? inventory.getCurrentStock() : 0L;
+
+        if (totalStock <= 0) {
+            // 额度和共享池清零，权重保持不变，不重置已售数
+            for (int i = 0; i < size; i++) {
+                weights[i] = toUnits(channels.get(i).getChannelWeight());
+            }
+            return new Plan(inventory, channels, weights, quotas, 0L, false);
+        }
+
+        long totalWeight = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] = toUnits(channels.get(i).getChannelWeight());
+            totalWeight += weights[i];
+        }
+        if (totalWeight <= 0) {
+            long one = BigDecimal.ONE.movePointRight(WEIGHT_SCALE).longValue();
+            for (int i = 0; i < size; i++) {
+                weights[i] = one;
+            }
+            totalWeight = one * size;
+        }
+
+        long totalUnits = totalStock * QUOTA_UNIT;
+        long allocated = 0;
+        for (int i = 0; i < size; i++) {
+            quotas[i] = multiplyDivide(totalUnits, weights[i], totalWeight);
+            allocated += quotas[i];
+        }
+        return new Plan(inventory, channels, weights, quotas, totalUnits - allocated, true);
+    }
+
+    /**
+     * a * b / c 向下取整（乘积溢出 long 时退回 BigInteger）
+     */
+    static long multiplyDivide(long a, long b, long c) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return Math.floorDiv(low, c);
+        }
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c)).longValue();
+    }
+
+    static long toUnits(BigDecimal weight) {
+        if (weight == null) {
+            return 0L;
+        }
+        return weight.setScale(WEIGHT_SCALE, RoundingMode.DOWN).unscaledValue().longValue();
+    }
+
+    private static BigDecimal fromUnits(long units, int scale) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    /**
+     * 批量写回（在调用方的事务内，BATCH 执行器每 FLUSH_BATCH_SIZE 条语句提交一次批次），返回写回的渠道数
+     */
+    private int write(List<Plan> plans, InventoryMapper batchInventoryMapper, InventoryChannelMapper batchChannelMapper) {
+        int statements = 0;
+        int channels = 0;
+        for (Plan plan : plans) {
+            for (int i = 0; i < plan.channels.size(); i++) {
+                batchChannelMapper.updateChannelQuotaAndWeight(plan.channels.get(i).getId(),
+                        fromUnits(plan.quotas[i], QUOTA_SCALE), fromUnits(plan.weights[i], WEIGHT_SCALE));
+                channels++;
+            }
+            batchInventoryMapper.updateSharedPoolQuantityInShard(plan.inventory.getProductShardId(),
+                    plan.inventory.getId(), fromUnits(plan.sharedPool, QUOTA_SCALE));
+            statements += plan.channels.size() + 1;
+            if (plan.resetSold) {
+                batchChannelMapper.resetChannelSold(plan.inventory.getId());
+                statements++;
+            }
+            if (statements >= FLUSH_BATCH_SIZE) {
+                batchSqlSession.flushStatements();
+                statements = 0;
+            }
+        }
+        batchSqlSession.flushStatements();
+        return channels;
+    }
+
+    /**
+     * 单个库存的分配方案（权重、额度、共享池均为定点整数）
+     */
+    static class Plan {
+        final Inventory inventory;
+        final List<InventoryChannel> channels;
+        final long[] weights;
+        final long[] quotas;
+        final long sharedPool;
+        final boolean resetSold;
+
+        Plan(Inventory inventory, List<InventoryChannel> channels, long[] weights, long[] quotas,
+             long sharedPool, boolean resetSold) {
+            this.inventory = inventory;
+            this.channels = channels;
+            this.weights = weights;
+            this.quotas = quotas;
+            this.sharedPool = sharedPool;
+            this.resetSold = resetSold;
+        }
+    }
+}
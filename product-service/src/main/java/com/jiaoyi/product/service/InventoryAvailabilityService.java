@@ -0,0 +1,274 @@
+package com.jiaoyi.product.service;
+
+import com.jiaoyi.product.dto.StoreAvailabilitySnapshot;
+import com.jiaoyi.product.entity.Inventory;
+import com.jiaoyi.product.mapper.sharding.InventoryMapper;
+import com.jiaoyi.product.util.ProductShardUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 门店可售位图服务
+ *
+ * 菜单渲染售罄角标原来要逐个商品查库存缓存，这里为每个门店维护两张 Redis 位图，菜单一次读取即可：
+ * - inventory:avail:{storeId}:ord   序号表（Hash，productId:skuId -> 序号，#next 为下一个序号）
+ * - inventory:avail:{storeId}:sold  售罄位图
+ * - inventory:avail:{storeId}:low   库存紧张位图
+ * - inventory:avail:{storeId}:seq   变更序号（每次增量维护 +1，重建时据此判断期间是否有并发变更）
+ * - inventory:avail:{storeId}:built 已重建标记（带过期时间，过期后下次读取重新按数据库全量重建，兜底修正偏差）
+ * - inventory:avail:{storeId}:ver   序号表版本（只增不减：分配新序号时 +1；序号表丢失后重新创建时取 max(原版本 + 1, 当前毫秒)，
+ *   即使版本键也一起丢失，新版本也不会与客户端缓存的旧版本相同）
+ *
+ * 库存变更时由库存变更流（{@link InventoryChangeCoalescer}）和 InventoryService 直接写库存的路径增量维护；
+ * 门店从未被读取过（没有序号表）时增量维护只累加变更序号，首次读取时全量重建。
+ * 键带 {storeId} 哈希标签，同一门店的键落在同一个槽，Lua 脚本可以在集群下执行
+ */
+@Service
+@Slf4j
+public class InventoryAvailabilityService {
+
+    private static final String KEY_PREFIX = "inventory:avail:{";
+
+    /** 重建标记过期时间 */
+    private static final Duration BUILT_EXPIRE_TIME = Duration.ofDays(1);
+
+    /** 重建时遇到并发变更的最大重试次数 */
+    private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    // Lua脚本：增量维护（分配序号 + 设置两张位图的对应位）
+    // KEYS: ord, sold, low, seq, ver；ARGV: 每三个一组（productId:skuId, 是否售罄, 是否库存紧张）
+    private static final String APPLY_LUA_SCRIPT =
+        "redis.call('INCR', KEYS[4])\n" +
+        "if redis.call('EXISTS', KEYS[1]) == 0 then\n" +
+        "    return 0  -- 门店还没有重建过，等首次读取时全量重建\n" +
+        "end\n" +
+        "local added = false\n" +
+        "for i = 1, #ARGV, 3 do\n" +
+        "    local ordinal = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+        "    if not ordinal then\n" +
+        "        ordinal = redis.call('HINCRBY', KEYS[1], '#next', 1) - 1\n" +
+        "        redis.call('HSET', KEYS[1], ARGV[i], ordinal)\n" +
+        "        added = true\n" +
+        "    end\n" +
+        "    redis.call('SETBIT', KEYS[2], ordinal, ARGV[i + 1])\n" +
+        "    redis.call('SETBIT', KEYS[3], ordinal, ARGV[i + 2])\n" +
+        "end\n" +
+        "if added then\n" +
+        "    redis.call('INCR', KEYS[5])\n" +
+        "end\n" +
+        "return 1\n";
+
+    // Lua脚本：全量重建（变更序号与读库前一致才写入，否则返回0由调用方重试）
+    // KEYS: ord, sold, low, seq, built, ver；ARGV[1]=读库前的变更序号，ARGV[2]=重建标记过期秒数，ARGV[3]=当前毫秒，之后每三个一组同上
+    private static final String REBUILD_LUA_SCRIPT =
+        "local seq = redis.call('GET', KEYS[4]) or '0'\n" +
+        "if seq ~= ARGV[1] then\n" +
+        "    return 0\n" +
+        "end\n" +
+        "local changed = redis.call('HSETNX', KEYS[1], '#next', 0) == 1\n" +
+        "redis.call('DEL', KEYS[2], KEYS[3])\n" +
+        "for i = 4, #ARGV, 3 do\n" +
+        "    local ordinal = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+        "    if not ordinal then\n" +
+        "        ordinal = redis.call('HINCRBY', KEYS[1], '#next', 1) - 1\n" +
+        "        redis.call('HSET', KEYS[1], ARGV[i], ordinal)\n" +
+        "        changed = true\n" +
+        "    end\n" +
+        "    redis.call('SETBIT', KEYS[2], ordinal, ARGV[i + 1])\n" +
+        "    redis.call('SETBIT', KEYS[3], ordinal, ARGV[i + 2])\n" +
+        "end\n" +
+        "if changed then\n" +
+        "    local ver = tonumber(redis.call('GET', KEYS[6]) or '0') + 1\n" +
+        "    local now = tonumber(ARGV[3])\n" +
+        "    if ver < now then\n" +
+        "        ver = now\n" +
+        "    end\n" +
+        "    redis.call('SET', KEYS[6], ver)\n" +
+        "end\n" +
+        "redis.call('SET', KEYS[5], seq, 'EX', ARGV[2])\n" +
+        "return 1\n";
+
+    // Lua脚本：读取快照（序号表版本与调用方一致时不返回序号表）
+    // KEYS: ord, sold, low, built, ver；ARGV[1]=调用方的序号表版本
+    private static final String READ_LUA_SCRIPT =
+        "local built = redis.call('EXISTS', KEYS[4])\n" +
+        "local ver = tonumber(redis.call('GET', KEYS[5]) or '0')\n" +
+        "local sold = redis.call('GET', KEYS[2]) or ''\n" +
+        "local low = redis.call('GET', KEYS[3]) or ''\n" +
+        "local ordinals = {}\n" +
+        "if tostring(ver) ~= ARGV[1] then\n" +
+        "    ordinals = redis.call('HGETALL', KEYS[1])\n" +
+        "end\n" +
+        "return {built, ver, sold, low, ordinals}\n";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final InventoryMapper inventoryMapper;
+
+    private final DefaultRedisScript<Long> applyScript;
+    private final DefaultRedisScript<Long> rebuildScript;
+    @SuppressWarnings("rawtypes")
+    private final DefaultRedisScript<List> readScript;
+
+    public InventoryAvailabilityService(RedisTemplate<String, String> redisTemplate, InventoryMapper inventoryMapper) {
+        this.redisTemplate = redisTemplate;
+        this.inventoryMapper = inventoryMapper;
+        this.applyScript = new DefaultRedisScript<>(APPLY_LUA_SCRIPT, Long.class);
+        this.rebuildScript = new DefaultRedisScript<>(REBUILD_LUA_SCRIPT, Long.class);
+        this.readScript = new DefaultRedisScript<>(READ_LUA_SCRIPT, List.class);
+    }
+
+    /**
+     * 增量维护库存变更涉及的门店位图（每个门店一次脚本调用）
+     */
+    public void applyChanges(Collection<Inventory> inventories) {
+        if (inventories == null || inventories.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Inventory>> byStore = inventories.stream()
+                .filter(inventory -> inventory != null && inventory.getStoreId() != null && inventory.getProductId() != null)
+                .collect(Collectors.groupingBy(Inventory::getStoreId, LinkedHashMap::new, Collectors.toList()));
+        byStore.forEach(this::applyStoreChanges);
+    }
+
+    /**
+     * 增量维护单个门店的位图
+     */
+    public void applyStoreChanges(Long storeId, List<Inventory> inventories) {
+        if (storeId == null || inventories == null || inventories.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>(inventories.size() * 3);
+        inventories.forEach(inventory -> appendBits(args, inventory));
+        redisTemplate.execute(applyScript, storeKeys(storeId, "ord", "sold", "low", "seq", "ver"), args.toArray());
+        log.debug("门店可售位图增量维护: storeId={}, items={}", storeId, inventories.size());
+    }
+
+    /**
+     * 读取门店可售位图（一次 Redis 往返；未重建或重建标记过期时先按数据库全量重建）
+     *
+     * @param storeId 门店ID
+     * @param ordinalVersion 调用方本地序号表的版本（与当前一致时不返回序号表），可为空
+     */
+    public StoreAvailabilitySnapshot getSnapshot(Long storeId, Long ordinalVersion) {
+        String clientVersion = ordinalVersion != null ? String.valueOf(ordinalVersion) : "";
+        List<Object> result = readSnapshot(storeId, clientVersion);
+        if (!Long.valueOf(1L).equals(result.get(0))) {
+            rebuild(storeId);
+            result = readSnapshot(storeId, clientVersion);
+        }
+
+        StoreAvailabilitySnapshot snapshot = new StoreAvailabilitySnapshot();
+        snapshot.setStoreId(storeId);
+        snapshot.setOrdinalVersion((Long) result.get(1));
+        snapshot.setSoldOut((byte[]) result.get(2));
+        snapshot.setLowStock((byte[]) result.get(3));
+        if (!clientVersion.equals(String.valueOf(snapshot.getOrdinalVersion()))) {
+            snapshot.setOrdinals(toOrdinals((List<?>) result.get(4)));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 按数据库全量重建门店位图（期间有并发变更则重试，仍失败时不写重建标记，下次读取再重建）
+     */
+    public void rebuild(Long storeId) {
+        int productShardId = ProductShardUtil.calculateProductShardId(storeId);
+        List<String> keys = storeKeys(storeId, "ord", "sold", "low", "seq", "built", "ver");
+        for (int attempt = 1; attempt <= MAX_REBUILD_ATTEMPTS; attempt++) {
+            String seq = Objects.requireNonNullElse(redisTemplate.opsForValue().get(keys.get(3)), "0");
+            List<Inventory> inventories = inventoryMapper.selectAvailabilityByStoreId(productShardId, storeId);
+
+            List<String> args = new ArrayList<>(inventories.size() * 3 + 3);
+            args.add(seq);
+            args.add(String.valueOf(BUILT_EXPIRE_TIME.getSeconds()));
+            args.add(String.valueOf(System.currentTimeMillis()));
+            inventories.forEach(inventory -> appendBits(args, inventory));
+
+            Long rebuilt = redisTemplate.execute(rebuildScript, keys, args.toArray());
+            if (Long.valueOf(1L).equals(rebuilt)) {
+                log.info("门店可售位图重建完成: storeId={}, items={}", storeId, inventories.size());
+                return;
+            }
+            log.debug("门店可售位图重建期间有并发变更，重试: storeId={}, attempt={}", storeId, attempt);
+        }
+        log.warn("门店可售位图重建多次遇到并发变更，本次跳过: storeId={}", storeId);
+    }
+
+    /**
+     * 序号表的字段：productId:skuId（商品级库存 skuId 为 0）
+     */
+    public static String ordinalField(Long productId, Long skuId) {
+        return productId + ":" + (skuId != null ? skuId : 0L);
+    }
+
+    /**
+     * 售罄：限量库存且可用库存（current_stock - locked_stock）不大于 0
+     */
+    static boolean isSoldOut(Inventory inventory) {
+        return inventory.getStockMode() == Inventory.StockMode.LIMITED && availableStock(inventory) <= 0;
+    }
+
+    /**
+     * 库存紧张：限量库存、未售罄且可用库存低于预警线（min_stock）
+     */
+    static boolean isLowStock(Inventory inventory) {
+        if (inventory.getStockMode() != Inventory.StockMode.LIMITED || isSoldOut(inventory)) {
+            return false;
+        }
+        int minStock = inventory.getMinStock() != null ? inventory.getMinStock() : 0;
+        return availableStock(inventory) < minStock;
+    }
+
+    private static int availableStock(Inventory inventory) {
+        int currentStock = inventory.getCurrentStock() != null ? inventory.getCurrentStock() : 0;
+        int lockedStock = inventory.getLockedStock() != null ? inventory.getLockedStock() : 0;
+        return currentStock - lockedStock;
+    }
+
+    private static void appendBits(List<String> args, Inventory inventory) {
+        args.add(ordinalField(inventory.getProductId(), inventory.getSkuId()));
+        args.add(isSoldOut(inventory) ? "1" : "0");
+        args.add(isLowStock(inventory) ? "1" : "0");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Object> readSnapshot(Long storeId, String clientVersion) {
+        // 位图是二进制数据，结果按原始字节返回，不能走模板的字符串序列化
+        return (List<Object>) redisTemplate.execute(readScript, RedisSerializer.string(),
+                (RedisSerializer<List>) (RedisSerializer<?>) RedisSerializer.byteArray(),
+                storeKeys(storeId, "ord", "sold", "low", "built", "ver"), clientVersion);
+    }
+
+    private static Map<String, Long> toOrdinals(List<?> flatHash) {
+        Map<String, Long> ordinals = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < flatHash.size(); i += 2) {
+            String field = new String((byte[]) flatHash.get(i), StandardCharsets.UTF_8);
+            if (field.startsWith("#")) {
+                continue;
+            }
+            ordinals.put(field, Long.valueOf(new String((byte[]) flatHash.get(i + 1), StandardCharsets.UTF_8)));
+        }
+        return ordinals;
+    }
+
+    private static List<String> storeKeys(Long storeId, String... suffixes) {
+        List<String> keys = new ArrayList<>(suffixes.length);
+        for (String suffix : suffixes) {
+            keys.add(KEY_PREFIX + storeId + "}:" + suffix);
+        }
+        return keys;
+    }
+}
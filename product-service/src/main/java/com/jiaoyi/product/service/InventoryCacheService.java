@@ -1,66 +1,160 @@
 package com.jiaoyi.product.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jiaoyi.product.entity.Inventory;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * 库存缓存服务
  * 提供库存数据的Redis缓存功能
- * 
+ *
+ * 缓存结构：
+ * - inventory:item:{productId}      库存条目（Hash，短字段名，存库存行的全部列，ver 为 update_time 秒）
+ *   写入带版本号比较，旧版本不覆盖新版本（同一秒内的写入都接受，update_time 是 DATETIME，只精确到秒）；
+ *   库存变更流只做部分字段更新（库存数量/模式/预警线），条目不存在时不创建
+ * - inventory:low_stock:idx         库存不足索引（ZSet，member=productId，score=可用库存-预警线，越小越紧缺）
+ *   和条目在同一个脚本里增量维护（索引已初始化且条目写入未被版本号拒绝时），读取时按索引取条目；
+ *   重建时先写临时键再 RENAME 覆盖，读取方不会看到清空后未写完的索引
+ * - inventory:low_stock:built       库存不足索引已初始化标记（带过期时间，过期后下次读取按数据库重建，兜底修正偏差）
+ *
  * @author system
  * @since 2024-01-01
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class InventoryCacheService {
 
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
-    
+    private final DefaultRedisScript<Long> entryWriteScript;
+
     // 缓存键前缀
-    private static final String INVENTORY_KEY_PREFIX = "inventory:product:";
-    private static final String LOW_STOCK_KEY = "inventory:low_stock";
-    private static final String INVENTORY_LIST_KEY = "inventory:all";
-    
+    private static final String INVENTORY_KEY_PREFIX = "inventory:item:";
+    private static final String LOW_STOCK_INDEX_KEY = "inventory:low_stock:idx";
+    private static final String LOW_STOCK_BUILT_KEY = "inventory:low_stock:built";
+
     // 缓存过期时间
     private static final Duration CACHE_EXPIRE_TIME = Duration.ofMinutes(30);
     private static final Duration LOW_STOCK_CACHE_EXPIRE_TIME = Duration.ofMinutes(10);
-    
+
+    // 条目字段（短字段名，Hash 保持紧凑编码）
+    private static final String F_ID = "id";
+    private static final String F_STORE_ID = "sid";
+    private static final String F_SHARD_ID = "shd";
+    private static final String F_PRODUCT_ID = "pid";
+    private static final String F_SKU_ID = "kid";
+    private static final String F_PRODUCT_NAME = "pn";
+    private static final String F_SKU_NAME = "kn";
+    private static final String F_STOCK_MODE = "mode";
+    private static final String F_CURRENT_STOCK = "cur";
+    private static final String F_LOCKED_STOCK = "lck";
+    private static final String F_MIN_STOCK = "min";
+    private static final String F_MAX_STOCK = "max";
+    private static final String F_RESTORE_MODE = "rm";
+    private static final String F_RESTORE_TIME = "rt";
+    private static final String F_RESTORE_STOCK = "rs";
+    private static final String F_LAST_RESTORE_TIME = "lrt";
+    private static final String F_RESTORE_ENABLED = "re";
+    private static final String F_PLAN_QUANTITY = "pq";
+    private static final String F_ALLOCATION_MODE = "am";
+    private static final String F_SHARED_POOL_QUANTITY = "sp";
+    private static final String F_LAST_MANUAL_SET_TIME = "lm";
+    private static final String F_CREATE_TIME = "ct";
+    private static final String F_VERSION = "ver";
+
+    // Lua脚本：写入库存条目并维护库存不足索引（版本号比较，旧版本不覆盖，被拒绝时索引也不动；部分更新只作用于已存在的条目）
+    // KEYS[1]=条目键，KEYS[2]=库存不足索引，KEYS[3]=索引已初始化标记
+    // ARGV[1]=版本号（0表示未知，总是写入），ARGV[2]=1整行/0部分，ARGV[3]=过期秒数，
+    // ARGV[4]=索引member，ARGV[5]=索引score（空串表示不缺货，从索引移除），之后为字段/值对
+    private static final String ENTRY_WRITE_LUA_SCRIPT =
+        "local cur = redis.call('HGET', KEYS[1], 'ver')\n" +
+        "if cur and ARGV[1] ~= '0' and tonumber(ARGV[1]) < tonumber(cur) then\n" +
+        "    return 0  -- 缓存中已是更新的版本\n" +
+        "end\n" +
+        "if ARGV[2] == '1' then\n" +
+        "    redis.call('HSET', KEYS[1], unpack(ARGV, 6))\n" +
+        "    redis.call('EXPIRE', KEYS[1], ARGV[3])\n" +
+        "elseif cur then\n" +
+        "    redis.call('HSET', KEYS[1], unpack(ARGV, 6))\n" +
+        "end\n" +
+        "if redis.call('EXISTS', KEYS[3]) == 1 then\n" +
+        "    if ARGV[5] == '' then\n" +
+        "        redis.call('ZREM', KEYS[2], ARGV[4])\n" +
+        "    else\n" +
+        "        redis.call('ZADD', KEYS[2], ARGV[5], ARGV[4])\n" +
+        "    end\n" +
+        "end\n" +
+        "return 1\n";
+
+    public InventoryCacheService(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.entryWriteScript = new DefaultRedisScript<>(ENTRY_WRITE_LUA_SCRIPT, Long.class);
+    }
+
     /**
      * 根据商品ID获取库存信息（优先从缓存）
      */
     public Optional<Inventory> getInventoryByProductId(Long productId) {
         String cacheKey = INVENTORY_KEY_PREFIX + productId;
-        
-        try {
-            // 先从缓存获取
-            String cachedData = redisTemplate.opsForValue().get(cacheKey);
-            if (cachedData != null) {
-                log.debug("从缓存获取库存信息，商品ID: {}", productId);
-                Inventory inventory = objectMapper.readValue(cachedData, Inventory.class);
-                return Optional.of(inventory);
-            }
-            
+
+        Map<Object, Object> entry = redisTemplate.opsForHash().entries(cacheKey);
+        if (entry.isEmpty()) {
             log.debug("缓存未命中，商品ID: {}", productId);
             return Optional.empty();
-            
-        } catch (JsonProcessingException e) {
-            log.error("反序列化库存信息失败，商品ID: {}", productId, e);
-            return Optional.empty();
         }
+        log.debug("从缓存获取库存信息，商品ID: {}", productId);
+        return Optional.of(decode(entry));
     }
-    
+
+    /**
+     * 批量获取库存信息（一次管道读取，未命中的商品不在结果中）
+     */
+    public Map<Long, Inventory> getInventoriesByProductIds(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> ids = productIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        List<Object> entries = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ids.forEach(productId -> ops.opsForHash().entries(INVENTORY_KEY_PREFIX + productId));
+                return null;
+            }
+        });
+
+        Map<Long, Inventory> result = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object entry = entries.get(i);
+            if (entry instanceof Map<?, ?> map && !map.isEmpty()) {
+                result.put(ids.get(i), decode(map));
+            }
+        }
+        return result;
+    }
+
     /**
      * 缓存库存信息
      */
@@ -68,19 +162,10 @@ public class InventoryCacheService {
         if (inventory == null || inventory.getProductId() == null) {
             return;
         }
-        
-        String cacheKey = INVENTORY_KEY_PREFIX + inventory.getProductId();
-        
-        try {
-            String jsonData = objectMapper.writeValueAsString(inventory);
-            redisTemplate.opsForValue().set(cacheKey, jsonData, CACHE_EXPIRE_TIME);
-            log.debug("缓存库存信息成功，商品ID: {}", inventory.getProductId());
-            
-        } catch (JsonProcessingException e) {
-            log.error("序列化库存信息失败，商品ID: {}", inventory.getProductId(), e);
-        }
+        writeEntries(Collections.singletonList(inventory), true);
+        log.debug("缓存库存信息成功，商品ID: {}", inventory.getProductId());
     }
-    
+
     /**
      * 更新缓存中的库存信息
      */
@@ -88,19 +173,28 @@ public class InventoryCacheService {
         if (inventory == null || inventory.getProductId() == null) {
             return;
         }
-        
-        String cacheKey = INVENTORY_KEY_PREFIX + inventory.getProductId();
-        
-        try {
-            String jsonData = objectMapper.writeValueAsString(inventory);
-            redisTemplate.opsForValue().set(cacheKey, jsonData, CACHE_EXPIRE_TIME);
-            log.debug("更新库存缓存成功，商品ID: {}", inventory.getProductId());
-            
-        } catch (JsonProcessingException e) {
-            log.error("更新库存缓存失败，商品ID: {}", inventory.getProductId(), e);
+        writeEntries(Collections.singletonList(inventory), true);
+        log.debug("更新库存缓存成功，商品ID: {}", inventory.getProductId());
+    }
+
+    /**
+     * 批量更新库存缓存（库存变更流用：一次管道提交，只更新已缓存条目的库存数量/模式/预警线字段，
+     * 未缓存的条目不创建，读取时回源）
+     */
+    public void updateInventoryCacheBatch(Collection<Inventory> inventories) {
+        if (inventories == null || inventories.isEmpty()) {
+            return;
+        }
+        List<Inventory> valid = inventories.stream()
+                .filter(inventory -> inventory != null && inventory.getProductId() != null)
+                .collect(Collectors.toList());
+        if (valid.isEmpty()) {
+            return;
         }
+        writeEntries(valid, false);
+        log.debug("批量更新库存缓存成功，数量: {}", valid.size());
     }
-    
+
     /**
      * 删除缓存中的库存信息
      */
@@ -108,123 +202,85 @@ public class InventoryCacheService {
         if (productId == null) {
             return;
         }
-        
+
         String cacheKey = INVENTORY_KEY_PREFIX + productId;
         redisTemplate.delete(cacheKey);
         log.debug("删除库存缓存，商品ID: {}", productId);
     }
-    
+
     /**
-     * 批量删除库存缓存
+     * 批量删除库存缓存（一次 DEL 多个键）
      */
-    public void evictInventoryCacheBatch(List<Long> productIds) {
+    public void evictInventoryCacheBatch(Collection<Long> productIds) {
         if (productIds == null || productIds.isEmpty()) {
             return;
         }
-        
-        for (Long productId : productIds) {
-            evictInventoryCache(productId);
-        }
-        
+
+        List<String> cacheKeys = productIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(productId -> INVENTORY_KEY_PREFIX + productId)
+                .collect(Collectors.toList());
+        redisTemplate.delete(cacheKeys);
+
         log.debug("批量删除库存缓存，商品数量: {}", productIds.size());
     }
-    
+
     /**
-     * 缓存库存不足商品列表
+     * 按数据库查询结果重建库存不足索引（同时缓存这些库存条目）
+     * 先写到临时键，写完后 RENAME 覆盖正式索引，重建过程中读取方看到的仍是旧索引
      */
-    public void cacheLowStockItems(List<Inventory> lowStockItems) {
-        if (lowStockItems == null || lowStockItems.isEmpty()) {
-            return;
-        }
-        
-        try {
-            String jsonData = objectMapper.writeValueAsString(lowStockItems);
-            redisTemplate.opsForValue().set(LOW_STOCK_KEY, jsonData, LOW_STOCK_CACHE_EXPIRE_TIME);
-            log.debug("缓存库存不足商品列表成功，数量: {}", lowStockItems.size());
-            
-        } catch (JsonProcessingException e) {
-            log.error("序列化库存不足商品列表失败", e);
+    public void rebuildLowStockIndex(List<Inventory> lowStockItems) {
+        List<Inventory> items = lowStockItems != null
+                ? lowStockItems.stream().filter(inventory -> inventory != null && inventory.getProductId() != null)
+                    .collect(Collectors.toList())
+                : Collections.emptyList();
+        if (items.isEmpty()) {
+            redisTemplate.delete(LOW_STOCK_INDEX_KEY);
+        } else {
+            writeEntries(items, true);
+            String tempKey = LOW_STOCK_INDEX_KEY + ":tmp:" + UUID.randomUUID();
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (Inventory inventory : items) {
+                        ops.opsForZSet().add(tempKey, String.valueOf(inventory.getProductId()), shortage(inventory));
+                    }
+                    return null;
+                }
+            });
+            redisTemplate.rename(tempKey, LOW_STOCK_INDEX_KEY);
         }
+        redisTemplate.opsForValue().set(LOW_STOCK_BUILT_KEY, "1", LOW_STOCK_CACHE_EXPIRE_TIME);
+        log.debug("重建库存不足索引成功，数量: {}", items.size());
     }
-    
+
     /**
-     * 获取库存不足商品列表（优先从缓存）
+     * 获取库存不足商品ID（按紧缺程度升序；索引未初始化或已过期时返回空，由调用方按数据库重建）
      */
-    public Optional<List<Inventory>> getLowStockItems() {
-        try {
-            String cachedData = redisTemplate.opsForValue().get(LOW_STOCK_KEY);
-            if (cachedData != null) {
-                log.debug("从缓存获取库存不足商品列表");
-                List<Inventory> lowStockItems = objectMapper.readValue(cachedData, 
-                    objectMapper.getTypeFactory().constructCollectionType(List.class, Inventory.class));
-                return Optional.of(lowStockItems);
-            }
-            
-            log.debug("库存不足商品列表缓存未命中");
+    public Optional<List<Long>> getLowStockProductIds() {
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(LOW_STOCK_BUILT_KEY))) {
+            log.debug("库存不足索引未初始化");
             return Optional.empty();
-            
-        } catch (JsonProcessingException e) {
-            log.error("反序列化库存不足商品列表失败", e);
-            return Optional.empty();
-        }
-    }
-    
-    /**
-     * 删除库存不足商品列表缓存
-     */
-    public void evictLowStockItemsCache() {
-        redisTemplate.delete(LOW_STOCK_KEY);
-        log.debug("删除库存不足商品列表缓存");
-    }
-    
-    /**
-     * 缓存所有库存信息
-     */
-    public void cacheAllInventories(List<Inventory> inventories) {
-        if (inventories == null || inventories.isEmpty()) {
-            return;
         }
-        
-        try {
-            String jsonData = objectMapper.writeValueAsString(inventories);
-            redisTemplate.opsForValue().set(INVENTORY_LIST_KEY, jsonData, CACHE_EXPIRE_TIME);
-            log.debug("缓存所有库存信息成功，数量: {}", inventories.size());
-            
-        } catch (JsonProcessingException e) {
-            log.error("序列化所有库存信息失败", e);
+        Set<String> members = redisTemplate.opsForZSet().range(LOW_STOCK_INDEX_KEY, 0, -1);
+        if (members == null) {
+            return Optional.of(Collections.emptyList());
         }
+        log.debug("从缓存获取库存不足商品索引，数量: {}", members.size());
+        return Optional.of(members.stream().map(Long::valueOf).collect(Collectors.toList()));
     }
-    
-    /**
-     * 获取所有库存信息（优先从缓存）
-     */
-    public Optional<List<Inventory>> getAllInventories() {
-        try {
-            String cachedData = redisTemplate.opsForValue().get(INVENTORY_LIST_KEY);
-            if (cachedData != null) {
-                log.debug("从缓存获取所有库存信息");
-                List<Inventory> inventories = objectMapper.readValue(cachedData, 
-                    objectMapper.getTypeFactory().constructCollectionType(List.class, Inventory.class));
-                return Optional.of(inventories);
-            }
-            
-            log.debug("所有库存信息缓存未命中");
-            return Optional.empty();
-            
-        } catch (JsonProcessingException e) {
-            log.error("反序列化所有库存信息失败", e);
-            return Optional.empty();
-        }
-    }
-    
+
     /**
-     * 删除所有库存信息缓存
+     * 删除库存不足索引（下次读取时按数据库重建）
      */
-    public void evictAllInventoriesCache() {
-        redisTemplate.delete(INVENTORY_LIST_KEY);
-        log.debug("删除所有库存信息缓存");
+    public void evictLowStockItemsCache() {
+        redisTemplate.delete(List.of(LOW_STOCK_BUILT_KEY, LOW_STOCK_INDEX_KEY));
+        log.debug("删除库存不足商品索引");
     }
-    
+
     /**
      * 清空所有库存相关缓存
      */
@@ -233,7 +289,7 @@ public class InventoryCacheService {
         redisTemplate.delete(redisTemplate.keys("inventory:*"));
         log.info("清空所有库存相关缓存");
     }
-    
+
     /**
      * 检查缓存是否存在
      */
@@ -241,11 +297,11 @@ public class InventoryCacheService {
         if (productId == null) {
             return false;
         }
-        
+
         String cacheKey = INVENTORY_KEY_PREFIX + productId;
         return Boolean.TRUE.equals(redisTemplate.hasKey(cacheKey));
     }
-    
+
     /**
      * 获取缓存剩余过期时间（秒）
      */
@@ -253,9 +309,159 @@ public class InventoryCacheService {
         if (productId == null) {
             return -1L;
         }
-        
+
         String cacheKey = INVENTORY_KEY_PREFIX + productId;
         return redisTemplate.getExpire(cacheKey, TimeUnit.SECONDS);
     }
-}
 
+    /**
+     * 库存是否不足（与 selectLowStockItems 条件一致：current_stock - locked_stock < min_stock）
+     */
+    static boolean isLowStock(Inventory inventory) {
+        return inventory.getCurrentStock() != null && inventory.getMinStock() != null
+                && shortage(inventory) < 0;
+    }
+
+    private static double shortage(Inventory inventory) {
+        int currentStock = inventory.getCurrentStock() != null ? inventory.getCurrentStock() : 0;
+        int lockedStock = inventory.getLockedStock() != null ? inventory.getLockedStock() : 0;
+        int minStock = inventory.getMinStock() != null ? inventory.getMinStock() : 0;
+        return currentStock - lockedStock - minStock;
+    }
+
+    /**
+     * 一次管道写入条目（每个条目一次脚本调用，库存不足索引在脚本内随条目一起维护）
+     */
+    private void writeEntries(List<Inventory> inventories, boolean full) {
+        String expireSeconds = String.valueOf(CACHE_EXPIRE_TIME.getSeconds());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Inventory inventory : inventories) {
+                    List<String> args = new ArrayList<>(56);
+                    args.add(String.valueOf(version(inventory)));
+                    args.add(full ? "1" : "0");
+                    args.add(expireSeconds);
+                    args.add(String.valueOf(inventory.getProductId()));
+                    args.add(isLowStock(inventory) ? String.valueOf((long) shortage(inventory)) : "");
+                    encode(inventory, full, args);
+                    ops.execute(entryWriteScript,
+                            List.of(INVENTORY_KEY_PREFIX + inventory.getProductId(), LOW_STOCK_INDEX_KEY, LOW_STOCK_BUILT_KEY),
+                            args.toArray());
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 编码为字段/值对（null 编码为空串，部分更新时能覆盖旧值）
+     */
+    private static void encode(Inventory inventory, boolean full, List<String> args) {
+        if (full) {
+            put(args, F_ID, inventory.getId());
+            put(args, F_STORE_ID, inventory.getStoreId());
+            put(args, F_SHARD_ID, inventory.getProductShardId());
+            put(args, F_PRODUCT_ID, inventory.getProductId());
+            put(args, F_SKU_ID, inventory.getSkuId());
+            put(args, F_PRODUCT_NAME, inventory.getProductName());
+            put(args, F_SKU_NAME, inventory.getSkuName());
+            put(args, F_RESTORE_MODE, inventory.getRestoreMode() != null ? inventory.getRestoreMode().name() : null);
+            put(args, F_RESTORE_TIME, toMillis(inventory.getRestoreTime()));
+            put(args, F_RESTORE_STOCK, inventory.getRestoreStock());
+            put(args, F_LAST_RESTORE_TIME, toMillis(inventory.getLastRestoreTime()));
+            put(args, F_RESTORE_ENABLED, inventory.getRestoreEnabled());
+            put(args, F_PLAN_QUANTITY, inventory.getPlanQuantity() != null ? inventory.getPlanQuantity().toPlainString() : null);
+            put(args, F_ALLOCATION_MODE, inventory.getAllocationMode());
+            put(args, F_SHARED_POOL_QUANTITY,
+                    inventory.getSharedPoolQuantity() != null ? inventory.getSharedPoolQuantity().toPlainString() : null);
+            put(args, F_LAST_MANUAL_SET_TIME, toMillis(inventory.getLastManualSetTime()));
+            put(args, F_CREATE_TIME, toMillis(inventory.getCreateTime()));
+        }
+        put(args, F_STOCK_MODE, inventory.getStockMode() != null ? inventory.getStockMode().name() : null);
+        put(args, F_CURRENT_STOCK, inventory.getCurrentStock());
+        put(args, F_LOCKED_STOCK, inventory.getLockedStock());
+        put(args, F_MIN_STOCK, inventory.getMinStock());
+        put(args, F_MAX_STOCK, inventory.getMaxStock());
+        put(args, F_VERSION, version(inventory));
+    }
+
+    private static void put(List<String> args, String field, Object value) {
+        args.add(field);
+        args.add(value != null ? String.valueOf(value) : "");
+    }
+
+    private static Inventory decode(Map<?, ?> entry) {
+        Inventory inventory = new Inventory();
+        inventory.setId(toLong(entry.get(F_ID)));
+        inventory.setStoreId(toLong(entry.get(F_STORE_ID)));
+        inventory.setProductShardId(toInteger(entry.get(F_SHARD_ID)));
+        inventory.setProductId(toLong(entry.get(F_PRODUCT_ID)));
+        inventory.setSkuId(toLong(entry.get(F_SKU_ID)));
+        inventory.setProductName(toText(entry.get(F_PRODUCT_NAME)));
+        inventory.setSkuName(toText(entry.get(F_SKU_NAME)));
+        String stockMode = toText(entry.get(F_STOCK_MODE));
+        inventory.setStockMode(stockMode != null ? Inventory.StockMode.valueOf(stockMode) : null);
+        inventory.setCurrentStock(toInteger(entry.get(F_CURRENT_STOCK)));
+        inventory.setLockedStock(toInteger(entry.get(F_LOCKED_STOCK)));
+        inventory.setMinStock(toInteger(entry.get(F_MIN_STOCK)));
+        inventory.setMaxStock(toInteger(entry.get(F_MAX_STOCK)));
+        String restoreMode = toText(entry.get(F_RESTORE_MODE));
+        inventory.setRestoreMode(restoreMode != null ? Inventory.RestoreMode.valueOf(restoreMode) : null);
+        inventory.setRestoreTime(toDateTime(toLong(entry.get(F_RESTORE_TIME))));
+        inventory.setRestoreStock(toInteger(entry.get(F_RESTORE_STOCK)));
+        inventory.setLastRestoreTime(toDateTime(toLong(entry.get(F_LAST_RESTORE_TIME))));
+        String restoreEnabled = toText(entry.get(F_RESTORE_ENABLED));
+        inventory.setRestoreEnabled(restoreEnabled != null ? Boolean.valueOf(restoreEnabled) : null);
+        inventory.setPlanQuantity(toDecimal(entry.get(F_PLAN_QUANTITY)));
+        inventory.setAllocationMode(toText(entry.get(F_ALLOCATION_MODE)));
+        inventory.setSharedPoolQuantity(toDecimal(entry.get(F_SHARED_POOL_QUANTITY)));
+        inventory.setLastManualSetTime(toDateTime(toLong(entry.get(F_LAST_MANUAL_SET_TIME))));
+        inventory.setCreateTime(toDateTime(toLong(entry.get(F_CREATE_TIME))));
+        Long version = toLong(entry.get(F_VERSION));
+        inventory.setUpdateTime(version != null && version > 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochSecond(version), ZoneId.systemDefault()) : null);
+        return inventory;
+    }
+
+    /**
+     * 版本号：update_time 截断到秒（与 DATETIME 精度一致，Java 侧带毫秒的时间也按秒比较；没有 update_time 时为 0，表示未知）
+     */
+    private static long version(Inventory inventory) {
+        LocalDateTime updateTime = inventory.getUpdateTime();
+        return updateTime != null ? updateTime.atZone(ZoneId.systemDefault()).toEpochSecond() : 0L;
+    }
+
+    private static Long toMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : null;
+    }
+
+    private static LocalDateTime toDateTime(Long millis) {
+        return millis != null ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()) : null;
+    }
+
+    private static String toText(Object value) {
+        if (value == null) {
+            return null;
+        }
+        String text = value.toString();
+        return text.isEmpty() ? null : text;
+    }
+
+    private static Long toLong(Object value) {
+        String text = toText(value);
+        return text != null ? Long.valueOf(text) : null;
+    }
+
+    private static Integer toInteger(Object value) {
+        String text = toText(value);
+        return text != null ? Integer.valueOf(text) : null;
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        String text = toText(value);
+        return text != null ? new BigDecimal(text) : null;
+    }
+}
@@ -0,0 +1,332 @@
+package com.jiaoyi.product.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.product.config.RocketMQConfig;
+import com.jiaoyi.product.dto.InventoryChangeFrame;
+import com.jiaoyi.product.dto.StockSyncToPosMessage;
+import com.jiaoyi.product.entity.Inventory;
+import com.jiaoyi.product.entity.InventoryChannel;
+import com.jiaoyi.product.mapper.sharding.InventoryChannelMapper;
+import com.jiaoyi.product.mapper.sharding.InventoryMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 库存变更帧合并器（消费端）
+ *
+ * 消费线程提交的变更帧按门店暂存，每 window-millis 统一刷新一次：
+ * 1. 每个门店按 (product_shard_id, store_id, productIds) 一次回查最新库存和渠道库存
+ * 2. 本次刷新涉及的全部库存缓存通过一次 Redis 管道写入
+ * 3. 每个门店一次脚本调用增量维护门店可售位图（{@link InventoryAvailabilityService}）
+ * 4. 开启 inventory.channel-quota.rebalance-on-change 时（默认关闭），库存被重新设置（POS同步、云端设置、恢复、离线回放）的
+ *    库存增量重新分配渠道额度（{@link ChannelQuotaAllocator}），扣减/归还不触发；
+ *    重新分配会重置渠道已售数，营业中频繁触发会让各渠道额度反复回到初始比例，默认只在开店前整体分配
+ * 5. 每个门店下发一条 POS 同步消息（{@link StockSyncToPosMessage#getItems()}），只包含非 POS 来源的变更
+ * 刷新完成后才完成提交方的 future，消费线程据此确认消息；刷新失败时 future 异常，由 RocketMQ 重投
+ */
+@Service
+@Slf4j
+public class InventoryChangeCoalescer {
+
+    /**
+     * 回查库存时 IN 列表的最大长度
+     */
+    private static final int QUERY_CHUNK_SIZE = 500;
+
+    private final InventoryMapper inventoryMapper;
+    private final InventoryChannelMapper channelMapper;
+    private final InventoryCacheService inventoryCacheService;
+    private final InventoryAvailabilityService inventoryAvailabilityService;
+    private final ChannelQuotaAllocator channelQuotaAllocator;
+    private final boolean rebalanceOnChange;
+    private final RocketMQTemplate rocketMQTemplate;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService flushExecutor;
+
+    private final Object lock = new Object();
+    private Map<Long, PendingStore> pending = new LinkedHashMap<>();
+
+    public InventoryChangeCoalescer(InventoryMapper inventoryMapper,
+                                    InventoryChannelMapper channelMapper,
+                                    InventoryCacheService inventoryCacheService,
+                                    InventoryAvailabilityService inventoryAvailabilityService,
+                                    ChannelQuotaAllocator channelQuotaAllocator,
+                                    RocketMQTemplate rocketMQTemplate,
+                                    ObjectMapper objectMapper,
+                                    @Value("${inventory.change-stream.window-millis:100}") long windowMillis,
+                                    @Value("${inventory.channel-quota.rebalance-on-change:false}") boolean rebalanceOnChange) {
+        this.inventoryMapper = inventoryMapper;
+        this.channelMapper = channelMapper;
+        this.inventoryCacheService = inventoryCacheService;
+        this.inventoryAvailabilityService = inventoryAvailabilityService;
+        this.channelQuotaAllocator = channelQuotaAllocator;
+        this.rebalanceOnChange = rebalanceOnChange;
+        this.rocketMQTemplate = rocketMQTemplate;
+        this.objectMapper = objectMapper;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "inventory-change-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = Math.max(windowMillis, 10);
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交变更帧，返回的 future 在该帧所在门店刷新完成后完成
+     */
+    public CompletableFuture<Void> submit(InventoryChangeFrame frame) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (frame == null || frame.getStoreId() == null || frame.getChanges() == null || frame.getChanges().isEmpty()) {
+            future.complete(null);
+            return future;
+        }
+        synchronized (lock) {
+            pending.computeIfAbsent(frame.getStoreId(), storeId -> new PendingStore(storeId, frame.getProductShardId()))
+                    .merge(frame, future);
+        }
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        // 停机前刷新已暂存的帧（未刷新的帧对应的消息不会被确认，重启后重投）
+        flush();
+    }
+
+    private void flush() {
+        Map<Long, PendingStore> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        try {
+            // 1. 按门店回查最新库存
+            Map<PendingStore, List<Inventory>> loaded = new LinkedHashMap<>();
+            List<Inventory> allInventories = new ArrayList<>();
+            for (PendingStore store : batch.values()) {
+                try {
+                    List<Inventory> inventories = loadChangedInventories(store);
+                    loaded.put(store, inventories);
+                    allInventories.addAll(inventories);
+                } catch (Exception e) {
+                    log.error("库存变更流回查库存失败: storeId={}", store.storeId, e);
+                    store.fail(e);
+                }
+            }
+
+            // 2. 一次管道刷新全部缓存
+            try {
+                inventoryCacheService.updateInventoryCacheBatch(allInventories);
+            } catch (Exception e) {
+                log.error("库存变更流批量刷新缓存失败: stores={}, inventories={}", loaded.size(), allInventories.size(), e);
+                loaded.keySet().forEach(store -> store.fail(e));
+                return;
+            }
+
+            // 3. 每个门店增量维护可售位图，4. 增量重新分配渠道额度，5. 每个门店一条 POS 同步消息
+            for (Map.Entry<PendingStore, List<Inventory>> entry : loaded.entrySet()) {
+                PendingStore store = entry.getKey();
+                try {
+                    inventoryAvailabilityService.applyStoreChanges(store.storeId, entry.getValue());
+                    rebalanceChannelQuotas(store, entry.getValue());
+                    pushToPos(store, entry.getValue());
+                    store.complete();
+                } catch (Exception e) {
+                    log.error("库存变更流维护可售位图、分配渠道额度或下发POS失败: storeId={}", store.storeId, e);
+                    store.fail(e);
+                }
+            }
+            log.debug("库存变更流刷新完成: stores={}, inventories={}", loaded.size(), allInventories.size());
+        } catch (Exception e) {
+            // 兜底：不让异常终止定时刷新
+            log.error("库存变更流刷新失败", e);
+            batch.values().forEach(store -> store.fail(e));
+        }
+    }
+
+    /**
+     * 回查门店内发生变更的库存（按商品批量查询，再过滤出变更的库存行）
+     */
+    private List<Inventory> loadChangedInventories(PendingStore store) {
+        List<Long> productIds = new ArrayList<>(store.productIds());
+        List<Inventory> result = new ArrayList<>();
+        for (int from = 0; from < productIds.size(); from += QUERY_CHUNK_SIZE) {
+            List<Long> chunk = productIds.subList(from, Math.min(from + QUERY_CHUNK_SIZE, productIds.size()));
+            for (Inventory inventory : inventoryMapper.selectByStoreIdAndProductIds(store.productShardId, store.storeId, chunk)) {
+                if (store.isChanged(inventory)) {
+                    result.add(inventory);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 只对库存被重新设置的限量库存重新分配渠道额度
+     */
+    private void rebalanceChannelQuotas(PendingStore store, List<Inventory> inventories) {
+        if (!rebalanceOnChange) {
+            return;
+        }
+        List<Long> inventoryIds = inventories.stream()
+                .filter(inventory -> inventory.getStockMode() == Inventory.StockMode.LIMITED)
+                .filter(store::shouldRebalance)
+                .map(Inventory::getId)
+                .collect(Collectors.toList());
+        if (!inventoryIds.isEmpty()) {
+            channelQuotaAllocator.allocateChanged(store.storeId, inventoryIds);
+        }
+    }
+
+    private void pushToPos(PendingStore store, List<Inventory> inventories) throws Exception {
+        List<Inventory> toPush = inventories.stream()
+                .filter(store::shouldPushToPos)
+                .collect(Collectors.toList());
+        if (toPush.isEmpty()) {
+            return;
+        }
+
+        Set<Long> inventoryIds = toPush.stream().map(Inventory::getId).collect(Collectors.toSet());
+        Map<Long, List<InventoryChannel>> channelsByInventory = channelMapper.selectByInventoryIds(inventoryIds).stream()
+                .collect(Collectors.groupingBy(InventoryChannel::getInventoryId));
+
+        List<StockSyncToPosMessage.StockData> items = new ArrayList<>(toPush.size());
+        for (Inventory inventory : toPush) {
+            items.add(buildStockData(inventory, channelsByInventory.get(inventory.getId())));
+        }
+        StockSyncToPosMessage message = new StockSyncToPosMessage();
+        message.setStoreId(store.storeId);
+        message.setItems(items);
+        if (items.size() == 1) {
+            message.setData(items.get(0));
+        }
+
+        String destination = RocketMQConfig.INVENTORY_STOCK_SYNC_TOPIC + ":" + RocketMQConfig.INVENTORY_STOCK_SYNC_TAG;
+        rocketMQTemplate.syncSend(destination, MessageBuilder
+                .withPayload(objectMapper.writeValueAsString(message))
+                .setHeader("KEYS", "stock-sync:" + store.storeId)
+                .build());
+        log.info("库存变更已按门店下发POS: storeId={}, items={}", store.storeId, items.size());
+    }
+
+    private StockSyncToPosMessage.StockData buildStockData(Inventory inventory, List<InventoryChannel> channels) {
+        boolean unlimited = inventory.getStockMode() == Inventory.StockMode.UNLIMITED;
+        int currentStock = inventory.getCurrentStock() != null ? inventory.getCurrentStock() : 0;
+
+        StockSyncToPosMessage.StockData data = new StockSyncToPosMessage.StockData();
+        data.setProductId(inventory.getProductId());
+        data.setSkuId(inventory.getSkuId());
+        data.setStockStatus(unlimited || currentStock > 0 ? 1 : 2);
+        data.setStockType(unlimited ? 1 : 2);
+        data.setPlanQuantity(inventory.getPlanQuantity());
+        data.setRealQuantity(new BigDecimal(currentStock));
+        data.setAutoRestoreType(Boolean.TRUE.equals(inventory.getRestoreEnabled()) ? 1 : 2);
+        data.setAutoRestoreAt(inventory.getRestoreTime());
+        if (channels != null) {
+            data.setChannelStocks(channels.stream().map(channel -> {
+                StockSyncToPosMessage.ChannelStock ch = new StockSyncToPosMessage.ChannelStock();
+                ch.setStockStatus(channel.getStockStatus());
+                ch.setStockType(channel.getStockType());
+                ch.setChannelCode(channel.getChannelCode());
+                return ch;
+            }).collect(Collectors.toList()));
+        }
+        return data;
+    }
+
+    /**
+     * 一个门店在本窗口内暂存的变更
+     */
+    private static class PendingStore {
+        private final Long storeId;
+        private final Integer productShardId;
+        private final Set<Long> changedInventoryIds = new HashSet<>();
+        private final Set<String> changedProductSkus = new HashSet<>();
+        private final Set<Long> productIds = new LinkedHashSet<>();
+        /**
+         * 有非 POS 来源变更的库存（需要下发 POS）
+         */
+        private final Set<String> pushKeys = new HashSet<>();
+        /**
+         * 库存被重新设置（非扣减/归还）的库存（需要重新分配渠道额度）
+         */
+        private final Set<String> rebalanceKeys = new HashSet<>();
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        PendingStore(Long storeId, Integer productShardId) {
+            this.storeId = storeId;
+            this.productShardId = productShardId;
+        }
+
+        void merge(InventoryChangeFrame frame, CompletableFuture<Void> waiter) {
+            for (InventoryChangeFrame.Change change : frame.getChanges()) {
+                if (change.getProductId() == null) {
+                    continue;
+                }
+                productIds.add(change.getProductId());
+                String productSku = change.getProductId() + ":" + change.getSkuId();
+                changedProductSkus.add(productSku);
+                if (change.getInventoryId() != null) {
+                    changedInventoryIds.add(change.getInventoryId());
+                }
+                if (!InventoryChangeStream.SOURCE_POS.equals(change.getSource())) {
+                    pushKeys.add(productSku);
+                }
+                if (!InventoryChangeStream.CHANGE_DEDUCT.equals(change.getChangeType())
+                        && !InventoryChangeStream.CHANGE_RETURN.equals(change.getChangeType())) {
+                    rebalanceKeys.add(productSku);
+                }
+            }
+            waiters.add(waiter);
+        }
+
+        Set<Long> productIds() {
+            return productIds;
+        }
+
+        boolean isChanged(Inventory inventory) {
+            return changedInventoryIds.contains(inventory.getId())
+                    || changedProductSkus.contains(inventory.getProductId() + ":" + inventory.getSkuId());
+        }
+
+        boolean shouldPushToPos(Inventory inventory) {
+            return pushKeys.contains(inventory.getProductId() + ":" + inventory.getSkuId());
+        }
+
+        boolean shouldRebalance(Inventory inventory) {
+            return rebalanceKeys.contains(inventory.getProductId() + ":" + inventory.getSkuId());
+        }
+
+        void complete() {
+            waiters.forEach(waiter -> waiter.complete(null));
+        }
+
+        void fail(Exception e) {
+            waiters.forEach(waiter -> waiter.completeExceptionally(e));
+        }
+    }
+}
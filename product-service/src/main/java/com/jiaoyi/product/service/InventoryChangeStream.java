@@ -0,0 +1,188 @@
+package com.jiaoyi.product.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.outbox.OutboxService;
+import com.jiaoyi.product.config.RocketMQConfig;
+import com.jiaoyi.product.dto.InventoryChangeFrame;
+import com.jiaoyi.product.entity.Inventory;
+import com.jiaoyi.product.util.ProductShardUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 库存变更流（生产端）
+ *
+ * 库存变更统一通过这里记录，不再各自更新缓存、各自发 POS 同步消息：
+ * - 事务内记录的变更先暂存在事务上，同一门店的变更合并成一个帧（同一库存多次变更合并为一条，delta 累加）
+ * - 事务提交前每个门店写一条 outbox（INVENTORY_CHANGE_MQ），由 outbox 投递到 {@link RocketMQConfig#INVENTORY_CHANGE_TOPIC}；
+ *   事务回滚时不写
+ * - 没有事务时立即写 outbox
+ * 消费端见 {@link InventoryChangeStreamListener}
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryChangeStream {
+
+    public static final String SOURCE_POS = "POS";
+    public static final String SOURCE_CLOUD = "CLOUD";
+
+    public static final String CHANGE_DEDUCT = "DEDUCT";
+    public static final String CHANGE_RETURN = "RETURN";
+    public static final String CHANGE_POS_SYNC = "POS_SYNC";
+    public static final String CHANGE_CLOUD_SET = "CLOUD_SET";
+    public static final String CHANGE_RESTORE = "RESTORE";
+    public static final String CHANGE_POS_REPLAY = "POS_REPLAY";
+
+    private static final String OUTBOX_TYPE_INVENTORY_CHANGE = "INVENTORY_CHANGE_MQ";
+
+    private final OutboxService outboxService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 记录一次库存变更
+     *
+     * @param inventory 变更的库存（需要 id、storeId、productId、skuId，productShardId 为空时按门店计算）
+     * @param changeType 变更类型（CHANGE_*）
+     * @param delta 库存增量（非增量变更传 null）
+     * @param source 变更来源（SOURCE_*）
+     */
+    public void record(Inventory inventory, String changeType, BigDecimal delta, String source) {
+        record(inventory.getStoreId(), inventory.getProductShardId(), inventory.getId(),
+                inventory.getProductId(), inventory.getSkuId(), changeType, delta, source);
+    }
+
+    public void record(Long storeId, Integer productShardId, Long inventoryId, Long productId, Long skuId,
+                       String changeType, BigDecimal delta, String source) {
+        if (storeId == null || productId == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            FrameCollector collector = new FrameCollector();
+            collector.add(storeId, productShardId, inventoryId, productId, skuId, changeType, delta, source);
+            publish(collector.frames());
+            return;
+        }
+        transactionCollector().add(storeId, productShardId, inventoryId, productId, skuId, changeType, delta, source);
+    }
+
+    /**
+     * 批量记录同一类型的变更（没有事务时按门店合并后一次写入）
+     */
+    public void recordAll(Collection<Inventory> inventories, String changeType, String source) {
+        if (inventories == null || inventories.isEmpty()) {
+            return;
+        }
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        FrameCollector collector = inTransaction ? transactionCollector() : new FrameCollector();
+        for (Inventory inventory : inventories) {
+            if (inventory.getStoreId() == null || inventory.getProductId() == null) {
+                continue;
+            }
+            collector.add(inventory.getStoreId(), inventory.getProductShardId(), inventory.getId(),
+                    inventory.getProductId(), inventory.getSkuId(), changeType, null, source);
+        }
+        if (!inTransaction) {
+            publish(collector.frames());
+        }
+    }
+
+    /**
+     * 当前事务的变更暂存（第一次记录时绑定到事务，提交前写 outbox，事务结束后解绑）
+     */
+    private FrameCollector transactionCollector() {
+        FrameCollector collector = (FrameCollector) TransactionSynchronizationManager.getResource(this);
+        if (collector != null) {
+            return collector;
+        }
+        FrameCollector newCollector = new FrameCollector();
+        TransactionSynchronizationManager.bindResource(this, newCollector);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                publish(newCollector.frames());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(InventoryChangeStream.this);
+            }
+        });
+        return newCollector;
+    }
+
+    /**
+     * 每个门店的帧写一条 outbox
+     */
+    private void publish(Collection<InventoryChangeFrame> frames) {
+        for (InventoryChangeFrame frame : frames) {
+            String payload;
+            try {
+                payload = objectMapper.writeValueAsString(frame);
+            } catch (JsonProcessingException e) {
+                log.error("序列化库存变更帧失败: storeId={}", frame.getStoreId(), e);
+                throw new RuntimeException("序列化库存变更帧失败: " + e.getMessage(), e);
+            }
+            String bizKey = frame.getStoreId() + ":" + UUID.randomUUID();
+            String messageKey = "inventory-change:" + frame.getStoreId();
+            outboxService.enqueue(
+                    OUTBOX_TYPE_INVENTORY_CHANGE, bizKey, payload,
+                    RocketMQConfig.INVENTORY_CHANGE_TOPIC,
+                    RocketMQConfig.INVENTORY_CHANGE_TAG,
+                    messageKey, String.valueOf(frame.getStoreId()), null
+            );
+            log.debug("库存变更帧已写入outbox: storeId={}, changes={}", frame.getStoreId(), frame.getChanges().size());
+        }
+    }
+
+    /**
+     * 按门店合并变更（同一库存合并为一条）
+     */
+    private static class FrameCollector {
+        private final Map<Long, InventoryChangeFrame> frames = new LinkedHashMap<>();
+        private final Map<Long, Map<String, InventoryChangeFrame.Change>> changesByStore = new LinkedHashMap<>();
+
+        void add(Long storeId, Integer productShardId, Long inventoryId, Long productId, Long skuId,
+                 String changeType, BigDecimal delta, String source) {
+            InventoryChangeFrame frame = frames.computeIfAbsent(storeId, id -> {
+                InventoryChangeFrame newFrame = new InventoryChangeFrame();
+                newFrame.setStoreId(id);
+                newFrame.setProductShardId(productShardId != null
+                        ? productShardId : ProductShardUtil.calculateProductShardId(id));
+                return newFrame;
+            });
+            frame.setFrameTime(System.currentTimeMillis());
+
+            String key = inventoryId != null ? "i:" + inventoryId : "p:" + productId + ":" + skuId;
+            BigDecimal changeDelta = delta != null ? delta : BigDecimal.ZERO;
+            Map<String, InventoryChangeFrame.Change> changes = changesByStore.computeIfAbsent(storeId, id -> new LinkedHashMap<>());
+            InventoryChangeFrame.Change existing = changes.get(key);
+            if (existing == null) {
+                InventoryChangeFrame.Change change = new InventoryChangeFrame.Change(
+                        inventoryId, productId, skuId, changeType, changeDelta, source);
+                changes.put(key, change);
+                frame.getChanges().add(change);
+                return;
+            }
+            existing.setChangeType(changeType);
+            existing.setDelta(existing.getDelta().add(changeDelta));
+            if (!SOURCE_POS.equals(source)) {
+                existing.setSource(source);
+            }
+        }
+
+        Collection<InventoryChangeFrame> frames() {
+            return frames.values();
+        }
+    }
+}
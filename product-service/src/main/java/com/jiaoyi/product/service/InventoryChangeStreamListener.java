@@ -0,0 +1,72 @@
+package com.jiaoyi.product.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jiaoyi.product.config.RocketMQConfig;
+import com.jiaoyi.product.dto.InventoryChangeFrame;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
+import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 库存变更流消费者
+ *
+ * 消费 {@link InventoryChangeStream} 写入 outbox 的库存变更帧，交给 {@link InventoryChangeCoalescer} 按门店合并刷新；
+ * 等待刷新完成后才返回（确认消息），刷新失败或超时抛出异常由 RocketMQ 重投。
+ * 帧只携带变更键，刷新时回查最新库存，重投和乱序都是幂等的
+ */
+@Service
+@Slf4j
+@RocketMQMessageListener(
+    topic = RocketMQConfig.INVENTORY_CHANGE_TOPIC,
+    consumerGroup = RocketMQConfig.INVENTORY_CHANGE_CONSUMER_GROUP,
+    selectorExpression = RocketMQConfig.INVENTORY_CHANGE_TAG
+)
+public class InventoryChangeStreamListener implements RocketMQListener<MessageExt> {
+
+    private final InventoryChangeCoalescer coalescer;
+    private final ObjectMapper objectMapper;
+    private final long waitMillis;
+
+    public InventoryChangeStreamListener(InventoryChangeCoalescer coalescer,
+                                         ObjectMapper objectMapper,
+                                         @Value("${inventory.change-stream.wait-millis:10000}") long waitMillis) {
+        this.coalescer = coalescer;
+        this.objectMapper = objectMapper;
+        this.waitMillis = Math.max(waitMillis, 1);
+    }
+
+    @Override
+    public void onMessage(MessageExt messageExt) {
+        InventoryChangeFrame frame;
+        try {
+            byte[] body = messageExt.getBody();
+            if (body == null || body.length == 0) {
+                log.error("库存变更帧消息体为空，跳过: msgId={}", messageExt.getMsgId());
+                return;
+            }
+            frame = objectMapper.readValue(body, InventoryChangeFrame.class);
+        } catch (Exception e) {
+            // 格式错误的消息重投也无法处理，直接跳过
+            log.error("解析库存变更帧失败，跳过: msgId={}", messageExt.getMsgId(), e);
+            return;
+        }
+
+        try {
+            coalescer.submit(frame).get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待库存变更帧刷新被中断", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("等待库存变更帧刷新超时: storeId=" + frame.getStoreId(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("库存变更帧刷新失败: storeId=" + frame.getStoreId(), e.getCause());
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.jiaoyi.product.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jiaoyi.outbox.OutboxService;
-import com.jiaoyi.product.config.RocketMQConfig;
 import com.jiaoyi.product.dto.*;
 import com.jiaoyi.product.entity.Inventory;
 import com.jiaoyi.product.entity.InventoryChannel;
@@ -18,15 +16,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionSynchronization;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 /**
@@ -41,19 +45,23 @@ public class InventoryService {
     private final InventoryMapper inventoryMapper;
     private final InventoryTransactionMapper transactionMapper;
     private final InventoryCacheService inventoryCacheService;
+    private final InventoryAvailabilityService inventoryAvailabilityService;
     private final InventoryDeductionIdempotencyMapper idempotencyMapper;
     private final InventoryChannelMapper channelMapper;
     private final InventoryOversellRecordMapper oversellRecordMapper;
-    private final OutboxService outboxService;
+    private final InventoryChangeStream inventoryChangeStream;
+    private final ChannelQuotaAllocator channelQuotaAllocator;
     private final ObjectMapper objectMapper;
 
-    private static final String OUTBOX_TYPE_STOCK_SYNC = "INVENTORY_STOCK_SYNC_MQ";
     private static final String ALLOCATION_MODE_WEIGHTED_QUOTA = "WEIGHTED_QUOTA";
     private static final String ALLOCATION_MODE_SAFETY_STOCK = "SAFETY_STOCK";
     private static final String DEDUCT_SOURCE_FROM_CHANNEL = "FROM_CHANNEL";
     private static final String DEDUCT_SOURCE_FROM_SHARED_POOL = "FROM_SHARED_POOL";
     private static final String DEDUCT_SOURCE_FROM_SAFETY_STOCK = "FROM_SAFETY_STOCK";
     private static final String DEDUCT_SOURCE_FROM_POOL = "FROM_POOL";
+    /** POS 离线回放：IN 查询每批数量 / 日志批量插入每批条数 */
+    private static final int REPLAY_QUERY_CHUNK_SIZE = 500;
+    private static final int REPLAY_LOG_BATCH_SIZE = 500;
     
     /**
      * 创建库存记录（商品创建时调用，商品级别库存）
@@ -93,6 +101,7 @@ public class InventoryService {
         
         // 缓存新创建的库存记录
         inventoryCacheService.cacheInventory(inventory);
+        inventoryAvailabilityService.applyChanges(List.of(inventory));
         
         return inventory;
     }
@@ -141,6 +150,7 @@ public class InventoryService {
         
         // 缓存新创建的库存记录
         inventoryCacheService.cacheInventory(inventory);
+        inventoryAvailabilityService.applyChanges(List.of(inventory));
         
         return inventory;
     }
@@ -192,6 +202,7 @@ public class InventoryService {
         
         // 更新缓存
         inventoryCacheService.cacheInventory(inventory);
+        inventoryAvailabilityService.applyChanges(List.of(inventory));
         
         return inventory;
     }
@@ -241,6 +252,14 @@ public class InventoryService {
         return inventoryMapper.selectByStoreId(storeId);
     }
     
+    /**
+     * 查询门店可售位图（菜单售罄/库存紧张角标，一次读取整个门店）
+     */
+    public StoreAvailabilitySnapshot getStoreAvailability(Long storeId, Long ordinalVersion) {
+        log.debug("查询门店可售位图，店铺ID: {}, 序号表版本: {}", storeId, ordinalVersion);
+        return inventoryAvailabilityService.getSnapshot(storeId, ordinalVersion);
+    }
+    
     /**
      * 根据店铺ID和商品ID查询库存
      */
@@ -350,33 +369,40 @@ public class InventoryService {
         
         // 更新缓存
         inventoryCacheService.updateInventoryCache(inventory);
-        
-        // 清除"所有库存列表"缓存，因为列表已变化
-        inventoryCacheService.evictAllInventoriesCache();
+        inventoryAvailabilityService.applyChanges(List.of(inventory));
         
         log.info("库存更新成功，库存ID: {}, 当前库存: {}", inventoryId, currentStock);
         return inventory;
     }
     
     /**
-     * 查询库存不足的商品（优先从缓存）
+     * 查询库存不足的商品（优先从缓存：按库存不足索引批量取库存条目，条目未命中的回源补齐）
      */
     public List<Inventory> getLowStockItems() {
         // 先从缓存获取
-        Optional<List<Inventory>> cachedItems = inventoryCacheService.getLowStockItems();
-        if (cachedItems.isPresent()) {
-            log.debug("从缓存获取库存不足商品列表");
-            return cachedItems.get();
+        Optional<List<Long>> cachedIds = inventoryCacheService.getLowStockProductIds();
+        if (cachedIds.isPresent()) {
+            log.debug("从缓存获取库存不足商品索引，数量: {}", cachedIds.get().size());
+            Map<Long, Inventory> cached = inventoryCacheService.getInventoriesByProductIds(cachedIds.get());
+            List<Inventory> lowStockItems = new ArrayList<>(cachedIds.get().size());
+            for (Long productId : cachedIds.get()) {
+                Inventory inventory = cached.get(productId);
+                if (inventory == null) {
+                    inventory = inventoryMapper.selectByProductId(productId);
+                    if (inventory == null) {
+                        continue;
+                    }
+                    inventoryCacheService.cacheInventory(inventory);
+                }
+                lowStockItems.add(inventory);
+            }
+            return lowStockItems;
         }
         
-        // 缓存未命中，从数据库查询
+        // 索引未初始化或已过期，从数据库查询并重建索引
         log.debug("缓存未命中，从数据库查询库存不足商品列表");
         List<Inventory> lowStockItems = inventoryMapper.selectLowStockItems();
-        
-        // 将查询结果缓存
-        if (lowStockItems != null && !lowStockItems.isEmpty()) {
-            inventoryCacheService.cacheLowStockItems(lowStockItems);
-        }
+        inventoryCacheService.rebuildLowStockIndex(lowStockItems);
         
         return lowStockItems;
     }
@@ -436,22 +462,14 @@ public class InventoryService {
     }
     
     /**
-     * 刷新库存不足商品列表缓存
+     * 刷新库存不足商品索引（按数据库重建）
      */
     public void refreshLowStockItemsCache() {
-        log.info("刷新库存不足商品列表缓存");
-        
-        // 删除旧缓存
-        inventoryCacheService.evictLowStockItemsCache();
+        log.info("刷新库存不足商品索引");
         
-        // 重新从数据库查询并缓存
         List<Inventory> lowStockItems = inventoryMapper.selectLowStockItems();
-        if (lowStockItems != null && !lowStockItems.isEmpty()) {
-            inventoryCacheService.cacheLowStockItems(lowStockItems);
-            log.info("库存不足商品列表缓存刷新成功，数量: {}", lowStockItems.size());
-        } else {
-            log.info("没有库存不足的商品");
-        }
+        inventoryCacheService.rebuildLowStockIndex(lowStockItems);
+        log.info("库存不足商品索引刷新成功，数量: {}", lowStockItems != null ? lowStockItems.size() : 0);
     }
     
     /**
@@ -478,25 +496,11 @@ public class InventoryService {
     
     /**
      * 获取所有库存记录（兼容前端 /api/inventory 接口）
+     * 不再整表缓存成一个 JSON（任何库存变化都要整体失效重写），管理端低频查询直接查库
      */
     public List<Inventory> getAllInventory() {
         log.info("获取所有库存记录");
-        // 先从缓存获取
-        Optional<List<Inventory>> cachedInventories = inventoryCacheService.getAllInventories();
-        if (cachedInventories.isPresent()) {
-            log.debug("从缓存获取所有库存信息");
-            return cachedInventories.get();
-        }
-
-        // 缓存未命中，从数据库查询
-        log.debug("缓存未命中，从数据库查询所有库存信息");
         List<Inventory> inventories = inventoryMapper.selectAll();
-
-        // 将查询结果缓存
-        if (inventories != null && !inventories.isEmpty()) {
-            inventoryCacheService.cacheAllInventories(inventories);
-        }
-
         return inventories != null ? inventories : List.of();
     }
 
@@ -572,24 +576,8 @@ public class InventoryService {
         log.info("库存恢复成功，库存ID: {}, 新模式: {}, 新库存: {}, 恢复时间: {}",
                 inventoryId, newStockMode, newCurrentStock, now);
 
-        // 更新缓存
-        // 重新查询更新后的库存
-        if (inventory.getSkuId() != null) {
-            inventory = inventoryMapper.selectByStoreIdAndProductIdAndSkuId(
-                    inventory.getStoreId(),
-                    inventory.getProductId(),
-                    inventory.getSkuId()
-            );
-        } else {
-            inventory = inventoryMapper.selectByStoreIdAndProductId(
-                    inventory.getStoreId(),
-                    inventory.getProductId()
-            );
-        }
-
-        if (inventory != null) {
-            inventoryCacheService.updateInventoryCache(inventory);
-        }
+        // 缓存刷新和 POS 同步由库存变更流统一处理
+        inventoryChangeStream.record(inventory, InventoryChangeStream.CHANGE_RESTORE, null, InventoryChangeStream.SOURCE_CLOUD);
     }
 
     /**
@@ -635,9 +623,6 @@ public class InventoryService {
         }
 
         log.info("库存恢复配置更新成功，库存ID: {}", inventoryId);
-
-        // 清除缓存
-        inventoryCacheService.evictAllInventoriesCache();
     }
 
     // ========================= POI 渠道库存功能（统一在 Inventory 实现） =========================
@@ -660,6 +645,28 @@ public class InventoryService {
         log.info("接收POS上报库存变更: storeId={}, productId={}, skuId={}",
             request.getStoreId(), request.getProductId(), request.getSkuId());
 
+        Inventory inventory = applyStockSync(request);
+        // POS 上报的变更只刷新缓存，不回推 POS
+        inventoryChangeStream.record(inventory, InventoryChangeStream.CHANGE_POS_SYNC, null, InventoryChangeStream.SOURCE_POS);
+    }
+
+    /**
+     * 商品中心设置库存（会同步到POS）
+     */
+    @Transactional
+    public void updateStockFromCloud(StockSyncFromPosRequest request) {
+        log.info("商品中心设置库存: storeId={}, productId={}, skuId={}",
+            request.getStoreId(), request.getProductId(), request.getSkuId());
+
+        Inventory inventory = applyStockSync(request);
+        // 通过库存变更流按门店合并下发 POS
+        inventoryChangeStream.record(inventory, InventoryChangeStream.CHANGE_CLOUD_SET, null, InventoryChangeStream.SOURCE_CLOUD);
+    }
+
+    /**
+     * 按请求设置库存数量和渠道库存（不存在时创建），写变更日志
+     */
+    private Inventory applyStockSync(StockSyncFromPosRequest request) {
         Inventory inventory = findInventoryByRequest(
             request.getStoreId(), request.getProductId(), request.getSkuId());
 
@@ -723,83 +730,214 @@ public class InventoryService {
 
         // 写变更日志
         writePoiLog(inventory, "ABSOLUTE_SET", BigDecimal.ZERO, "POS", null, request);
-    }
-
-    /**
-     * 商品中心设置库存（会同步到POS）
-     */
-    @Transactional
-    public void updateStockFromCloud(StockSyncFromPosRequest request) {
-        log.info("商品中心设置库存: storeId={}, productId={}, skuId={}",
-            request.getStoreId(), request.getProductId(), request.getSkuId());
-
-        syncFromPos(request);
-
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-            @Override
-            public void afterCommit() {
-                try {
-                    sendStockSyncToOutbox(request);
-                } catch (Exception e) {
-                    log.error("库存已更新但写入outbox失败: storeId={}, productId={}",
-                        request.getStoreId(), request.getProductId(), e);
-                }
-            }
-        });
+        return inventory;
     }
 
     /**
      * POS 离线事件批量回放
+     *
+     * 按库存分组折叠（见 {@link PosOfflineReplayPlanner}），每个库存只更新一次，日志批量插入：
+     * 1. 按商品批量加锁查询本批次涉及的库存（FOR UPDATE，按 id 排序）
+     * 2. 批量查询已扣减过的订单（幂等）
+     * 3. 每个库存的事件按 operateTime 排序后折叠成一次净变更
+     * 4. 整批检测一次超卖（折叠后库存 < 0 的记录超卖并归零），写回库存、批量写日志
+     * 数据库异常时整批回滚，POS 可原样重试（相对变更按 orderId 幂等，绝对设置按 lastManualSetTime 去重）
      */
     @Transactional
     public PosOfflineReplayResult replayOfflineEvents(PosOfflineReplayRequest request) {
+        List<StockChangeEvent> events = request.getEvents() != null ? request.getEvents() : new ArrayList<>();
         log.info("开始POS离线事件回放: storeId={}, posInstance={}, events={}",
-            request.getStoreId(), request.getPosInstanceId(), request.getEvents().size());
+            request.getStoreId(), request.getPosInstanceId(), events.size());
 
         PosOfflineReplayResult result = new PosOfflineReplayResult();
-        result.setTotalEvents(request.getEvents().size());
-
-        int successCount = 0, skippedCount = 0, failedCount = 0;
+        result.setTotalEvents(events.size());
 
-        for (StockChangeEvent event : request.getEvents()) {
+        // 按库存分组（storeId + productId + skuId），保持上报顺序
+        Map<String, List<StockChangeEvent>> eventsByInventory = new LinkedHashMap<>();
+        for (StockChangeEvent event : events) {
             if (event.getStoreId() == null) event.setStoreId(request.getStoreId());
             event.setSource(StockChangeEvent.Source.POS_OFFLINE);
+            eventsByInventory.computeIfAbsent(replayKey(event.getStoreId(), event.getProductId(), event.getSkuId()),
+                k -> new ArrayList<>()).add(event);
+        }
 
-            try {
-                boolean applied = applyStockChangeEvent(event);
-                if (applied) successCount++; else skippedCount++;
-            } catch (Exception e) {
-                failedCount++;
-                log.error("离线事件回放失败: orderId={}, error={}", event.getOrderId(), e.getMessage());
-                result.getFailedEvents().add(
-                    new PosOfflineReplayResult.FailedEvent(event.getOrderId(), e.getMessage()));
+        Map<String, Inventory> inventories = lockInventoriesForReplay(eventsByInventory);
+        Map<Long, Set<String>> deductedOrderIds = selectDeductedOrderIds(inventories.values(), events);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<PosOfflineReplayPlanner.Plan> plans = new ArrayList<>();
+        int successCount = 0, skippedCount = 0, failedCount = 0;
+        for (Map.Entry<String, List<StockChangeEvent>> entry : eventsByInventory.entrySet()) {
+            List<StockChangeEvent> inventoryEvents = entry.getValue();
+            Inventory inventory = inventories.get(entry.getKey());
+            if (inventory == null) {
+                StockChangeEvent first = inventoryEvents.get(0);
+                String reason = "库存记录不存在: productId=" + first.getProductId() + ", skuId=" + first.getSkuId();
+                for (StockChangeEvent event : inventoryEvents) {
+                    result.getFailedEvents().add(new PosOfflineReplayResult.FailedEvent(event.getOrderId(), reason));
+                }
+                failedCount += inventoryEvents.size();
+                log.error("离线事件回放失败: {}, events={}", reason, inventoryEvents.size());
+                continue;
             }
+
+            PosOfflineReplayPlanner.Plan plan = PosOfflineReplayPlanner.plan(
+                inventory,
+                inventoryEvents,
+                deductedOrderIds.computeIfAbsent(inventory.getId(), k -> new HashSet<>()),
+                since -> transactionMapper.sumDeltaSince(inventory.getId(), since),
+                now);
+            plans.add(plan);
+            successCount += plan.getApplied().size();
+            skippedCount += plan.getSkipped();
+            failedCount += plan.getFailed().size();
+            result.getFailedEvents().addAll(plan.getFailed());
         }
 
+        // 整批检测一次超卖并写回
+        applyReplayPlans(request, plans, result, now);
+
         result.setSuccessCount(successCount);
         result.setSkippedCount(skippedCount);
         result.setFailedCount(failedCount);
 
-        if (successCount > 0) {
-            detectOversellAfterReplay(request, result);
+        log.info("POS离线事件回放完成: total={}, inventories={}, success={}, skipped={}, failed={}, oversell={}",
+            result.getTotalEvents(), plans.size(), successCount, skippedCount, failedCount, result.isOversellDetected());
+
+        return result;
+    }
+
+    private static String replayKey(Long storeId, Long productId, Long skuId) {
+        return storeId + ":" + productId + ":" + skuId;
+    }
+
+    /**
+     * 批量加锁查询回放涉及的库存（每个门店按商品分批查询，一次查询锁定多个库存）
+     */
+    private Map<String, Inventory> lockInventoriesForReplay(Map<String, List<StockChangeEvent>> eventsByInventory) {
+        Map<Long, Set<Long>> productIdsByStore = new LinkedHashMap<>();
+        for (List<StockChangeEvent> inventoryEvents : eventsByInventory.values()) {
+            StockChangeEvent first = inventoryEvents.get(0);
+            if (first.getStoreId() != null && first.getProductId() != null) {
+                productIdsByStore.computeIfAbsent(first.getStoreId(), k -> new TreeSet<>()).add(first.getProductId());
+            }
         }
 
-        log.info("POS离线事件回放完成: total={}, success={}, skipped={}, failed={}, oversell={}",
-            result.getTotalEvents(), successCount, skippedCount, failedCount, result.isOversellDetected());
+        Map<String, Inventory> inventories = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : productIdsByStore.entrySet()) {
+            Long storeId = entry.getKey();
+            int shardId = com.jiaoyi.product.util.ProductShardUtil.calculateProductShardId(storeId);
+            List<Long> productIds = new ArrayList<>(entry.getValue());
+            for (int from = 0; from < productIds.size(); from += REPLAY_QUERY_CHUNK_SIZE) {
+                List<Long> chunk = productIds.subList(from, Math.min(from + REPLAY_QUERY_CHUNK_SIZE, productIds.size()));
+                for (Inventory inventory : inventoryMapper.selectByStoreIdAndProductIdsForUpdate(shardId, storeId, chunk)) {
+                    inventories.put(replayKey(storeId, inventory.getProductId(), inventory.getSkuId()), inventory);
+                }
+            }
+        }
+        return inventories;
+    }
 
-        return result;
+    /**
+     * 批量查询已有扣减日志的订单（inventoryId -> orderIds）
+     */
+    private Map<Long, Set<String>> selectDeductedOrderIds(Collection<Inventory> inventories, List<StockChangeEvent> events) {
+        Map<Long, Set<String>> deducted = new HashMap<>();
+        List<Long> orderIds = events.stream()
+            .filter(e -> e.getChangeType() == StockChangeEvent.ChangeType.RELATIVE_DELTA && e.getOrderId() != null)
+            .map(e -> parseOrderId(e.getOrderId()))
+            .filter(Objects::nonNull)
+            .distinct()
+            .collect(Collectors.toList());
+        if (orderIds.isEmpty() || inventories.isEmpty()) {
+            return deducted;
+        }
+
+        Map<Integer, List<Long>> inventoryIdsByShard = inventories.stream()
+            .collect(Collectors.groupingBy(Inventory::getProductShardId,
+                Collectors.mapping(Inventory::getId, Collectors.toList())));
+        for (Map.Entry<Integer, List<Long>> entry : inventoryIdsByShard.entrySet()) {
+            for (int from = 0; from < orderIds.size(); from += REPLAY_QUERY_CHUNK_SIZE) {
+                List<Long> chunk = orderIds.subList(from, Math.min(from + REPLAY_QUERY_CHUNK_SIZE, orderIds.size()));
+                for (InventoryTransaction tx : transactionMapper.selectDeductedOrders(entry.getKey(), entry.getValue(), chunk)) {
+                    deducted.computeIfAbsent(tx.getInventoryId(), k -> new HashSet<>()).add(String.valueOf(tx.getOrderId()));
+                }
+            }
+        }
+        return deducted;
     }
 
-    private boolean applyStockChangeEvent(StockChangeEvent event) {
-        Inventory inventory = findInventoryByRequest(event.getStoreId(), event.getProductId(), event.getSkuId());
-        if (inventory == null) {
-            throw new RuntimeException("库存记录不存在: productId=" + event.getProductId() + ", skuId=" + event.getSkuId());
+    private static Long parseOrderId(String orderId) {
+        try {
+            return Long.parseLong(orderId);
+        } catch (NumberFormatException e) {
+            return null;
         }
-        switch (event.getChangeType()) {
-            case RELATIVE_DELTA: return handleRelativeDelta(inventory, event);
-            case ABSOLUTE_SET:   return handleAbsoluteSet(inventory, event);
-            case STATUS_CHANGE:  return handleStatusChange(inventory, event);
-            default: throw new RuntimeException("未知变更类型: " + event.getChangeType());
+    }
+
+    /**
+     * 写回折叠结果：检测超卖、每个库存更新一次、批量写日志
+     */
+    private void applyReplayPlans(PosOfflineReplayRequest request, List<PosOfflineReplayPlanner.Plan> plans,
+                                  PosOfflineReplayResult result, LocalDateTime now) {
+        BigDecimal totalOversell = BigDecimal.ZERO;
+        List<InventoryTransaction> logs = new ArrayList<>();
+        for (PosOfflineReplayPlanner.Plan plan : plans) {
+            Inventory inventory = plan.getInventory();
+            BigDecimal finalStock = plan.getFinalStock();
+            Integer stockStatus = plan.getStockStatus();
+
+            if (plan.isStockChanged() && finalStock.signum() < 0) {
+                BigDecimal oversellQty = finalStock.negate();
+                log.warn("检测到超卖: productId={}, skuId={}, oversellQty={}",
+                    inventory.getProductId(), inventory.getSkuId(), oversellQty);
+
+                InventoryOversellRecord record = new InventoryOversellRecord();
+                record.setInventoryId(inventory.getId());
+                record.setStoreId(inventory.getStoreId());
+                record.setProductId(inventory.getProductId());
+                record.setSkuId(inventory.getSkuId());
+                record.setProductShardId(inventory.getProductShardId());
+                record.setOversellQuantity(oversellQty);
+                record.setSource("POS_OFFLINE");
+                record.setStatus(InventoryOversellRecord.Status.PENDING.name());
+                record.setRemark("POS离线回放后检测到超卖，POS实例: " + request.getPosInstanceId());
+                record.setCreatedAt(now);
+                oversellRecordMapper.insert(record);
+
+                finalStock = BigDecimal.ZERO;
+                // 超卖覆盖回放中的状态变更，强制售罄
+                stockStatus = PosOfflineReplayPlanner.STOCK_STATUS_SOLD_OUT;
+                totalOversell = totalOversell.add(oversellQty);
+                result.setOversellDetected(true);
+                result.setOversellRecordId(record.getId());
+            }
+
+            if (plan.isStockChanged()) {
+                inventoryMapper.forceUpdateCurrentStock(inventory.getId(), finalStock, plan.getLastManualSetTime(), now);
+            }
+            if (stockStatus != null) {
+                inventoryMapper.updateStockStatusDirect(inventory.getId(), stockStatus, now);
+            }
+            if (plan.isStockChanged() || stockStatus != null) {
+                BigDecimal before = inventory.getCurrentStock() != null
+                    ? new BigDecimal(inventory.getCurrentStock()) : BigDecimal.ZERO;
+                inventoryChangeStream.record(inventory, InventoryChangeStream.CHANGE_POS_REPLAY,
+                    plan.isStockChanged() ? finalStock.subtract(before) : null, InventoryChangeStream.SOURCE_POS);
+            }
+            for (StockChangeEvent event : plan.getApplied()) {
+                logs.add(buildPoiLog(inventory, event.getChangeType().name(),
+                    event.getDelta() != null ? event.getDelta() : BigDecimal.ZERO,
+                    event.getSource() != null ? event.getSource().name() : "CLOUD",
+                    event.getOrderId(), event, now));
+            }
+        }
+        if (result.isOversellDetected()) {
+            result.setOversellQuantity(totalOversell);
+        }
+
+        for (int from = 0; from < logs.size(); from += REPLAY_LOG_BATCH_SIZE) {
+            transactionMapper.insertBatch(logs.subList(from, Math.min(from + REPLAY_LOG_BATCH_SIZE, logs.size())));
         }
     }
 
@@ -875,6 +1013,7 @@ public class InventoryService {
         }
         String deductSource = channelStock != null ? DEDUCT_SOURCE_FROM_CHANNEL : DEDUCT_SOURCE_FROM_POOL;
         writeDeductLog(inventory, request, deductSource);
+        recordDeductChange(inventory, request);
 
         InventoryChannel updatedCh = channelMapper.selectByInventoryIdAndChannel(
             inventory.getId(), request.getChannelCode());
@@ -914,6 +1053,7 @@ public class InventoryService {
             return ChannelDeductResult.outOfStock(availableForMe, BigDecimal.ZERO);
         }
         writeDeductLog(inventory, request, DEDUCT_SOURCE_FROM_SAFETY_STOCK);
+        recordDeductChange(inventory, request);
         Inventory after = findInventoryByRequest(request.getStoreId(), request.getProductId(), request.getSkuId());
         BigDecimal sharedPool = after != null && after.getSharedPoolQuantity() != null
             ? after.getSharedPoolQuantity() : BigDecimal.ZERO;
@@ -993,6 +1133,14 @@ public class InventoryService {
         log.info("渠道额度分配完成: total={}, allocated={}, sharedPool={}", totalQuantity, allocated, sharedPool);
     }
 
+    /**
+     * 整个门店批量重新分配渠道额度（开店前整体重平衡，规则同 allocateChannelQuotas）
+     */
+    public ChannelQuotaAllocationResult allocateStoreChannelQuotas(Long storeId) {
+        log.info("开始门店渠道额度批量分配: storeId={}", storeId);
+        return channelQuotaAllocator.allocateStore(storeId);
+    }
+
     /**
      * 设置渠道库存分配模式
      */
@@ -1031,6 +1179,7 @@ public class InventoryService {
             log.info("归还跳过：无扣减记录 orderId={}", orderId);
             return;
         }
+        Map<Long, BigDecimal> returned = new LinkedHashMap<>();
         for (InventoryTransaction logRow : deductLogs) {
             Long inventoryId = logRow.getInventoryId();
             int alreadyReturned = transactionMapper.countReturnByOrderIdAndInventoryId(orderId, inventoryId);
@@ -1059,10 +1208,29 @@ public class InventoryService {
                 continue;
             }
             writeReturnLog(logRow, returnQty, orderId);
+            returned.merge(inventoryId, returnQty, BigDecimal::add);
+        }
+        // 扣减日志中没有门店ID，按库存ID回查后记录到库存变更流
+        for (Map.Entry<Long, BigDecimal> entry : returned.entrySet()) {
+            Inventory inventory = inventoryMapper.selectById(entry.getKey());
+            if (inventory != null) {
+                inventoryChangeStream.record(inventory, InventoryChangeStream.CHANGE_RETURN,
+                    entry.getValue(), InventoryChangeStream.SOURCE_CLOUD);
+            }
         }
         log.info("按订单归还完成: orderId={}, 条数={}", orderId, deductLogs.size());
     }
 
+    /**
+     * 扣减成功后记录到库存变更流（POS 渠道的扣减不回推 POS）
+     */
+    private void recordDeductChange(Inventory inventory, ChannelDeductRequest request) {
+        String source = "POS".equalsIgnoreCase(request.getChannelCode())
+            ? InventoryChangeStream.SOURCE_POS : InventoryChangeStream.SOURCE_CLOUD;
+        inventoryChangeStream.record(inventory, InventoryChangeStream.CHANGE_DEDUCT,
+            request.getQuantity() != null ? request.getQuantity().negate() : null, source);
+    }
+
     /**
      * 查询超卖记录
      */
@@ -1099,117 +1267,13 @@ public class InventoryService {
 
     // ========================= 私有辅助方法 =========================
 
-    private boolean handleRelativeDelta(Inventory inventory, StockChangeEvent event) {
-        if (event.getOrderId() != null) {
-            int count = transactionMapper.countDeductByOrderIdAndInventoryId(
-                event.getOrderId(), inventory.getId());
-            if (count > 0) {
-                log.info("相对变更幂等跳过: orderId={}", event.getOrderId());
-                return false;
-            }
-        }
-
-        BigDecimal absDelta = event.getDelta().abs();
-        boolean isDeduct = event.getDelta().compareTo(BigDecimal.ZERO) < 0;
-
-        if (isDeduct) {
-            int updated = inventoryMapper.atomicDeductCurrentStock(inventory.getId(), absDelta);
-            if (updated == 0) {
-                BigDecimal current = inventory.getCurrentStock() != null
-                    ? new BigDecimal(inventory.getCurrentStock()) : BigDecimal.ZERO;
-                inventoryMapper.forceUpdateCurrentStock(
-                    inventory.getId(), current.add(event.getDelta()),
-                    inventory.getLastManualSetTime(), LocalDateTime.now());
-            }
-        } else {
-            BigDecimal current = inventory.getCurrentStock() != null
-                ? new BigDecimal(inventory.getCurrentStock()) : BigDecimal.ZERO;
-            inventoryMapper.forceUpdateCurrentStock(
-                inventory.getId(), current.add(event.getDelta()),
-                inventory.getLastManualSetTime(), LocalDateTime.now());
-        }
-
-        Inventory updated = findInventoryByRequest(event.getStoreId(), event.getProductId(), event.getSkuId());
-        if (updated != null && updated.getCurrentStock() != null && updated.getCurrentStock() <= 0) {
-            inventoryMapper.updateStockStatusDirect(inventory.getId(), 2, LocalDateTime.now());
-        }
-
-        writePoiEventLog(inventory, event);
-        return true;
-    }
-
-    private boolean handleAbsoluteSet(Inventory inventory, StockChangeEvent event) {
-        Inventory lockedInv = inventoryMapper.selectByIdForUpdate(inventory.getId());
-        if (lockedInv.getLastManualSetTime() != null && event.getOperateTime() != null) {
-            if (!event.getOperateTime().isAfter(lockedInv.getLastManualSetTime())) {
-                log.info("绝对设置已过期，跳过: operateTime={}, lastManualSetTime={}",
-                    event.getOperateTime(), lockedInv.getLastManualSetTime());
-                return false;
-            }
-        }
-
-        LocalDateTime sinceTime = event.getOperateTime() != null
-            ? event.getOperateTime() : lockedInv.getUpdateTime();
-        BigDecimal deltaSinceT1 = transactionMapper.sumDeltaSince(inventory.getId(), sinceTime);
-        BigDecimal finalQuantity = event.getNewQuantity().add(deltaSinceT1 != null ? deltaSinceT1 : BigDecimal.ZERO);
-
-        log.info("绝对设置冲突合并: newQty={}, deltaSinceT1={}, finalQty={}",
-            event.getNewQuantity(), deltaSinceT1, finalQuantity);
-
-        LocalDateTime manualSetTime = event.getOperateTime() != null ? event.getOperateTime() : LocalDateTime.now();
-        inventoryMapper.forceUpdateCurrentStock(inventory.getId(), finalQuantity, manualSetTime, LocalDateTime.now());
-
-        writePoiEventLog(inventory, event);
-        return true;
-    }
-
-    private boolean handleStatusChange(Inventory inventory, StockChangeEvent event) {
-        inventoryMapper.updateStockStatusDirect(inventory.getId(), event.getNewStockStatus(), LocalDateTime.now());
-        writePoiEventLog(inventory, event);
-        return true;
-    }
-
-    private void detectOversellAfterReplay(PosOfflineReplayRequest request, PosOfflineReplayResult result) {
-        List<Long> productIds = request.getEvents().stream()
-            .map(StockChangeEvent::getProductId).distinct().collect(Collectors.toList());
-        List<Long> skuIds = request.getEvents().stream()
-            .map(StockChangeEvent::getSkuId).distinct().collect(Collectors.toList());
-
-        for (int i = 0; i < productIds.size(); i++) {
-            Long productId = productIds.get(i);
-            Long skuId = i < skuIds.size() ? skuIds.get(i) : null;
-            Inventory inventory = findInventoryByRequest(request.getStoreId(), productId, skuId);
-
-            if (inventory != null && inventory.getCurrentStock() != null && inventory.getCurrentStock() < 0) {
-                BigDecimal oversellQty = new BigDecimal(-inventory.getCurrentStock());
-                log.warn("检测到超卖: productId={}, skuId={}, oversellQty={}", productId, skuId, oversellQty);
-
-                InventoryOversellRecord record = new InventoryOversellRecord();
-                record.setInventoryId(inventory.getId());
-                record.setStoreId(request.getStoreId());
-                record.setProductId(productId);
-                record.setSkuId(skuId);
-                record.setProductShardId(inventory.getProductShardId());
-                record.setOversellQuantity(oversellQty);
-                record.setSource("POS_OFFLINE");
-                record.setStatus(InventoryOversellRecord.Status.PENDING.name());
-                record.setRemark("POS离线回放后检测到超卖，POS实例: " + request.getPosInstanceId());
-                record.setCreatedAt(LocalDateTime.now());
-                oversellRecordMapper.insert(record);
-
-                inventoryMapper.forceUpdateCurrentStock(inventory.getId(), BigDecimal.ZERO,
-                    inventory.getLastManualSetTime(), LocalDateTime.now());
-                inventoryMapper.updateStockStatusDirect(inventory.getId(), 2, LocalDateTime.now());
-
-                result.setOversellDetected(true);
-                result.setOversellQuantity(oversellQty);
-                result.setOversellRecordId(record.getId());
-            }
-        }
-    }
-
     private void writePoiLog(Inventory inventory, String changeType, BigDecimal delta,
                               String sourcePoi, String orderId, Object content) {
+        transactionMapper.insert(buildPoiLog(inventory, changeType, delta, sourcePoi, orderId, content, LocalDateTime.now()));
+    }
+
+    private InventoryTransaction buildPoiLog(Inventory inventory, String changeType, BigDecimal delta,
+                                             String sourcePoi, String orderId, Object content, LocalDateTime createTime) {
         try {
             InventoryTransaction tx = new InventoryTransaction();
             tx.setInventoryId(inventory.getId());
@@ -1223,21 +1287,14 @@ public class InventoryService {
                 try { tx.setOrderId(Long.parseLong(orderId)); } catch (NumberFormatException ignored) {}
             }
             tx.setContent(objectMapper.writeValueAsString(content));
-            tx.setCreateTime(LocalDateTime.now());
-            transactionMapper.insert(tx);
+            tx.setCreateTime(createTime);
+            return tx;
         } catch (Exception e) {
             log.error("写入变更记录失败", e);
             throw new RuntimeException("写入变更记录失败", e);
         }
     }
 
-    private void writePoiEventLog(Inventory inventory, StockChangeEvent event) {
-        writePoiLog(inventory, event.getChangeType().name(),
-            event.getDelta() != null ? event.getDelta() : BigDecimal.ZERO,
-            event.getSource() != null ? event.getSource().name() : "CLOUD",
-            event.getOrderId(), event);
-    }
-
     private void writeDeductLog(Inventory inventory, ChannelDeductRequest request, String deductSource) {
         try {
             InventoryTransaction tx = new InventoryTransaction();
@@ -1288,55 +1345,5 @@ public class InventoryService {
             throw new RuntimeException("写入归还记录失败", e);
         }
     }
-
-    private void sendStockSyncToOutbox(StockSyncFromPosRequest request) {
-        try {
-            StockSyncToPosMessage message = buildSyncToPosMessage(request);
-            String payload = objectMapper.writeValueAsString(message);
-            String bizKey = request.getStoreId() + ":" + request.getProductId() + ":" + System.currentTimeMillis();
-            String messageKey = "stock-sync:" + request.getStoreId() + ":" + request.getProductId();
-            String shardingKey = String.valueOf(request.getStoreId());
-
-            outboxService.enqueue(
-                OUTBOX_TYPE_STOCK_SYNC, bizKey, payload,
-                RocketMQConfig.INVENTORY_STOCK_SYNC_TOPIC,
-                RocketMQConfig.INVENTORY_STOCK_SYNC_TAG,
-                messageKey, shardingKey, null
-            );
-            log.info("库存变更已写入outbox: bizKey={}", bizKey);
-        } catch (Exception e) {
-            log.error("构建库存同步消息失败", e);
-            throw new RuntimeException("构建库存同步消息失败", e);
-        }
-    }
-
-    private StockSyncToPosMessage buildSyncToPosMessage(StockSyncFromPosRequest request) {
-        StockSyncToPosMessage message = new StockSyncToPosMessage();
-        message.setStoreId(request.getStoreId());
-
-        StockSyncToPosMessage.StockData data = new StockSyncToPosMessage.StockData();
-        data.setProductId(request.getProductId());
-        data.setSkuId(request.getSkuId());
-        data.setStockStatus(request.getStockStatus());
-        data.setStockType(request.getStockType());
-        data.setPlanQuantity(request.getPlanQuantity());
-        data.setRealQuantity(request.getRealQuantity());
-        data.setAutoRestoreType(request.getAutoRestoreType());
-        data.setAutoRestoreAt(request.getAutoRestoreAt());
-
-        if (request.getChannelStocks() != null) {
-            List<StockSyncToPosMessage.ChannelStock> channelStocks = request.getChannelStocks().stream()
-                .map(cs -> {
-                    StockSyncToPosMessage.ChannelStock ch = new StockSyncToPosMessage.ChannelStock();
-                    ch.setStockStatus(cs.getStockStatus());
-                    ch.setStockType(cs.getStockType());
-                    ch.setChannelCode(cs.getChannelCode());
-                    return ch;
-                }).collect(Collectors.toList());
-            data.setChannelStocks(channelStocks);
-        }
-        message.setData(data);
-        return message;
-    }
 }
 
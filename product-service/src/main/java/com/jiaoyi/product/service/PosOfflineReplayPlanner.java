@@ -0,0 +1,167 @@
+package com.jiaoyi.product.service;
+
+import com.jiaoyi.product.dto.PosOfflineReplayResult;
+import com.jiaoyi.product.dto.StockChangeEvent;
+import com.jiaoyi.product.entity.Inventory;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * POS 离线回放折叠器（纯内存计算，不访问数据库）
+ *
+ * 同一库存的离线事件按 operateTime 排序后依次折叠成一次净变更：
+ * - RELATIVE_DELTA：按 orderId 幂等（数据库中已有扣减日志或本批次已扣减过的订单跳过），累加到当前库存
+ * - ABSOLUTE_SET：operateTime 不晚于 lastManualSetTime 的跳过；否则库存重置为 newQuantity + 设置时刻之后
+ *   数据库中已记录的相对变更（其他渠道的在线扣减），之后的本批次相对变更继续累加
+ * - STATUS_CHANGE：按操作时间取最后一次的 newStockStatus，最后写一次
+ * - 相对变更使库存 <= 0 时标记售罄，覆盖此前的状态变更；之后的状态变更（如恢复可售）再覆盖它，与逐条回放的结果一致
+ * 折叠结果由 {@link InventoryService} 一次性写回（一次库存更新 + 批量日志）
+ *
+ * 与逐条回放相比，绝对设置只合并设置之前已落库的变更，不会把本批次中发生在设置之前的扣减重复计入
+ */
+public final class PosOfflineReplayPlanner {
+
+    /**
+     * 库存状态：售罄
+     */
+    public static final int STOCK_STATUS_SOLD_OUT = 2;
+
+    /**
+     * 按操作时间排序（稳定排序，没有操作时间的事件排在最后并保持上报顺序）
+     */
+    static final Comparator<StockChangeEvent> BY_OPERATE_TIME =
+            Comparator.comparing(StockChangeEvent::getOperateTime, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private PosOfflineReplayPlanner() {
+    }
+
+    /**
+     * 折叠单个库存的事件
+     *
+     * @param inventory 已加锁的库存（包含 lastManualSetTime）
+     * @param events 该库存的事件（会被排序）
+     * @param deductedOrderIds 已扣减过的订单ID（数据库中已有日志的订单，本次新扣减的订单会加入该集合）
+     * @param deltaSince 查询某时刻之后数据库中已记录的相对变更总和
+     * @param now 回放时间
+     */
+    public static Plan plan(Inventory inventory,
+                            List<StockChangeEvent> events,
+                            Set<String> deductedOrderIds,
+                            Function<LocalDateTime, BigDecimal> deltaSince,
+                            LocalDateTime now) {
+        events.sort(BY_OPERATE_TIME);
+
+        Plan plan = new Plan(inventory);
+        BigDecimal stock = inventory.getCurrentStock() != null
+                ? new BigDecimal(inventory.getCurrentStock()) : BigDecimal.ZERO;
+        LocalDateTime manualSetTime = inventory.getLastManualSetTime();
+
+        for (StockChangeEvent event : events) {
+            if (event.getChangeType() == null) {
+                plan.fail(event, "未知变更类型: null");
+                continue;
+            }
+            switch (event.getChangeType()) {
+                case RELATIVE_DELTA -> {
+                    if (event.getDelta() == null) {
+                        plan.fail(event, "相对变更缺少 delta");
+                        continue;
+                    }
+                    if (event.getOrderId() != null && deductedOrderIds.contains(event.getOrderId())) {
+                        plan.skipped++;
+                        continue;
+                    }
+                    stock = stock.add(event.getDelta());
+                    if (event.getDelta().signum() < 0 && isNumeric(event.getOrderId())) {
+                        // 日志中的 order_id 是数字列，非数字订单号不参与幂等（与单条回放一致）
+                        deductedOrderIds.add(event.getOrderId());
+                    }
+                    if (stock.signum() <= 0) {
+                        plan.stockStatus = STOCK_STATUS_SOLD_OUT;
+                    }
+                    plan.stockChanged = true;
+                    plan.applied.add(event);
+                }
+                case ABSOLUTE_SET -> {
+                    if (event.getNewQuantity() == null) {
+                        plan.fail(event, "绝对设置缺少 newQuantity");
+                        continue;
+                    }
+                    if (manualSetTime != null && event.getOperateTime() != null
+                            && !event.getOperateTime().isAfter(manualSetTime)) {
+                        plan.skipped++;
+                        continue;
+                    }
+                    LocalDateTime since = event.getOperateTime() != null
+                            ? event.getOperateTime() : inventory.getUpdateTime();
+                    BigDecimal delta = since != null ? deltaSince.apply(since) : null;
+                    stock = event.getNewQuantity().add(delta != null ? delta : BigDecimal.ZERO);
+                    manualSetTime = event.getOperateTime() != null ? event.getOperateTime() : now;
+                    plan.stockChanged = true;
+                    plan.applied.add(event);
+                }
+                case STATUS_CHANGE -> {
+                    if (event.getNewStockStatus() == null) {
+                        plan.fail(event, "状态变更缺少 newStockStatus");
+                        continue;
+                    }
+                    plan.stockStatus = event.getNewStockStatus();
+                    plan.applied.add(event);
+                }
+            }
+        }
+
+        plan.finalStock = stock;
+        plan.lastManualSetTime = manualSetTime;
+        return plan;
+    }
+
+    private static boolean isNumeric(String orderId) {
+        if (orderId == null) {
+            return false;
+        }
+        try {
+            Long.parseLong(orderId);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 单个库存的折叠结果
+     */
+    @Getter
+    public static final class Plan {
+        private final Inventory inventory;
+        private final List<StockChangeEvent> applied = new ArrayList<>();
+        private final List<PosOfflineReplayResult.FailedEvent> failed = new ArrayList<>();
+        private int skipped;
+        private boolean stockChanged;
+        /**
+         * 回放后的库存状态（按操作时间最后生效的状态），null 表示不修改
+         */
+        private Integer stockStatus;
+        private BigDecimal finalStock;
+        private LocalDateTime lastManualSetTime;
+
+        private Plan(Inventory inventory) {
+            this.inventory = inventory;
+        }
+
+        public boolean isStatusChanged() {
+            return stockStatus != null;
+        }
+
+        private void fail(StockChangeEvent event, String reason) {
+            failed.add(new PosOfflineReplayResult.FailedEvent(event.getOrderId(), reason));
+        }
+    }
+}
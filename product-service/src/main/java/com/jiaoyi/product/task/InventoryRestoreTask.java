@@ -2,110 +2,115 @@ package com.jiaoyi.product.task;
 
 import com.jiaoyi.product.entity.Inventory;
 import com.jiaoyi.product.mapper.sharding.InventoryMapper;
-import com.jiaoyi.product.service.InventoryService;
-import lombok.RequiredArgsConstructor;
+import com.jiaoyi.product.service.InventoryCacheService;
+import com.jiaoyi.product.service.InventoryChangeStream;
+import com.jiaoyi.product.util.ProductShardUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 库存自动恢复定时任务
  *
  * 功能：
- * 1. 次日自动恢复：每天凌晨0点，恢复所有设置为"次日恢复"的库存
+ * 1. 次日自动恢复：每天凌晨0点5分开始，恢复所有设置为"次日恢复"的库存
  * 2. 指定时间恢复：每5分钟检查一次，恢复到期的库存
  *
- * 并发安全：
- * 1. 使用 @Scheduled(fixedDelay) 避免任务重叠
- * 2. 使用 instance_id + task_name 作为分布式锁键
- * 3. SQL层面使用CAS更新，防止重复恢复
+ * 分区批处理：
+ * 1. 1024 个 product_shard_id 桶按连续区间划分为 partition-count 个分区，分区是多实例之间的调度单位：
+ *    每个实例用 Redisson 锁（tryLock 不等待）认领空闲分区，认领到的分区由该实例处理，实例越多并行度越高
+ * 2. 分区内按 id 游标分批查询候选记录（product_shard_id IN 分区桶，只查询恢复需要的列），不一次性加载到内存
+ * 3. 每批一条集合CAS更新（WHERE id IN (...) AND 仍满足到期条件），已被其他实例恢复或配置已变更的记录不会重复恢复
+ * 4. 每批一次批量删除商品库存缓存，并按门店合并写入库存变更流（刷新缓存、下发 POS）
+ * 5. 次日恢复每批把游标写入 Redis 检查点（按日期），分区完成后标记完成；
+ *    凌晨0点5分到0点55分每5分钟触发一次，已完成的分区直接跳过，中途宕机的分区从检查点继续
  *
  * @author Claude
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class InventoryRestoreTask {
 
+    private static final String LOCK_KEY_PREFIX = "inventory:restore:lock:";
+    private static final String CHECKPOINT_KEY_PREFIX = "inventory:restore:checkpoint:";
+    private static final String CHECKPOINT_DONE = "DONE";
+    private static final Duration CHECKPOINT_EXPIRE_TIME = Duration.ofDays(2);
+
     private final InventoryMapper inventoryMapper;
-    private final InventoryService inventoryService;
+    private final InventoryCacheService inventoryCacheService;
+    private final InventoryChangeStream inventoryChangeStream;
+    private final RedissonClient redissonClient;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * 分区数（1024 个桶平均划分，必须能整除 1024）
+     */
+    private final int partitionCount;
+
+    /**
+     * 每批查询/更新的记录数
+     */
+    private final int batchSize;
 
     // 实例ID（每次启动生成唯一ID，用于多实例场景下的区分）
     private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
 
+    public InventoryRestoreTask(InventoryMapper inventoryMapper,
+                                InventoryCacheService inventoryCacheService,
+                                InventoryChangeStream inventoryChangeStream,
+                                RedissonClient redissonClient,
+                                RedisTemplate<String, String> redisTemplate,
+                                @Value("${inventory.restore.partition-count:16}") int partitionCount,
+                                @Value("${inventory.restore.batch-size:500}") int batchSize) {
+        if (partitionCount <= 0 || ProductShardUtil.BUCKET_COUNT % partitionCount != 0) {
+            throw new IllegalArgumentException("inventory.restore.partition-count 必须能整除 "
+                    + ProductShardUtil.BUCKET_COUNT + "，当前值: " + partitionCount);
+        }
+        this.inventoryMapper = inventoryMapper;
+        this.inventoryCacheService = inventoryCacheService;
+        this.inventoryChangeStream = inventoryChangeStream;
+        this.redissonClient = redissonClient;
+        this.redisTemplate = redisTemplate;
+        this.partitionCount = partitionCount;
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
     /**
      * 次日自动恢复任务
-     * 每天凌晨0点5分执行（延迟5分钟，避免与其他凌晨任务冲突）
+     * 每天凌晨0点5分开始，到0点55分每5分钟触发一次（第一次触发处理全部分区，之后的触发只补做未完成的分区）
      *
      * 对应PRD需求：次日自动恢复（Until Tomorrow）
      *
      * 并发安全说明：
-     * - 使用fixedDelay确保上一次执行完才开始下一次
-     * - 多实例部署时，通过Redis分布式锁确保只有一个实例执行
-     * - SQL更新使用WHERE条件检查last_restore_time，避免重复恢复
+     * - 分区锁保证同一分区同一时间只有一个实例处理
+     * - 分区完成标记和游标检查点保证重复触发不重复扫描
+     * - SQL更新使用CAS条件（last_restore_time 早于今天零点），避免重复恢复
      */
-    @Scheduled(cron = "0 5 0 * * ?")  // 每天凌晨0点5分
+    @Scheduled(cron = "${inventory.restore.tomorrow-cron:0 5/5 0 * * ?}")
     public void restoreInventoryTomorrow() {
-        String lockKey = "inventory:restore:tomorrow:" + LocalDateTime.now().toLocalDate();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate today = now.toLocalDate();
+        String checkpointKey = CHECKPOINT_KEY_PREFIX + Inventory.RestoreMode.TOMORROW + ":" + today;
         log.info("[实例{}] 开始执行次日自动恢复库存任务", instanceId);
-
-        // TODO: 如果是多实例部署，建议在这里添加Redis分布式锁
-        // 示例：
-        // if (!redisLock.tryLock(lockKey, 300)) {
-        //     log.info("其他实例正在执行，跳过本次任务");
-        //     return;
-        // }
-
-        try {
-            // 查询所有设置为"次日恢复"的库存
-            List<Inventory> inventories = inventoryMapper.selectForTomorrowRestore();
-
-            if (inventories == null || inventories.isEmpty()) {
-                log.info("[实例{}] 没有需要次日恢复的库存", instanceId);
-                return;
-            }
-
-            log.info("[实例{}] 找到 {} 条需要次日恢复的库存记录", instanceId, inventories.size());
-
-            int successCount = 0;
-            int failCount = 0;
-            int skippedCount = 0;
-
-            // 批量恢复库存
-            for (Inventory inventory : inventories) {
-                try {
-                    // 检查是否已经恢复过（防止重复恢复）
-                    if (isRestoredToday(inventory)) {
-                        skippedCount++;
-                        log.debug("[实例{}] 库存今天已恢复过，跳过: inventoryId={}",
-                                instanceId, inventory.getId());
-                        continue;
-                    }
-
-                    inventoryService.restoreInventory(inventory.getId());
-                    successCount++;
-                    log.debug("[实例{}] 恢复库存成功: inventoryId={}, productId={}, skuId={}",
-                            instanceId, inventory.getId(), inventory.getProductId(), inventory.getSkuId());
-                } catch (Exception e) {
-                    failCount++;
-                    log.error("[实例{}] 恢复库存失败: inventoryId={}, productId={}, skuId={}",
-                            instanceId, inventory.getId(), inventory.getProductId(), inventory.getSkuId(), e);
-                }
-            }
-
-            log.info("[实例{}] 次日自动恢复库存任务完成: 成功={}, 失败={}, 跳过={}",
-                    instanceId, successCount, failCount, skippedCount);
-
-        } catch (Exception e) {
-            log.error("[实例{}] 次日自动恢复库存任务执行失败", instanceId, e);
-        } finally {
-            // TODO: 释放分布式锁
-            // redisLock.unlock(lockKey);
-        }
+        RestoreRun run = runPartitions(Inventory.RestoreMode.TOMORROW, today.atStartOfDay(), now, checkpointKey);
+        log.info("[实例{}] 次日自动恢复库存任务完成: 处理分区={}, 跳过分区（已完成或其他实例处理中）={}, 失败分区={}, 候选={}, 恢复={}",
+                instanceId, run.processedPartitions, run.skippedPartitions, run.failedPartitions,
+                run.candidateCount, run.restoredCount);
     }
 
     /**
@@ -116,60 +121,18 @@ public class InventoryRestoreTask {
      *
      * 并发安全说明：
      * - fixedDelay=300000 确保上次执行完成后才开始下次执行
-     * - SQL层面使用CAS更新（WHERE last_restore_time < restore_time）
+     * - 分区锁保证同一分区同一时间只有一个实例处理
+     * - SQL层面使用CAS更新（WHERE last_restore_time < restore_time），恢复过的记录不再是候选，
+     *   因此不需要检查点：每次从头扫描，中断的分区下次自然补做
      */
     @Scheduled(fixedDelay = 300000, initialDelay = 60000)  // 5分钟，启动后1分钟开始
     public void restoreInventoryScheduled() {
+        LocalDateTime now = LocalDateTime.now();
         log.debug("[实例{}] 开始检查指定时间恢复的库存", instanceId);
-
-        try {
-            LocalDateTime now = LocalDateTime.now();
-
-            // 查询所有到期需要恢复的库存（restore_time <= now）
-            List<Inventory> inventories = inventoryMapper.selectForScheduledRestore(now);
-
-            if (inventories == null || inventories.isEmpty()) {
-                log.debug("[实例{}] 没有到期需要恢复的库存", instanceId);
-                return;
-            }
-
-            log.info("[实例{}] 找到 {} 条到期需要恢复的库存记录", instanceId, inventories.size());
-
-            int successCount = 0;
-            int failCount = 0;
-
-            // 批量恢复库存
-            for (Inventory inventory : inventories) {
-                String lockKey = "inventory:restore:scheduled:" + inventory.getId();
-
-                // TODO: 如果是多实例部署，建议在这里添加Redis分布式锁
-                // if (!redisLock.tryLock(lockKey, 60)) {
-                //     log.debug("其他实例正在处理该库存，跳过: inventoryId={}", inventory.getId());
-                //     continue;
-                // }
-
-                try {
-                    inventoryService.restoreInventory(inventory.getId());
-                    successCount++;
-                    log.info("[实例{}] 恢复库存成功: inventoryId={}, productId={}, skuId={}, restoreTime={}",
-                            instanceId, inventory.getId(), inventory.getProductId(),
-                            inventory.getSkuId(), inventory.getRestoreTime());
-                } catch (Exception e) {
-                    failCount++;
-                    log.error("[实例{}] 恢复库存失败: inventoryId={}, productId={}, skuId={}, restoreTime={}",
-                            instanceId, inventory.getId(), inventory.getProductId(),
-                            inventory.getSkuId(), inventory.getRestoreTime(), e);
-                } finally {
-                    // TODO: 释放分布式锁
-                    // redisLock.unlock(lockKey);
-                }
-            }
-
-            log.info("[实例{}] 指定时间恢复库存任务完成: 成功={}, 失败={}",
-                    instanceId, successCount, failCount);
-
-        } catch (Exception e) {
-            log.error("[实例{}] 指定时间恢复库存任务执行失败", instanceId, e);
+        RestoreRun run = runPartitions(Inventory.RestoreMode.SCHEDULED, now.toLocalDate().atStartOfDay(), now, null);
+        if (run.candidateCount > 0 || run.failedPartitions > 0) {
+            log.info("[实例{}] 指定时间恢复库存任务完成: 处理分区={}, 失败分区={}, 候选={}, 恢复={}",
+                    instanceId, run.processedPartitions, run.failedPartitions, run.candidateCount, run.restoredCount);
         }
     }
 
@@ -199,18 +162,135 @@ public class InventoryRestoreTask {
     }
 
     /**
-     * 检查库存今天是否已经恢复过
+     * 认领并处理分区
+     * 每个实例从不同的分区开始尝试认领，减少多实例同时启动时的锁竞争
      *
-     * 判断逻辑：
-     * - 如果 last_restore_time 是今天，说明已恢复过
-     * - 对于次日恢复模式，每天只恢复一次
+     * @param checkpointKey 检查点键（null 表示不记录检查点）
      */
-    private boolean isRestoredToday(Inventory inventory) {
-        if (inventory.getLastRestoreTime() == null) {
-            return false;
+    private RestoreRun runPartitions(Inventory.RestoreMode restoreMode, LocalDateTime dayStart,
+                                     LocalDateTime now, String checkpointKey) {
+        RestoreRun run = new RestoreRun();
+        int offset = Math.floorMod(instanceId.hashCode(), partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            int partition = (offset + i) % partitionCount;
+            RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX + restoreMode + ":" + partition);
+            boolean locked = false;
+            try {
+                // 不设置 leaseTime，由看门狗续期
+                locked = lock.tryLock(0, TimeUnit.SECONDS);
+                if (!locked) {
+                    run.skippedPartitions++;
+                    continue;
+                }
+                restorePartition(restoreMode, partition, dayStart, now, checkpointKey, run);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("[实例{}] 库存恢复任务被中断: restoreMode={}", instanceId, restoreMode);
+                break;
+            } catch (Exception e) {
+                run.failedPartitions++;
+                log.error("[实例{}] 恢复库存分区失败，进度保留在最后成功的批次: restoreMode={}, partition={}",
+                        instanceId, restoreMode, partition, e);
+            } finally {
+                if (locked && lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        return run;
+    }
+
+    /**
+     * 处理单个分区：按 id 游标分批查询候选记录，每批一次集合CAS更新 + 一次批量删缓存
+     */
+    private void restorePartition(Inventory.RestoreMode restoreMode, int partition,
+                                  LocalDateTime dayStart, LocalDateTime now,
+                                  String checkpointKey, RestoreRun run) {
+        long cursorId = 0L;
+        if (checkpointKey != null) {
+            Object checkpoint = redisTemplate.opsForHash().get(checkpointKey, String.valueOf(partition));
+            if (CHECKPOINT_DONE.equals(checkpoint)) {
+                run.skippedPartitions++;
+                return;
+            }
+            if (checkpoint != null) {
+                cursorId = Long.parseLong(checkpoint.toString());
+                log.info("[实例{}] 分区从检查点继续: restoreMode={}, partition={}, cursorId={}",
+                        instanceId, restoreMode, partition, cursorId);
+            }
         }
 
-        LocalDateTime today = LocalDateTime.now().toLocalDate().atStartOfDay();
-        return inventory.getLastRestoreTime().isAfter(today);
+        List<Integer> productShardIds = partitionShardIds(partition);
+        while (true) {
+            List<Inventory> candidates = inventoryMapper.selectRestoreCandidates(
+                    productShardIds, restoreMode, dayStart, now, cursorId, batchSize);
+            if (candidates.isEmpty()) {
+                break;
+            }
+
+            List<Long> ids = new ArrayList<>(candidates.size());
+            Set<Integer> batchShardIds = new TreeSet<>();
+            Set<Long> productIds = new LinkedHashSet<>();
+            for (Inventory candidate : candidates) {
+                ids.add(candidate.getId());
+                batchShardIds.add(candidate.getProductShardId());
+                productIds.add(candidate.getProductId());
+            }
+
+            int restored = inventoryMapper.batchRestoreInventory(batchShardIds, ids, restoreMode, dayStart, now);
+            inventoryCacheService.evictInventoryCacheBatch(productIds);
+            if (restored > 0) {
+                // 按门店合并写入库存变更流（刷新缓存、下发 POS）；CAS 未命中的记录回查后状态不变，重复下发无副作用
+                inventoryChangeStream.recordAll(candidates, InventoryChangeStream.CHANGE_RESTORE, InventoryChangeStream.SOURCE_CLOUD);
+            }
+
+            run.candidateCount += candidates.size();
+            run.restoredCount += restored;
+            cursorId = ids.get(ids.size() - 1);
+            if (restored < candidates.size()) {
+                log.debug("[实例{}] 部分库存已被恢复或配置已变更（CAS未命中）: restoreMode={}, partition={}, 候选={}, 恢复={}",
+                        instanceId, restoreMode, partition, candidates.size(), restored);
+            }
+            if (checkpointKey != null) {
+                saveCheckpoint(checkpointKey, partition, String.valueOf(cursorId));
+            }
+            if (candidates.size() < batchSize) {
+                break;
+            }
+        }
+
+        if (checkpointKey != null) {
+            saveCheckpoint(checkpointKey, partition, CHECKPOINT_DONE);
+        }
+        run.processedPartitions++;
+    }
+
+    private void saveCheckpoint(String checkpointKey, int partition, String value) {
+        redisTemplate.opsForHash().put(checkpointKey, String.valueOf(partition), value);
+        redisTemplate.expire(checkpointKey, CHECKPOINT_EXPIRE_TIME);
+    }
+
+    /**
+     * 分区包含的 product_shard_id（连续区间）
+     */
+    private List<Integer> partitionShardIds(int partition) {
+        int bucketsPerPartition = ProductShardUtil.BUCKET_COUNT / partitionCount;
+        List<Integer> productShardIds = new ArrayList<>(bucketsPerPartition);
+        for (int shardId = partition * bucketsPerPartition; shardId < (partition + 1) * bucketsPerPartition; shardId++) {
+            productShardIds.add(shardId);
+        }
+        return productShardIds;
+    }
+
+    /**
+     * 一次任务执行的统计
+     */
+    private static class RestoreRun {
+        private int processedPartitions;
+        private int skippedPartitions;
+        private int failedPartitions;
+        private long candidateCount;
+        private long restoredCount;
     }
 }
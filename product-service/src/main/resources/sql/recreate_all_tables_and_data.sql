@@ -133,13 +133,16 @@ CREATE TABLE outbox (
     INDEX idx_created_at (created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='Outbox表';
 
--- 创建 snowflake_worker 表
-CREATE TABLE snowflake_worker (
-    worker_id INT PRIMARY KEY COMMENT '工作机器ID（0-1023）',
-    instance VARCHAR(128) NOT NULL UNIQUE COMMENT '实例标识（hostname或IP:PORT）',
-    last_heartbeat TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '最后心跳时间',
-    INDEX idx_last_heartbeat (last_heartbeat)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='雪花算法Worker-ID分配表';
+-- 创建 snowflake_worker_lease 表（不删除重建：last_timestamp 用于时钟回拨保护）
+CREATE TABLE IF NOT EXISTS snowflake_worker_lease (
+    biz_tag VARCHAR(64) NOT NULL COMMENT '业务标识',
+    worker_id INT NOT NULL COMMENT '工作机器ID',
+    instance VARCHAR(128) NOT NULL COMMENT '当前持有实例',
+    lease_expire_at BIGINT NOT NULL COMMENT '租约到期时间（毫秒）',
+    last_timestamp BIGINT NOT NULL DEFAULT 0 COMMENT '已发出的最大时间戳（毫秒）',
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (biz_tag, worker_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='雪花算法Worker-ID租约表';
 
 -- ============================================
 -- 第三步：创建分片表（jiaoyi_0, jiaoyi_1, jiaoyi_2）
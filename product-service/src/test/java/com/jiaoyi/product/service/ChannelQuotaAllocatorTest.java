@@ -0,0 +1,104 @@
+package com.jiaoyi.product.service;
+
+import com.jiaoyi.product.entity.Inventory;
+import com.jiaoyi.product.entity.InventoryChannel;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 渠道额度定点分配测试（额度单位 0.1，权重单位 0.000001）
+ */
+class ChannelQuotaAllocatorTest {
+
+    @Test
+    void multiplyDivideMatchesBigIntegerWhenProductOverflowsLong() {
+        long a = Integer.MAX_VALUE * 10L;
+        long b = 3_000_000L;
+        long c = 4_000_000L;
+        long expected = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c)).longValue();
+
+        assertEquals(expected, ChannelQuotaAllocator.multiplyDivide(a, b, c));
+        assertEquals(Long.MAX_VALUE / 2, ChannelQuotaAllocator.multiplyDivide(Long.MAX_VALUE, 10, 20));
+        assertEquals(7, ChannelQuotaAllocator.multiplyDivide(10, 3, 4));
+    }
+
+    @Test
+    void remainderGoesToSharedPool() {
+        ChannelQuotaAllocator.Plan plan = ChannelQuotaAllocator.plan(inventory(10),
+                channels("1", "2"));
+
+        // 100 个单位按 1:2 分配：33 / 66，余 1 个单位（0.1）进共享池
+        assertArrayEquals(new long[]{33, 66}, plan.quotas);
+        assertEquals(1, plan.sharedPool);
+        assertTrue(plan.resetSold);
+    }
+
+    @Test
+    void largeStockUsesOverflowSafeApportionment() {
+        ChannelQuotaAllocator.Plan plan = ChannelQuotaAllocator.plan(inventory(Integer.MAX_VALUE),
+                channels("1", "3"));
+
+        long totalUnits = Integer.MAX_VALUE * 10L;
+        assertEquals(totalUnits / 4, plan.quotas[0]);
+        assertEquals(totalUnits * 3 / 4, plan.quotas[1]);
+        assertEquals(totalUnits - plan.quotas[0] - plan.quotas[1], plan.sharedPool);
+    }
+
+    @Test
+    void zeroStockClearsQuotasWithoutResettingSold() {
+        ChannelQuotaAllocator.Plan plan = ChannelQuotaAllocator.plan(inventory(0),
+                channels("0.5", "0.25"));
+
+        assertArrayEquals(new long[]{0, 0}, plan.quotas);
+        assertArrayEquals(new long[]{500_000, 250_000}, plan.weights);
+        assertEquals(0, plan.sharedPool);
+        assertFalse(plan.resetSold);
+    }
+
+    @Test
+    void zeroTotalWeightSplitsEvenly() {
+        ChannelQuotaAllocator.Plan plan = ChannelQuotaAllocator.plan(inventory(10),
+                channels("0", null, "0.0000001"));
+
+        // 权重截断到 6 位小数后合计为 0，三个渠道按权重 1 平分 100 个单位
+        assertArrayEquals(new long[]{1_000_000, 1_000_000, 1_000_000}, plan.weights);
+        assertArrayEquals(new long[]{33, 33, 33}, plan.quotas);
+        assertEquals(1, plan.sharedPool);
+    }
+
+    @Test
+    void inventoryWithoutChannelsHasNoPlan() {
+        assertNull(ChannelQuotaAllocator.plan(inventory(10), new ArrayList<>()));
+        assertEquals(0, ChannelQuotaAllocator.toUnits(null));
+        assertEquals(333_333, ChannelQuotaAllocator.toUnits(new BigDecimal("0.3333339")));
+    }
+
+    private static Inventory inventory(int stock) {
+        Inventory inventory = new Inventory();
+        inventory.setId(1L);
+        inventory.setCurrentStock(stock);
+        return inventory;
+    }
+
+    private static List<InventoryChannel> channels(String... weights) {
+        List<InventoryChannel> channels = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            InventoryChannel channel = new InventoryChannel();
+            channel.setId((long) i + 1);
+            channel.setInventoryId(1L);
+            channel.setChannelWeight(weights[i] != null ? new BigDecimal(weights[i]) : null);
+            channels.add(channel);
+        }
+        return channels;
+    }
+}
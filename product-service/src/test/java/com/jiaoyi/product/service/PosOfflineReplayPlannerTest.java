@@ -0,0 +1,146 @@
+package com.jiaoyi.product.service;
+
+import com.jiaoyi.product.dto.StockChangeEvent;
+import com.jiaoyi.product.entity.Inventory;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * POS 离线回放折叠语义测试
+ */
+class PosOfflineReplayPlannerTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 10, 0);
+    private static final LocalDateTime NOW = T0.plusHours(1);
+
+    @Test
+    void deltaThenSetThenStatusFoldsInOperateTimeOrder() {
+        Inventory inventory = inventory(10, null);
+        // 上报顺序打乱，按 operateTime 折叠
+        List<StockChangeEvent> events = new ArrayList<>(List.of(
+                status(T0.plusMinutes(3), 2),
+                set(T0.plusMinutes(2), 20),
+                delta(T0.plusMinutes(1), -3, "1001")));
+        Set<String> deducted = new HashSet<>();
+
+        // 设置时刻之后数据库中已记录的其他渠道扣减 -1
+        PosOfflineReplayPlanner.Plan plan = PosOfflineReplayPlanner.plan(
+                inventory, events, deducted, since -> new BigDecimal("-1"), NOW);
+
+        assertEquals(0, new BigDecimal("19").compareTo(plan.getFinalStock()));
+        assertEquals(2, plan.getStockStatus());
+        assertEquals(T0.plusMinutes(2), plan.getLastManualSetTime());
+        assertTrue(plan.isStockChanged());
+        assertEquals(3, plan.getApplied().size());
+        assertTrue(deducted.contains("1001"));
+    }
+
+    @Test
+    void absoluteSetNotAfterLastManualSetTimeIsSkipped() {
+        Inventory inventory = inventory(10, T0.plusMinutes(5));
+        List<StockChangeEvent> events = new ArrayList<>(List.of(
+                set(T0.plusMinutes(5), 50),
+                delta(T0.plusMinutes(6), -2, "1002")));
+
+        PosOfflineReplayPlanner.Plan plan = PosOfflineReplayPlanner.plan(
+                inventory, events, new HashSet<>(), since -> BigDecimal.ZERO, NOW);
+
+        assertEquals(0, new BigDecimal("8").compareTo(plan.getFinalStock()));
+        assertEquals(1, plan.getSkipped());
+        assertEquals(T0.plusMinutes(5), plan.getLastManualSetTime());
+        assertFalse(plan.isStatusChanged());
+    }
+
+    @Test
+    void laterStatusChangeRestoresAvailabilityAfterSellOut() {
+        Inventory inventory = inventory(3, null);
+        List<StockChangeEvent> events = new ArrayList<>(List.of(
+                delta(T0.plusMinutes(1), -3, "1003"),
+                status(T0.plusMinutes(2), 1)));
+
+        PosOfflineReplayPlanner.Plan plan = PosOfflineReplayPlanner.plan(
+                inventory, events, new HashSet<>(), since -> BigDecimal.ZERO, NOW);
+
+        assertEquals(0, BigDecimal.ZERO.compareTo(plan.getFinalStock()));
+        assertEquals(1, plan.getStockStatus());
+    }
+
+    @Test
+    void deltaToZeroAfterStatusChangeMarksSoldOut() {
+        Inventory inventory = inventory(3, null);
+        List<StockChangeEvent> events = new ArrayList<>(List.of(
+                status(T0.plusMinutes(1), 1),
+                delta(T0.plusMinutes(2), -3, "1004")));
+
+        PosOfflineReplayPlanner.Plan plan = PosOfflineReplayPlanner.plan(
+                inventory, events, new HashSet<>(), since -> BigDecimal.ZERO, NOW);
+
+        assertEquals(PosOfflineReplayPlanner.STOCK_STATUS_SOLD_OUT, plan.getStockStatus());
+    }
+
+    @Test
+    void alreadyDeductedOrderAndInvalidStatusChangeAreNotApplied() {
+        Inventory inventory = inventory(10, null);
+        List<StockChangeEvent> events = new ArrayList<>(List.of(
+                delta(T0.plusMinutes(1), -1, "1005"),
+                status(T0.plusMinutes(2), null)));
+        Set<String> deducted = new HashSet<>(Set.of("1005"));
+
+        PosOfflineReplayPlanner.Plan plan = PosOfflineReplayPlanner.plan(
+                inventory, events, deducted, since -> BigDecimal.ZERO, NOW);
+
+        assertEquals(0, BigDecimal.TEN.compareTo(plan.getFinalStock()));
+        assertFalse(plan.isStockChanged());
+        assertNull(plan.getStockStatus());
+        assertEquals(1, plan.getSkipped());
+        assertEquals(1, plan.getFailed().size());
+        assertTrue(plan.getApplied().isEmpty());
+    }
+
+    private static Inventory inventory(int stock, LocalDateTime lastManualSetTime) {
+        Inventory inventory = new Inventory();
+        inventory.setId(1L);
+        inventory.setCurrentStock(stock);
+        inventory.setLastManualSetTime(lastManualSetTime);
+        inventory.setUpdateTime(T0);
+        return inventory;
+    }
+
+    private static StockChangeEvent delta(LocalDateTime operateTime, int delta, String orderId) {
+        StockChangeEvent event = event(StockChangeEvent.ChangeType.RELATIVE_DELTA, operateTime);
+        event.setDelta(BigDecimal.valueOf(delta));
+        event.setOrderId(orderId);
+        return event;
+    }
+
+    private static StockChangeEvent set(LocalDateTime operateTime, int quantity) {
+        StockChangeEvent event = event(StockChangeEvent.ChangeType.ABSOLUTE_SET, operateTime);
+        event.setNewQuantity(BigDecimal.valueOf(quantity));
+        return event;
+    }
+
+    private static StockChangeEvent status(LocalDateTime operateTime, Integer stockStatus) {
+        StockChangeEvent event = event(StockChangeEvent.ChangeType.STATUS_CHANGE, operateTime);
+        event.setNewStockStatus(stockStatus);
+        return event;
+    }
+
+    private static StockChangeEvent event(StockChangeEvent.ChangeType type, LocalDateTime operateTime) {
+        StockChangeEvent event = new StockChangeEvent();
+        event.setChangeType(type);
+        event.setSource(StockChangeEvent.Source.POS);
+        event.setOperateTime(operateTime);
+        return event;
+    }
+}
@@ -0,0 +1,187 @@
+package com.jiaoyi.loadtest;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP 连接复用基准测试
+ *
+ * 启动一个本地桩服务（模拟 product-service，固定延迟 + JSON 响应），分别用：
+ * 1. 不复用连接的 HttpURLConnection（每次请求 Connection: close，相当于没有连接池）
+ * 2. 默认 HttpURLConnection（JDK 自带的 keep-alive 缓存，默认每个 host 最多缓存 5 个空闲连接）
+ * 3. Apache HttpClient 5 连接池（order-service 中 RestTemplate / Feign 使用的方案）
+ * 发起相同数量的并发请求，对比 QPS、平均延迟和服务端看到的 TCP 连接数
+ *
+ * 直接运行 main 方法即可，不依赖任何外部服务
+ */
+public class HttpPoolBenchmark {
+
+    // ====== 修改这里的配置 ======
+    static final int THREADS = 32;               // 并发数
+    static final int REQUESTS_PER_THREAD = 500;  // 每线程请求数
+    static final int STUB_LATENCY_MILLIS = 2;    // 桩服务处理延迟
+    // ===========================
+
+    static final byte[] STUB_BODY = "{\"code\":200,\"message\":\"success\",\"data\":{\"id\":1,\"storeId\":1,\"unitPrice\":9.90}}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 服务端看到的不同客户端端口（每个端口对应一个 TCP 连接）
+     */
+    static final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+
+    public static void main(String[] args) throws Exception {
+        HttpServer server = startStubServer();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/store-products/merchant/m1/1";
+
+        System.out.println("========================================");
+        System.out.println("HTTP 连接复用基准测试");
+        System.out.println("桩服务: " + url);
+        System.out.println("并发: " + THREADS + ", 总请求: " + (THREADS * REQUESTS_PER_THREAD));
+        System.out.println("========================================\n");
+
+        try {
+            // 预热，避免 JIT 影响第一组结果
+            run("预热", () -> requestWithUrlConnection(url, false));
+
+            run("HttpURLConnection（Connection: close，无连接池）", () -> requestWithUrlConnection(url, true));
+            run("HttpURLConnection（JDK keep-alive 缓存）", () -> requestWithUrlConnection(url, false));
+
+            try (CloseableHttpClient pooled = createPooledClient()) {
+                run("Apache HttpClient 5 连接池", () -> requestWithPooledClient(pooled, url));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    static HttpServer startStubServer() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            try {
+                Thread.sleep(STUB_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, STUB_BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(STUB_BODY);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(THREADS * 2));
+        server.start();
+        return server;
+    }
+
+    static CloseableHttpClient createPooledClient() {
+        return HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(THREADS * 2)
+                        .setMaxConnPerRoute(THREADS)
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.ofSeconds(1))
+                                .setSocketTimeout(Timeout.ofSeconds(5))
+                                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                                .build())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofSeconds(1))
+                        .setConnectionKeepAlive(TimeValue.ofSeconds(30))
+                        .build())
+                .build();
+    }
+
+    static void requestWithUrlConnection(String url, boolean closeConnection) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(1000);
+        connection.setReadTimeout(5000);
+        if (closeConnection) {
+            connection.setRequestProperty("Connection", "close");
+        }
+        try (InputStream in = connection.getInputStream()) {
+            // 必须读完响应体，JDK 才会把连接放回 keep-alive 缓存
+            in.readAllBytes();
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IllegalStateException("status " + connection.getResponseCode());
+        }
+    }
+
+    static void requestWithPooledClient(CloseableHttpClient client, String url) throws Exception {
+        HttpGet get = new HttpGet(url);
+        int status = client.execute(get, response -> {
+            EntityUtils.consume(response.getEntity());
+            return response.getCode();
+        });
+        if (status != 200) {
+            throw new IllegalStateException("status " + status);
+        }
+    }
+
+    interface Request {
+        void execute() throws Exception;
+    }
+
+    static void run(String name, Request request) throws Exception {
+        remotePorts.clear();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong totalNanos = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch latch = new CountDownLatch(THREADS);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                try {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        long begin = System.nanoTime();
+                        try {
+                            request.execute();
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                        }
+                        totalNanos.addAndGet(System.nanoTime() - begin);
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        executor.shutdown();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int total = THREADS * REQUESTS_PER_THREAD;
+        System.out.println("[" + name + "]");
+        System.out.printf("  耗时: %dms, QPS: %.0f, 平均延迟: %.2fms, 失败: %d%n",
+                elapsedMillis, total * 1000.0 / Math.max(elapsedMillis, 1),
+                totalNanos.get() / 1_000_000.0 / total, failed.get());
+        System.out.printf("  服务端 TCP 连接数: %d（请求数 %d）%n%n", remotePorts.size(), total);
+    }
+}
@@ -0,0 +1,166 @@
+package com.jiaoyi.loadtest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单价格字段访问基准测试（JMH）
+ *
+ * 模拟一次退款计算读取 orders.order_price 中 7 个字段（subtotal/discount/deliveryFee/taxTotal/tips/charge/total）
+ * 加价格签名的开销，对比：
+ * 1. mapPerField：旧 OrderPriceUtil.parseField 的做法，每读一个字段都把整段 JSON 反序列化成 Map
+ * 2. newMapperPerCall：旧 PaymentService 验签的做法，每次 new ObjectMapper 再解析一遍
+ * 3. parseOnceCold：order-service 中 OrderPrice 的做法，流式 JsonParser 扫描一次顶层字段后读取（首次访问）
+ * 4. parseOnceCached：同一个 OrderPrice 上再次读取字段（已解析，只是字段读取）
+ *
+ * 压测工具不依赖 order-service，这里的 {@link ParsedPrice} 是 OrderPrice 解析逻辑的最小复制
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderPriceBenchmark {
+
+    static final String ORDER_PRICE_JSON = "{\"subtotal\":45.80,\"discount\":5.00,\"deliveryFee\":3.99,"
+            + "\"taxTotal\":3.67,\"tips\":6.00,\"charge\":1.50,\"total\":55.96,"
+            + "\"priceSignature\":\"3f2a9c1d7e4b8a6f0c5d2e1b9a8f7c6d\"}";
+
+    static final String[] FIELDS = {"subtotal", "discount", "deliveryFee", "taxTotal", "tips", "charge", "total"};
+
+    private static final ObjectMapper SHARED_MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ParsedPrice cached;
+
+    @Setup
+    public void setup() throws Exception {
+        cached = ParsedPrice.parse(ORDER_PRICE_JSON);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void mapPerField(Blackhole bh) throws Exception {
+        for (String field : FIELDS) {
+            Map<String, Object> map = SHARED_MAPPER.readValue(ORDER_PRICE_JSON, Map.class);
+            bh.consume(toPrice(map.get(field)));
+        }
+        Map<String, Object> map = SHARED_MAPPER.readValue(ORDER_PRICE_JSON, Map.class);
+        bh.consume(map.get("priceSignature"));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void newMapperPerCall(Blackhole bh) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> map = mapper.readValue(ORDER_PRICE_JSON, Map.class);
+        for (String field : FIELDS) {
+            bh.consume(toPrice(map.get(field)));
+        }
+        bh.consume(map.get("priceSignature"));
+    }
+
+    @Benchmark
+    public void parseOnceCold(Blackhole bh) throws Exception {
+        consume(ParsedPrice.parse(ORDER_PRICE_JSON), bh);
+    }
+
+    @Benchmark
+    public void parseOnceCached(Blackhole bh) {
+        consume(cached, bh);
+    }
+
+    private static void consume(ParsedPrice price, Blackhole bh) {
+        bh.consume(price.subtotal);
+        bh.consume(price.discount);
+        bh.consume(price.deliveryFee);
+        bh.consume(price.taxTotal);
+        bh.consume(price.tips);
+        bh.consume(price.charge);
+        bh.consume(price.total);
+        bh.consume(price.priceSignature);
+    }
+
+    private static BigDecimal toPrice(Object value) {
+        return value == null ? BigDecimal.ZERO : toPrice(value.toString());
+    }
+
+    private static BigDecimal toPrice(String text) {
+        return new BigDecimal(text).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * OrderPrice 流式解析的最小复制
+     */
+    static final class ParsedPrice {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal discount = BigDecimal.ZERO;
+        BigDecimal deliveryFee = BigDecimal.ZERO;
+        BigDecimal taxTotal = BigDecimal.ZERO;
+        BigDecimal tips = BigDecimal.ZERO;
+        BigDecimal charge = BigDecimal.ZERO;
+        BigDecimal total = BigDecimal.ZERO;
+        String priceSignature;
+
+        static ParsedPrice parse(String json) throws Exception {
+            ParsedPrice price = new ParsedPrice();
+            try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return price;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    if (token == JsonToken.VALUE_NULL) {
+                        continue;
+                    }
+                    switch (name) {
+                        case "subtotal": price.subtotal = toPrice(parser.getText()); break;
+                        case "discount": price.discount = toPrice(parser.getText()); break;
+                        case "deliveryFee": price.deliveryFee = toPrice(parser.getText()); break;
+                        case "taxTotal": price.taxTotal = toPrice(parser.getText()); break;
+                        case "tips": price.tips = toPrice(parser.getText()); break;
+                        case "charge": price.charge = toPrice(parser.getText()); break;
+                        case "total": price.total = toPrice(parser.getText()); break;
+                        case "priceSignature": price.priceSignature = parser.getText(); break;
+                        default: break;
+                    }
+                }
+            }
+            return price;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(OrderPriceBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
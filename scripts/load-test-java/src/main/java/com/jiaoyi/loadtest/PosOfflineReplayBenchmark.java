@@ -0,0 +1,132 @@
+package com.jiaoyi.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * POS 离线批量回放基准测试
+ *
+ * 模拟一台离线数小时的 POS 恢复联网后一次上报 10k 条库存变更事件，调用 product-service 的
+ * /api/inventory/poi/stock/replay-offline，统计每轮回放耗时和事件吞吐（events/s）：
+ * - 事件分布在 INVENTORY_COUNT 个库存上（商品ID从 FIRST_PRODUCT_ID 开始连续编号，需已存在库存记录）
+ * - 约 90% 相对扣减（每条唯一 orderId），5% 补货，3% 绝对设置，2% 状态变更，操作时间递增
+ * - 每轮使用新的 orderId，避免被幂等跳过；第二次提交同一批事件可观察幂等跳过的耗时
+ *
+ * 运行前启动 product-service，并确保门店下已有对应库存记录
+ */
+public class PosOfflineReplayBenchmark {
+
+    // ====== 修改这里的配置 ======
+    static final String BASE_URL = "http://localhost:8081";
+    static final long STORE_ID = 1L;
+    static final long FIRST_PRODUCT_ID = 1L;
+    static final int INVENTORY_COUNT = 50;       // 事件涉及的库存数（商品级库存，skuId 为空）
+    static final int EVENTS_PER_REPLAY = 10_000; // 每次回放的事件数
+    static final int ROUNDS = 5;                 // 回放轮数（第一轮作为预热不计入统计）
+    // ===========================
+
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        String url = BASE_URL + "/api/inventory/poi/stock/replay-offline";
+
+        System.out.println("========================================");
+        System.out.println("POS 离线批量回放基准测试");
+        System.out.println("接口: " + url);
+        System.out.println("库存数: " + INVENTORY_COUNT + ", 每次事件数: " + EVENTS_PER_REPLAY + ", 轮数: " + ROUNDS);
+        System.out.println("========================================\n");
+
+        long orderIdBase = System.currentTimeMillis() * 1000;
+        long totalNanos = 0;
+        int measured = 0;
+        String lastBody = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            String body = buildRequest(orderIdBase + (long) round * EVENTS_PER_REPLAY, round);
+            lastBody = body;
+            long elapsed = replay(client, url, body, round == 0 ? "预热" : "第 " + round + " 轮");
+            if (round > 0) {
+                totalNanos += elapsed;
+                measured++;
+            }
+        }
+
+        if (measured > 0) {
+            double avgMillis = totalNanos / 1_000_000.0 / measured;
+            System.out.printf("%n平均耗时: %.1f ms, 平均吞吐: %.0f events/s%n",
+                    avgMillis, EVENTS_PER_REPLAY / (avgMillis / 1000.0));
+        }
+
+        // 重复提交最后一批：相对扣减全部按 orderId 幂等跳过
+        System.out.println();
+        replay(client, url, lastBody, "重复提交（幂等）");
+    }
+
+    static long replay(HttpClient client, String url, String body, String label) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        long start = System.nanoTime();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        long elapsed = System.nanoTime() - start;
+
+        JsonNode data = MAPPER.readTree(response.body()).path("data");
+        System.out.printf("%-16s 耗时: %8.1f ms, 吞吐: %8.0f events/s, success=%d, skipped=%d, failed=%d, oversell=%s%n",
+                label,
+                elapsed / 1_000_000.0,
+                EVENTS_PER_REPLAY / (elapsed / 1_000_000_000.0),
+                data.path("successCount").asInt(),
+                data.path("skippedCount").asInt(),
+                data.path("failedCount").asInt(),
+                data.path("oversellDetected").asBoolean());
+        return elapsed;
+    }
+
+    static String buildRequest(long orderIdBase, int round) throws Exception {
+        Random random = new Random(round);
+        LocalDateTime operateTime = LocalDateTime.now().minusHours(4);
+
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("storeId", STORE_ID);
+        root.put("posInstanceId", "bench-pos-" + round);
+        ArrayNode events = root.putArray("events");
+        for (int i = 0; i < EVENTS_PER_REPLAY; i++) {
+            operateTime = operateTime.plusNanos(1_000_000L * (1 + random.nextInt(1000)));
+            ObjectNode event = events.addObject();
+            event.put("storeId", STORE_ID);
+            event.put("productId", FIRST_PRODUCT_ID + random.nextInt(INVENTORY_COUNT));
+            event.put("operateTime", TIME_FORMAT.format(operateTime));
+
+            int dice = random.nextInt(100);
+            if (dice < 90) {
+                event.put("changeType", "RELATIVE_DELTA");
+                event.put("delta", -1 - random.nextInt(2));
+                event.put("orderId", String.valueOf(orderIdBase + i));
+            } else if (dice < 95) {
+                event.put("changeType", "RELATIVE_DELTA");
+                event.put("delta", 5 + random.nextInt(20));
+            } else if (dice < 98) {
+                event.put("changeType", "ABSOLUTE_SET");
+                event.put("newQuantity", 100 + random.nextInt(100));
+            } else {
+                event.put("changeType", "STATUS_CHANGE");
+                event.put("newStockStatus", 1 + random.nextInt(2));
+            }
+        }
+        return MAPPER.writeValueAsString(root);
+    }
+}
@@ -0,0 +1,171 @@
+package com.jiaoyi.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 按订单ID查询：广播 vs 基因精准路由 基准测试
+ *
+ * 直连订单分片库（jiaoyi_order_0/1/2，每库 orders_00..orders_31），从各物理表抽样订单ID后，分别用：
+ * 1. 广播：模拟 ShardingSphere 对不带分片键的 selectById 的执行方式——每个库一个连接，串行查询本库 32 张表，
+ *    3 个库并行，总共 96 次物理查询，耗时取决于最慢的库
+ * 2. 精准路由：从基因ID中取出 shard_id 后直接定位到一张物理表，只执行 1 次物理查询
+ *    （抽样时已记录每个ID所在的物理表，等价于 shard_id -> shard_bucket_route 的结果）
+ * 对比单次查询的平均延迟、QPS 和物理查询次数
+ *
+ * 运行前确保 MySQL 中已有订单数据（可先跑一轮下单压测）
+ */
+public class ShardRoutingBenchmark {
+
+    // ====== 修改这里的配置 ======
+    static final String JDBC_URL_TEMPLATE = "jdbc:mysql://localhost:3306/%s?useUnicode=true&characterEncoding=utf8&useSSL=false&serverTimezone=Asia/Shanghai";
+    static final String USERNAME = "root";
+    static final String PASSWORD = "root";
+    static final String[] DATABASES = {"jiaoyi_order_0", "jiaoyi_order_1", "jiaoyi_order_2"};
+    static final int TABLES_PER_DB = 32;
+    static final int SAMPLES_PER_TABLE = 5;   // 每张物理表抽样的订单数
+    static final int ROUNDS = 3;              // 每个样本重复查询的轮数
+    // ===========================
+
+    /**
+     * 抽样订单所在位置
+     */
+    static final class Sample {
+        final long orderId;
+        final int dbIndex;
+        final String table;
+
+        Sample(long orderId, int dbIndex, String table) {
+            this.orderId = orderId;
+            this.dbIndex = dbIndex;
+            this.table = table;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Connection> connections = new ArrayList<>();
+        for (String database : DATABASES) {
+            connections.add(DriverManager.getConnection(String.format(JDBC_URL_TEMPLATE, database), USERNAME, PASSWORD));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(DATABASES.length);
+
+        try {
+            List<Sample> samples = sample(connections);
+            if (samples.isEmpty()) {
+                System.out.println("orders 表中没有数据，请先生成订单后再运行");
+                return;
+            }
+            Collections.shuffle(samples, new Random(42));
+
+            System.out.println("========================================");
+            System.out.println("按订单ID查询：广播 vs 精准路由");
+            System.out.println("物理表: " + DATABASES.length + " 库 x " + TABLES_PER_DB + " 表, 样本数: " + samples.size() + ", 轮数: " + ROUNDS);
+            System.out.println("========================================\n");
+
+            // 预热
+            for (Sample sample : samples) {
+                routed(connections, sample);
+            }
+
+            long broadcastQueries = 0;
+            long broadcastNanos = 0;
+            long routedQueries = 0;
+            long routedNanos = 0;
+            int missed = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                for (Sample sample : samples) {
+                    long begin = System.nanoTime();
+                    int found = broadcast(connections, executor, sample.orderId);
+                    broadcastNanos += System.nanoTime() - begin;
+                    broadcastQueries += (long) DATABASES.length * TABLES_PER_DB;
+
+                    begin = System.nanoTime();
+                    if (!routed(connections, sample) || found != 1) {
+                        missed++;
+                    }
+                    routedNanos += System.nanoTime() - begin;
+                    routedQueries++;
+                }
+            }
+
+            int total = samples.size() * ROUNDS;
+            print("广播（96 张表，库间并行、库内串行）", total, broadcastQueries, broadcastNanos);
+            print("基因精准路由（1 张表）", total, routedQueries, routedNanos);
+            System.out.printf("延迟比: %.1fx, 结果不一致: %d%n", broadcastNanos / (double) Math.max(routedNanos, 1), missed);
+        } finally {
+            executor.shutdown();
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    static List<Sample> sample(List<Connection> connections) throws Exception {
+        List<Sample> samples = new ArrayList<>();
+        for (int db = 0; db < connections.size(); db++) {
+            for (int t = 0; t < TABLES_PER_DB; t++) {
+                String table = String.format("orders_%02d", t);
+                try (PreparedStatement ps = connections.get(db).prepareStatement(
+                        "SELECT id FROM " + table + " ORDER BY id DESC LIMIT " + SAMPLES_PER_TABLE);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        samples.add(new Sample(rs.getLong(1), db, table));
+                    }
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 广播查询，返回命中的行数
+     */
+    static int broadcast(List<Connection> connections, ExecutorService executor, long orderId) throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (Connection connection : connections) {
+            futures.add(executor.submit(() -> {
+                int found = 0;
+                for (int t = 0; t < TABLES_PER_DB; t++) {
+                    if (queryById(connection, String.format("orders_%02d", t), orderId)) {
+                        found++;
+                    }
+                }
+                return found;
+            }));
+        }
+        int found = 0;
+        for (Future<Integer> future : futures) {
+            found += future.get();
+        }
+        return found;
+    }
+
+    static boolean routed(List<Connection> connections, Sample sample) throws Exception {
+        return queryById(connections.get(sample.dbIndex), sample.table, sample.orderId);
+    }
+
+    static boolean queryById(Connection connection, String table, long orderId) throws Exception {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT * FROM " + table + " WHERE id = ?")) {
+            ps.setLong(1, orderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    static void print(String name, int total, long physicalQueries, long nanos) {
+        double avgMillis = nanos / 1_000_000.0 / total;
+        System.out.println("[" + name + "]");
+        System.out.printf("  平均延迟: %.3fms, QPS(单线程): %.0f, 物理查询: %d（每次 %d）%n%n",
+                avgMillis, 1000.0 / avgMillis, physicalQueries, physicalQueries / total);
+    }
+}